@@ -242,11 +242,18 @@ public class EHCachingHistoricalDataSource implements HistoricalDataSource {
       }
     }
     if (!remainingIdentifiers.isEmpty()) {
+      // Fetch the misses in full so they can be cached like single requests, and later requests for them are hits
       Map<IdentifierBundle, Pair<UniqueIdentifier, LocalDateDoubleTimeSeries>> remainingTsResults =
-        _underlying.getHistoricalData(remainingIdentifiers, dataSource, dataProvider, dataField, start, inclusiveStart, end, exclusiveEnd);
+        _underlying.getHistoricalData(remainingIdentifiers, dataSource, dataProvider, dataField, null, true, null, false);
       for (Map.Entry<IdentifierBundle, Pair<UniqueIdentifier, LocalDateDoubleTimeSeries>> tsResult : remainingTsResults.entrySet()) {
         IdentifierBundle identifiers = tsResult.getKey();
         Pair<UniqueIdentifier, LocalDateDoubleTimeSeries> tsPair = tsResult.getValue();
+        MetaDataKey key = new MetaDataKey(null, null, identifiers, dataSource, dataProvider, dataField);
+        _cache.put(new Element(key, tsPair.getFirst()));
+        if (tsPair.getFirst() != null) {
+          s_logger.debug("Retrieved {} for {}", tsPair.getFirst(), identifiers);
+          _cache.put(new Element(tsPair.getFirst(), tsPair.getSecond()));
+        }
         tsPair = getSubseries(start, inclusiveStart, end, exclusiveEnd, tsPair);
         tsPairs.put(identifiers, tsPair);
       }
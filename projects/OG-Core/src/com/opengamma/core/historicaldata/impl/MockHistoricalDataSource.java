@@ -5,6 +5,7 @@
  */
 package com.opengamma.core.historicaldata.impl;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -162,7 +163,15 @@ public class MockHistoricalDataSource implements HistoricalDataSource {
   public Map<IdentifierBundle, Pair<UniqueIdentifier, LocalDateDoubleTimeSeries>> getHistoricalData(
       Set<IdentifierBundle> identifiers, String dataSource, String dataProvider, String dataField, LocalDate start,
       boolean inclusiveStart, LocalDate end, boolean exclusiveEnd) {
-    throw new UnsupportedOperationException(getClass().getName() + " does not support getHistoricalData for multiple time-series");
+    Map<IdentifierBundle, Pair<UniqueIdentifier, LocalDateDoubleTimeSeries>> result = new HashMap<IdentifierBundle, Pair<UniqueIdentifier, LocalDateDoubleTimeSeries>>();
+    for (IdentifierBundle bundle : identifiers) {
+      if (start == null && end == null) {
+        result.put(bundle, getHistoricalData(bundle, dataSource, dataProvider, dataField));
+      } else {
+        result.put(bundle, getHistoricalData(bundle, dataSource, dataProvider, dataField, start, inclusiveStart, end, exclusiveEnd));
+      }
+    }
+    return result;
   }
 
 }
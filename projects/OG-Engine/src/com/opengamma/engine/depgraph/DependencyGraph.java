@@ -516,6 +516,52 @@ public class DependencyGraph {
     return subGraph;
   }
 
+  /**
+   * Creates a deep copy of a sub-graph. Unlike {@link #subGraph(Collection)} new nodes are created, with the same
+   * functions and values as the originals and linked to each other in the same way, so the copy can be modified
+   * (for example by a {@link DependencyGraphBuilder}) without affecting this graph. Links to nodes outside of the
+   * given set are not copied.
+   * <p>
+   * The outputs of a copied node can be replaced, for example to restore outputs of its function that were removed
+   * from this graph as unnecessary. The replacement must include all of the node's current outputs.
+   * 
+   * @param subNodes Each node must belong to this graph
+   * @param outputValues Replacement output values keyed by original node, null or missing to copy the node's outputs
+   * @return Copy of the sub-graph of the given nodes
+   */
+  public DependencyGraph copySubGraph(Collection<DependencyNode> subNodes, Map<DependencyNode, Set<ValueSpecification>> outputValues) {
+    final Map<DependencyNode, DependencyNode> copies = new HashMap<DependencyNode, DependencyNode>();
+    for (DependencyNode node : subNodes) {
+      final DependencyNode copy = new DependencyNode(node.getComputationTarget());
+      copy.setFunction(node.getFunction());
+      final Set<ValueSpecification> outputs = (outputValues != null) ? outputValues.get(node) : null;
+      copy.addOutputValues((outputs != null) ? outputs : node.getOutputValues());
+      for (ValueSpecification terminalOutput : node.getTerminalOutputValues()) {
+        copy.addTerminalOutputValue(terminalOutput);
+      }
+      copies.put(node, copy);
+    }
+    for (Map.Entry<DependencyNode, DependencyNode> entry : copies.entrySet()) {
+      final DependencyNode copy = entry.getValue();
+      for (DependencyNode inputNode : entry.getKey().getInputNodes()) {
+        final DependencyNode inputCopy = copies.get(inputNode);
+        if (inputCopy != null) {
+          copy.addInputNode(inputCopy);
+        }
+      }
+      for (ValueSpecification inputValue : entry.getKey().getInputValues()) {
+        if (copies.containsKey(_specification2DependencyNode.get(inputValue))) {
+          copy.addInputValue(inputValue);
+        }
+      }
+    }
+    final DependencyGraph subGraph = new DependencyGraph(getCalculationConfigurationName());
+    for (DependencyNode node : subNodes) {
+      subGraph.addDependencyNode(copies.get(node));
+    }
+    return subGraph;
+  }
+
   @Override
   public String toString() {
     return "DependencyGraph[calcConf=" + getCalculationConfigurationName() + ",size=" + getSize() + "]";
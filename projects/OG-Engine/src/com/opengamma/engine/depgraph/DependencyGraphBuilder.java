@@ -13,14 +13,24 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.opengamma.engine.ComputationTarget;
 import com.opengamma.engine.ComputationTargetResolver;
+import com.opengamma.engine.ComputationTargetSpecification;
 import com.opengamma.engine.function.CompiledFunctionDefinition;
 import com.opengamma.engine.function.FunctionCompilationContext;
 import com.opengamma.engine.function.LiveDataSourcingFunction;
@@ -43,8 +53,15 @@ public class DependencyGraphBuilder {
   private ComputationTargetResolver _targetResolver;
   private CompiledFunctionResolver _functionResolver;
   private FunctionCompilationContext _compilationContext;
+  private ExecutorService _executorService;
   // State:
   private DependencyGraph _graph;
+  /**
+   * Targets resolved by {@link #prefetch}. The function resolver caches rules against the target instance, held weakly,
+   * so the same instances must be used, and kept reachable, until the requirements have been added to the graph.
+   */
+  private final ConcurrentMap<ComputationTargetSpecification, ComputationTarget> _prefetchedTargets =
+      new ConcurrentHashMap<ComputationTargetSpecification, ComputationTarget>();
 
   /**
    * @return the calculationConfigurationName
@@ -117,6 +134,38 @@ public class DependencyGraphBuilder {
     _compilationContext = compilationContext;
   }
 
+  /**
+   * @return the executor service used to resolve requirements in parallel, or {@code null} if they are resolved serially
+   */
+  public ExecutorService getExecutorService() {
+    return _executorService;
+  }
+
+  /**
+   * Sets the executor service used by {@link #addTargets} to resolve the targets of, and candidate functions for, a
+   * batch of requirements in parallel before they are added to the graph. The graph itself is always built on the
+   * calling thread with the requirements in the order given (see [ENG-259]), so it is identical to one built serially.
+   * 
+   * @param executorService the executor service, or {@code null} to resolve requirements serially
+   */
+  public void setExecutorService(ExecutorService executorService) {
+    _executorService = executorService;
+  }
+
+  /**
+   * Seeds the builder with an existing graph, for example a copy of a previously compiled graph that is being
+   * updated. Requirements subsequently added are resolved against, and added to, this graph.
+   * 
+   * @param graph the graph to build on, not {@code null}
+   */
+  public void setDependencyGraph(DependencyGraph graph) {
+    ArgumentChecker.notNull(graph, "graph");
+    if (!graph.getCalculationConfigurationName().equals(getCalculationConfigurationName())) {
+      throw new IllegalArgumentException("Graph is for " + graph.getCalculationConfigurationName() + ", not " + getCalculationConfigurationName());
+    }
+    _graph = graph;
+  }
+
   protected void checkInjectedInputs() {
     ArgumentChecker.notNullInjected(getLiveDataAvailabilityProvider(), "liveDataAvailabilityProvider");
     ArgumentChecker.notNullInjected(getFunctionResolver(), "functionResolver");
@@ -140,6 +189,98 @@ public class DependencyGraphBuilder {
     }
   }
 
+  /**
+   * Adds several sets of requirements, each set being added in turn as though by {@link #addTarget(Set)}.
+   * <p>
+   * If an executor service is set, the targets of all of the requirements are first resolved, and the functions that
+   * could produce them found, in parallel. This does not change the graph, but means that the graph can be built
+   * from the resolver caches rather than resolving each target as it is reached.
+   * 
+   * @param requirements the sets of requirements, in the order they are to be added to the graph, not {@code null}
+   */
+  public void addTargets(final List<Set<ValueRequirement>> requirements) {
+    ArgumentChecker.notNull(requirements, "Value requirements");
+    checkInjectedInputs();
+    if (getExecutorService() != null) {
+      final Set<ValueRequirement> distinct = new LinkedHashSet<ValueRequirement>();
+      for (Set<ValueRequirement> batch : requirements) {
+        distinct.addAll(batch);
+      }
+      if (distinct.size() > 1) {
+        prefetch(distinct);
+      }
+    }
+    try {
+      for (Set<ValueRequirement> batch : requirements) {
+        addTarget(batch);
+      }
+    } finally {
+      _prefetchedTargets.clear();
+    }
+  }
+
+  /**
+   * Resolves the targets of, and candidate functions for, requirements on the executor service. The calling thread
+   * takes part so that this completes even if the executor has no free threads, for example because it is also
+   * running this compilation.
+   */
+  private void prefetch(final Collection<ValueRequirement> requirements) {
+    final Queue<ValueRequirement> pending = new ConcurrentLinkedQueue<ValueRequirement>(requirements);
+    final Runnable worker = new Runnable() {
+      @Override
+      public void run() {
+        ValueRequirement requirement = pending.poll();
+        while (requirement != null) {
+          prefetch(requirement);
+          requirement = pending.poll();
+        }
+      }
+    };
+    final int workers = Math.min(Runtime.getRuntime().availableProcessors(), requirements.size()) - 1;
+    final Future<?>[] futures = new Future<?>[workers];
+    for (int i = 0; i < workers; i++) {
+      futures[i] = getExecutorService().submit(worker);
+    }
+    worker.run();
+    for (Future<?> future : futures) {
+      // Workers not yet started have nothing left to do; any that are running will finish the requirement they hold
+      if (!future.cancel(false)) {
+        try {
+          future.get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        } catch (ExecutionException e) {
+          s_logger.debug("Caught exception", e.getCause());
+        }
+      }
+    }
+  }
+
+  private void prefetch(final ValueRequirement requirement) {
+    try {
+      ComputationTarget target = _prefetchedTargets.get(requirement.getTargetSpecification());
+      if (target == null) {
+        target = getTargetResolver().resolve(requirement.getTargetSpecification());
+        if (target == null) {
+          return;
+        }
+        final ComputationTarget existing = _prefetchedTargets.putIfAbsent(requirement.getTargetSpecification(), target);
+        if (existing != null) {
+          target = existing;
+        }
+      }
+      if (getLiveDataAvailabilityProvider().isAvailable(requirement)) {
+        return;
+      }
+      // The function resolver caches the rules that apply to the target as the first candidate is found
+      getFunctionResolver().resolveFunction(requirement, new DependencyNode(target)).hasNext();
+    } catch (RuntimeException e) {
+      // The requirement will fail again, and be reported, when it is added to the graph
+      s_logger.debug("Unable to resolve {}", requirement);
+    }
+  }
+
   protected void addTargetImpl(final ValueRequirement requirement) throws UnsatisfiableDependencyGraphException {
     final ResolutionState resolutionState = resolveValueRequirement(requirement, null);
     Pair<DependencyNode, ValueSpecification> terminalNode = addTargetRequirement(resolutionState);
@@ -147,6 +288,14 @@ public class DependencyGraphBuilder {
     _graph.addTerminalOutputValue(terminalNode.getSecond());
   }
 
+  private ComputationTarget resolveTarget(final ComputationTargetSpecification specification) {
+    final ComputationTarget target = _prefetchedTargets.get(specification);
+    if (target != null) {
+      return target;
+    }
+    return getTargetResolver().resolve(specification);
+  }
+
   private DependencyNode createDependencyNode(final ComputationTarget target, final DependencyNode dependent) {
     DependencyNode node = new DependencyNode(target);
     if (dependent != null) {
@@ -158,7 +307,7 @@ public class DependencyGraphBuilder {
   // Note the order requirements are considered can affect function choices and resultant graph construction (see [ENG-259]).
   private ResolutionState resolveValueRequirement(final ValueRequirement requirement, final DependencyNode dependent) {
     ComputationTargetResolver targetResolver = getTargetResolver();
-    final ComputationTarget target = targetResolver.resolve(requirement.getTargetSpecification());
+    final ComputationTarget target = resolveTarget(requirement.getTargetSpecification());
     if (target == null) {
       throw new UnsatisfiableDependencyGraphException(requirement, "No ComputationTarget")
           .addState("targetResolver ComputationTargetResolver", targetResolver)
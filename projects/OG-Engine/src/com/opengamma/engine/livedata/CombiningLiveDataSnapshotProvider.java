@@ -31,7 +31,7 @@ import com.opengamma.util.tuple.Pair;
  * Combines snapshots from multiple sources to form a requested snapshot. Due to the way in which such an
  * implementation must work, it is designed for use only with a small number of providers.
  */
-public class CombiningLiveDataSnapshotProvider implements LiveDataSnapshotProvider {
+public class CombiningLiveDataSnapshotProvider implements TimestampedLiveDataSnapshotProvider {
 
   private static final Logger s_logger = LoggerFactory.getLogger(CombiningLiveDataSnapshotProvider.class);
   
@@ -184,6 +184,22 @@ public class CombiningLiveDataSnapshotProvider implements LiveDataSnapshotProvid
     return null;
   }
 
+  @Override
+  public long getSnapshotTimestamp(long snapshot) {
+    Collection<Pair<Long, LiveDataSnapshotProvider>> providerSnapshots = _providerSnapshots.get(snapshot);
+    if (providerSnapshots == null) {
+      return 0;
+    }
+    long timestamp = 0;
+    for (Pair<Long, LiveDataSnapshotProvider> providerSnapshot : providerSnapshots) {
+      if (providerSnapshot.getSecond() instanceof TimestampedLiveDataSnapshotProvider) {
+        TimestampedLiveDataSnapshotProvider provider = (TimestampedLiveDataSnapshotProvider) providerSnapshot.getSecond();
+        timestamp = Math.max(timestamp, provider.getSnapshotTimestamp(providerSnapshot.getFirst()));
+      }
+    }
+    return timestamp;
+  }
+
   @Override
   public void releaseSnapshot(long snapshot) {
     Collection<Pair<Long, LiveDataSnapshotProvider>> providerSnapshots = _providerSnapshots.remove(snapshot);
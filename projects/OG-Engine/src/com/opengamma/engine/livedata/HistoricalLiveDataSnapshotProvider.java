@@ -6,7 +6,12 @@
 package com.opengamma.engine.livedata;
 
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.time.calendar.LocalDate;
 
@@ -24,6 +29,10 @@ import com.opengamma.util.tuple.Pair;
 
 /**
  * Snapshot provider will always return the historical data on the date provided from the provided historical data source.
+ * <p>
+ * The subscribed requirements are those of the compiled views using the provider. When a snapshot is taken, the values
+ * of all of them on the snapshot date are fetched with one request to the historical data source, rather than one
+ * request per requirement as the cycle queries the snapshot.
  */
 public class HistoricalLiveDataSnapshotProvider extends AbstractLiveDataSnapshotProvider implements LiveDataAvailabilityProvider {
   private static final Logger s_logger = LoggerFactory.getLogger(HistoricalLiveDataSnapshotProvider.class);
@@ -32,6 +41,14 @@ public class HistoricalLiveDataSnapshotProvider extends AbstractLiveDataSnapshot
   private String _dataSource;
   private String _dataProvider;
   private String _field;
+  /**
+   * The subscribed identifiers.
+   */
+  private final Set<Identifier> _subscriptions = Collections.newSetFromMap(new ConcurrentHashMap<Identifier, Boolean>());
+  /**
+   * The values fetched for the subscribed identifiers on each snapshot date.
+   */
+  private final ConcurrentMap<LocalDate, Map<Identifier, Double>> _snapshotValues = new ConcurrentHashMap<LocalDate, Map<Identifier, Double>>();
   
   public HistoricalLiveDataSnapshotProvider(HistoricalDataSource historicalDataSource, String dataSource, String dataProvider, String field) {
     _historicalDataSource = historicalDataSource;
@@ -51,6 +68,12 @@ public class HistoricalLiveDataSnapshotProvider extends AbstractLiveDataSnapshot
   public void addSubscription(UserPrincipal user, Set<ValueRequirement> valueRequirements) {
     // No actual subscription to make, but we still need to acknowledge it.
     s_logger.debug("Added subscriptions to {}", valueRequirements);
+    for (ValueRequirement valueRequirement : valueRequirements) {
+      Identifier identifier = valueRequirement.getTargetSpecification().getIdentifier();
+      if (identifier != null) {
+        _subscriptions.add(identifier);
+      }
+    }
     subscriptionSucceeded(valueRequirements);
   }
 
@@ -58,6 +81,10 @@ public class HistoricalLiveDataSnapshotProvider extends AbstractLiveDataSnapshot
   public Object querySnapshot(long snapshot, ValueRequirement requirement) {
     LocalDate date = LocalDate.ofEpochDays(snapshot / MILLIS_PER_DAY);
     Identifier identifier = requirement.getTargetSpecification().getIdentifier();
+    Map<Identifier, Double> values = _snapshotValues.get(date);
+    if ((values != null) && values.containsKey(identifier)) {
+      return values.get(identifier);
+    }
     Pair<UniqueIdentifier, LocalDateDoubleTimeSeries> historicalData = _historicalDataSource.getHistoricalData(
         IdentifierBundle.of(identifier), 
         _dataSource, 
@@ -75,6 +102,7 @@ public class HistoricalLiveDataSnapshotProvider extends AbstractLiveDataSnapshot
 
   @Override
   public void releaseSnapshot(long snapshot) {
+    _snapshotValues.remove(LocalDate.ofEpochDays(snapshot / MILLIS_PER_DAY));
   }
 
   @Override
@@ -84,9 +112,45 @@ public class HistoricalLiveDataSnapshotProvider extends AbstractLiveDataSnapshot
   
   @Override
   public long snapshot(long snapshot) {
+    LocalDate date = LocalDate.ofEpochDays(snapshot / MILLIS_PER_DAY);
+    if (!_subscriptions.isEmpty() && !_snapshotValues.containsKey(date)) {
+      _snapshotValues.put(date, fetchValues(date));
+    }
     return snapshot;
   }
 
+  /**
+   * Fetches the values of all subscribed identifiers on a date with a single request.
+   * 
+   * @param date  the date, not null
+   * @return the values, null for identifiers with no value on the date, not null
+   */
+  private Map<Identifier, Double> fetchValues(LocalDate date) {
+    Set<IdentifierBundle> identifierSet = new HashSet<IdentifierBundle>();
+    for (Identifier identifier : _subscriptions) {
+      identifierSet.add(IdentifierBundle.of(identifier));
+    }
+    Map<IdentifierBundle, Pair<UniqueIdentifier, LocalDateDoubleTimeSeries>> historicalData = _historicalDataSource.getHistoricalData(
+        identifierSet, _dataSource, _dataProvider, _field, date, true, date, false);
+    Map<Identifier, Double> values = new HashMap<Identifier, Double>();
+    for (IdentifierBundle identifiers : identifierSet) {
+      values.put(identifiers.getIdentifiers().iterator().next(), null);
+    }
+    int found = 0;
+    for (Map.Entry<IdentifierBundle, Pair<UniqueIdentifier, LocalDateDoubleTimeSeries>> entry : historicalData.entrySet()) {
+      LocalDateDoubleTimeSeries timeSeries = entry.getValue().getValue();
+      if ((timeSeries != null) && !timeSeries.isEmpty()) {
+        Double value = timeSeries.getValue(date);
+        if (value != null) {
+          values.put(entry.getKey().getIdentifiers().iterator().next(), value);
+          found++;
+        }
+      }
+    }
+    s_logger.debug("Fetched {} of {} historical values for {}", new Object[] {found, identifierSet.size(), date});
+    return values;
+  }
+
   @Override
   public boolean isAvailable(ValueRequirement requirement) {
     Identifier identifier = requirement.getTargetSpecification().getIdentifier();
@@ -6,10 +6,11 @@
 package com.opengamma.engine.livedata;
 
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,13 +27,18 @@ import com.opengamma.util.ArgumentChecker;
 
 /**
  * An implementation of {@link LiveDataSnapshotProvider} which maintains an LKV cache of externally provided values.
+ * <p>
+ * The values are held in a {@link PersistentHashMap} which is replaced on each update. A snapshot keeps a reference to
+ * the current map, so taking one does not copy any values and snapshots held at the same time share the entries that
+ * have not changed between them.
  */
 public class InMemoryLKVSnapshotProvider extends AbstractLiveDataSnapshotProvider implements LiveDataInjector, LiveDataAvailabilityProvider {
   
   private static final Logger s_logger = LoggerFactory.getLogger(InMemoryLKVSnapshotProvider.class);
   
-  private final Map<ValueRequirement, Object> _lastKnownValues = new ConcurrentHashMap<ValueRequirement, Object>();
-  private final Map<Long, Map<ValueRequirement, Object>> _snapshots = new ConcurrentHashMap<Long, Map<ValueRequirement, Object>>();
+  private final AtomicReference<PersistentHashMap<ValueRequirement, Object>> _lastKnownValues = new AtomicReference<PersistentHashMap<ValueRequirement, Object>>(
+      PersistentHashMap.<ValueRequirement, Object>empty());
+  private final Map<Long, PersistentHashMap<ValueRequirement, Object>> _snapshots = new ConcurrentHashMap<Long, PersistentHashMap<ValueRequirement, Object>>();
   private final SecuritySource _securitySource;
 
   /**
@@ -65,7 +71,7 @@ public class InMemoryLKVSnapshotProvider extends AbstractLiveDataSnapshotProvide
 
   @Override
   public Object querySnapshot(long snapshot, ValueRequirement requirement) {
-    Map<ValueRequirement, Object> snapshotValues = _snapshots.get(snapshot);
+    PersistentHashMap<ValueRequirement, Object> snapshotValues = _snapshots.get(snapshot);
     if (snapshotValues == null) {
       return null;
     }
@@ -82,8 +88,7 @@ public class InMemoryLKVSnapshotProvider extends AbstractLiveDataSnapshotProvide
 
   @Override
   public long snapshot(long snapshotTime) {
-    Map<ValueRequirement, Object> snapshotValues = new HashMap<ValueRequirement, Object>(_lastKnownValues);
-    _snapshots.put(snapshotTime, snapshotValues);
+    _snapshots.put(snapshotTime, _lastKnownValues.get());
     return snapshotTime;
   }
 
@@ -92,23 +97,36 @@ public class InMemoryLKVSnapshotProvider extends AbstractLiveDataSnapshotProvide
     _snapshots.remove(snapshot);
   }
  
+  /**
+   * Gets the requirements which currently have values. The set is a copy and does not reflect subsequent changes.
+   * 
+   * @return the requirements, not null
+   */
   public Set<ValueRequirement> getAllValueKeys() {
-    return Collections.unmodifiableSet(_lastKnownValues.keySet());
+    final PersistentHashMap<ValueRequirement, Object> values = _lastKnownValues.get();
+    final Set<ValueRequirement> keys = new HashSet<ValueRequirement>(values.size() * 4 / 3 + 1);
+    values.addKeysTo(keys);
+    return Collections.unmodifiableSet(keys);
   }
 
   public Object getCurrentValue(ValueRequirement valueRequirement) {
-    return _lastKnownValues.get(valueRequirement);
+    return _lastKnownValues.get().get(valueRequirement);
   }
 
   @Override
   public boolean isAvailable(ValueRequirement requirement) {
-    return _lastKnownValues.containsKey(requirement);
+    return _lastKnownValues.get().containsKey(requirement);
   }
 
   //-------------------------------------------------------------------------
   @Override
   public void addValue(ValueRequirement requirement, Object value) {
-    _lastKnownValues.put(requirement, value);
+    ArgumentChecker.notNull(requirement, "requirement");
+    ArgumentChecker.notNull(value, "value");
+    PersistentHashMap<ValueRequirement, Object> values;
+    do {
+      values = _lastKnownValues.get();
+    } while (!_lastKnownValues.compareAndSet(values, values.put(requirement, value)));
     valueChanged(requirement);
   }
   
@@ -120,7 +138,11 @@ public class InMemoryLKVSnapshotProvider extends AbstractLiveDataSnapshotProvide
 
   @Override
   public void removeValue(final ValueRequirement valueRequirement) {
-    _lastKnownValues.remove(valueRequirement);
+    ArgumentChecker.notNull(valueRequirement, "valueRequirement");
+    PersistentHashMap<ValueRequirement, Object> values;
+    do {
+      values = _lastKnownValues.get();
+    } while (!_lastKnownValues.compareAndSet(values, values.remove(valueRequirement)));
     valueChanged(valueRequirement);
   }
   
@@ -5,11 +5,16 @@
  */
 package com.opengamma.engine.livedata;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.fudgemsg.FudgeContext;
 import org.fudgemsg.FudgeMsg;
@@ -22,15 +27,18 @@ import com.opengamma.livedata.LiveDataClient;
 import com.opengamma.livedata.LiveDataListener;
 import com.opengamma.livedata.LiveDataSpecification;
 import com.opengamma.livedata.LiveDataValueUpdate;
+import com.opengamma.livedata.LiveDataValueUpdateBean;
 import com.opengamma.livedata.UserPrincipal;
 import com.opengamma.livedata.msg.LiveDataSubscriptionResponse;
 import com.opengamma.livedata.msg.LiveDataSubscriptionResult;
 import com.opengamma.util.ArgumentChecker;
 
 /**
- * 
+ * A snapshot provider of the live data from a {@link LiveDataClient}.
+ * <p>
+ * If the live data server timestamps its updates, each snapshot records when the most recent tick in it was received.
  */
-public class LiveDataSnapshotProviderImpl extends AbstractLiveDataSnapshotProvider implements LiveDataListener {
+public class LiveDataSnapshotProviderImpl extends AbstractLiveDataSnapshotProvider implements LiveDataListener, TimestampedLiveDataSnapshotProvider {
 
   /** Logger. */
   private static final Logger s_logger = LoggerFactory.getLogger(LiveDataSnapshotProviderImpl.class);
@@ -42,8 +50,17 @@ public class LiveDataSnapshotProviderImpl extends AbstractLiveDataSnapshotProvid
 
   // Runtime State:
   private final InMemoryLKVSnapshotProvider _underlyingProvider;
-  private final Map<LiveDataSpecification, Set<ValueRequirement>> _liveDataSpec2ValueRequirements =
-    new ConcurrentHashMap<LiveDataSpecification, Set<ValueRequirement>>();
+  /**
+   * The requirements for each specification. The arrays are replaced, never modified, so
+   * that ticks can be processed without locking; changes are made holding the map's monitor.
+   */
+  private final ConcurrentMap<LiveDataSpecification, ValueRequirement[]> _liveDataSpec2ValueRequirements =
+    new ConcurrentHashMap<LiveDataSpecification, ValueRequirement[]>();
+  /**
+   * The latest timestamp of the updates applied to the underlying provider, 0 if none were timestamped.
+   */
+  private final AtomicLong _latestUpdateTimestamp = new AtomicLong();
+  private final Map<Long, Long> _snapshotTimestamps = new ConcurrentHashMap<Long, Long>();
 
   public LiveDataSnapshotProviderImpl(LiveDataClient liveDataClient, SecuritySource securitySource) {
     this(liveDataClient, securitySource, new FudgeContext());
@@ -103,17 +120,30 @@ public class LiveDataSnapshotProviderImpl extends AbstractLiveDataSnapshotProvid
   }
 
   protected void registerLiveDataSpec(ValueRequirement requirement, LiveDataSpecification liveDataSpec) {
-    Set<ValueRequirement> requirementsForSpec = _liveDataSpec2ValueRequirements.get(liveDataSpec);
-    if (requirementsForSpec == null) {
-      requirementsForSpec = new HashSet<ValueRequirement>();
-      _liveDataSpec2ValueRequirements.put(liveDataSpec, requirementsForSpec);
+    addRequirements(liveDataSpec, new ValueRequirement[] {requirement});
+  }
+
+  private void addRequirements(LiveDataSpecification liveDataSpec, ValueRequirement[] requirements) {
+    synchronized (_liveDataSpec2ValueRequirements) {
+      ValueRequirement[] requirementsForSpec = _liveDataSpec2ValueRequirements.get(liveDataSpec);
+      if (requirementsForSpec == null) {
+        _liveDataSpec2ValueRequirements.put(liveDataSpec, requirements);
+        return;
+      }
+      Set<ValueRequirement> newRequirements = new LinkedHashSet<ValueRequirement>(Arrays.asList(requirementsForSpec));
+      if (newRequirements.addAll(Arrays.asList(requirements))) {
+        _liveDataSpec2ValueRequirements.put(liveDataSpec, newRequirements.toArray(new ValueRequirement[newRequirements.size()]));
+      }
     }
-    requirementsForSpec.add(requirement);
   }
   
   // Protected for unit testing.
   protected Map<LiveDataSpecification, Set<ValueRequirement>> getRequirementsForSubscriptionIds() {
-    return Collections.unmodifiableMap(_liveDataSpec2ValueRequirements);
+    Map<LiveDataSpecification, Set<ValueRequirement>> requirements = new HashMap<LiveDataSpecification, Set<ValueRequirement>>();
+    for (Map.Entry<LiveDataSpecification, ValueRequirement[]> entry : _liveDataSpec2ValueRequirements.entrySet()) {
+      requirements.put(entry.getKey(), Collections.unmodifiableSet(new HashSet<ValueRequirement>(Arrays.asList(entry.getValue()))));
+    }
+    return Collections.unmodifiableMap(requirements);
   }
 
   @Override
@@ -125,32 +155,58 @@ public class LiveDataSnapshotProviderImpl extends AbstractLiveDataSnapshotProvid
   @Override
   public void releaseSnapshot(long snapshot) {
     getUnderlyingProvider().releaseSnapshot(snapshot);
+    _snapshotTimestamps.remove(snapshot);
   }
 
   @Override
   public long snapshot() {
-    return getUnderlyingProvider().snapshot();
+    // Read before the values are snapshotted, so the tick it belongs to is in the snapshot
+    long timestamp = _latestUpdateTimestamp.get();
+    long snapshot = getUnderlyingProvider().snapshot();
+    recordSnapshotTimestamp(snapshot, timestamp);
+    return snapshot;
   }
   
   public long snapshot(long snapshot) {
-    return getUnderlyingProvider().snapshot(snapshot);
+    long timestamp = _latestUpdateTimestamp.get();
+    getUnderlyingProvider().snapshot(snapshot);
+    recordSnapshotTimestamp(snapshot, timestamp);
+    return snapshot;
+  }
+  
+  private void recordSnapshotTimestamp(long snapshot, long timestamp) {
+    if (timestamp != 0) {
+      _snapshotTimestamps.put(snapshot, timestamp);
+    }
+  }
+
+  @Override
+  public long getSnapshotTimestamp(long snapshot) {
+    Long timestamp = _snapshotTimestamps.get(snapshot);
+    return (timestamp != null) ? timestamp : 0;
   }
 
   @Override
   public void subscriptionResultReceived(LiveDataSubscriptionResponse subscriptionResult) {
-    Set<ValueRequirement> valueRequirements = _liveDataSpec2ValueRequirements.remove(subscriptionResult.getRequestedSpecification());
+    ValueRequirement[] valueRequirements;
+    synchronized (_liveDataSpec2ValueRequirements) {
+      valueRequirements = _liveDataSpec2ValueRequirements.remove(subscriptionResult.getRequestedSpecification());
+      if (valueRequirements != null && subscriptionResult.getSubscriptionResult() == LiveDataSubscriptionResult.SUCCESS) {
+        // Other requested specifications may have resolved to the same fully qualified one
+        addRequirements(subscriptionResult.getFullyQualifiedSpecification(), valueRequirements);
+      }
+    }
     if (valueRequirements == null) {
       s_logger.warn("Received subscription result for which no corresponding set of value requirements was found: {}", subscriptionResult);
-      s_logger.debug("Current pending subscriptions: {}", _liveDataSpec2ValueRequirements);
+      s_logger.debug("Current pending subscriptions: {}", _liveDataSpec2ValueRequirements.keySet());
       return;
     }
     if (subscriptionResult.getSubscriptionResult() == LiveDataSubscriptionResult.SUCCESS) {
-      _liveDataSpec2ValueRequirements.put(subscriptionResult.getFullyQualifiedSpecification(), valueRequirements);
       s_logger.info("Subscription made to {} resulted in fully qualified {}", subscriptionResult.getRequestedSpecification(), subscriptionResult.getFullyQualifiedSpecification());
-      super.subscriptionSucceeded(valueRequirements);
+      super.subscriptionSucceeded(Arrays.asList(valueRequirements));
     } else {
       s_logger.error("Subscription to {} failed: {}", subscriptionResult.getRequestedSpecification(), subscriptionResult);
-      super.subscriptionFailed(valueRequirements, subscriptionResult.getUserMessage());
+      super.subscriptionFailed(Arrays.asList(valueRequirements), subscriptionResult.getUserMessage());
     }
   }
 
@@ -165,13 +221,15 @@ public class LiveDataSnapshotProviderImpl extends AbstractLiveDataSnapshotProvid
   public void valueUpdate(LiveDataValueUpdate valueUpdate) {
     s_logger.debug("Update received {}", valueUpdate);
     
-    Set<ValueRequirement> valueRequirements = _liveDataSpec2ValueRequirements.get(valueUpdate.getSpecification());
+    ValueRequirement[] valueRequirements = _liveDataSpec2ValueRequirements.get(valueUpdate.getSpecification());
     if (valueRequirements == null) {
       s_logger.warn("Received value update for which no corresponding set of value requirements was found: {}", valueUpdate.getSpecification());
       return;            
     }
     
-    s_logger.debug("Corresponding value requirements are {}", valueRequirements);
+    if (s_logger.isDebugEnabled()) {
+      s_logger.debug("Corresponding value requirements are {}", Arrays.asList(valueRequirements));
+    }
     FudgeMsg msg = valueUpdate.getFields();
     
     for (ValueRequirement valueRequirement : valueRequirements) {
@@ -184,8 +242,18 @@ public class LiveDataSnapshotProviderImpl extends AbstractLiveDataSnapshotProvid
       }
       getUnderlyingProvider().addValue(valueRequirement, value);
     }
+    if (valueUpdate instanceof LiveDataValueUpdateBean) {
+      updateTimestamp(((LiveDataValueUpdateBean) valueUpdate).getTimestamp());
+    }
     
-    super.valueChanged(valueRequirements);
+    super.valueChanged(Arrays.asList(valueRequirements));
+  }
+  
+  private void updateTimestamp(long timestamp) {
+    long latest = _latestUpdateTimestamp.get();
+    while (timestamp > latest && !_latestUpdateTimestamp.compareAndSet(latest, timestamp)) {
+      latest = _latestUpdateTimestamp.get();
+    }
   }
   
 }
@@ -0,0 +1,348 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.livedata;
+
+import java.util.Collection;
+
+/**
+ * An immutable hash map, held as a hash array mapped trie, for use by {@link InMemoryLKVSnapshotProvider}.
+ * <p>
+ * An update returns a new map which shares all but the path to the updated entry with the original, so keeping
+ * earlier versions of the map costs only the nodes that have since been replaced. Null keys and values are not
+ * supported.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+final class PersistentHashMap<K, V> {
+
+  private static final int BITS = 5;
+  private static final int MASK = (1 << BITS) - 1;
+
+  @SuppressWarnings("rawtypes")
+  private static final PersistentHashMap EMPTY = new PersistentHashMap(null, 0);
+
+  /**
+   * A node of the trie.
+   */
+  private abstract static class Node {
+
+    abstract Object get(Object key, int hash, int shift);
+
+    abstract Node put(Object key, Object value, int hash, int shift, boolean[] added);
+
+    abstract Node remove(Object key, int hash, int shift);
+
+    abstract void addKeysTo(Collection<Object> keys);
+
+  }
+
+  /**
+   * A node with up to 32 entries, indexed by 5 bits of the key hash. The entries are held as key/value pairs; an entry
+   * with a {@code null} key has a child {@link Node} as its value.
+   */
+  private static final class BitmapNode extends Node {
+
+    private final int _bitmap;
+    private final Object[] _entries;
+
+    private BitmapNode(final int bitmap, final Object[] entries) {
+      _bitmap = bitmap;
+      _entries = entries;
+    }
+
+    private int index(final int bit) {
+      return Integer.bitCount(_bitmap & (bit - 1)) << 1;
+    }
+
+    @Override
+    Object get(final Object key, final int hash, final int shift) {
+      final int bit = bit(hash, shift);
+      if ((_bitmap & bit) == 0) {
+        return null;
+      }
+      final int i = index(bit);
+      final Object entryKey = _entries[i];
+      if (entryKey == null) {
+        return ((Node) _entries[i + 1]).get(key, hash, shift + BITS);
+      }
+      return key.equals(entryKey) ? _entries[i + 1] : null;
+    }
+
+    @Override
+    Node put(final Object key, final Object value, final int hash, final int shift, final boolean[] added) {
+      final int bit = bit(hash, shift);
+      final int i = index(bit);
+      if ((_bitmap & bit) == 0) {
+        final Object[] entries = new Object[_entries.length + 2];
+        System.arraycopy(_entries, 0, entries, 0, i);
+        entries[i] = key;
+        entries[i + 1] = value;
+        System.arraycopy(_entries, i, entries, i + 2, _entries.length - i);
+        added[0] = true;
+        return new BitmapNode(_bitmap | bit, entries);
+      }
+      final Object entryKey = _entries[i];
+      final Object entryValue = _entries[i + 1];
+      if (entryKey == null) {
+        final Node child = ((Node) entryValue).put(key, value, hash, shift + BITS, added);
+        return (child == entryValue) ? this : replace(i, null, child);
+      }
+      if (key.equals(entryKey)) {
+        return (value == entryValue) ? this : replace(i, entryKey, value);
+      }
+      added[0] = true;
+      return replace(i, null, createNode(shift + BITS, entryKey, entryValue, key, value, hash));
+    }
+
+    @Override
+    Node remove(final Object key, final int hash, final int shift) {
+      final int bit = bit(hash, shift);
+      if ((_bitmap & bit) == 0) {
+        return this;
+      }
+      final int i = index(bit);
+      final Object entryKey = _entries[i];
+      if (entryKey == null) {
+        final Node child = ((Node) _entries[i + 1]).remove(key, hash, shift + BITS);
+        if (child == _entries[i + 1]) {
+          return this;
+        }
+        if (child != null) {
+          return replace(i, null, child);
+        }
+      } else if (!key.equals(entryKey)) {
+        return this;
+      }
+      if (_bitmap == bit) {
+        return null;
+      }
+      final Object[] entries = new Object[_entries.length - 2];
+      System.arraycopy(_entries, 0, entries, 0, i);
+      System.arraycopy(_entries, i + 2, entries, i, entries.length - i);
+      return new BitmapNode(_bitmap & ~bit, entries);
+    }
+
+    private BitmapNode replace(final int i, final Object key, final Object value) {
+      final Object[] entries = _entries.clone();
+      entries[i] = key;
+      entries[i + 1] = value;
+      return new BitmapNode(_bitmap, entries);
+    }
+
+    @Override
+    void addKeysTo(final Collection<Object> keys) {
+      for (int i = 0; i < _entries.length; i += 2) {
+        if (_entries[i] == null) {
+          ((Node) _entries[i + 1]).addKeysTo(keys);
+        } else {
+          keys.add(_entries[i]);
+        }
+      }
+    }
+
+  }
+
+  /**
+   * A node holding keys which have the same hash, as key/value pairs.
+   */
+  private static final class CollisionNode extends Node {
+
+    private final int _hash;
+    private final Object[] _entries;
+
+    private CollisionNode(final int hash, final Object[] entries) {
+      _hash = hash;
+      _entries = entries;
+    }
+
+    private int find(final Object key) {
+      for (int i = 0; i < _entries.length; i += 2) {
+        if (key.equals(_entries[i])) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    Object get(final Object key, final int hash, final int shift) {
+      if (hash != _hash) {
+        return null;
+      }
+      final int i = find(key);
+      return (i < 0) ? null : _entries[i + 1];
+    }
+
+    @Override
+    Node put(final Object key, final Object value, final int hash, final int shift, final boolean[] added) {
+      if (hash != _hash) {
+        // Push this node down a level beneath a bitmap node which can hold the new key
+        return new BitmapNode(bit(_hash, shift), new Object[] {null, this}).put(key, value, hash, shift, added);
+      }
+      final int i = find(key);
+      if (i >= 0) {
+        if (_entries[i + 1] == value) {
+          return this;
+        }
+        final Object[] entries = _entries.clone();
+        entries[i + 1] = value;
+        return new CollisionNode(_hash, entries);
+      }
+      final Object[] entries = new Object[_entries.length + 2];
+      System.arraycopy(_entries, 0, entries, 0, _entries.length);
+      entries[_entries.length] = key;
+      entries[_entries.length + 1] = value;
+      added[0] = true;
+      return new CollisionNode(_hash, entries);
+    }
+
+    @Override
+    Node remove(final Object key, final int hash, final int shift) {
+      if (hash != _hash) {
+        return this;
+      }
+      final int i = find(key);
+      if (i < 0) {
+        return this;
+      }
+      if (_entries.length == 2) {
+        return null;
+      }
+      final Object[] entries = new Object[_entries.length - 2];
+      System.arraycopy(_entries, 0, entries, 0, i);
+      System.arraycopy(_entries, i + 2, entries, i, entries.length - i);
+      return new CollisionNode(_hash, entries);
+    }
+
+    @Override
+    void addKeysTo(final Collection<Object> keys) {
+      for (int i = 0; i < _entries.length; i += 2) {
+        keys.add(_entries[i]);
+      }
+    }
+
+  }
+
+  private final Node _root;
+  private final int _size;
+
+  private PersistentHashMap(final Node root, final int size) {
+    _root = root;
+    _size = size;
+  }
+
+  /**
+   * Returns the empty map.
+   *
+   * @param <K> the key type
+   * @param <V> the value type
+   * @return the empty map
+   */
+  @SuppressWarnings("unchecked")
+  public static <K, V> PersistentHashMap<K, V> empty() {
+    return EMPTY;
+  }
+
+  private static int hash(final Object key) {
+    final int h = key.hashCode();
+    return h ^ (h >>> 16);
+  }
+
+  private static int bit(final int hash, final int shift) {
+    return 1 << ((hash >>> shift) & MASK);
+  }
+
+  private static Node createNode(final int shift, final Object key1, final Object value1, final Object key2, final Object value2, final int hash2) {
+    final int hash1 = hash(key1);
+    if (hash1 == hash2) {
+      return new CollisionNode(hash1, new Object[] {key1, value1, key2, value2});
+    }
+    final boolean[] added = new boolean[1];
+    return new BitmapNode(0, new Object[0]).put(key1, value1, hash1, shift, added).put(key2, value2, hash2, shift, added);
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the value for a key.
+   *
+   * @param key the key, not null
+   * @return the value, or null if there is none
+   */
+  @SuppressWarnings("unchecked")
+  public V get(final K key) {
+    if (_root == null) {
+      return null;
+    }
+    return (V) _root.get(key, hash(key), 0);
+  }
+
+  /**
+   * Tests whether there is a value for a key.
+   *
+   * @param key the key, not null
+   * @return true if the map contains the key
+   */
+  public boolean containsKey(final K key) {
+    return get(key) != null;
+  }
+
+  /**
+   * Returns a map with the value for a key set.
+   *
+   * @param key the key, not null
+   * @param value the value, not null
+   * @return the updated map, which may be this one if the key already had the value
+   */
+  public PersistentHashMap<K, V> put(final K key, final V value) {
+    final int hash = hash(key);
+    final boolean[] added = new boolean[1];
+    final Node root = (_root == null) ? new BitmapNode(0, new Object[0]).put(key, value, hash, 0, added) : _root.put(key, value, hash, 0, added);
+    if (root == _root) {
+      return this;
+    }
+    return new PersistentHashMap<K, V>(root, added[0] ? _size + 1 : _size);
+  }
+
+  /**
+   * Returns a map without a key.
+   *
+   * @param key the key, not null
+   * @return the updated map, which may be this one if the key was not present
+   */
+  public PersistentHashMap<K, V> remove(final K key) {
+    if (_root == null) {
+      return this;
+    }
+    final Node root = _root.remove(key, hash(key), 0);
+    if (root == _root) {
+      return this;
+    }
+    return (root == null) ? PersistentHashMap.<K, V>empty() : new PersistentHashMap<K, V>(root, _size - 1);
+  }
+
+  /**
+   * Gets the number of entries in the map.
+   *
+   * @return the number of entries
+   */
+  public int size() {
+    return _size;
+  }
+
+  /**
+   * Adds the keys of the map to a collection.
+   *
+   * @param keys the collection to add to, not null
+   */
+  @SuppressWarnings("unchecked")
+  public void addKeysTo(final Collection<? super K> keys) {
+    if (_root != null) {
+      _root.addKeysTo((Collection<Object>) keys);
+    }
+  }
+
+}
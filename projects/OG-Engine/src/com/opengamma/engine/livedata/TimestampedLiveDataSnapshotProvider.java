@@ -0,0 +1,23 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.livedata;
+
+/**
+ * A snapshot provider which knows when the live data in its snapshots was received, so that the latency from a
+ * tick to the results calculated from it can be traced.
+ */
+public interface TimestampedLiveDataSnapshotProvider extends LiveDataSnapshotProvider {
+
+  /**
+   * Gets when the most recent tick in a snapshot was received by the live data server.
+   * 
+   * @param snapshot  the time of the snapshot
+   * @return  the time in nanoseconds since the epoch, as given by {@link com.opengamma.util.monitor.LatencyClock},
+   *          or 0 if the snapshot does not exist or none of its ticks were timestamped
+   */
+  long getSnapshotTimestamp(long snapshot);
+
+}
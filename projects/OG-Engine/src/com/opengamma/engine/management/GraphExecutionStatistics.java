@@ -147,6 +147,18 @@ public class GraphExecutionStatistics implements GraphExecutionStatisticsMBean {
     return graphExecutionStatistics != null ? graphExecutionStatistics.getProcessedJobDataCost() : null;
   }
 
+  @Override
+  public Long getPredictedTime() {
+    com.opengamma.engine.view.calc.stats.GraphExecutionStatistics graphExecutionStatistics = getGraphExecutionStatistics();
+    return graphExecutionStatistics != null ? graphExecutionStatistics.getPredictedTime() : null;
+  }
+
+  @Override
+  public Long getPredictedActualTime() {
+    com.opengamma.engine.view.calc.stats.GraphExecutionStatistics graphExecutionStatistics = getGraphExecutionStatistics();
+    return graphExecutionStatistics != null ? graphExecutionStatistics.getPredictedActualTime() : null;
+  }
+
   @Override
   public String getLastProcessedTime() {
     com.opengamma.engine.view.calc.stats.GraphExecutionStatistics graphExecutionStatistics = getGraphExecutionStatistics();
@@ -38,6 +38,10 @@ public interface GraphExecutionStatisticsMBean {
 
   Long getProcessedJobDataCost();
 
+  Long getPredictedTime();
+
+  Long getPredictedActualTime();
+
   String getLastProcessedTime();
 
   String getLastExecutedTime();
@@ -11,6 +11,7 @@ import javax.management.ObjectName;
 import net.sf.ehcache.CacheException;
 
 import com.opengamma.engine.view.ViewComputationResultModel;
+import com.opengamma.engine.view.client.ViewClientImpl;
 import com.opengamma.engine.view.client.ViewClientState;
 import com.opengamma.id.UniqueIdentifier;
 import com.opengamma.livedata.UserPrincipal;
@@ -124,6 +125,22 @@ public class ViewClient implements ViewClientMBean {
     _viewClient.setViewCycleAccessSupported(isViewCycleAccessSupported);
   }
 
+  //-------------------------------------------------------------------------
+  @Override
+  public String getResultDispatchLatency() {
+    if (!(_viewClient instanceof ViewClientImpl)) {
+      return null;
+    }
+    return ((ViewClientImpl) _viewClient).getResultDispatchLatency().toString();
+  }
+
+  @Override
+  public void resetLatencyStatistics() {
+    if (_viewClient instanceof ViewClientImpl) {
+      ((ViewClientImpl) _viewClient).getResultDispatchLatency().reset();
+    }
+  }
+
   //-------------------------------------------------------------------------
   @Override
   public void shutdown() {
@@ -116,6 +116,20 @@ public interface ViewClientMBean {
    */
   void setViewCycleAccessSupported(boolean isViewCycleAccessSupported);
   
+  //-------------------------------------------------------------------------
+  /**
+   * Gets a summary of the time from results being produced by the view process to the client's listener having been
+   * notified of them, including any time spent waiting for a rate-limited or paused update to be released.
+   * 
+   * @return the latency percentiles in microseconds, or {@code null} if not available for this client
+   */
+  String getResultDispatchLatency();
+  
+  /**
+   * Discards the latencies recorded so far.
+   */
+  void resetLatencyStatistics();
+  
   //-------------------------------------------------------------------------
   /**
    * Terminates this client, detaching it from any process, disconnecting it from any listener, and releasing any
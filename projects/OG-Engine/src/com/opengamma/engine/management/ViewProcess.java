@@ -89,6 +89,41 @@ public class ViewProcess implements ViewProcessMBean {
     _viewProcess.resume();
   }
   
+  @Override
+  public String getPrepareInputsLatency() {
+    return _viewProcess.getCycleLatencyStatistics().getPrepareInputs().toString();
+  }
+
+  @Override
+  public String getComputeDeltaLatency() {
+    return _viewProcess.getCycleLatencyStatistics().getComputeDelta().toString();
+  }
+
+  @Override
+  public String getExecuteLatency() {
+    return _viewProcess.getCycleLatencyStatistics().getExecute().toString();
+  }
+
+  @Override
+  public String getPopulateResultModelLatency() {
+    return _viewProcess.getCycleLatencyStatistics().getPopulateResultModel().toString();
+  }
+
+  @Override
+  public String getCycleLatency() {
+    return _viewProcess.getCycleLatencyStatistics().getCycle().toString();
+  }
+
+  @Override
+  public String getTickToResultLatency() {
+    return _viewProcess.getCycleLatencyStatistics().getTickToResult().toString();
+  }
+
+  @Override
+  public void resetLatencyStatistics() {
+    _viewProcess.getCycleLatencyStatistics().reset();
+  }
+  
   /**
    * Gets the objectName field.
    * 
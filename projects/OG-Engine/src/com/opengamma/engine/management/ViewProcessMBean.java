@@ -58,4 +58,52 @@ public interface ViewProcessMBean {
    */
   void resume();
   
+  /**
+   * Gets a summary of the time taken to snapshot the live data and populate the computation caches with it.
+   * 
+   * @return the latency percentiles in microseconds
+   */
+  String getPrepareInputsLatency();
+  
+  /**
+   * Gets a summary of the time taken to find the nodes unchanged since the previous cycle.
+   * 
+   * @return the latency percentiles in microseconds
+   */
+  String getComputeDeltaLatency();
+  
+  /**
+   * Gets a summary of the time taken to execute the dependency graphs.
+   * 
+   * @return the latency percentiles in microseconds
+   */
+  String getExecuteLatency();
+  
+  /**
+   * Gets a summary of the time taken to copy the results into the result model.
+   * 
+   * @return the latency percentiles in microseconds
+   */
+  String getPopulateResultModelLatency();
+  
+  /**
+   * Gets a summary of the time taken by whole computation cycles.
+   * 
+   * @return the latency percentiles in microseconds
+   */
+  String getCycleLatency();
+  
+  /**
+   * Gets a summary of the time from the live data server receiving a tick to the result of the first cycle using it
+   * being complete. Only recorded if the live data server timestamps its updates.
+   * 
+   * @return the latency percentiles in microseconds
+   */
+  String getTickToResultLatency();
+  
+  /**
+   * Discards the latencies recorded so far.
+   */
+  void resetLatencyStatistics();
+  
 }
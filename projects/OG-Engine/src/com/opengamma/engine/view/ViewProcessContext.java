@@ -22,8 +22,10 @@ import com.opengamma.engine.marketdatasnapshot.MarketDataSnapshotLiveDataProvide
 import com.opengamma.engine.view.cache.ViewComputationCacheSource;
 import com.opengamma.engine.view.calc.DependencyGraphExecutorFactory;
 import com.opengamma.engine.view.calc.stats.GraphExecutorStatisticsGathererProvider;
+import com.opengamma.engine.view.calc.stats.ViewCycleLatencyStatistics;
 import com.opengamma.engine.view.calcnode.JobDispatcher;
 import com.opengamma.engine.view.calcnode.ViewProcessorQueryReceiver;
+import com.opengamma.engine.view.compilation.CompiledViewDefinitionCache;
 import com.opengamma.engine.view.compilation.ViewCompilationServices;
 import com.opengamma.engine.view.execution.ViewExecutionOptions;
 import com.opengamma.engine.view.permission.ViewPermissionProvider;
@@ -50,6 +52,8 @@ public class ViewProcessContext {
   private final DependencyGraphExecutorFactory<?> _dependencyGraphExecutorFactory;
   private final GraphExecutorStatisticsGathererProvider _graphExecutorStatisticsGathererProvider;
   private final MarketDataSnapshotSource _marketDataSnapshotSource;
+  private final CompiledViewDefinitionCache _compiledViewDefinitionCache;
+  private final ViewCycleLatencyStatistics _cycleLatencyStatistics = new ViewCycleLatencyStatistics();
 
   public ViewProcessContext(ViewPermissionProvider viewPermissionProvider,
       LiveDataAvailabilityProvider liveDataAvailabilityProvider, LiveDataSnapshotProvider liveDataSnapshotProvider,
@@ -60,6 +64,21 @@ public class ViewProcessContext {
       DependencyGraphExecutorFactory<?> dependencyGraphExecutorFactory,
       GraphExecutorStatisticsGathererProvider graphExecutorStatisticsProvider,
       MarketDataSnapshotSource marketDataSnapshotSource) {
+    this(viewPermissionProvider, liveDataAvailabilityProvider, liveDataSnapshotProvider, functionCompilationService, functionResolver, positionSource, securitySource,
+        computationTargetResolver, computationCacheSource, computationJobDispatcher, viewProcessorQueryReceiver, dependencyGraphExecutorFactory, graphExecutorStatisticsProvider,
+        marketDataSnapshotSource, null);
+  }
+
+  public ViewProcessContext(ViewPermissionProvider viewPermissionProvider,
+      LiveDataAvailabilityProvider liveDataAvailabilityProvider, LiveDataSnapshotProvider liveDataSnapshotProvider,
+      CompiledFunctionService functionCompilationService, FunctionResolver functionResolver,
+      PositionSource positionSource, SecuritySource securitySource,
+      CachingComputationTargetResolver computationTargetResolver, ViewComputationCacheSource computationCacheSource,
+      JobDispatcher computationJobDispatcher, ViewProcessorQueryReceiver viewProcessorQueryReceiver,
+      DependencyGraphExecutorFactory<?> dependencyGraphExecutorFactory,
+      GraphExecutorStatisticsGathererProvider graphExecutorStatisticsProvider,
+      MarketDataSnapshotSource marketDataSnapshotSource,
+      CompiledViewDefinitionCache compiledViewDefinitionCache) {
     _marketDataSnapshotSource = marketDataSnapshotSource;
     ArgumentChecker.notNull(viewPermissionProvider, "viewPermissionProvider");
     ArgumentChecker.notNull(liveDataAvailabilityProvider, "liveDataAvailabilityProvider");
@@ -90,6 +109,7 @@ public class ViewProcessContext {
     _viewProcessorQueryReceiver = viewProcessorQueryReceiver;
     _dependencyGraphExecutorFactory = dependencyGraphExecutorFactory;
     _graphExecutorStatisticsGathererProvider = graphExecutorStatisticsProvider;
+    _compiledViewDefinitionCache = compiledViewDefinitionCache;
   }
 
   // -------------------------------------------------------------------------
@@ -220,6 +240,24 @@ public class ViewProcessContext {
     return _graphExecutorStatisticsGathererProvider;
   }
 
+  /**
+   * Gets the latencies of the computation cycles of the view process.
+   * 
+   * @return the latency statistics, not null
+   */
+  public ViewCycleLatencyStatistics getCycleLatencyStatistics() {
+    return _cycleLatencyStatistics;
+  }
+
+  /**
+   * Gets the store of compiled view definitions used to start view processes without a full compilation.
+   * 
+   * @return the compiled view definition cache, or null if compilations are not stored
+   */
+  public CompiledViewDefinitionCache getCompiledViewDefinitionCache() {
+    return _compiledViewDefinitionCache;
+  }
+
   private MarketDataSnapshotSource getMarketDataSnapshotSource() {
     return _marketDataSnapshotSource;
   }
@@ -24,6 +24,7 @@ import com.opengamma.engine.view.calc.EngineResourceManagerInternal;
 import com.opengamma.engine.view.calc.SingleComputationCycle;
 import com.opengamma.engine.view.calc.ViewComputationJob;
 import com.opengamma.engine.view.calc.ViewCycle;
+import com.opengamma.engine.view.calc.stats.ViewCycleLatencyStatistics;
 import com.opengamma.engine.view.client.ViewDeltaResultCalculator;
 import com.opengamma.engine.view.compilation.CompiledViewDefinitionWithGraphsImpl;
 import com.opengamma.engine.view.execution.ViewCycleExecutionOptions;
@@ -121,6 +122,11 @@ public class ViewProcessImpl implements ViewProcessInternal, Lifecycle {
     return _state;
   }
   
+  @Override
+  public ViewCycleLatencyStatistics getCycleLatencyStatistics() {
+    return getProcessContext().getCycleLatencyStatistics();
+  }
+  
   @Override
   public void shutdown() {
     if (getState() == ViewProcessState.TERMINATED) {
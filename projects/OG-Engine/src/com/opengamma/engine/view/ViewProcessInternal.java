@@ -5,6 +5,8 @@
  */
 package com.opengamma.engine.view;
 
+import com.opengamma.engine.view.calc.stats.ViewCycleLatencyStatistics;
+
 /**
  * Exposes engine-level access to a view process.
  */
@@ -21,4 +23,11 @@ public interface ViewProcessInternal extends ViewProcess {
    */
   void resume();
   
+  /**
+   * Gets the latencies of the computation cycles of the view process.
+   * 
+   * @return the latency statistics, not null
+   */
+  ViewCycleLatencyStatistics getCycleLatencyStatistics();
+  
 }
@@ -25,6 +25,7 @@ import com.opengamma.engine.view.calc.stats.DiscardingGraphStatisticsGathererPro
 import com.opengamma.engine.view.calc.stats.GraphExecutorStatisticsGathererProvider;
 import com.opengamma.engine.view.calcnode.JobDispatcher;
 import com.opengamma.engine.view.calcnode.ViewProcessorQueryReceiver;
+import com.opengamma.engine.view.compilation.CompiledViewDefinitionCache;
 import com.opengamma.engine.view.permission.ViewPermissionProviderFactory;
 import com.opengamma.id.UniqueIdentifier;
 import com.opengamma.livedata.LiveDataClient;
@@ -58,6 +59,7 @@ public class ViewProcessorFactoryBean extends SingletonFactoryBean<ViewProcessor
   private GraphExecutorStatisticsGathererProvider _graphExecutionStatistics = new DiscardingGraphStatisticsGathererProvider();
   private ViewPermissionProviderFactory _permissionProviderFactory;
   private MarketDataSnapshotSource _marketDataSnapshotSource;
+  private CompiledViewDefinitionCache _compiledViewDefinitionCache;
   
   //-------------------------------------------------------------------------
   public Long getId() {
@@ -196,6 +198,14 @@ public class ViewProcessorFactoryBean extends SingletonFactoryBean<ViewProcessor
     _marketDataSnapshotSource = marketDataSnapshotSource;
   }
 
+  public CompiledViewDefinitionCache getCompiledViewDefinitionCache() {
+    return _compiledViewDefinitionCache;
+  }
+
+  public void setCompiledViewDefinitionCache(CompiledViewDefinitionCache compiledViewDefinitionCache) {
+    _compiledViewDefinitionCache = compiledViewDefinitionCache;
+  }
+
   //-------------------------------------------------------------------------
   protected void checkInjectedInputs() {
     s_logger.debug("Checking injected inputs.");
@@ -222,7 +232,7 @@ public class ViewProcessorFactoryBean extends SingletonFactoryBean<ViewProcessor
   @Override
   public ViewProcessor createObject() {
     checkInjectedInputs();
-    return new ViewProcessorImpl(
+    final ViewProcessorImpl viewProcessor = new ViewProcessorImpl(
         UniqueIdentifier.of(VIEW_PROCESSOR_ID_SCHEME, getId().toString()),
         getViewDefinitionRepository(),
         getSecuritySource(),
@@ -240,6 +250,8 @@ public class ViewProcessorFactoryBean extends SingletonFactoryBean<ViewProcessor
         getGraphExecutionStatistics(),
         getViewPermissionProviderFactory(),
         getMarketDataSnapshotSource());
+    viewProcessor.setCompiledViewDefinitionCache(getCompiledViewDefinitionCache());
+    return viewProcessor;
   }
 
 }
@@ -45,6 +45,7 @@ import com.opengamma.engine.view.calcnode.JobDispatcher;
 import com.opengamma.engine.view.calcnode.ViewProcessorQueryReceiver;
 import com.opengamma.engine.view.client.ViewClient;
 import com.opengamma.engine.view.client.ViewClientImpl;
+import com.opengamma.engine.view.compilation.CompiledViewDefinitionCache;
 import com.opengamma.engine.view.event.ViewProcessorEventListenerRegistry;
 import com.opengamma.engine.view.execution.ViewExecutionOptions;
 import com.opengamma.engine.view.listener.ViewResultListener;
@@ -116,6 +117,7 @@ public class ViewProcessorImpl implements ViewProcessorInternal {
   private boolean _isSuspended;
 
   private final MarketDataSnapshotSource _marketDataSnapshotSource;
+  private CompiledViewDefinitionCache _compiledViewDefinitionCache;
   
   public ViewProcessorImpl(
       UniqueIdentifier uniqueId,
@@ -154,6 +156,25 @@ public class ViewProcessorImpl implements ViewProcessorInternal {
     _marketDataSnapshotSource = marketDataSnapshotSource;
   }
 
+  /**
+   * Gets the store of compiled view definitions.
+   * 
+   * @return the compiled view definition cache, or null if compilations are not stored
+   */
+  public CompiledViewDefinitionCache getCompiledViewDefinitionCache() {
+    return _compiledViewDefinitionCache;
+  }
+
+  /**
+   * Sets the store of compiled view definitions. View processes created after this is set will start from the stored
+   * compilation of their view definition, if one is available, and store each new compilation.
+   * 
+   * @param compiledViewDefinitionCache  the compiled view definition cache, null to not store compilations
+   */
+  public void setCompiledViewDefinitionCache(CompiledViewDefinitionCache compiledViewDefinitionCache) {
+    _compiledViewDefinitionCache = compiledViewDefinitionCache;
+  }
+
   //-------------------------------------------------------------------------
   @Override
   public UniqueIdentifier getUniqueId() {
@@ -482,7 +503,8 @@ public class ViewProcessorImpl implements ViewProcessorInternal {
         _viewProcessorQueryReceiver,
         _dependencyGraphExecutorFactory,
         _graphExecutionStatistics,
-        _marketDataSnapshotSource);
+        _marketDataSnapshotSource,
+        getCompiledViewDefinitionCache());
   }
   
   private String generateIdValue(AtomicLong source) {
@@ -134,4 +134,29 @@ public abstract class AbstractViewComputationCache implements ViewComputationCac
     }
   }
 
+  @Override
+  public void copySharedValues(final ViewComputationCache source, final Collection<ValueSpecification> specifications) {
+    copySharedValues(this, source, specifications);
+  }
+
+  /**
+   * Implementation of {@link #copySharedValues} that reads the values from the source and calls through to
+   * {@link #putSharedValues}.
+   * 
+   * @param cache instance
+   * @param source cache to copy values from
+   * @param specifications values to copy
+   */
+  public static void copySharedValues(final ViewComputationCache cache, final ViewComputationCache source, final Collection<ValueSpecification> specifications) {
+    final Collection<ComputedValue> values = new ArrayList<ComputedValue>(specifications.size());
+    for (Pair<ValueSpecification, Object> value : source.getValues(specifications)) {
+      if (value.getSecond() != null) {
+        values.add(new ComputedValue(value.getFirst(), value.getSecond()));
+      }
+    }
+    if (!values.isEmpty()) {
+      cache.putSharedValues(values);
+    }
+  }
+
 }
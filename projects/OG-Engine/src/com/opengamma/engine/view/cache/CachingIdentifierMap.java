@@ -6,15 +6,11 @@
 package com.opengamma.engine.view.cache;
 
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.WeakHashMap;
-import java.util.concurrent.ConcurrentMap;
 
-import com.google.common.collect.MapMaker;
 import com.opengamma.engine.value.ValueSpecification;
 import com.opengamma.util.ArgumentChecker;
 
@@ -29,13 +25,29 @@ public class CachingIdentifierMap implements IdentifierMap {
   // (probably faster than disk anyway), and the only reason we'd ever want to flush is
   // based on low GCs, and the elements are so small, EHCache doesn't actually work here.
 
-  // NOTE andrew 2010-09-06 -- Don't use the Google map with weakKeys; it will do comparison by identity which isn't right!
-  private final Map<ValueSpecification, Long> _specificationToIdentifier = Collections.synchronizedMap(new WeakHashMap<ValueSpecification, Long>());
-  private final ConcurrentMap<Long, ValueSpecification> _identifierToSpecification = new MapMaker().weakValues().makeMap();
+  /**
+   * The default maximum number of identifiers to cache.
+   */
+  public static final int DEFAULT_MAX_SIZE = 1 << 20;
+
+  // The table holds strong references but discards them all once it is full, after which lookups fall back to the
+  // underlying source. This is preferred to weak maps which needed locking and allocated on every lookup.
+  private final IdentifierTable _table;
 
   public CachingIdentifierMap(IdentifierMap underlying) {
+    this(underlying, DEFAULT_MAX_SIZE);
+  }
+
+  /**
+   * Creates a cache holding up to a maximum number of identifiers.
+   *
+   * @param underlying  the underlying source, not null
+   * @param maxSize  the maximum number of identifiers to cache, greater than zero
+   */
+  public CachingIdentifierMap(IdentifierMap underlying, int maxSize) {
     ArgumentChecker.notNull(underlying, "Underlying source");
     _underlying = underlying;
+    _table = new IdentifierTable(Math.min(maxSize, 1024), maxSize);
   }
 
   /**
@@ -48,14 +60,11 @@ public class CachingIdentifierMap implements IdentifierMap {
 
   @Override
   public long getIdentifier(final ValueSpecification spec) {
-    Long value = _specificationToIdentifier.get(spec);
-    if (value != null) {
+    final long value = _table.getIdentifier(spec);
+    if (value != IdentifierTable.NOT_FOUND) {
       return value;
     }
-    value = getUnderlying().getIdentifier(spec);
-    _specificationToIdentifier.put(spec, value);
-    _identifierToSpecification.put(value, spec);
-    return value;
+    return _table.putIfAbsent(spec, getUnderlying().getIdentifier(spec));
   }
 
   @Override
@@ -63,8 +72,8 @@ public class CachingIdentifierMap implements IdentifierMap {
     final Map<ValueSpecification, Long> identifiers = new HashMap<ValueSpecification, Long>();
     List<ValueSpecification> cacheMisses = null;
     for (ValueSpecification spec : specs) {
-      final Long value = _specificationToIdentifier.get(spec);
-      if (value != null) {
+      final long value = _table.getIdentifier(spec);
+      if (value != IdentifierTable.NOT_FOUND) {
         identifiers.put(spec, value);
       } else {
         if (cacheMisses == null) {
@@ -76,17 +85,12 @@ public class CachingIdentifierMap implements IdentifierMap {
     if (cacheMisses != null) {
       if (cacheMisses.size() == 1) {
         final ValueSpecification spec = cacheMisses.get(0);
-        final long value = getUnderlying().getIdentifier(spec);
-        _specificationToIdentifier.put(spec, value);
-        _identifierToSpecification.put(value, spec);
-        identifiers.put(spec, value);
+        identifiers.put(spec, _table.putIfAbsent(spec, getUnderlying().getIdentifier(spec)));
       } else {
         final Map<ValueSpecification, Long> values = getUnderlying().getIdentifiers(cacheMisses);
         for (Map.Entry<ValueSpecification, Long> value : values.entrySet()) {
-          _specificationToIdentifier.put(value.getKey(), value.getValue());
-          _identifierToSpecification.put(value.getValue(), value.getKey());
+          identifiers.put(value.getKey(), _table.putIfAbsent(value.getKey(), value.getValue()));
         }
-        identifiers.putAll(values);
       }
     }
     return identifiers;
@@ -94,13 +98,14 @@ public class CachingIdentifierMap implements IdentifierMap {
 
   @Override
   public ValueSpecification getValueSpecification(long identifier) {
-    ValueSpecification spec = _identifierToSpecification.get(identifier);
+    ValueSpecification spec = _table.getValueSpecification(identifier);
     if (spec != null) {
       return spec;
     }
     spec = getUnderlying().getValueSpecification(identifier);
-    _specificationToIdentifier.put(spec, identifier);
-    _identifierToSpecification.put(identifier, spec);
+    if (spec != null) {
+      _table.putIfAbsent(spec, identifier);
+    }
     return spec;
   }
 
@@ -109,7 +114,7 @@ public class CachingIdentifierMap implements IdentifierMap {
     final Map<Long, ValueSpecification> specifications = new HashMap<Long, ValueSpecification>();
     List<Long> cacheMisses = null;
     for (Long identifier : identifiers) {
-      final ValueSpecification specification = _identifierToSpecification.get(identifier);
+      final ValueSpecification specification = _table.getValueSpecification(identifier);
       if (specification != null) {
         specifications.put(identifier, specification);
       } else {
@@ -123,14 +128,16 @@ public class CachingIdentifierMap implements IdentifierMap {
       if (cacheMisses.size() == 1) {
         final Long identifier = cacheMisses.get(0);
         final ValueSpecification specification = getUnderlying().getValueSpecification(identifier);
-        _specificationToIdentifier.put(specification, identifier);
-        _identifierToSpecification.put(identifier, specification);
+        if (specification != null) {
+          _table.putIfAbsent(specification, identifier);
+        }
         specifications.put(identifier, specification);
       } else {
         final Map<Long, ValueSpecification> values = getUnderlying().getValueSpecifications(cacheMisses);
         for (Map.Entry<Long, ValueSpecification> value : values.entrySet()) {
-          _specificationToIdentifier.put(value.getValue(), value.getKey());
-          _identifierToSpecification.put(value.getKey(), value.getValue());
+          if (value.getValue() != null) {
+            _table.putIfAbsent(value.getValue(), value.getKey());
+          }
         }
         specifications.putAll(values);
       }
@@ -7,18 +7,21 @@ package com.opengamma.engine.view.cache;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.fudgemsg.FudgeContext;
 import org.fudgemsg.FudgeMsg;
 import org.fudgemsg.MutableFudgeMsg;
 import org.fudgemsg.mapping.FudgeDeserializationContext;
 import org.fudgemsg.mapping.FudgeSerializationContext;
+import org.fudgemsg.wire.EncodedFudgeMsg;
+import org.fudgemsg.wire.FudgeEncoded;
 import org.fudgemsg.wire.FudgeSize;
 
 import com.opengamma.engine.value.ComputedValue;
@@ -29,6 +32,9 @@ import com.opengamma.util.tuple.Pair;
 /**
  * An implementation of {@link ViewComputationCache} which backs value storage on
  * a pair of {@link IdentifierMap} and {@link FudgeMessageStore}.
+ * <p>
+ * Values are encoded once, when they are put into the cache, and passed to the data stores in their encoded form.
+ * Values copied from another cache by {@link #copySharedValues} are forwarded without being decoded.
  */
 public class DefaultViewComputationCache implements ViewComputationCache,
     Iterable<Pair<ValueSpecification, FudgeMsg>> {
@@ -54,9 +60,14 @@ public class DefaultViewComputationCache implements ViewComputationCache,
   private MissingValueLoader _missingValueLoader;
 
   /**
-   * The size of recent values that have gone into or come out of this cache.
+   * The encoded size of values that have gone into or come out of this cache.
    */
-  private final Map<ValueSpecification, Integer> _valueSizeCache = Collections.synchronizedMap(new WeakHashMap<ValueSpecification, Integer>());
+  private final ConcurrentMap<ValueSpecification, Integer> _valueSizeCache = new ConcurrentHashMap<ValueSpecification, Integer>();
+
+  /**
+   * The number of value bytes written into new buffers by this cache.
+   */
+  private final AtomicLong _bytesCopied = new AtomicLong();
 
   protected DefaultViewComputationCache(final IdentifierMap identifierMap, final FudgeMessageStore dataStore,
       final FudgeContext fudgeContext) {
@@ -130,7 +141,7 @@ public class DefaultViewComputationCache implements ViewComputationCache,
       }
     }
     final FudgeDeserializationContext context = new FudgeDeserializationContext(getFudgeContext());
-    _valueSizeCache.put(specification, FudgeSize.calculateMessageSize(data));
+    _valueSizeCache.put(specification, getEncodedSize(data));
     return deserializeValue(context, data);
   }
 
@@ -144,17 +155,34 @@ public class DefaultViewComputationCache implements ViewComputationCache,
       return null;
     }
     final FudgeDeserializationContext context = new FudgeDeserializationContext(getFudgeContext());
-    _valueSizeCache.put(specification, FudgeSize.calculateMessageSize(data));
+    _valueSizeCache.put(specification, getEncodedSize(data));
     return deserializeValue(context, data);
   }
 
   @Override
   public Collection<Pair<ValueSpecification, Object>> getValues(final Collection<ValueSpecification> specifications) {
     ArgumentChecker.notNull(specifications, "specifications");
+    final Map<ValueSpecification, FudgeMsg> rawValues = getEncodedValues(specifications);
+    final Collection<Pair<ValueSpecification, Object>> returnValues = new ArrayList<Pair<ValueSpecification, Object>>(rawValues.size());
+    final FudgeDeserializationContext context = new FudgeDeserializationContext(getFudgeContext());
+    for (Map.Entry<ValueSpecification, FudgeMsg> rawValue : rawValues.entrySet()) {
+      _valueSizeCache.put(rawValue.getKey(), getEncodedSize(rawValue.getValue()));
+      returnValues.add(Pair.of(rawValue.getKey(), deserializeValue(context, rawValue.getValue())));
+    }
+    return returnValues;
+  }
+
+  /**
+   * Fetches values without decoding them. The private data store is checked first, then the shared data store and
+   * finally the missing value loader.
+   * 
+   * @param specifications the values to fetch
+   * @return the values found, keyed by specification
+   */
+  protected Map<ValueSpecification, FudgeMsg> getEncodedValues(final Collection<ValueSpecification> specifications) {
     final Map<ValueSpecification, Long> identifiers = getIdentifierMap().getIdentifiers(specifications);
-    final Collection<Pair<ValueSpecification, Object>> returnValues = new ArrayList<Pair<ValueSpecification, Object>>(specifications.size());
+    final Map<ValueSpecification, FudgeMsg> returnValues = new HashMap<ValueSpecification, FudgeMsg>();
     final Collection<Long> identifierValues = identifiers.values();
-    final FudgeDeserializationContext context = new FudgeDeserializationContext(getFudgeContext());
     Map<Long, FudgeMsg> rawValues = getPrivateDataStore().get(identifierValues);
     if (!rawValues.isEmpty()) {
       final Iterator<Map.Entry<ValueSpecification, Long>> identifierIterator = identifiers.entrySet().iterator();
@@ -162,8 +190,7 @@ public class DefaultViewComputationCache implements ViewComputationCache,
         final Map.Entry<ValueSpecification, Long> identifier = identifierIterator.next();
         final FudgeMsg data = rawValues.get(identifier.getValue());
         if (data != null) {
-          _valueSizeCache.put(identifier.getKey(), FudgeSize.calculateMessageSize(data));
-          returnValues.add(Pair.of(identifier.getKey(), deserializeValue(context, data)));
+          returnValues.put(identifier.getKey(), data);
           identifierIterator.remove();
         }
       }
@@ -178,8 +205,7 @@ public class DefaultViewComputationCache implements ViewComputationCache,
         final Map.Entry<ValueSpecification, Long> identifier = identifierIterator.next();
         final FudgeMsg data = rawValues.get(identifier.getValue());
         if (data != null) {
-          _valueSizeCache.put(identifier.getKey(), FudgeSize.calculateMessageSize(data));
-          returnValues.add(Pair.of(identifier.getKey(), deserializeValue(context, data)));
+          returnValues.put(identifier.getKey(), data);
           identifierIterator.remove();
         }
       }
@@ -191,13 +217,10 @@ public class DefaultViewComputationCache implements ViewComputationCache,
     if (loader != null) {
       rawValues = loader.findMissingValues(identifierValues);
       if (!rawValues.isEmpty()) {
-        final Iterator<Map.Entry<ValueSpecification, Long>> identifierIterator = identifiers.entrySet().iterator();
-        while (identifierIterator.hasNext()) {
-          final Map.Entry<ValueSpecification, Long> identifier = identifierIterator.next();
+        for (Map.Entry<ValueSpecification, Long> identifier : identifiers.entrySet()) {
           final FudgeMsg data = rawValues.get(identifier.getValue());
           if (data != null) {
-            _valueSizeCache.put(identifier.getKey(), FudgeSize.calculateMessageSize(data));
-            returnValues.add(Pair.of(identifier.getKey(), deserializeValue(context, data)));
+            returnValues.put(identifier.getKey(), data);
           }
         }
       }
@@ -247,7 +270,7 @@ public class DefaultViewComputationCache implements ViewComputationCache,
     for (Map.Entry<ValueSpecification, Long> identifier : identifiers.entrySet()) {
       final FudgeMsg data = rawValues.get(identifier.getValue());
       if (data != null) {
-        _valueSizeCache.put(identifier.getKey(), FudgeSize.calculateMessageSize(data));
+        _valueSizeCache.put(identifier.getKey(), getEncodedSize(data));
         returnValues.add(Pair.of(identifier.getKey(), deserializeValue(context, data)));
       } else {
         returnValues.add(Pair.of(identifier.getKey(), null));
@@ -260,8 +283,8 @@ public class DefaultViewComputationCache implements ViewComputationCache,
     ArgumentChecker.notNull(value, "value");
     final long identifier = getIdentifierMap().getIdentifier(value.getSpecification());
     final FudgeSerializationContext context = new FudgeSerializationContext(getFudgeContext());
-    final FudgeMsg data = serializeValue(context, value.getValue());
-    _valueSizeCache.put(value.getSpecification(), FudgeSize.calculateMessageSize(data));
+    final FudgeMsg data = encodeValue(context, value.getValue());
+    _valueSizeCache.put(value.getSpecification(), getEncodedSize(data));
     dataStore.put(identifier, data);
   }
 
@@ -290,8 +313,8 @@ public class DefaultViewComputationCache implements ViewComputationCache,
     final Map<Long, FudgeMsg> data = new HashMap<Long, FudgeMsg>();
     final FudgeSerializationContext context = new FudgeSerializationContext(getFudgeContext());
     for (ComputedValue value : values) {
-      final FudgeMsg valueData = serializeValue(context, value.getValue());
-      _valueSizeCache.put(value.getSpecification(), FudgeSize.calculateMessageSize(valueData));
+      final FudgeMsg valueData = encodeValue(context, value.getValue());
+      _valueSizeCache.put(value.getSpecification(), getEncodedSize(valueData));
       data.put(identifiers.get(value.getSpecification()), valueData);
     }
     dataStore.put(data);
@@ -319,8 +342,8 @@ public class DefaultViewComputationCache implements ViewComputationCache,
     Map<Long, FudgeMsg> privateData = null;
     Map<Long, FudgeMsg> sharedData = null;
     for (ComputedValue value : values) {
-      final FudgeMsg valueData = serializeValue(context, value.getValue());
-      _valueSizeCache.put(value.getSpecification(), FudgeSize.calculateMessageSize(valueData));
+      final FudgeMsg valueData = encodeValue(context, value.getValue());
+      _valueSizeCache.put(value.getSpecification(), getEncodedSize(valueData));
       if (filter.isPrivateValue(value.getSpecification())) {
         if (privateData == null) {
           privateData = new HashMap<Long, FudgeMsg>();
@@ -342,6 +365,46 @@ public class DefaultViewComputationCache implements ViewComputationCache,
     }
   }
 
+  @Override
+  public void copySharedValues(final ViewComputationCache source, final Collection<ValueSpecification> specifications) {
+    ArgumentChecker.notNull(source, "source");
+    ArgumentChecker.notNull(specifications, "specifications");
+    if (!(source instanceof DefaultViewComputationCache)) {
+      AbstractViewComputationCache.copySharedValues(this, source, specifications);
+      return;
+    }
+    final Map<ValueSpecification, FudgeMsg> rawValues = ((DefaultViewComputationCache) source).getEncodedValues(specifications);
+    if (rawValues.isEmpty()) {
+      return;
+    }
+    final Map<ValueSpecification, Long> identifiers = getIdentifierMap().getIdentifiers(rawValues.keySet());
+    final Map<Long, FudgeMsg> data = new HashMap<Long, FudgeMsg>();
+    for (Map.Entry<ValueSpecification, FudgeMsg> rawValue : rawValues.entrySet()) {
+      final FudgeMsg valueData = rawValue.getValue();
+      final int size = getEncodedSize(valueData);
+      if (!EncodedValueTransport.isEncoded(valueData)) {
+        // The data store will have to encode this one again
+        _bytesCopied.addAndGet(size);
+      }
+      _valueSizeCache.put(rawValue.getKey(), size);
+      data.put(identifiers.get(rawValue.getKey()), valueData);
+    }
+    getSharedDataStore().put(data);
+  }
+
+  /**
+   * Serializes and encodes a value for the data stores.
+   * 
+   * @param context the serialization context
+   * @param value the value to encode
+   * @return the encoded value
+   */
+  protected FudgeMsg encodeValue(final FudgeSerializationContext context, final Object value) {
+    final byte[] data = EncodedValueTransport.encode(getFudgeContext(), serializeValue(context, value));
+    _bytesCopied.addAndGet(data.length);
+    return new EncodedFudgeMsg(data, getFudgeContext());
+  }
+
   protected static FudgeMsg serializeValue(final FudgeSerializationContext context, final Object value) {
     context.reset();
     final MutableFudgeMsg message = context.newMessage();
@@ -371,6 +434,26 @@ public class DefaultViewComputationCache implements ViewComputationCache,
     return _valueSizeCache.get(value.getSpecification());
   }
 
+  private static int getEncodedSize(final FudgeMsg data) {
+    if (data instanceof FudgeEncoded) {
+      return ((FudgeEncoded) data).getFudgeEncoded().length;
+    } else {
+      return FudgeSize.calculateMessageSize(data);
+    }
+  }
+
+  /**
+   * Returns the number of value bytes this cache has written into new buffers. This is the encoded size of the values
+   * put into it, plus any values copied from another cache that were not held in an encoded form. Values forwarded
+   * in their encoded form are not counted. As a cache only exists for a single cycle this is the number of bytes copied
+   * for that cycle.
+   * 
+   * @return the number of bytes copied
+   */
+  public long getBytesCopied() {
+    return _bytesCopied.get();
+  }
+
   @Override
   public Iterator<Pair<ValueSpecification, FudgeMsg>> iterator() {
     // TODO 2008-08-09 Implement this; iterate over the values in the data store
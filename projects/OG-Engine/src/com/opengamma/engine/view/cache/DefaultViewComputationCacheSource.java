@@ -12,10 +12,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.fudgemsg.FudgeContext;
 import org.fudgemsg.FudgeMsg;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.opengamma.engine.value.ValueSpecification;
 import com.opengamma.id.UniqueIdentifier;
@@ -29,6 +32,8 @@ import com.opengamma.util.tuple.Pair;
  */
 public class DefaultViewComputationCacheSource implements ViewComputationCacheSource {
 
+  private static final Logger s_logger = LoggerFactory.getLogger(DefaultViewComputationCacheSource.class);
+
   /**
    * Callback to receive notification of the releaseCaches message.
    */
@@ -61,6 +66,10 @@ public class DefaultViewComputationCacheSource implements ViewComputationCacheSo
   private ReleaseCachesCallback _releaseCachesCallback;
   private MissingValueLoader _missingValueLoader;
 
+  private final AtomicLong _cyclesReleased = new AtomicLong();
+  private final AtomicLong _totalBytesCopied = new AtomicLong();
+  private volatile long _lastBytesCopied;
+
   protected DefaultViewComputationCacheSource(final IdentifierMap identifierMap, final FudgeContext fudgeContext,
       final FudgeMessageStoreFactory dataStoreFactory) {
     this(identifierMap, fudgeContext, dataStoreFactory, dataStoreFactory);
@@ -205,6 +214,14 @@ public class DefaultViewComputationCacheSource implements ViewComputationCacheSo
     } finally {
       _cacheManagementLock.unlock();
     }
+    long bytesCopied = 0;
+    for (DefaultViewComputationCache cache : caches) {
+      bytesCopied += cache.getBytesCopied();
+    }
+    _lastBytesCopied = bytesCopied;
+    _totalBytesCopied.addAndGet(bytesCopied);
+    _cyclesReleased.incrementAndGet();
+    s_logger.debug("Releasing {} caches for {}/{} - {} bytes copied", new Object[] {caches.length, viewProcessId, timestamp, bytesCopied});
     for (DefaultViewComputationCache cache : caches) {
       cache.delete();
     }
@@ -226,4 +243,41 @@ public class DefaultViewComputationCacheSource implements ViewComputationCacheSo
     return _missingValueLoader;
   }
 
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the number of cycles whose caches have been released.
+   * 
+   * @return the number of cycles
+   */
+  public long getCyclesReleased() {
+    return _cyclesReleased.get();
+  }
+
+  /**
+   * Gets the number of bytes copied into new buffers by the caches of all released cycles.
+   * 
+   * @return the number of bytes
+   */
+  public long getTotalBytesCopied() {
+    return _totalBytesCopied.get();
+  }
+
+  /**
+   * Gets the number of bytes copied into new buffers by the caches of the most recently released cycle.
+   * 
+   * @return the number of bytes
+   */
+  public long getLastBytesCopied() {
+    return _lastBytesCopied;
+  }
+
+  /**
+   * Gets the number of caches that have not yet been released.
+   * 
+   * @return the number of caches
+   */
+  public int getActiveCacheCount() {
+    return _cachesByKey.size();
+  }
+
 }
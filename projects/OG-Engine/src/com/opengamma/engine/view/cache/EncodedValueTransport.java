@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.cache;
+
+import java.io.ByteArrayOutputStream;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.fudgemsg.wire.EncodedFudgeMsg;
+import org.fudgemsg.wire.FudgeDataOutputStreamWriter;
+import org.fudgemsg.wire.FudgeEncoded;
+
+/**
+ * Moves cache values between a {@link RemoteFudgeMessageStore} and a {@link FudgeMessageStoreServer} in their
+ * encoded form.
+ * <p>
+ * Each value is carried as a message with its Fudge encoding as a single byte array field. The receiver can store
+ * or forward the bytes as they are and only decodes them if the value is read. Messages that are not wrapped are
+ * passed through unchanged by {@link #unwrap}, so a server still accepts values put by older clients. Values returned
+ * by a server are always wrapped, which older clients can't read, so calculation nodes must be upgraded together with
+ * the shared cache server.
+ */
+public final class EncodedValueTransport {
+
+  /**
+   * The field ordinal used to carry the encoded form of a value.
+   */
+  private static final int ENCODED_FIELD_INDEX = -2;
+
+  private EncodedValueTransport() {
+  }
+
+  /**
+   * Returns the encoded form of a message. If the message was decoded from, or created with, an encoded form then that
+   * is returned without copying it.
+   *
+   * @param fudgeContext the Fudge context
+   * @param message the message to encode, not {@code null}
+   * @return the encoding of the message fields
+   */
+  public static byte[] encode(final FudgeContext fudgeContext, final FudgeMsg message) {
+    if (message instanceof FudgeEncoded) {
+      return ((FudgeEncoded) message).getFudgeEncoded();
+    }
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    final FudgeDataOutputStreamWriter writer = new FudgeDataOutputStreamWriter(fudgeContext, baos);
+    writer.writeFields(message);
+    return baos.toByteArray();
+  }
+
+  /**
+   * Tests whether the encoded form of a message is available without encoding it.
+   *
+   * @param message the message to test
+   * @return true if {@link #encode} will not need to copy the message
+   */
+  public static boolean isEncoded(final FudgeMsg message) {
+    return message instanceof FudgeEncoded;
+  }
+
+  /**
+   * Wraps a value for sending. An empty message, used to indicate a missing value, is not wrapped.
+   *
+   * @param fudgeContext the Fudge context
+   * @param message the value to wrap, not {@code null}
+   * @return the message to send
+   */
+  public static FudgeMsg wrap(final FudgeContext fudgeContext, final FudgeMsg message) {
+    final byte[] encoded = encode(fudgeContext, message);
+    if (encoded.length == 0) {
+      return FudgeContext.EMPTY_MESSAGE;
+    }
+    final MutableFudgeMsg wrapped = fudgeContext.newMessage();
+    wrapped.add(null, ENCODED_FIELD_INDEX, encoded);
+    return wrapped;
+  }
+
+  /**
+   * Unwraps a received value. The result holds the encoded bytes from the message and is only decoded when its fields
+   * are accessed.
+   *
+   * @param fudgeContext the Fudge context
+   * @param message the received message, not {@code null}
+   * @return the value
+   */
+  public static FudgeMsg unwrap(final FudgeContext fudgeContext, final FudgeMsg message) {
+    if (message.getNumFields() == 1) {
+      final Object encoded = message.getValue(ENCODED_FIELD_INDEX);
+      if (encoded instanceof byte[]) {
+        return new EncodedFudgeMsg((byte[]) encoded, fudgeContext);
+      }
+    }
+    return message;
+  }
+
+}
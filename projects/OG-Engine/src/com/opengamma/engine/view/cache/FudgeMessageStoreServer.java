@@ -282,10 +282,13 @@ public class FudgeMessageStoreServer implements FudgeConnectionReceiver, Release
         response = Collections.singleton(FudgeContext.EMPTY_MESSAGE);
       } else {
         final FudgeMessageStore store = cache.getSharedDataStore();
+        final FudgeContext fudgeContext = getUnderlying().getFudgeContext();
         if (identifiers.size() == 1) {
           FudgeMsg data = store.get(identifiers.get(0));
           if (data == null) {
             data = FudgeContext.EMPTY_MESSAGE;
+          } else {
+            data = EncodedValueTransport.wrap(fudgeContext, data);
           }
           response = Collections.singleton(data);
         } else {
@@ -295,6 +298,8 @@ public class FudgeMessageStoreServer implements FudgeConnectionReceiver, Release
             FudgeMsg value = data.get(identifier);
             if (value == null) {
               value = FudgeContext.EMPTY_MESSAGE;
+            } else {
+              value = EncodedValueTransport.wrap(fudgeContext, value);
             }
             response.add(value);
           }
@@ -310,14 +315,16 @@ public class FudgeMessageStoreServer implements FudgeConnectionReceiver, Release
       final ViewComputationCacheKey key = new ViewComputationCacheKey(request.getViewProcessId(), request.getCalculationConfigurationName(), request.getSnapshotTimestamp());
       // Review 2010-10-19 Andrew -- This causes cache creation. This is bad if messages were delayed and the cache has already been released.
       final FudgeMessageStore store = getUnderlying().getCache(key).getSharedDataStore();
+      final FudgeContext fudgeContext = getUnderlying().getFudgeContext();
+      // The values are stored in the encoded form they were sent in; they are never decoded by the server
       if (identifiers.size() == 1) {
-        store.put(identifiers.get(0), data.get(0));
+        store.put(identifiers.get(0), EncodedValueTransport.unwrap(fudgeContext, data.get(0)));
       } else {
         final Map<Long, FudgeMsg> map = new HashMap<Long, FudgeMsg>();
         final Iterator<Long> i = identifiers.iterator();
         final Iterator<FudgeMsg> j = data.iterator();
         while (i.hasNext()) {
-          map.put(i.next(), j.next());
+          map.put(i.next(), EncodedValueTransport.unwrap(fudgeContext, j.next()));
         }
         store.put(map);
       }
@@ -0,0 +1,220 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.cache;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * A two-way table between {@link ValueSpecification} and {@code long} identifiers for use by {@link IdentifierMap}
+ * implementations.
+ * <p>
+ * Both directions are held in open-addressed arrays with the identifiers as primitive values, so a lookup does not
+ * allocate or take a lock. Additions are serialized and a full table is replaced by a larger copy, leaving readers of
+ * the previous table with a consistent view. {@link Long#MIN_VALUE} is not a valid identifier; it is returned by
+ * {@link #getIdentifier} to indicate that there is no entry.
+ * <p>
+ * A table can be given a maximum size for use as a cache in front of another {@link IdentifierMap}. Adding an entry
+ * to a full table discards all of its entries, so later lookups of them miss and fall back to the other map. Entries
+ * are never removed from a table without a maximum size, which is for maps that are the only record of the
+ * identifiers they have issued.
+ */
+public final class IdentifierTable {
+
+  /**
+   * The value returned by {@link #getIdentifier} if there is no identifier for the specification.
+   */
+  public static final long NOT_FOUND = Long.MIN_VALUE;
+
+  private static final int DEFAULT_CAPACITY = 1024;
+
+  /**
+   * The arrays that make up the table. A key slot is written after its value so that a reader which sees the key,
+   * through the volatile semantics of {@link AtomicReferenceArray}, also sees the value.
+   */
+  private static final class Table {
+
+    private final int _mask;
+    private final AtomicReferenceArray<ValueSpecification> _specificationKeys;
+    private final long[] _identifierValues;
+    private final long[] _identifierKeys;
+    private final AtomicReferenceArray<ValueSpecification> _specificationValues;
+
+    private Table(final int capacity) {
+      _mask = capacity - 1;
+      _specificationKeys = new AtomicReferenceArray<ValueSpecification>(capacity);
+      _identifierValues = new long[capacity];
+      _identifierKeys = new long[capacity];
+      _specificationValues = new AtomicReferenceArray<ValueSpecification>(capacity);
+    }
+
+    private int capacity() {
+      return _mask + 1;
+    }
+
+    private void put(final ValueSpecification specification, final long identifier) {
+      // The reverse entry is written first so that anyone who has been given the identifier can look it up
+      int i = hash(identifier) & _mask;
+      while (_specificationValues.get(i) != null) {
+        i = (i + 1) & _mask;
+      }
+      _identifierKeys[i] = identifier;
+      // The reverse table uses the specification as the "written last" marker
+      _specificationValues.set(i, specification);
+      i = hash(specification) & _mask;
+      while (_specificationKeys.get(i) != null) {
+        i = (i + 1) & _mask;
+      }
+      _identifierValues[i] = identifier;
+      _specificationKeys.set(i, specification);
+    }
+
+  }
+
+  private final int _initialCapacity;
+  private final int _maxSize;
+  private volatile Table _table;
+  private int _size;
+
+  public IdentifierTable() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates a table with no maximum size.
+   *
+   * @param expectedSize  the number of entries to size the table for
+   */
+  public IdentifierTable(final int expectedSize) {
+    this(expectedSize, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Creates a table which discards its entries when it holds a maximum number of them.
+   *
+   * @param expectedSize  the number of entries to size the table for
+   * @param maxSize  the maximum number of entries, greater than zero
+   */
+  public IdentifierTable(final int expectedSize, final int maxSize) {
+    ArgumentChecker.notNegative(expectedSize, "expectedSize");
+    ArgumentChecker.isTrue(maxSize > 0, "maxSize must be positive");
+    int capacity = 16;
+    while ((capacity < expectedSize * 2) && (capacity < maxSize * 2)) {
+      capacity <<= 1;
+    }
+    _initialCapacity = capacity;
+    _maxSize = maxSize;
+    _table = new Table(capacity);
+  }
+
+  private static int hash(final ValueSpecification specification) {
+    final int h = specification.hashCode();
+    return h ^ (h >>> 16);
+  }
+
+  private static int hash(final long identifier) {
+    final long h = identifier * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the identifier of a specification.
+   *
+   * @param specification  the specification, not null
+   * @return the identifier, or {@link #NOT_FOUND} if there is none
+   */
+  public long getIdentifier(final ValueSpecification specification) {
+    final Table table = _table;
+    int i = hash(specification) & table._mask;
+    ValueSpecification key;
+    while ((key = table._specificationKeys.get(i)) != null) {
+      if ((key == specification) || key.equals(specification)) {
+        return table._identifierValues[i];
+      }
+      i = (i + 1) & table._mask;
+    }
+    return NOT_FOUND;
+  }
+
+  /**
+   * Gets the specification with an identifier.
+   *
+   * @param identifier  the identifier
+   * @return the specification, or null if there is none
+   */
+  public ValueSpecification getValueSpecification(final long identifier) {
+    final Table table = _table;
+    int i = hash(identifier) & table._mask;
+    ValueSpecification value;
+    while ((value = table._specificationValues.get(i)) != null) {
+      if (table._identifierKeys[i] == identifier) {
+        return value;
+      }
+      i = (i + 1) & table._mask;
+    }
+    return null;
+  }
+
+  /**
+   * Adds a specification and its identifier unless the specification already has one.
+   *
+   * @param specification  the specification, not null
+   * @param identifier  the identifier, not {@link #NOT_FOUND}
+   * @return the identifier of the specification, which may not be the one given
+   */
+  public synchronized long putIfAbsent(final ValueSpecification specification, final long identifier) {
+    ArgumentChecker.notNull(specification, "specification");
+    ArgumentChecker.isTrue(identifier != NOT_FOUND, "identifier must not be Long.MIN_VALUE");
+    final long existing = getIdentifier(specification);
+    if (existing != NOT_FOUND) {
+      return existing;
+    }
+    if (_size >= _maxSize) {
+      // Readers of the discarded table may still find entries in it, which remain correct
+      _table = new Table(_initialCapacity);
+      _size = 0;
+    }
+    Table table = _table;
+    // Keep the table at most half full so that probe sequences stay short
+    if ((_size + 1) * 2 > table.capacity()) {
+      final Table newTable = new Table(table.capacity() << 1);
+      for (int i = 0; i < table.capacity(); i++) {
+        final ValueSpecification key = table._specificationKeys.get(i);
+        if (key != null) {
+          newTable.put(key, table._identifierValues[i]);
+        }
+      }
+      newTable.put(specification, identifier);
+      _table = newTable;
+    } else {
+      table.put(specification, identifier);
+    }
+    _size++;
+    return identifier;
+  }
+
+  /**
+   * Gets the number of entries in the table.
+   *
+   * @return the number of entries
+   */
+  public synchronized int size() {
+    return _size;
+  }
+
+  /**
+   * Gets the maximum number of entries in the table.
+   *
+   * @return the maximum number of entries, {@link Integer#MAX_VALUE} if there is no maximum
+   */
+  public int getMaxSize() {
+    return _maxSize;
+  }
+
+}
@@ -5,8 +5,11 @@
  */
 package com.opengamma.engine.view.cache;
 
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
 import com.opengamma.engine.value.ValueSpecification;
@@ -14,35 +17,61 @@ import com.opengamma.util.ArgumentChecker;
 
 /**
  * An implementation of {@link IdentifierMap} which is backed by an in-memory
- * {@link ConcurrentMap}. This has no facilities for acting as a cache, or for persistence.
- * It should only be used for development and debugging purposes.
+ * {@link IdentifierTable}. Lookups of existing identifiers are lock-free and don't
+ * allocate. This has no facilities for persistence.
  */
-public class InMemoryIdentifierMap extends AbstractIdentifierMap implements IdentifierMap {
+public class InMemoryIdentifierMap implements IdentifierMap {
 
   private final AtomicLong _nextIdentifier = new AtomicLong(1L);
 
-  private final ConcurrentMap<ValueSpecification, Long> _identifiers = new ConcurrentHashMap<ValueSpecification, Long>();
-  private final ConcurrentMap<Long, ValueSpecification> _specifications = new ConcurrentHashMap<Long, ValueSpecification>();
+  private final IdentifierTable _table = new IdentifierTable();
 
   @Override
   public long getIdentifier(ValueSpecification spec) {
     ArgumentChecker.notNull(spec, "Value specification");
-    Long result = _identifiers.get(spec);
-    if (result != null) {
+    final long result = _table.getIdentifier(spec);
+    if (result != IdentifierTable.NOT_FOUND) {
       return result;
     }
-    Long freshIdentifier = _nextIdentifier.getAndIncrement();
-    result = _identifiers.putIfAbsent(spec, freshIdentifier);
-    if (result == null) {
-      result = freshIdentifier;
-      _specifications.put(freshIdentifier, spec);
+    return _table.putIfAbsent(spec, _nextIdentifier.getAndIncrement());
+  }
+
+  @Override
+  public Map<ValueSpecification, Long> getIdentifiers(Collection<ValueSpecification> specs) {
+    final Map<ValueSpecification, Long> identifiers = new HashMap<ValueSpecification, Long>();
+    List<ValueSpecification> misses = null;
+    for (ValueSpecification spec : specs) {
+      ArgumentChecker.notNull(spec, "Value specification");
+      final long identifier = _table.getIdentifier(spec);
+      if (identifier != IdentifierTable.NOT_FOUND) {
+        identifiers.put(spec, identifier);
+      } else {
+        if (misses == null) {
+          misses = new ArrayList<ValueSpecification>();
+        }
+        misses.add(spec);
+      }
+    }
+    if (misses != null) {
+      for (ValueSpecification spec : misses) {
+        identifiers.put(spec, _table.putIfAbsent(spec, _nextIdentifier.getAndIncrement()));
+      }
     }
-    return result;
+    return identifiers;
   }
 
   @Override
   public ValueSpecification getValueSpecification(long identifier) {
-    return _specifications.get(identifier);
+    return _table.getValueSpecification(identifier);
+  }
+
+  @Override
+  public Map<Long, ValueSpecification> getValueSpecifications(Collection<Long> identifiers) {
+    final Map<Long, ValueSpecification> specifications = new HashMap<Long, ValueSpecification>();
+    for (Long identifier : identifiers) {
+      specifications.put(identifier, _table.getValueSpecification(identifier));
+    }
+    return specifications;
   }
 
 }
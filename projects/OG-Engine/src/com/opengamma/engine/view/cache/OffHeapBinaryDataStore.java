@@ -0,0 +1,349 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opengamma.OpenGammaRuntimeException;
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * An implementation of {@link BinaryDataStore} which holds the data outside of the Java heap, either in direct
+ * buffers or in memory-mapped segment files. Only the index from identifier to location is held on the heap so
+ * large cycles do not add to garbage collection pauses.
+ * <p>
+ * Data is appended to slabs and never moved. A value that is replaced remains in its slab until the store is deleted;
+ * this suits the computation cache where each value is normally written once per cycle. The first slab is small and
+ * each further slab is twice the size of the one before, up to the maximum slab size, so a store holding little data
+ * only takes a little memory. A value larger than the maximum slab size is given a slab of its own. The bulk {@link #put(Map)} reserves space for all of its
+ * values in one operation and writes them contiguously.
+ * <p>
+ * This class is internally synchronized. Reads and writes hold a shared lock so that {@link #delete()} can release
+ * the slabs once they are no longer in use; a read after the store is deleted returns no data.
+ */
+public class OffHeapBinaryDataStore implements BinaryDataStore {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(OffHeapBinaryDataStore.class);
+
+  /**
+   * The default slab size, 16Mb.
+   */
+  public static final int DEFAULT_SLAB_SIZE = 16 * 1024 * 1024;
+
+  /**
+   * The size of the first slab allocated, 64Kb, or the maximum slab size if that is smaller.
+   */
+  public static final int INITIAL_SLAB_SIZE = 64 * 1024;
+
+  /**
+   * The size of the length prefix written before each value.
+   */
+  private static final int HEADER_SIZE = 4;
+
+  private final String _name;
+  private final int _slabSize;
+  private final File _directory;
+  private final ConcurrentMap<Long, Long> _index = new ConcurrentHashMap<Long, Long>();
+  private final List<ByteBuffer> _slabs = new CopyOnWriteArrayList<ByteBuffer>();
+  private final List<File> _slabFiles = new ArrayList<File>();
+  private ByteBuffer _currentSlab;
+  private int _currentSlabIndex = -1;
+  private int _nextSlabSize;
+  private final ReadWriteLock _lock = new ReentrantReadWriteLock();
+  private volatile boolean _deleted;
+
+  /**
+   * Creates a store using direct buffers.
+   *
+   * @param name  the name of the store, used for diagnostics, not null
+   * @param slabSize  the maximum size of each slab in bytes
+   */
+  public OffHeapBinaryDataStore(final String name, final int slabSize) {
+    this(name, slabSize, null);
+  }
+
+  /**
+   * Creates a store using memory-mapped segment files.
+   *
+   * @param name  the name of the store, used to name the segment files, not null
+   * @param slabSize  the maximum size of each slab in bytes
+   * @param directory  the directory to create segment files in, null to use direct buffers instead
+   */
+  public OffHeapBinaryDataStore(final String name, final int slabSize, final File directory) {
+    ArgumentChecker.notNull(name, "name");
+    ArgumentChecker.isTrue(slabSize > HEADER_SIZE, "slabSize must be larger than " + HEADER_SIZE + " bytes");
+    _name = name;
+    _slabSize = slabSize;
+    _nextSlabSize = Math.min(INITIAL_SLAB_SIZE, slabSize);
+    _directory = directory;
+  }
+
+  public String getName() {
+    return _name;
+  }
+
+  public int getSlabSize() {
+    return _slabSize;
+  }
+
+  public File getDirectory() {
+    return _directory;
+  }
+
+  /**
+   * Gets the number of slabs allocated.
+   *
+   * @return the number of slabs
+   */
+  public int getSlabCount() {
+    return _slabs.size();
+  }
+
+  /**
+   * Gets the total size of the slabs allocated.
+   *
+   * @return the size in bytes
+   */
+  public long getAllocatedSize() {
+    long size = 0;
+    for (ByteBuffer slab : _slabs) {
+      size += slab.capacity();
+    }
+    return size;
+  }
+
+  //-------------------------------------------------------------------------
+  private static long location(final int slab, final int offset) {
+    return ((long) slab << 32) | (offset & 0xFFFFFFFFL);
+  }
+
+  private static int slab(final long location) {
+    return (int) (location >>> 32);
+  }
+
+  private static int offset(final long location) {
+    return (int) location;
+  }
+
+  private ByteBuffer createSlab(final int size) {
+    if (_directory == null) {
+      return ByteBuffer.allocateDirect(size);
+    }
+    final File file = new File(_directory, _name + "-" + _slabs.size() + ".slab");
+    try {
+      final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      try {
+        // The mapping remains valid after the file is closed
+        return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+      } finally {
+        _slabFiles.add(file);
+        raf.close();
+      }
+    } catch (IOException e) {
+      throw new OpenGammaRuntimeException("Unable to map " + size + " bytes of " + file, e);
+    }
+  }
+
+  /**
+   * Reserves a contiguous region of a slab.
+   *
+   * @param size  the number of bytes required
+   * @return the location of the reserved region
+   */
+  private synchronized long allocate(final int size) {
+    if (_deleted) {
+      throw new IllegalStateException("Data store " + _name + " has been deleted");
+    }
+    if ((_currentSlab == null) || (_currentSlab.remaining() < size)) {
+      if (size > _slabSize) {
+        // Oversize values get a slab of their own so that the current slab can continue to be filled
+        final ByteBuffer slab = createSlab(size);
+        _slabs.add(slab);
+        return location(_slabs.size() - 1, 0);
+      }
+      int slabSize = _nextSlabSize;
+      while (slabSize < size) {
+        slabSize = (int) Math.min((long) slabSize * 2, _slabSize);
+      }
+      _nextSlabSize = (int) Math.min((long) slabSize * 2, _slabSize);
+      _currentSlab = createSlab(slabSize);
+      _slabs.add(_currentSlab);
+      _currentSlabIndex = _slabs.size() - 1;
+      s_logger.debug("Allocated slab {} of {} bytes for {}", new Object[] {_currentSlabIndex, slabSize, _name});
+    }
+    final int offset = _currentSlab.position();
+    _currentSlab.position(offset + size);
+    return location(_currentSlabIndex, offset);
+  }
+
+  private static int getStorageSize(final byte[] data) {
+    return HEADER_SIZE + data.length;
+  }
+
+  private void write(final long location, final byte[] data) {
+    final ByteBuffer buffer = _slabs.get(slab(location)).duplicate();
+    buffer.position(offset(location));
+    buffer.putInt(data.length);
+    buffer.put(data);
+  }
+
+  private byte[] read(final long location) {
+    final ByteBuffer buffer = _slabs.get(slab(location)).duplicate();
+    buffer.position(offset(location));
+    final byte[] data = new byte[buffer.getInt()];
+    buffer.get(data);
+    return data;
+  }
+
+  /**
+   * Releases the memory of a direct or mapped buffer now rather than when it is garbage collected. There is no public
+   * API for this, so if the buffer implementation doesn't have a cleaner it is left for the garbage collector.
+   *
+   * @param buffer  the buffer, which must not be used again
+   */
+  private static void release(final ByteBuffer buffer) {
+    if (!buffer.isDirect()) {
+      return;
+    }
+    try {
+      final Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+      cleanerMethod.setAccessible(true);
+      final Object cleaner = cleanerMethod.invoke(buffer);
+      if (cleaner != null) {
+        cleaner.getClass().getMethod("clean").invoke(cleaner);
+      }
+    } catch (Exception e) {
+      s_logger.debug("Unable to release buffer, leaving it to the garbage collector", e);
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public byte[] get(final long identifier) {
+    _lock.readLock().lock();
+    try {
+      final Long location = _index.get(identifier);
+      if ((location == null) || _deleted) {
+        return null;
+      }
+      return read(location);
+    } finally {
+      _lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public Map<Long, byte[]> get(final Collection<Long> identifiers) {
+    final Map<Long, byte[]> result = new HashMap<Long, byte[]>();
+    _lock.readLock().lock();
+    try {
+      if (_deleted) {
+        return result;
+      }
+      for (Long identifier : identifiers) {
+        final Long location = _index.get(identifier);
+        if (location != null) {
+          result.put(identifier, read(location));
+        }
+      }
+    } finally {
+      _lock.readLock().unlock();
+    }
+    return result;
+  }
+
+  @Override
+  public void put(final long identifier, final byte[] data) {
+    ArgumentChecker.notNull(data, "data");
+    _lock.readLock().lock();
+    try {
+      final long location = allocate(getStorageSize(data));
+      write(location, data);
+      // Publishing the location after the write makes the data visible to other threads
+      _index.put(identifier, location);
+    } finally {
+      _lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void put(final Map<Long, byte[]> data) {
+    long totalSize = 0;
+    for (byte[] value : data.values()) {
+      ArgumentChecker.notNull(value, "data");
+      totalSize += getStorageSize(value);
+    }
+    if ((totalSize > _slabSize) || (data.size() <= 1)) {
+      // Too large to write contiguously, or nothing to gain from doing so
+      for (Map.Entry<Long, byte[]> entry : data.entrySet()) {
+        put(entry.getKey(), entry.getValue());
+      }
+      return;
+    }
+    _lock.readLock().lock();
+    try {
+      final long base = allocate((int) totalSize);
+      final int slab = slab(base);
+      int offset = offset(base);
+      for (Map.Entry<Long, byte[]> entry : data.entrySet()) {
+        final long location = location(slab, offset);
+        write(location, entry.getValue());
+        _index.put(entry.getKey(), location);
+        offset += getStorageSize(entry.getValue());
+      }
+    } finally {
+      _lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void delete() {
+    // No reads or writes are in progress while the exclusive lock is held, so the slabs can be released
+    _lock.writeLock().lock();
+    try {
+      synchronized (this) {
+        _deleted = true;
+        _index.clear();
+        for (ByteBuffer slab : _slabs) {
+          release(slab);
+        }
+        _slabs.clear();
+        _currentSlab = null;
+        _currentSlabIndex = -1;
+        _nextSlabSize = Math.min(INITIAL_SLAB_SIZE, _slabSize);
+        // The files are unmapped so they can be removed now; the channels were closed when they were mapped
+        for (File file : _slabFiles) {
+          if (!file.delete()) {
+            s_logger.warn("Unable to delete {}", file);
+            file.deleteOnExit();
+          }
+        }
+        _slabFiles.clear();
+      }
+    } finally {
+      _lock.writeLock().unlock();
+    }
+  }
+
+}
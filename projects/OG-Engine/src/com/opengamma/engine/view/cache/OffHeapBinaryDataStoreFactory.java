@@ -0,0 +1,62 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.cache;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opengamma.OpenGammaRuntimeException;
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * Creates {@link OffHeapBinaryDataStore} instances. If a directory is given the stores use memory-mapped segment
+ * files within it, otherwise they use direct buffers.
+ */
+public class OffHeapBinaryDataStoreFactory implements BinaryDataStoreFactory {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(OffHeapBinaryDataStoreFactory.class);
+
+  private final AtomicLong _nextStoreId = new AtomicLong();
+  private final int _slabSize;
+  private final File _directory;
+
+  public OffHeapBinaryDataStoreFactory() {
+    this(OffHeapBinaryDataStore.DEFAULT_SLAB_SIZE, null);
+  }
+
+  public OffHeapBinaryDataStoreFactory(final File directory) {
+    this(OffHeapBinaryDataStore.DEFAULT_SLAB_SIZE, directory);
+  }
+
+  public OffHeapBinaryDataStoreFactory(final int slabSize, final File directory) {
+    ArgumentChecker.notNegativeOrZero(slabSize, "slabSize");
+    if ((directory != null) && !directory.isDirectory() && !directory.mkdirs()) {
+      throw new OpenGammaRuntimeException("Unable to create directory " + directory);
+    }
+    _slabSize = slabSize;
+    _directory = directory;
+  }
+
+  public int getSlabSize() {
+    return _slabSize;
+  }
+
+  public File getDirectory() {
+    return _directory;
+  }
+
+  @Override
+  public BinaryDataStore createDataStore(ViewComputationCacheKey cacheKey) {
+    // The cache key may contain characters that aren't valid in file names so a sequence number is used instead
+    final String name = "OffHeapBinaryDataStore-" + _nextStoreId.getAndIncrement();
+    s_logger.debug("Creating {} for {}", name, cacheKey);
+    return new OffHeapBinaryDataStore(name, getSlabSize(), getDirectory());
+  }
+
+}
@@ -12,6 +12,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.fudgemsg.FudgeContext;
 import org.fudgemsg.FudgeMsg;
 
 import com.opengamma.engine.view.cache.msg.CacheMessage;
@@ -22,6 +23,9 @@ import com.opengamma.engine.view.cache.msg.PutRequest;
 
 /**
  * Client to a {@link FudgeMessageStoreServer}. These are created by a {@link RemoteFudgeMessageStoreFactory}.
+ * <p>
+ * Values are sent and received in their encoded form using {@link EncodedValueTransport}. A value that is fetched is
+ * not decoded until it is read, so one that is only forwarded to another store is never re-encoded.
  */
 public class RemoteFudgeMessageStore implements FudgeMessageStore {
 
@@ -41,6 +45,10 @@ public class RemoteFudgeMessageStore implements FudgeMessageStore {
     return _cacheKey;
   }
 
+  protected FudgeContext getFudgeContext() {
+    return getRemoteCacheClient().getFudgeContext();
+  }
+
   @Override
   public void delete() {
     // [ENG-256] Don't need the delete messages if we propogate at the releaseCaches level
@@ -55,7 +63,7 @@ public class RemoteFudgeMessageStore implements FudgeMessageStore {
         .getCalculationConfigurationName(), getCacheKey().getSnapshotTimestamp(), Collections.singleton(identifier));
     final GetResponse response = getRemoteCacheClient().sendGetMessage(request, GetResponse.class);
     final FudgeMsg data = response.getData().get(0);
-    return data.isEmpty() ? null : data;
+    return data.isEmpty() ? null : EncodedValueTransport.unwrap(getFudgeContext(), data);
   }
 
   @Override
@@ -67,7 +75,10 @@ public class RemoteFudgeMessageStore implements FudgeMessageStore {
     final List<FudgeMsg> values = response.getData();
     int i = 0;
     for (Long identifier : request.getIdentifier()) {
-      result.put(identifier, values.get(i++));
+      final FudgeMsg data = values.get(i++);
+      if (!data.isEmpty()) {
+        result.put(identifier, EncodedValueTransport.unwrap(getFudgeContext(), data));
+      }
     }
     return result;
   }
@@ -76,7 +87,7 @@ public class RemoteFudgeMessageStore implements FudgeMessageStore {
   public void put(long identifier, FudgeMsg data) {
     final PutRequest request = new PutRequest(getCacheKey().getViewProcessId(), getCacheKey()
         .getCalculationConfigurationName(), getCacheKey().getSnapshotTimestamp(), Collections.singleton(identifier),
-        Collections.singleton(data));
+        Collections.singleton(EncodedValueTransport.wrap(getFudgeContext(), data)));
     getRemoteCacheClient().sendPutMessage(request, CacheMessage.class);
   }
 
@@ -86,7 +97,7 @@ public class RemoteFudgeMessageStore implements FudgeMessageStore {
     final List<FudgeMsg> values = new ArrayList<FudgeMsg>(data.size());
     for (Map.Entry<Long, FudgeMsg> entry : data.entrySet()) {
       identifiers.add(entry.getKey());
-      values.add(entry.getValue());
+      values.add(EncodedValueTransport.wrap(getFudgeContext(), entry.getValue()));
     }
     final PutRequest request = new PutRequest(getCacheKey().getViewProcessId(), getCacheKey()
         .getCalculationConfigurationName(), getCacheKey().getSnapshotTimestamp(), identifiers, values);
@@ -99,6 +99,15 @@ public interface ViewComputationCache {
    */
   void putValues(Collection<ComputedValue> values, CacheSelectHint filter);
 
+  /**
+   * Copies values from another cache into the shared data store. Values that are not in the other cache are ignored.
+   * An implementation should avoid decoding and re-encoding the values where it can.
+   * 
+   * @param source the cache to copy values from, not {@code null}.
+   * @param specifications the values to copy, not {@code null}.
+   */
+  void copySharedValues(ViewComputationCache source, Collection<ValueSpecification> specifications);
+
   /**
    * Estimates the size of a value in bytes. If the value has been recently processed, the actual byte count of the
    * Fudge encoding should be used. Other possibilities could be the average size of objects of that class.
@@ -7,6 +7,7 @@ package com.opengamma.engine.view.cache;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
@@ -14,6 +15,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
@@ -23,20 +25,88 @@ import com.opengamma.OpenGammaRuntimeException;
 import com.opengamma.engine.value.ComputedValue;
 import com.opengamma.engine.value.ValueSpecification;
 import com.opengamma.engine.view.calcnode.DeferredInvocationStatistics;
+import com.opengamma.util.ArgumentChecker;
 import com.opengamma.util.tuple.Pair;
 
 /**
  * A {@link ViewComputationCache} that supports a write behind update of the underlying cache.
+ * <p>
+ * Values are written to the underlying cache in batches. A batch is normally everything queued when the writer gets to
+ * it, but the writer can be made to wait for a short window for more values to arrive, and batches can be limited in
+ * size. If the number of values waiting to be written exceeds a limit, threads adding values are blocked until the
+ * writer catches up. A caller can request notification, with {@link #flush}, when everything it has queued so far has
+ * been written without waiting for it.
+ * <p>
+ * If a batch can't be written its values are dropped and the writer carries on with the next batch. Values are numbered
+ * in the order they are queued, and the numbers of the first failed batch are recorded. Any flush that covers them,
+ * whether requested before or after the failure, fails, as does {@link #waitForPendingWrites}.
  */
 public class WriteBehindViewComputationCache extends FilteredViewComputationCache {
 
   private static final Logger s_logger = LoggerFactory.getLogger(WriteBehindViewComputationCache.class);
 
+  /**
+   * Receives notification from {@link #flush} that values have been written to the underlying cache.
+   */
+  public interface FlushListener {
+
+    /**
+     * Called when all of the values queued before the flush was requested have been written.
+     */
+    void flushed();
+
+    /**
+     * Called if a value could not be written to the underlying cache.
+     * 
+     * @param exception the exception
+     */
+    void flushFailed(RuntimeException exception);
+
+  }
+
+  /**
+   * The sequence numbers of values dropped because they could not be written.
+   */
+  private static final class WriteFailure {
+
+    private final long _first;
+    private final long _last;
+    private final RuntimeException _exception;
+
+    private WriteFailure(final long first, final long last, final RuntimeException exception) {
+      _first = first;
+      _last = last;
+      _exception = exception;
+    }
+
+    private boolean isCoveredBy(final long barrier) {
+      return barrier >= _first;
+    }
+
+    private RuntimeException getException() {
+      return _exception;
+    }
+
+    @Override
+    public String toString() {
+      return (_last >= _first) ? ("values " + _first + " to " + _last) : "no values";
+    }
+
+  }
+
   private final ExecutorService _executorService;
   private final Map<ValueSpecification, Object> _pending = new ConcurrentHashMap<ValueSpecification, Object>();
 
   private final Queue<ComputedValue> _pendingValues = new ConcurrentLinkedQueue<ComputedValue>();
   private final Queue<DeferredInvocationStatistics> _pendingStatistics = new ConcurrentLinkedQueue<DeferredInvocationStatistics>();
+  private final Queue<Pair<Long, FlushListener>> _flushListeners = new ConcurrentLinkedQueue<Pair<Long, FlushListener>>();
+  private final AtomicLong _valuesQueued = new AtomicLong();
+  private final AtomicLong _valuesWritten = new AtomicLong();
+  private final Object _writerLock = new Object();
+  private final AtomicReference<WriteFailure> _writeFailure = new AtomicReference<WriteFailure>();
+  private int _maxBatchSize = Integer.MAX_VALUE;
+  private long _batchWindowNanos;
+  private int _maxPendingValues = Integer.MAX_VALUE;
   private final AtomicReference<Runnable> _valueWriter = new AtomicReference<Runnable>();
   private final Runnable _valueWriterRunnable = new Runnable() {
 
@@ -46,11 +116,14 @@ public class WriteBehindViewComputationCache extends FilteredViewComputationCach
      */
     private static final int DRAIN_BUFFER = 2;
 
-    private List<ComputedValue> drain(final Queue<ComputedValue> source) {
-      final List<ComputedValue> dest = new ArrayList<ComputedValue>(source.size() + DRAIN_BUFFER);
+    private List<ComputedValue> drain(final Queue<ComputedValue> source, final int maxValues) {
+      final List<ComputedValue> dest = new ArrayList<ComputedValue>((int) Math.min(maxValues, Math.max(getPendingCount(), 0) + DRAIN_BUFFER));
       ComputedValue value = source.poll();
       while (value != null) {
         dest.add(value);
+        if (dest.size() >= maxValues) {
+          break;
+        }
         value = source.poll();
       }
       return dest;
@@ -67,36 +140,69 @@ public class WriteBehindViewComputationCache extends FilteredViewComputationCach
       }
     }
 
+    /**
+     * Waits for up to the batch window for a full batch to be queued, or for a flush to be requested.
+     */
+    private void awaitBatch() {
+      final long window = _batchWindowNanos;
+      if ((window <= 0) || isBatchReady()) {
+        return;
+      }
+      final long deadline = System.nanoTime() + window;
+      synchronized (_writerLock) {
+        long remaining = window;
+        while (!isBatchReady() && (remaining > 0)) {
+          try {
+            _writerLock.wait(remaining / 1000000L, (int) (remaining % 1000000L));
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+          }
+          remaining = deadline - System.nanoTime();
+        }
+      }
+    }
+
     @Override
     public void run() {
       int count = 0;
-      do {
-        s_logger.info("Write-behind thread running for {}", WriteBehindViewComputationCache.this.hashCode());
+      try {
         do {
-          if (_pendingValues.size() > 1) {
-            final Collection<ComputedValue> values = drain(_pendingValues);
-            WriteBehindViewComputationCache.super.putValues(values);
+          s_logger.info("Write-behind thread running for {}", WriteBehindViewComputationCache.this.hashCode());
+          do {
+            awaitBatch();
+            final List<ComputedValue> values = drain(_pendingValues, getMaxBatchSize());
+            RuntimeException failure = null;
+            try {
+              if (values.size() > 1) {
+                WriteBehindViewComputationCache.super.putValues(values);
+              } else if (values.size() == 1) {
+                WriteBehindViewComputationCache.super.putValue(values.get(0));
+              }
+            } catch (RuntimeException e) {
+              failure = e;
+            }
+            // A failed batch is dropped, but still counted, so that blocked producers and later flushes aren't held up
             for (ComputedValue value : values) {
               valueWritten(value);
             }
-            count += values.size();
-          } else {
-            ComputedValue value = _pendingValues.poll();
-            while (value != null) {
-              WriteBehindViewComputationCache.super.putValue(value);
-              valueWritten(value);
-              value = _pendingValues.poll();
-              count++;
+            if (failure != null) {
+              writeFailed(failure, values.size());
+            } else {
+              count += values.size();
+              valuesWritten(values.size());
             }
-          }
-        } while (!_pendingValues.isEmpty());
+          } while (!_pendingValues.isEmpty());
+          _valueWriter.set(null);
+          // Values might have been written to the lists before we set valueWriter to null, so
+          // check to see if we should carry on rather than terminate.
+        } while (!_pendingValues.isEmpty() && _valueWriter.compareAndSet(null, this));
+      } catch (RuntimeException e) {
+        // Let the next value queued start a new writer
         _valueWriter.set(null);
-        // Values might have been written to the lists before we set valueWriter to null, so
-        // check to see if we should carry on rather than terminate.
-      } while (!_pendingValues.isEmpty() && _valueWriter.compareAndSet(null, this));
-      // Note that if there is a failure anywhere in here, the writer task will die and things will
-      // accumulate on the list until synchronize is called at which point the exception gets
-      // propagated. Is this wasteful of compute cycles - should we fail the job sooner ?
+        writeFailed(e, 0);
+        throw e;
+      }
       s_logger.info("Write-behind thread terminated after {} operations", count);
     }
 
@@ -109,6 +215,49 @@ public class WriteBehindViewComputationCache extends FilteredViewComputationCach
     _executorService = executorService;
   }
 
+  /**
+   * Sets the maximum number of values written to the underlying cache in one operation.
+   * 
+   * @param maxBatchSize the maximum batch size
+   */
+  public void setMaxBatchSize(final int maxBatchSize) {
+    ArgumentChecker.notNegativeOrZero(maxBatchSize, "maxBatchSize");
+    _maxBatchSize = maxBatchSize;
+  }
+
+  public int getMaxBatchSize() {
+    return _maxBatchSize;
+  }
+
+  /**
+   * Sets how long the writer will wait for a full batch of values before writing what it has. A flush request ends the
+   * wait immediately. The default of zero writes values as soon as the writer can.
+   * 
+   * @param batchWindow the maximum time to wait, in milliseconds
+   */
+  public void setBatchWindow(final long batchWindow) {
+    ArgumentChecker.notNegative(batchWindow, "batchWindow");
+    _batchWindowNanos = batchWindow * 1000000L;
+  }
+
+  public long getBatchWindow() {
+    return _batchWindowNanos / 1000000L;
+  }
+
+  /**
+   * Sets the number of values that can be waiting to be written before threads adding more are blocked.
+   * 
+   * @param maxPendingValues the maximum number of pending values
+   */
+  public void setMaxPendingValues(final int maxPendingValues) {
+    ArgumentChecker.notNegativeOrZero(maxPendingValues, "maxPendingValues");
+    _maxPendingValues = maxPendingValues;
+  }
+
+  public int getMaxPendingValues() {
+    return _maxPendingValues;
+  }
+
   protected ExecutorService getExecutorService() {
     return _executorService;
   }
@@ -165,6 +314,14 @@ public class WriteBehindViewComputationCache extends FilteredViewComputationCach
     return super.getValues(specifications);
   }
 
+  private long getPendingCount() {
+    return _valuesQueued.get() - _valuesWritten.get();
+  }
+
+  private boolean isBatchReady() {
+    return (getPendingCount() >= getMaxBatchSize()) || !_flushListeners.isEmpty();
+  }
+
   private void startWriterIfNotRunning() {
     if (_valueWriter.getAndSet(_valueWriterRunnable) == null) {
       s_logger.info("Starting write-behind thread for {}", WriteBehindViewComputationCache.this.hashCode());
@@ -172,11 +329,87 @@ public class WriteBehindViewComputationCache extends FilteredViewComputationCach
     }
   }
 
+  private void valuesQueued(final int count) {
+    final long pending = _valuesQueued.addAndGet(count) - _valuesWritten.get();
+    startWriterIfNotRunning();
+    if ((_batchWindowNanos > 0) && (pending >= getMaxBatchSize())) {
+      // Wake the writer if it is waiting for a full batch
+      synchronized (_writerLock) {
+        _writerLock.notifyAll();
+      }
+    }
+    if (pending >= getMaxPendingValues()) {
+      synchronized (_writerLock) {
+        while (getPendingCount() >= getMaxPendingValues()) {
+          s_logger.debug("Blocking until write-behind thread catches up");
+          try {
+            _writerLock.wait();
+          } catch (InterruptedException e) {
+            // Stop blocking, but leave the flag set for the caller to act on
+            Thread.currentThread().interrupt();
+            return;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Notifies a flush listener if it has been satisfied, or if it covers a failed write.
+   * 
+   * @return true if the listener was notified
+   */
+  private boolean notifyFlushListener(final Pair<Long, FlushListener> listener, final boolean waiting) {
+    final WriteFailure failure = _writeFailure.get();
+    if ((failure != null) && failure.isCoveredBy(listener.getFirst())) {
+      if (!waiting || _flushListeners.remove(listener)) {
+        listener.getSecond().flushFailed(failure.getException());
+        return true;
+      }
+    } else if (_valuesWritten.get() >= listener.getFirst()) {
+      if (!waiting || _flushListeners.remove(listener)) {
+        listener.getSecond().flushed();
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void notifyFlushListeners() {
+    final Iterator<Pair<Long, FlushListener>> itr = _flushListeners.iterator();
+    while (itr.hasNext()) {
+      notifyFlushListener(itr.next(), true);
+    }
+  }
+
+  private void valuesWritten(final int count) {
+    _valuesWritten.addAndGet(count);
+    notifyFlushListeners();
+    if ((_batchWindowNanos > 0) || (getMaxPendingValues() < Integer.MAX_VALUE)) {
+      synchronized (_writerLock) {
+        _writerLock.notifyAll();
+      }
+    }
+  }
+
+  private void writeFailed(final RuntimeException exception, final int dropped) {
+    // Values are written in the order they were queued, so the dropped ones follow those already written. The failure
+    // is recorded before the values are counted so that a flush seeing them counted also sees the failure.
+    final WriteFailure failure = new WriteFailure(_valuesWritten.get() + 1, _valuesWritten.get() + dropped, exception);
+    s_logger.warn("Write-behind failed, dropping " + failure, exception);
+    _writeFailure.compareAndSet(null, failure);
+    _valuesWritten.addAndGet(dropped);
+    notifyFlushListeners();
+    synchronized (_writerLock) {
+      _writerLock.notifyAll();
+    }
+  }
+
   @Override
   public void putValue(final ComputedValue value) {
     getPending().put(value.getSpecification(), value.getValue());
     _pendingValues.add(value);
-    startWriterIfNotRunning();
+    valuesQueued(1);
   }
 
   @Override
@@ -185,7 +418,7 @@ public class WriteBehindViewComputationCache extends FilteredViewComputationCach
       getPending().put(value.getSpecification(), value.getValue());
     }
     _pendingValues.addAll(values);
-    startWriterIfNotRunning();
+    valuesQueued(values.size());
   }
 
   public void putValues(final Collection<ComputedValue> values, final DeferredInvocationStatistics statistics) {
@@ -193,6 +426,30 @@ public class WriteBehindViewComputationCache extends FilteredViewComputationCach
     putValues(values);
   }
 
+  /**
+   * Requests notification when all values queued so far have been written to the underlying cache, without waiting
+   * for it. If there is nothing pending the listener is called immediately. Otherwise it will be called by the
+   * write-behind thread, which stops waiting for a full batch. Do not call this concurrently with {@link #putValue}
+   * or {@link #putValues}.
+   * 
+   * @param listener the listener to notify, not null
+   */
+  public void flush(final FlushListener listener) {
+    ArgumentChecker.notNull(listener, "listener");
+    final Pair<Long, FlushListener> barrier = Pair.of(_valuesQueued.get(), listener);
+    if (notifyFlushListener(barrier, false)) {
+      return;
+    }
+    _flushListeners.add(barrier);
+    if (_batchWindowNanos > 0) {
+      synchronized (_writerLock) {
+        _writerLock.notifyAll();
+      }
+    }
+    // The writer may have finished, or failed, before the listener was added. Whoever removes it calls it.
+    notifyFlushListener(barrier, true);
+  }
+
   /**
    * Block until all "write-behind" operations have completed. Do not call this concurrently with
    * {@link #putValue} or {@link #putValues}.
@@ -215,6 +472,10 @@ public class WriteBehindViewComputationCache extends FilteredViewComputationCach
     } else {
       s_logger.debug("No pending writes");
     }
+    final WriteFailure failure = _writeFailure.get();
+    if (failure != null) {
+      throw new OpenGammaRuntimeException("Error synchronising write-behind cache", failure.getException());
+    }
   }
 
 }
@@ -0,0 +1,67 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ * 
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.cache.jmx;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opengamma.engine.view.cache.DefaultViewComputationCacheSource;
+
+/**
+ * ViewComputationCacheSourceMBean implementation.
+ */
+public final class ViewComputationCacheSource implements ViewComputationCacheSourceMBean {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(ViewComputationCacheSource.class);
+
+  private final DefaultViewComputationCacheSource _underlying;
+
+  private ViewComputationCacheSource(final DefaultViewComputationCacheSource underlying) {
+    _underlying = underlying;
+  }
+
+  private DefaultViewComputationCacheSource getUnderlying() {
+    return _underlying;
+  }
+
+  public static void registerMBeans(final DefaultViewComputationCacheSource cacheSource, final MBeanServer server) throws JMException {
+    final ObjectName name = new ObjectName("com.opengamma:type=ViewComputationCacheSource,name=" + cacheSource.toString());
+    final ViewComputationCacheSource instance = new ViewComputationCacheSource(cacheSource);
+    try {
+      server.registerMBean(instance, name);
+    } catch (InstanceAlreadyExistsException e) {
+      s_logger.warn("JMX MBean {} already exists - replacing", name);
+      server.unregisterMBean(name);
+      server.registerMBean(instance, name);
+    }
+  }
+
+  @Override
+  public long getCyclesReleased() {
+    return getUnderlying().getCyclesReleased();
+  }
+
+  @Override
+  public long getTotalBytesCopied() {
+    return getUnderlying().getTotalBytesCopied();
+  }
+
+  @Override
+  public long getLastBytesCopied() {
+    return getUnderlying().getLastBytesCopied();
+  }
+
+  @Override
+  public int getActiveCacheCount() {
+    return getUnderlying().getActiveCacheCount();
+  }
+
+}
@@ -0,0 +1,18 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ * 
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.cache.jmx;
+
+/**
+ * JMX MBean interface for the statistics of a computation cache source.
+ */
+public interface ViewComputationCacheSourceMBean {
+
+  long getCyclesReleased();
+  long getTotalBytesCopied();
+  long getLastBytesCopied();
+  int getActiveCacheCount();
+
+}
@@ -0,0 +1,26 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calc;
+
+/**
+ * Enumerates the strategies used by {@link MultipleNodeExecutor} to partition a dependency graph into jobs.
+ */
+public enum GraphPartitioning {
+
+  /**
+   * Fragments are merged using structural rules only. Fragments with the same inputs are merged until they reach the
+   * minimum job size and fragments with a single dependent are merged into it while below the maximum job size.
+   */
+  HEURISTIC,
+
+  /**
+   * Fragments are merged along the critical path, estimated from the measured function and data transfer costs,
+   * whenever the merge does not lengthen the predicted execution time of the graph. Fragments still below the minimum
+   * job size are then merged with others that have the same inputs.
+   */
+  CRITICAL_PATH;
+
+}
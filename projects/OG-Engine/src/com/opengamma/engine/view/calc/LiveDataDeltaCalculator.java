@@ -5,14 +5,22 @@
  */
 package com.opengamma.engine.view.calc;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 
 import org.apache.commons.lang.ObjectUtils;
 
 import com.opengamma.engine.depgraph.DependencyGraph;
 import com.opengamma.engine.depgraph.DependencyNode;
+import com.opengamma.engine.function.LiveDataSourcingFunction;
 import com.opengamma.engine.value.ValueRequirement;
 import com.opengamma.engine.value.ValueSpecification;
 import com.opengamma.engine.view.cache.ViewComputationCache;
@@ -23,6 +31,10 @@ import com.opengamma.util.tuple.Pair;
  * Determines which nodes in a graph have changed. A node has 'changed' if and only 
  * if its subtree contains a node for which PreviousLiveDataInput != CurrentLiveDataInput.
  * Note that this excludes changes due to passage of the system clock. 
+ * <p>
+ * The changed nodes are found by walking forwards from the live data inputs which differ, so the cost is
+ * proportional to the number of live data inputs and the nodes affected by a change. The only pass over the whole
+ * graph is the one made for [ENG-216] when an input has changed.
  */
 public class LiveDataDeltaCalculator {
 
@@ -31,7 +43,8 @@ public class LiveDataDeltaCalculator {
   private final ViewComputationCache _previousCache;
 
   private final Set<DependencyNode> _changedNodes = new HashSet<DependencyNode>();
-  private final Set<DependencyNode> _unchangedNodes = new HashSet<DependencyNode>();
+  private Set<DependencyNode> _unchangedNodes;
+  private Map<ValueSpecification, Collection<DependencyNode>> _liveDataNodes;
 
   private boolean _done; // = false
 
@@ -66,7 +79,10 @@ public class LiveDataDeltaCalculator {
     if (!_done) {
       throw new IllegalStateException("Call computeDelta() first");
     }
-
+    if (_unchangedNodes == null) {
+      _unchangedNodes = new HashSet<DependencyNode>(_graph.getDependencyNodes());
+      _unchangedNodes.removeAll(_changedNodes);
+    }
     return Collections.unmodifiableSet(_unchangedNodes);
   }
 
@@ -75,46 +91,90 @@ public class LiveDataDeltaCalculator {
       throw new IllegalStateException("Cannot determine delta twice");
     }
 
-    for (DependencyNode rootNode : _graph.getRootNodes()) {
-      computeDelta(rootNode);
+    final Set<Pair<ValueRequirement, ValueSpecification>> liveData = _graph.getAllRequiredLiveData();
+    if (!liveData.isEmpty()) {
+      final List<ValueSpecification> liveDataSpecifications = new ArrayList<ValueSpecification>(liveData.size());
+      for (Pair<ValueRequirement, ValueSpecification> liveDataItem : liveData) {
+        liveDataSpecifications.add(liveDataItem.getSecond());
+      }
+      // Fetch the old and new inputs in bulk rather than making two cache requests per node
+      final Map<ValueSpecification, Object> previousValues = new HashMap<ValueSpecification, Object>();
+      for (Pair<ValueSpecification, Object> previousValue : _previousCache.getValues(liveDataSpecifications)) {
+        previousValues.put(previousValue.getFirst(), previousValue.getSecond());
+      }
+      final Map<ValueSpecification, Object> values = new HashMap<ValueSpecification, Object>();
+      for (Pair<ValueSpecification, Object> value : _cache.getValues(liveDataSpecifications)) {
+        values.put(value.getFirst(), value.getSecond());
+      }
+      // Values missing from a cache are not returned so compare over all of the inputs
+      for (ValueSpecification liveDataSpecification : liveDataSpecifications) {
+        if (!ObjectUtils.equals(previousValues.get(liveDataSpecification), values.get(liveDataSpecification))) {
+          for (DependencyNode node : getNodesRequiring(liveDataSpecification)) {
+            markChanged(node);
+          }
+        }
+      }
     }
 
     _done = true;
   }
 
-  private boolean computeDelta(DependencyNode node) {
-    if (_changedNodes.contains(node)) {
-      return true;
+  /**
+   * Returns the nodes which source a live data value. This is the node producing it and, for [ENG-216], any nodes
+   * whose functions declare it as a live data requirement. Finding the latter needs a scan of all nodes, made once
+   * the first changed input is found.
+   */
+  private Collection<DependencyNode> getNodesRequiring(final ValueSpecification liveData) {
+    if (_liveDataNodes == null) {
+      _liveDataNodes = new HashMap<ValueSpecification, Collection<DependencyNode>>();
+      for (DependencyNode liveDataNode : _graph.getDependencyNodes()) {
+        if (liveDataNode.getFunction().getFunction() instanceof LiveDataSourcingFunction) {
+          continue;
+        }
+        final Pair<ValueRequirement, ValueSpecification> requiredLiveData = liveDataNode.getRequiredLiveData();
+        if (requiredLiveData != null) {
+          Collection<DependencyNode> nodes = _liveDataNodes.get(requiredLiveData.getSecond());
+          if (nodes == null) {
+            nodes = new ArrayList<DependencyNode>();
+            _liveDataNodes.put(requiredLiveData.getSecond(), nodes);
+          }
+          nodes.add(liveDataNode);
+        }
+      }
     }
-    if (_unchangedNodes.contains(node)) {
-      return false;
+    final Collection<DependencyNode> nodes = _liveDataNodes.get(liveData);
+    final DependencyNode node = _graph.getNodeProducing(liveData);
+    if ((node == null) || !(node.getFunction().getFunction() instanceof LiveDataSourcingFunction)) {
+      return (nodes != null) ? nodes : Collections.<DependencyNode>emptySet();
     }
-
-    boolean hasChanged = false;
-    for (DependencyNode inputNode : node.getInputNodes()) {
-      // if any children changed, this node automatically requires recomputation.
-      hasChanged |= computeDelta(inputNode);
+    if (nodes == null) {
+      return Collections.singleton(node);
     }
+    final Collection<DependencyNode> result = new ArrayList<DependencyNode>(nodes.size() + 1);
+    result.add(node);
+    result.addAll(nodes);
+    return result;
+  }
 
-    if (!hasChanged) {
-      // if no children changed, the node may still require recomputation
-      // due to LiveData changes affecting the function of the node.
-      Pair<ValueRequirement, ValueSpecification> liveData = node.getRequiredLiveData();
-      if (liveData != null) {
-        Object oldValue = _previousCache.getValue(liveData.getSecond());
-        Object newValue = _cache.getValue(liveData.getSecond());
-        if (!ObjectUtils.equals(oldValue, newValue)) {
-          hasChanged = true;
+  /**
+   * Marks a node, and everything in the graph that depends on it, as changed. The dependents are walked with an
+   * explicit queue rather than recursion so that long chains of nodes can't overflow the stack.
+   */
+  private void markChanged(final DependencyNode node) {
+    if (!_changedNodes.add(node)) {
+      return;
+    }
+    final Queue<DependencyNode> pending = new LinkedList<DependencyNode>();
+    pending.add(node);
+    DependencyNode changed;
+    while ((changed = pending.poll()) != null) {
+      for (DependencyNode dependent : changed.getDependentNodes()) {
+        // Dependents may be outside of the graph if it is a sub-graph
+        if (_graph.containsNode(dependent) && _changedNodes.add(dependent)) {
+          pending.add(dependent);
         }
       }
     }
-
-    if (hasChanged) {
-      _changedNodes.add(node);
-    } else {
-      _unchangedNodes.add(node);
-    }
-
-    return hasChanged;
   }
+
 }
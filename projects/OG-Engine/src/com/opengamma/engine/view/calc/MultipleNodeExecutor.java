@@ -8,11 +8,13 @@ package com.opengamma.engine.view.calc;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.Set;
@@ -51,9 +53,15 @@ public class MultipleNodeExecutor implements DependencyGraphExecutor<Object> {
   private final int _maxConcurrency;
   private final FunctionCosts _functionCosts;
   private final ExecutionPlanCache _cache;
+  private final GraphPartitioning _partitioning;
 
   protected MultipleNodeExecutor(final SingleComputationCycle cycle, final int minimumJobItems, final int maximumJobItems, final long minimumJobCost, final long maximumJobCost,
       final int maximumConcurrency, final FunctionCosts functionCosts, final ExecutionPlanCache cache) {
+    this(cycle, minimumJobItems, maximumJobItems, minimumJobCost, maximumJobCost, maximumConcurrency, functionCosts, cache, GraphPartitioning.HEURISTIC);
+  }
+
+  protected MultipleNodeExecutor(final SingleComputationCycle cycle, final int minimumJobItems, final int maximumJobItems, final long minimumJobCost, final long maximumJobCost,
+      final int maximumConcurrency, final FunctionCosts functionCosts, final ExecutionPlanCache cache, final GraphPartitioning partitioning) {
     // Don't check for null as the factory does this, plus for testing we don't have a cycle and override the methods that use it
     _cycle = cycle;
     _minJobItems = minimumJobItems;
@@ -63,6 +71,7 @@ public class MultipleNodeExecutor implements DependencyGraphExecutor<Object> {
     _maxConcurrency = maximumConcurrency;
     _functionCosts = functionCosts;
     _cache = cache;
+    _partitioning = partitioning;
   }
 
   protected long getFunctionInitId() {
@@ -104,6 +113,7 @@ public class MultipleNodeExecutor implements DependencyGraphExecutor<Object> {
     if (graph.getSize() <= getMinJobItems()) {
       // If the graph is too small, run it as-is
       final RootGraphFragment fragment = new RootGraphFragment(context, statistics, graph.getExecutionOrder());
+      fragment.setPredictedDuration(fragment.getJobCost());
       statistics.graphProcessed(graph.getCalculationConfigurationName(), 1, graph.getSize(), fragment.getJobInvocationCost(), Double.NaN);
       context.allocateFragmentMap(1);
       for (ValueSpecification terminalOutput : graph.getTerminalOutputSpecifications()) {
@@ -119,25 +129,25 @@ public class MultipleNodeExecutor implements DependencyGraphExecutor<Object> {
       root.getOutputFragments().add(logicalRoot);
       logicalRoot.getInputFragments().add(root);
     }
-    int failCount = 0;
-    do {
-      if (mergeSharedInputs(logicalRoot, allFragments)) {
-        failCount = 0;
-      } else {
-        if (++failCount >= 2) {
-          break;
-        }
-      }
-      if (mergeSingleDependencies(allFragments)) {
-        failCount = 0;
-      } else {
-        if (++failCount >= 2) {
-          break;
-        }
+    if (getPartitioning() == GraphPartitioning.CRITICAL_PATH) {
+      while (mergeCriticalPaths(allFragments)) {
+        // Repeat until no merge can be made without lengthening the critical path
       }
-    } while (true);
+      mergeSharedInputs(logicalRoot, allFragments);
+    } else {
+      mergeHeuristic(logicalRoot, allFragments);
+    }
     findTailFragments(allFragments);
     context.allocateFragmentMap(allFragments.size());
+    // The predicted duration is the latest estimated finishing time of any fragment
+    long predictedDuration = 0;
+    for (GraphFragment fragment : allFragments) {
+      final long finish = fragment.getStartTime() + fragment.getJobCost();
+      if (finish > predictedDuration) {
+        predictedDuration = finish;
+      }
+    }
+    logicalRoot.setPredictedDuration(predictedDuration);
     // Set block counts on non-leaf nodes & leave only the leaves in the set
     logicalRoot.initBlockCount();
     final Iterator<GraphFragment> fragmentIterator = allFragments.iterator();
@@ -223,6 +233,10 @@ public class MultipleNodeExecutor implements DependencyGraphExecutor<Object> {
     return _functionCosts;
   }
 
+  public GraphPartitioning getPartitioning() {
+    return _partitioning;
+  }
+
   private Collection<GraphFragment> graphToFragments(final GraphFragmentContext context, final DependencyGraph graph, final Set<GraphFragment> allFragments) {
     final Map<DependencyNode, GraphFragment> node2fragment = new HashMap<DependencyNode, GraphFragment>();
     final Collection<DependencyNode> rootNodes = graph.getRootNodes();
@@ -255,6 +269,181 @@ public class MultipleNodeExecutor implements DependencyGraphExecutor<Object> {
     }
   }
 
+  /**
+   * Applies the structural merge rules until neither makes any further changes.
+   */
+  private void mergeHeuristic(final GraphFragment logicalRoot, final Set<GraphFragment> allFragments) {
+    int failCount = 0;
+    do {
+      if (mergeSharedInputs(logicalRoot, allFragments)) {
+        failCount = 0;
+      } else {
+        if (++failCount >= 2) {
+          break;
+        }
+      }
+      if (mergeSingleDependencies(allFragments)) {
+        failCount = 0;
+      } else {
+        if (++failCount >= 2) {
+          break;
+        }
+      }
+    } while (true);
+  }
+
+  /**
+   * Orders the fragments so that each appears after all of its inputs.
+   */
+  private static List<GraphFragment> topologicalOrder(final Set<GraphFragment> allFragments) {
+    final List<GraphFragment> order = new ArrayList<GraphFragment>(allFragments.size());
+    final Map<GraphFragment, AtomicInteger> blockCount = new HashMap<GraphFragment, AtomicInteger>();
+    for (GraphFragment fragment : allFragments) {
+      if (fragment.getInputFragments().isEmpty()) {
+        order.add(fragment);
+      } else {
+        blockCount.put(fragment, new AtomicInteger(fragment.getInputFragments().size()));
+      }
+    }
+    for (int i = 0; i < order.size(); i++) {
+      for (GraphFragment output : order.get(i).getOutputFragments()) {
+        final AtomicInteger count = blockCount.get(output);
+        if ((count != null) && (count.decrementAndGet() == 0)) {
+          order.add(output);
+        }
+      }
+    }
+    return order;
+  }
+
+  /**
+   * Merges fragments with the input that is expected to finish last (i.e. the one on its critical path) if doing so
+   * does not increase the estimated duration of the graph. Estimates are based on the fragment costs which include
+   * the cost of moving values through the shared cache, so a merge that makes values private also reduces the cost of
+   * the merged fragment. To avoid creating cycles a merge is only made if the input has no other dependents or the
+   * fragment has no other inputs.
+   */
+  private boolean mergeCriticalPaths(final Set<GraphFragment> allFragments) {
+    final List<GraphFragment> order = topologicalOrder(allFragments);
+    // Estimate start times, working forwards from the leaves
+    final Map<GraphFragment, Long> startTimes = new HashMap<GraphFragment, Long>();
+    long duration = 0;
+    for (GraphFragment fragment : order) {
+      long start = 0;
+      for (GraphFragment input : fragment.getInputFragments()) {
+        final long finish = startTimes.get(input) + input.getJobCost();
+        if (finish > start) {
+          start = finish;
+        }
+      }
+      startTimes.put(fragment, start);
+      if (start + fragment.getJobCost() > duration) {
+        duration = start + fragment.getJobCost();
+      }
+    }
+    // Estimate the time from each fragment starting to the graph completing, working backwards from the roots
+    final Map<GraphFragment, Long> remainingTimes = new HashMap<GraphFragment, Long>();
+    final ListIterator<GraphFragment> reverseIterator = order.listIterator(order.size());
+    while (reverseIterator.hasPrevious()) {
+      final GraphFragment fragment = reverseIterator.previous();
+      long remaining = 0;
+      for (GraphFragment output : fragment.getOutputFragments()) {
+        final Long time = remainingTimes.get(output);
+        if ((time != null) && (time > remaining)) {
+          remaining = time;
+        }
+      }
+      remainingTimes.put(fragment, remaining + fragment.getJobCost());
+    }
+    // Consider fragments on the longest paths first
+    final List<GraphFragment> candidates = new ArrayList<GraphFragment>(order);
+    Collections.sort(candidates, new Comparator<GraphFragment>() {
+      @Override
+      public int compare(final GraphFragment o1, final GraphFragment o2) {
+        final long path1 = startTimes.get(o1) + remainingTimes.get(o1);
+        final long path2 = startTimes.get(o2) + remainingTimes.get(o2);
+        return (path1 > path2) ? -1 : ((path1 < path2) ? 1 : 0);
+      }
+    });
+    // Estimates are invalidated by a merge, so each fragment takes part in at most one merge per pass
+    final Set<GraphFragment> merged = new HashSet<GraphFragment>();
+    int changes = 0;
+    for (GraphFragment fragment : candidates) {
+      if (fragment.getInputFragments().isEmpty() || merged.contains(fragment)) {
+        continue;
+      }
+      GraphFragment critical = null;
+      long criticalFinish = -1;
+      for (GraphFragment input : fragment.getInputFragments()) {
+        final long finish = startTimes.get(input) + input.getJobCost();
+        if (finish > criticalFinish) {
+          critical = input;
+          criticalFinish = finish;
+        }
+      }
+      if (merged.contains(critical)) {
+        continue;
+      }
+      if ((critical.getOutputFragments().size() != 1) && (fragment.getInputFragments().size() != 1)) {
+        // Merge might create a cycle
+        continue;
+      }
+      if (!fragment.canPrependFragment(critical, getMaxJobItems(), getMaxJobCost())) {
+        // Can't merge
+        continue;
+      }
+      // The merged fragment can't start until the inputs to both are available
+      long start = startTimes.get(critical);
+      for (GraphFragment input : fragment.getInputFragments()) {
+        if (input != critical) {
+          final long finish = startTimes.get(input) + input.getJobCost();
+          if (finish > start) {
+            start = finish;
+          }
+        }
+      }
+      final long finish = start + critical.getJobCost() + fragment.getJobCost();
+      if (finish + remainingTimes.get(fragment) - fragment.getJobCost() > duration) {
+        // Would lengthen the path through the fragment
+        continue;
+      }
+      boolean delaysOthers = false;
+      for (GraphFragment output : critical.getOutputFragments()) {
+        if (output != fragment) {
+          final Long time = remainingTimes.get(output);
+          if ((time != null) && (finish + time > duration)) {
+            delaysOthers = true;
+            break;
+          }
+        }
+      }
+      if (delaysOthers) {
+        // Would lengthen the path through another dependent of the input
+        continue;
+      }
+      // Merge the input with the fragment and slice it out of the graph
+      fragment.prependFragment(critical);
+      allFragments.remove(critical);
+      fragment.getInputFragments().remove(critical);
+      for (GraphFragment input : critical.getInputFragments()) {
+        fragment.getInputFragments().add(input);
+        input.getOutputFragments().remove(critical);
+        input.getOutputFragments().add(fragment);
+      }
+      for (GraphFragment output : critical.getOutputFragments()) {
+        if (output != fragment) {
+          output.getInputFragments().remove(critical);
+          output.getInputFragments().add(fragment);
+          fragment.getOutputFragments().add(output);
+        }
+      }
+      merged.add(fragment);
+      merged.add(critical);
+      changes++;
+    }
+    return changes > 0;
+  }
+
   /**
    * Finds pairs of nodes with the same input set (i.e. that would execute concurrently) that are below the minimum job size
    * and merge them together.
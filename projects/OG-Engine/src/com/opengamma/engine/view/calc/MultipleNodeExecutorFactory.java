@@ -5,6 +5,9 @@
  */
 package com.opengamma.engine.view.calc;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.springframework.beans.factory.InitializingBean;
 
 import com.opengamma.engine.view.calcnode.stats.FunctionCosts;
@@ -25,6 +28,8 @@ public class MultipleNodeExecutorFactory implements DependencyGraphExecutorFacto
   private long _maximumJobCost = Long.MAX_VALUE;
   private int _maximumConcurrency = Integer.MAX_VALUE;
   private FunctionCosts _functionCosts;
+  private GraphPartitioning _partitioning = GraphPartitioning.HEURISTIC;
+  private final Map<String, GraphPartitioning> _viewPartitioning = new ConcurrentHashMap<String, GraphPartitioning>();
 
   public void setMinimumJobItems(final int minimumJobItems) {
     _minimumJobItems = minimumJobItems;
@@ -86,6 +91,44 @@ public class MultipleNodeExecutorFactory implements DependencyGraphExecutorFacto
     return _functionCosts;
   }
 
+  /**
+   * Sets the partitioning strategy used for views that don't have one set by {@link #setViewPartitioning}.
+   * 
+   * @param partitioning the default partitioning strategy
+   */
+  public void setPartitioning(final GraphPartitioning partitioning) {
+    ArgumentChecker.notNull(partitioning, "partitioning");
+    _partitioning = partitioning;
+    invalidateExecutionPlanCache();
+  }
+
+  public GraphPartitioning getPartitioning() {
+    return _partitioning;
+  }
+
+  /**
+   * Sets the partitioning strategies to use for specific views, replacing any previously set.
+   * 
+   * @param viewPartitioning the partitioning strategies keyed by view definition name
+   */
+  public void setViewPartitioning(final Map<String, GraphPartitioning> viewPartitioning) {
+    ArgumentChecker.notNull(viewPartitioning, "viewPartitioning");
+    _viewPartitioning.clear();
+    _viewPartitioning.putAll(viewPartitioning);
+    invalidateExecutionPlanCache();
+  }
+
+  /**
+   * Returns the partitioning strategy to use for a view.
+   * 
+   * @param viewName the view definition name
+   * @return the partitioning strategy, not null
+   */
+  public GraphPartitioning getPartitioning(final String viewName) {
+    final GraphPartitioning partitioning = _viewPartitioning.get(viewName);
+    return (partitioning != null) ? partitioning : getPartitioning();
+  }
+
   public void setCacheSize(final int size) {
     _executionPlanCache = new ExecutionPlanCache(EHCacheUtils.createCacheManager(), size);
   }
@@ -93,7 +136,8 @@ public class MultipleNodeExecutorFactory implements DependencyGraphExecutorFacto
   @Override
   public MultipleNodeExecutor createExecutor(final SingleComputationCycle cycle) {
     ArgumentChecker.notNull(cycle, "cycle");
-    return new MultipleNodeExecutor(cycle, getMinimumJobItems(), getMaximumJobItems(), getMinimumJobCost(), getMaximumJobCost(), getMaximumConcurrency(), getFunctionCosts(), _executionPlanCache);
+    return new MultipleNodeExecutor(cycle, getMinimumJobItems(), getMaximumJobItems(), getMinimumJobCost(), getMaximumJobCost(), getMaximumConcurrency(), getFunctionCosts(), _executionPlanCache,
+        getPartitioning(cycle.getViewDefinition().getName()));
   }
 
   @Override
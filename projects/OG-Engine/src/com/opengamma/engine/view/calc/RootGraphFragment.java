@@ -13,14 +13,20 @@ import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.opengamma.engine.depgraph.DependencyNode;
 import com.opengamma.engine.view.calc.stats.GraphExecutorStatisticsGatherer;
 import com.opengamma.engine.view.calcnode.CalculationJobResult;
 
 /* package */class RootGraphFragment extends GraphFragment implements Future<Object> {
 
+  private static final Logger s_logger = LoggerFactory.getLogger(RootGraphFragment.class);
+
   private final GraphExecutorStatisticsGatherer _statistics;
   private long _jobStarted;
+  private long _predictedDuration;
   private boolean _done;
 
   public RootGraphFragment(final GraphFragmentContext context, final GraphExecutorStatisticsGatherer statistics) {
@@ -39,12 +45,29 @@ import com.opengamma.engine.view.calcnode.CalculationJobResult;
     if (!isCancelled()) {
       _done = true;
       notifyAll();
-      _statistics.graphExecuted(getContext().getGraph().getCalculationConfigurationName(), getContext().getGraph().getSize(), getContext().getExecutionTime(), System.nanoTime() - _jobStarted);
+      final String calcConfig = getContext().getGraph().getCalculationConfigurationName();
+      final long duration = System.nanoTime() - _jobStarted;
+      _statistics.graphExecuted(calcConfig, getContext().getGraph().getSize(), getContext().getExecutionTime(), duration);
+      _statistics.graphMakespan(calcConfig, _predictedDuration, duration);
+      s_logger.debug("Graph {} predicted duration {}ns, actual duration {}ns", new Object[] {calcConfig, _predictedDuration, duration});
       getContext().freeSharedCacheValues();
       getContext().getExecutor().getCache().cacheExecutionPlan(getContext().getGraph(), this);
     }
   }
 
+  /**
+   * Sets the duration of the graph execution estimated from the fragment costs when the plan was created.
+   * 
+   * @param predictedDuration the estimated duration in nanoseconds
+   */
+  public void setPredictedDuration(final long predictedDuration) {
+    _predictedDuration = predictedDuration;
+  }
+
+  public long getPredictedDuration() {
+    return _predictedDuration;
+  }
+
   /**
    * Only gets called if this was the only node created because the dep graph was
    * too small.
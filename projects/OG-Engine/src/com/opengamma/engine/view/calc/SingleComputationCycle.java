@@ -8,11 +8,13 @@ package com.opengamma.engine.view.calc;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
@@ -41,6 +43,7 @@ import com.opengamma.engine.function.CompiledFunctionDefinition;
 import com.opengamma.engine.function.LiveDataSourcingFunction;
 import com.opengamma.engine.function.YieldCurveDataSourcingFunction;
 import com.opengamma.engine.livedata.LiveDataSnapshotProvider;
+import com.opengamma.engine.livedata.TimestampedLiveDataSnapshotProvider;
 import com.opengamma.engine.value.ComputedValue;
 import com.opengamma.engine.value.ValueProperties;
 import com.opengamma.engine.value.ValuePropertyNames;
@@ -54,11 +57,13 @@ import com.opengamma.engine.view.cache.CacheSelectHint;
 import com.opengamma.engine.view.cache.MissingLiveDataSentinel;
 import com.opengamma.engine.view.cache.ViewComputationCache;
 import com.opengamma.engine.view.calc.stats.GraphExecutorStatisticsGatherer;
+import com.opengamma.engine.view.calc.stats.ViewCycleLatencyStatistics;
 import com.opengamma.engine.view.compilation.CompiledViewDefinitionWithGraphsImpl;
 import com.opengamma.engine.view.execution.ViewCycleExecutionOptions;
 import com.opengamma.engine.view.execution.ViewExecutionOptions;
 import com.opengamma.id.UniqueIdentifier;
 import com.opengamma.util.ArgumentChecker;
+import com.opengamma.util.monitor.LatencyClock;
 import com.opengamma.util.tuple.Pair;
 
 /**
@@ -93,11 +98,18 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
    * Nanoseconds, see System.nanoTime()
    */
   private volatile long _endTime;
+  
+  /**
+   * When the most recent tick in the live data snapshot was received, 0 if not known.
+   * See {@link LatencyClock}.
+   */
+  private long _inputTimestamp;
 
   private final ReentrantReadWriteLock _nodeExecutionLock = new ReentrantReadWriteLock();
   private final Set<DependencyNode> _executedNodes = new HashSet<DependencyNode>();
   private final Set<DependencyNode> _failedNodes = new HashSet<DependencyNode>();
   private final Map<String, ViewComputationCache> _cachesByCalculationConfiguration = new HashMap<String, ViewComputationCache>();
+  private final Map<String, Set<DependencyNode>> _changedNodesByCalculationConfiguration = new HashMap<String, Set<DependencyNode>>();
 
   // Output
   private final InMemoryViewComputationResultModel _resultModel;
@@ -259,12 +271,17 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
     }
     _startTime = System.nanoTime();
     _state = ViewCycleState.EXECUTING;
+    final ViewCycleLatencyStatistics latencyStatistics = getViewProcessContext().getCycleLatencyStatistics();
 
     createAllCaches();    
     prepareInputs();
+    long phaseStart = System.nanoTime();
+    latencyStatistics.getPrepareInputs().record(phaseStart - _startTime);
     
     if (previousCycle != null) {
       computeDelta(previousCycle);
+      latencyStatistics.getComputeDelta().recordSince(phaseStart);
+      phaseStart = System.nanoTime();
     }
 
     LinkedList<Future<?>> futures = new LinkedList<Future<?>>();
@@ -302,11 +319,19 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
         throw new OpenGammaRuntimeException("Unable to execute dependency graph", e);
       }
     }
+    latencyStatistics.getExecute().recordSince(phaseStart);
+    phaseStart = System.nanoTime();
 
     populateResultModel();
     
     _state = ViewCycleState.EXECUTED;
     _endTime = System.nanoTime();
+    latencyStatistics.getPopulateResultModel().record(_endTime - phaseStart);
+    latencyStatistics.getCycle().record(_endTime - _startTime);
+    // Only the first cycle to use a tick measures its latency; later ones may just be recalculating on a timer
+    if (_inputTimestamp != 0 && (previousCycle == null || previousCycle._inputTimestamp != _inputTimestamp)) {
+      latencyStatistics.getTickToResult().record(LatencyClock.nanosSince(_inputTimestamp));
+    }
   }
  
   //-------------------------------------------------------------------------
@@ -314,7 +339,10 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
     Map<ValueRequirement, ValueSpecification> allLiveDataRequirements = getCompiledViewDefinition().getLiveDataRequirements();
     s_logger.debug("Populating {} market data items for snapshot {}", allLiveDataRequirements.size(), getValuationTime());
 
-    _liveDataSnapshotProvider.snapshot(getInputDataTime().toEpochMillisLong());
+    long snapshot = _liveDataSnapshotProvider.snapshot(getInputDataTime().toEpochMillisLong());
+    if (_liveDataSnapshotProvider instanceof TimestampedLiveDataSnapshotProvider) {
+      _inputTimestamp = ((TimestampedLiveDataSnapshotProvider) _liveDataSnapshotProvider).getSnapshotTimestamp(snapshot);
+    }
 
     Set<ValueSpecification> missingLiveData = new HashSet<ValueSpecification>();
 
@@ -463,33 +491,24 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
       LiveDataDeltaCalculator deltaCalculator = new LiveDataDeltaCalculator(depGraph, cache, previousCache);
       deltaCalculator.computeDelta();
 
+      final Set<DependencyNode> changedNodes = deltaCalculator.getChangedNodes();
       s_logger.info("Computed delta for calculation configuration '{}'. {} nodes out of {} require recomputation.",
-          new Object[] {calcConfigurationName, deltaCalculator.getChangedNodes().size(), depGraph.getSize()});
-
-      Collection<ValueSpecification> specsToCopy = new HashSet<ValueSpecification>();
-      
-      for (DependencyNode unchangedNode : deltaCalculator.getUnchangedNodes()) {
-        markExecuted(unchangedNode);
-        specsToCopy.addAll(unchangedNode.getOutputValues());
+          new Object[] {calcConfigurationName, changedNodes.size(), depGraph.getSize()});
+      _changedNodesByCalculationConfiguration.put(calcConfigurationName, changedNodes);
+
+      // Each cycle has its own cache, which the next cycle's delta is computed against, so every unchanged value must
+      // still be copied from the previous cache. Only that copy is proportional to the size of the graph; the values are
+      // collected from the unchanged nodes rather than by building and pruning a set of every output.
+      final List<ValueSpecification> specsToCopy = new ArrayList<ValueSpecification>(depGraph.getOutputSpecifications().size());
+      for (DependencyNode node : depGraph.getDependencyNodes()) {
+        if (!changedNodes.contains(node)) {
+          specsToCopy.addAll(node.getOutputValues());
+        }
       }
-      
-      copyValues(cache, previousCache, specsToCopy);
+      cache.copySharedValues(previousCache, specsToCopy);
     }
   }
 
-  private void copyValues(ViewComputationCache cache, ViewComputationCache previousCache, Collection<ValueSpecification> specsToCopy) {
-    Collection<Pair<ValueSpecification, Object>> valuesToCopy = previousCache.getValues(specsToCopy);
-    
-    Collection<ComputedValue> newValues = new HashSet<ComputedValue>();
-    for (Pair<ValueSpecification, Object> pair : valuesToCopy) {
-      Object previousValue = pair.getSecond();
-      if (previousValue != null) {
-        newValues.add(new ComputedValue(pair.getFirst(), previousValue));
-      }
-    }
-    cache.putSharedValues(newValues);
-  }
-  
   private void populateResultModel() {
     getResultModel().setResultTimestamp(Instant.now());
     for (String calcConfigurationName : getAllCalculationConfigurationNames()) {
@@ -522,14 +541,14 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
   /**
    * @param calcConfName configuration name
    * @return A dependency graph with nodes already executed stripped out.
-   * See {@link #computeDelta} and how it calls {@link #markExecuted}.
+   * See {@link #computeDelta} for how nodes with unchanged inputs are excluded.
    */
   protected DependencyGraph getExecutableDependencyGraph(String calcConfName) {
     DependencyGraph originalDepGraph = getDependencyGraph(calcConfName);
 
     final boolean haveResolvedStructuredData = _liveDataSnapshotProvider.hasStructuredData();
 
-    DependencyGraph dependencyGraph = originalDepGraph.subGraph(new DependencyNodeFilter() {
+    final DependencyNodeFilter filter = new DependencyNodeFilter() {
       public boolean accept(DependencyNode node) {
         // LiveData functions do not need to be computed.
         if (node.getFunction().getFunction() instanceof LiveDataSourcingFunction) {
@@ -541,8 +560,20 @@ public class SingleComputationCycle implements ViewCycle, EngineResource {
 
         return !isExecuted(node);
       }
-    });
-    return dependencyGraph;
+    };
+    final Set<DependencyNode> changedNodes = _changedNodesByCalculationConfiguration.get(calcConfName);
+    if (changedNodes == null) {
+      return originalDepGraph.subGraph(filter);
+    }
+    // Only the changed nodes need to be considered; the unchanged ones had their values copied by computeDelta. The
+    // sub-graph, and so any cached execution plan for it, depends only on the set of changed nodes.
+    final List<DependencyNode> executableNodes = new ArrayList<DependencyNode>(changedNodes.size());
+    for (DependencyNode node : changedNodes) {
+      if (filter.accept(node)) {
+        executableNodes.add(node);
+      }
+    }
+    return originalDepGraph.subGraph(executableNodes);
   }
 
   //--------------------------------------------------------------------------
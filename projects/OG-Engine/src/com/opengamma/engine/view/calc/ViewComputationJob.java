@@ -27,6 +27,7 @@ import com.opengamma.engine.value.ValueRequirement;
 import com.opengamma.engine.value.ValueSpecification;
 import com.opengamma.engine.view.ViewProcessContext;
 import com.opengamma.engine.view.ViewProcessImpl;
+import com.opengamma.engine.view.compilation.CompiledViewDefinitionCache;
 import com.opengamma.engine.view.compilation.CompiledViewDefinitionWithGraphsImpl;
 import com.opengamma.engine.view.compilation.ViewDefinitionCompiler;
 import com.opengamma.engine.view.execution.ViewCycleExecutionOptions;
@@ -397,8 +398,19 @@ public class ViewComputationJob extends TerminatableJob implements LiveDataSnaps
       return compiledView;
     }
     
+    final CompiledViewDefinitionCache compiledViewCache = getProcessContext().getCompiledViewDefinitionCache();
     try {
-      compiledView = ViewDefinitionCompiler.compile(getViewProcess().getDefinition(), getProcessContext().asCompilationServices(), valuationTime);
+      // Start from the previous compilation, or the stored one, so that only the nodes affected by portfolio changes or
+      // by functions which can't be used at the new valuation time need compiling
+      CompiledViewDefinitionWithGraphsImpl previousView = compiledView;
+      if (previousView == null && compiledViewCache != null) {
+        previousView = compiledViewCache.get(getViewProcess().getDefinition(),
+            getProcessContext().getFunctionCompilationService().compileFunctionRepository(valuationTime), getProcessContext().getComputationTargetResolver());
+      }
+      compiledView = ViewDefinitionCompiler.compile(getViewProcess().getDefinition(), getProcessContext().asCompilationServices(), valuationTime, previousView);
+      if (compiledView != previousView && compiledViewCache != null) {
+        compiledViewCache.put(compiledView, getProcessContext().getFunctionCompilationService().compileFunctionRepository(valuationTime));
+      }
     } catch (Exception e) {
       getViewProcess().viewDefinitionCompilationFailed(valuationTime, e);
       throw new OpenGammaRuntimeException("Error compiling view definition", e);
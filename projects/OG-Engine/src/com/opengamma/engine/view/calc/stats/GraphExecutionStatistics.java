@@ -28,6 +28,9 @@ public class GraphExecutionStatistics {
   private final AtomicLong _processedJobSize = new AtomicLong();
   private final AtomicLong _processedJobCycleCost = new AtomicLong();
   private final AtomicLong _processedJobDataCost = new AtomicLong();
+  private final AtomicLong _predictedGraphs = new AtomicLong();
+  private final AtomicLong _predictedTime = new AtomicLong();
+  private final AtomicLong _predictedActualTime = new AtomicLong();
   private volatile Instant _lastProcessedTime;
   private volatile Instant _lastExecutedTime;
 
@@ -80,6 +83,18 @@ public class GraphExecutionStatistics {
     return _processedJobDataCost.get();
   }
 
+  public long getPredictedGraphs() {
+    return _predictedGraphs.get();
+  }
+
+  public long getPredictedTime() {
+    return _predictedTime.get();
+  }
+
+  public long getPredictedActualTime() {
+    return _predictedActualTime.get();
+  }
+
   public Instant getLastProcessedTime() {
     return _lastProcessedTime;
   }
@@ -142,6 +157,24 @@ public class GraphExecutionStatistics {
     }
   }
 
+  public double getAveragePredictedTime() {
+    final long executions = getPredictedGraphs();
+    if (executions > 0) {
+      return (double) getPredictedTime() / (double) executions / 1e9;
+    } else {
+      return 0;
+    }
+  }
+
+  public double getAveragePredictedActualTime() {
+    final long executions = getPredictedGraphs();
+    if (executions > 0) {
+      return (double) getPredictedActualTime() / (double) executions / 1e9;
+    } else {
+      return 0;
+    }
+  }
+
   public void recordExecution(final int nodeCount, final long executionTime, final long duration) {
     _executedGraphs.incrementAndGet();
     _executedNodes.addAndGet(nodeCount);
@@ -150,6 +183,12 @@ public class GraphExecutionStatistics {
     _lastExecutedTime = Instant.now();
   }
 
+  public void recordMakespan(final long predictedDuration, final long actualDuration) {
+    _predictedGraphs.incrementAndGet();
+    _predictedTime.addAndGet(predictedDuration);
+    _predictedActualTime.addAndGet(actualDuration);
+  }
+
   public void recordProcessing(final int totalJobs, final double meanJobSize, double meanJobCycleCost, double meanJobIOCost) {
     if (Double.isNaN(meanJobCycleCost)) {
       meanJobCycleCost = getAverageJobCycleCost();
@@ -175,6 +214,9 @@ public class GraphExecutionStatistics {
     _processedJobSize.set(0);
     _processedJobCycleCost.set(0);
     _processedJobDataCost.set(0);
+    _predictedGraphs.set(0);
+    _predictedTime.set(0);
+    _predictedActualTime.set(0);
   }
 
   private static void decay(final AtomicLong value, final double factor) {
@@ -191,6 +233,9 @@ public class GraphExecutionStatistics {
     decay(_processedJobSize, factor);
     decay(_processedJobCycleCost, factor);
     decay(_processedJobDataCost, factor);
+    decay(_predictedGraphs, factor);
+    decay(_predictedTime, factor);
+    decay(_predictedActualTime, factor);
   }
 
   public GraphExecutionStatistics snapshot() {
@@ -209,6 +254,9 @@ public class GraphExecutionStatistics {
     _processedJobSize.set(other.getProcessedJobSize());
     _processedJobCycleCost.set(other.getProcessedJobCycleCost());
     _processedJobDataCost.set(other.getProcessedJobDataCost());
+    _predictedGraphs.set(other.getPredictedGraphs());
+    _predictedTime.set(other.getPredictedTime());
+    _predictedActualTime.set(other.getPredictedActualTime());
   }
 
   public void delta(final GraphExecutionStatistics future) {
@@ -221,5 +269,8 @@ public class GraphExecutionStatistics {
     _processedJobSize.set(future.getProcessedJobSize() - getProcessedJobSize());
     _processedJobCycleCost.set(future.getProcessedJobCycleCost() - getProcessedJobCycleCost());
     _processedJobDataCost.set(future.getProcessedJobDataCost() - getProcessedJobDataCost());
+    _predictedGraphs.set(future.getPredictedGraphs() - getPredictedGraphs());
+    _predictedTime.set(future.getPredictedTime() - getPredictedTime());
+    _predictedActualTime.set(future.getPredictedActualTime() - getPredictedActualTime());
   }
 }
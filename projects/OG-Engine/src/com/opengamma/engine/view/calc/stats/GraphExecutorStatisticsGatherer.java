@@ -35,4 +35,14 @@ public interface GraphExecutorStatisticsGatherer {
    */
   void graphExecuted(String calcConfig, int nodeCount, long executionTime, long duration);
 
+  /**
+   * Reports the duration of a graph execution predicted from the function costs when the execution plan was created
+   * against the actual duration.
+   * 
+   * @param calcConfig Calculation configuration name.
+   * @param predictedDuration Predicted time from starting graph processing to completion, in nanoseconds.
+   * @param actualDuration Actual time from starting graph processing to completion, in nanoseconds.
+   */
+  void graphMakespan(String calcConfig, long predictedDuration, long actualDuration);
+
 }
@@ -52,6 +52,11 @@ public class TotallingGraphStatisticsGathererProvider extends PerViewStatisticsG
       getOrCreateConfiguration(calcConfig).recordExecution(nodeCount, executionTime, duration);
     }
 
+    @Override
+    public void graphMakespan(String calcConfig, long predictedDuration, long actualDuration) {
+      getOrCreateConfiguration(calcConfig).recordMakespan(predictedDuration, actualDuration);
+    }
+
     @Override
     public void graphProcessed(String calcConfig, int totalJobs, double meanJobSize, double meanJobCycleCost, double meanJobIOCost) {
       getOrCreateConfiguration(calcConfig).recordProcessing(totalJobs, meanJobSize, meanJobCycleCost, meanJobIOCost);
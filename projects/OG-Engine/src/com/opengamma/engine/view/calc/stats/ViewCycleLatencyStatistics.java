@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ * 
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calc.stats;
+
+import com.opengamma.util.monitor.LatencyHistogram;
+
+/**
+ * Holds histograms of how long the phases of the computation cycles of a view process take.
+ */
+public class ViewCycleLatencyStatistics {
+
+  private final LatencyHistogram _prepareInputs = new LatencyHistogram();
+  private final LatencyHistogram _computeDelta = new LatencyHistogram();
+  private final LatencyHistogram _execute = new LatencyHistogram();
+  private final LatencyHistogram _populateResultModel = new LatencyHistogram();
+  private final LatencyHistogram _cycle = new LatencyHistogram();
+  private final LatencyHistogram _tickToResult = new LatencyHistogram();
+
+  /**
+   * Gets the time taken to snapshot the live data and populate the computation caches with it.
+   * 
+   * @return the histogram, not null
+   */
+  public LatencyHistogram getPrepareInputs() {
+    return _prepareInputs;
+  }
+
+  /**
+   * Gets the time taken to find the nodes unchanged since the previous cycle, in delta cycles.
+   * 
+   * @return the histogram, not null
+   */
+  public LatencyHistogram getComputeDelta() {
+    return _computeDelta;
+  }
+
+  /**
+   * Gets the time taken to execute the dependency graphs.
+   * 
+   * @return the histogram, not null
+   */
+  public LatencyHistogram getExecute() {
+    return _execute;
+  }
+
+  /**
+   * Gets the time taken to copy the results from the computation caches into the result model.
+   * 
+   * @return the histogram, not null
+   */
+  public LatencyHistogram getPopulateResultModel() {
+    return _populateResultModel;
+  }
+
+  /**
+   * Gets the time taken by whole cycles.
+   * 
+   * @return the histogram, not null
+   */
+  public LatencyHistogram getCycle() {
+    return _cycle;
+  }
+
+  /**
+   * Gets the time from the live data server receiving a tick to the result of the first cycle using it being
+   * complete. Only recorded when the live data is timestamped.
+   * 
+   * @return the histogram, not null
+   */
+  public LatencyHistogram getTickToResult() {
+    return _tickToResult;
+  }
+
+  /**
+   * Discards the latencies recorded so far.
+   */
+  public void reset() {
+    _prepareInputs.reset();
+    _computeDelta.reset();
+    _execute.reset();
+    _populateResultModel.reset();
+    _cycle.reset();
+    _tickToResult.reset();
+  }
+
+}
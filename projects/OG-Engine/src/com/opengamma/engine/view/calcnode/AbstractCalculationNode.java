@@ -27,6 +27,7 @@ import com.opengamma.engine.function.FunctionInvoker;
 import com.opengamma.engine.value.ComputedValue;
 import com.opengamma.engine.value.ValueSpecification;
 import com.opengamma.engine.view.ViewProcessor;
+import com.opengamma.engine.view.cache.CacheSelectHint;
 import com.opengamma.engine.view.cache.ViewComputationCache;
 import com.opengamma.engine.view.cache.ViewComputationCacheSource;
 import com.opengamma.engine.view.cache.WriteBehindViewComputationCache;
@@ -53,6 +54,9 @@ public abstract class AbstractCalculationNode implements CalculationNode {
   private final FunctionInvocationStatisticsGatherer _functionInvocationStatistics;
   private String _nodeId;
   private final ExecutorService _writeBehindExecutorService;
+  private int _writeBehindBatchSize = Integer.MAX_VALUE;
+  private long _writeBehindBatchWindow;
+  private int _writeBehindMaxPending = Integer.MAX_VALUE;
 
   protected AbstractCalculationNode(ViewComputationCacheSource cacheSource, CompiledFunctionService functionCompilationService,
       FunctionExecutionContext functionExecutionContext, ComputationTargetResolver targetResolver, ViewProcessorQuerySender calcNodeQuerySender, String nodeId,
@@ -101,6 +105,48 @@ public abstract class AbstractCalculationNode implements CalculationNode {
     return _writeBehindExecutorService;
   }
 
+  /**
+   * Sets the maximum number of values the write-behind cache writes in one operation.
+   * 
+   * @param batchSize the maximum batch size
+   */
+  public void setWriteBehindBatchSize(final int batchSize) {
+    ArgumentChecker.notNegativeOrZero(batchSize, "batchSize");
+    _writeBehindBatchSize = batchSize;
+  }
+
+  public int getWriteBehindBatchSize() {
+    return _writeBehindBatchSize;
+  }
+
+  /**
+   * Sets how long the write-behind cache waits for a full batch of values before writing.
+   * 
+   * @param batchWindow the maximum time to wait, in milliseconds
+   */
+  public void setWriteBehindBatchWindow(final long batchWindow) {
+    ArgumentChecker.notNegative(batchWindow, "batchWindow");
+    _writeBehindBatchWindow = batchWindow;
+  }
+
+  public long getWriteBehindBatchWindow() {
+    return _writeBehindBatchWindow;
+  }
+
+  /**
+   * Sets the number of values that can be waiting in the write-behind cache before job execution is blocked.
+   * 
+   * @param maxPending the maximum number of pending values
+   */
+  public void setWriteBehindMaxPending(final int maxPending) {
+    ArgumentChecker.notNegativeOrZero(maxPending, "maxPending");
+    _writeBehindMaxPending = maxPending;
+  }
+
+  public int getWriteBehindMaxPending() {
+    return _writeBehindMaxPending;
+  }
+
   protected FunctionInvocationStatisticsGatherer getFunctionInvocationStatistics() {
     return _functionInvocationStatistics;
   }
@@ -115,14 +161,44 @@ public abstract class AbstractCalculationNode implements CalculationNode {
     _nodeId = nodeId;
   }
 
+  protected WriteBehindViewComputationCache createWriteBehindCache(final CalculationJob job) {
+    final WriteBehindViewComputationCache cache = new WriteBehindViewComputationCache(getCache(job.getSpecification()), job.getCacheSelectHint(), getWriteBehindExecutorService());
+    cache.setMaxBatchSize(getWriteBehindBatchSize());
+    cache.setBatchWindow(getWriteBehindBatchWindow());
+    cache.setMaxPendingValues(getWriteBehindMaxPending());
+    return cache;
+  }
+
   public CalculationJobResult executeJob(final CalculationJob job) {
+    return executeJob(job, createWriteBehindCache(job), true);
+  }
+
+  /**
+   * Executes a job without waiting for its results to be written to the shared cache. The listener is notified when
+   * the writes complete, which may be after this method has returned. The result must not be published until then
+   * but the caller is free to start its next job, overlapping the writes with its execution. The execution time
+   * reported does not include the time to complete the writes.
+   * 
+   * @param job the job to execute, not null
+   * @param listener the listener to notify when the results have been written, not null
+   * @return the job result, or null if the job was cancelled in which case the listener will not be called
+   */
+  public CalculationJobResult executeJob(final CalculationJob job, final WriteBehindViewComputationCache.FlushListener listener) {
+    final WriteBehindViewComputationCache cache = createWriteBehindCache(job);
+    final CalculationJobResult jobResult = executeJob(job, cache, false);
+    if (jobResult != null) {
+      cache.flush(listener);
+    }
+    return jobResult;
+  }
+
+  private CalculationJobResult executeJob(final CalculationJob job, final WriteBehindViewComputationCache cache, final boolean waitForWrites) {
     s_logger.info("Executing {} on {}", job, _nodeId);
     final CalculationJobSpecification spec = job.getSpecification();
     getFunctionExecutionContext().setViewProcessorQuery(new ViewProcessorQuery(getViewProcessorQuerySender(), spec));
     getFunctionExecutionContext().setSnapshotEpochTime(spec.getIterationTimestamp());
     getFunctionExecutionContext().setSnapshotClock(DateUtil.epochFixedClockUTC(spec.getIterationTimestamp()));
     final CompiledFunctionRepository functions = getFunctionCompilationService().compileFunctionRepository(spec.getIterationTimestamp());
-    final WriteBehindViewComputationCache cache = new WriteBehindViewComputationCache(getCache(spec), job.getCacheSelectHint(), getWriteBehindExecutorService());
     long executionTime = System.nanoTime();
     final List<CalculationJobResultItem> resultItems = new ArrayList<CalculationJobResultItem>();
     final String calculationConfiguration = spec.getCalcConfigName();
@@ -145,13 +221,41 @@ public abstract class AbstractCalculationNode implements CalculationNode {
       }
       resultItems.add(resultItem);
     }
-    cache.waitForPendingWrites();
+    if (waitForWrites) {
+      cache.waitForPendingWrites();
+    }
     executionTime = System.nanoTime() - executionTime;
     CalculationJobResult jobResult = new CalculationJobResult(spec, executionTime, resultItems, getNodeId());
     s_logger.info("Executed {}", job);
     return jobResult;
   }
 
+  /**
+   * Fetches the shared values a job requires into the cache, so that they are not fetched while the job
+   * is executing. Values the job produces itself, or that are private, are not fetched. This only helps
+   * if the cache holds local copies of remote values, and must only be called once the jobs the job
+   * requires have completed. Unlike {@link #executeJob}, this may be called while the node is executing
+   * another job.
+   *
+   * @param job the job to fetch inputs for, not null
+   */
+  public void prefetchInputs(final CalculationJob job) {
+    final Set<ValueSpecification> outputs = new HashSet<ValueSpecification>();
+    final Set<ValueSpecification> inputs = new HashSet<ValueSpecification>();
+    for (CalculationJobItem jobItem : job.getJobItems()) {
+      for (ValueSpecification input : jobItem.getInputs()) {
+        if (!outputs.contains(input) && !job.getCacheSelectHint().isPrivateValue(input)) {
+          inputs.add(input);
+        }
+      }
+      outputs.addAll(jobItem.getOutputs());
+    }
+    if (!inputs.isEmpty()) {
+      s_logger.debug("Prefetching {} inputs for job {}", inputs.size(), job.getSpecification().getJobId());
+      getCache(job.getSpecification()).getValues(inputs, CacheSelectHint.allShared());
+    }
+  }
+
   @Override
   public ViewComputationCache getCache(CalculationJobSpecification spec) {
     ViewComputationCache cache = getCacheSource().getCache(spec.getViewProcessId(), spec.getCalcConfigName(), spec.getIterationTimestamp());
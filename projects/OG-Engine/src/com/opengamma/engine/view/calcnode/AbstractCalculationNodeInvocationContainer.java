@@ -16,18 +16,28 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.opengamma.engine.view.cache.WriteBehindViewComputationCache;
 import com.opengamma.util.ArgumentChecker;
+import com.opengamma.util.NamedThreadPoolFactory;
 import com.opengamma.util.tuple.Pair;
 
 /**
  * Base class for objects that manage a set of AbstractCalculationNodes with the intention of
  * invoking job executions on them.
+ * <p>
+ * Jobs are executed on a pool with one thread for each node, plus one for housekeeping tasks, so
+ * that the number of threads competing for the cores is bounded by the number of nodes. If tail
+ * job affinity is enabled, a tail job released by the completion of a job runs next on the same
+ * thread and node, while the values its predecessor produced are still in the processor caches.
  */
 public abstract class AbstractCalculationNodeInvocationContainer {
 
@@ -41,6 +51,11 @@ public abstract class AbstractCalculationNodeInvocationContainer {
    */
   private static final long FAILURE_RETENTION = 5L * 60L * 100000000L; // 5m
 
+  /**
+   * How long an idle worker thread is kept, in seconds.
+   */
+  private static final long THREAD_KEEP_ALIVE = 60L;
+
   private static final Logger s_logger = LoggerFactory.getLogger(AbstractCalculationNodeInvocationContainer.class);
 
   /**
@@ -133,6 +148,7 @@ public abstract class AbstractCalculationNodeInvocationContainer {
     private Status _status;
     private Set<JobEntry> _blocked;
     private Pair<Thread, CalculationJob> _executor;
+    private boolean _interruptPending;
 
     public JobExecution(final long jobId) {
       _jobId = jobId;
@@ -156,12 +172,6 @@ public abstract class AbstractCalculationNodeInvocationContainer {
       _status = status;
     }
 
-    public synchronized Pair<Thread, CalculationJob> getAndSetExecutor(final Pair<Thread, CalculationJob> executor) {
-      final Pair<Thread, CalculationJob> previous = _executor;
-      _executor = executor;
-      return previous;
-    }
-
     public synchronized boolean threadBusy(final CalculationJob job) {
       assert _executor == null;
       if (_status == Status.FAILED) {
@@ -171,6 +181,35 @@ public abstract class AbstractCalculationNodeInvocationContainer {
       return true;
     }
 
+    /**
+     * Called by the executing thread when the job has finished. Holding the monitor means a cancellation
+     * either happens entirely before this, in which case its interrupt is cleared here, or finds no thread
+     * to interrupt.
+     */
+    public synchronized void threadFree() {
+      assert (_executor == null) || (_executor.getFirst() == Thread.currentThread());
+      _executor = null;
+      if (_interruptPending) {
+        _interruptPending = false;
+        if (Thread.interrupted()) {
+          s_logger.debug("Interrupt status cleared");
+        }
+      }
+    }
+
+    /**
+     * Cancels the job if it is executing, interrupting the thread executing it.
+     */
+    public synchronized void cancelExecutor() {
+      if (_executor != null) {
+        s_logger.debug("Marking job {} cancelled", _jobId);
+        _executor.getSecond().cancel();
+        s_logger.info("Interrupting thread {}", _executor.getFirst().getName());
+        _executor.getFirst().interrupt();
+        _interruptPending = true;
+      }
+    }
+
     // Caller must own the monitor
     public Set<JobEntry> getBlocked() {
       Set<JobEntry> blocked = _blocked;
@@ -202,7 +241,57 @@ public abstract class AbstractCalculationNodeInvocationContainer {
   private final AtomicInteger _failureCount = new AtomicInteger();
 
   private final Queue<JobEntry> _runnableJobs = new ConcurrentLinkedQueue<JobEntry>();
-  private final ExecutorService _executorService = Executors.newCachedThreadPool();
+  private final ThreadPoolExecutor _executorService;
+
+  /**
+   * The number of nodes, including those currently executing jobs.
+   */
+  private int _nodeCount;
+
+  /**
+   * Whether a released tail job should run on the thread that completed its predecessor.
+   */
+  private volatile boolean _tailJobAffinity;
+
+  /**
+   * The tail job held for the next execution on a worker thread; only set while the thread is executing jobs.
+   */
+  private final ThreadLocal<AffineJob> _affineJob = new ThreadLocal<AffineJob>();
+
+  /**
+   * Whether to fetch the inputs of jobs waiting in the runnable queue before a node is free to execute them.
+   */
+  private volatile boolean _prefetchQueuedJobInputs;
+
+  /**
+   * The node used to prefetch inputs. The nodes in a container share a cache source, so any one will do.
+   */
+  private volatile AbstractCalculationNode _prefetchNode;
+
+  /**
+   * The thread used to prefetch inputs, kept apart from the executor so that prefetching doesn't delay
+   * housekeeping tasks, such as sending statistics, or the jobs themselves.
+   */
+  private final ThreadPoolExecutor _prefetchExecutorService;
+
+  private final Queue<CalculationJob> _prefetchJobs = new ConcurrentLinkedQueue<CalculationJob>();
+  private final AtomicBoolean _prefetching = new AtomicBoolean();
+
+  /**
+   * Holds the job a worker thread will execute next.
+   */
+  private static final class AffineJob {
+    private JobEntry _job;
+  }
+
+  protected AbstractCalculationNodeInvocationContainer() {
+    _executorService = new ThreadPoolExecutor(1, 1, THREAD_KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new NamedThreadPoolFactory(
+        "CalculationNode", false));
+    _executorService.allowCoreThreadTimeOut(true);
+    _prefetchExecutorService = new ThreadPoolExecutor(1, 1, THREAD_KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new NamedThreadPoolFactory(
+        "CalculationNodePrefetch", true));
+    _prefetchExecutorService.allowCoreThreadTimeOut(true);
+  }
 
   protected Queue<AbstractCalculationNode> getNodes() {
     return _nodes;
@@ -211,12 +300,18 @@ public abstract class AbstractCalculationNodeInvocationContainer {
   public void addNode(final AbstractCalculationNode node) {
     ArgumentChecker.notNull(node, "node");
     getNodes().add(node);
+    _prefetchNode = node;
+    resizeExecutorService(1, false);
     onNodeChange();
   }
 
   public void addNodes(final Collection<AbstractCalculationNode> nodes) {
     ArgumentChecker.notNull(nodes, "nodes");
     getNodes().addAll(nodes);
+    if (!nodes.isEmpty()) {
+      _prefetchNode = nodes.iterator().next();
+    }
+    resizeExecutorService(nodes.size(), false);
     onNodeChange();
   }
 
@@ -224,6 +319,8 @@ public abstract class AbstractCalculationNodeInvocationContainer {
     ArgumentChecker.notNull(node, "node");
     getNodes().clear();
     getNodes().add(node);
+    _prefetchNode = node;
+    resizeExecutorService(1, true);
     onNodeChange();
   }
 
@@ -231,9 +328,60 @@ public abstract class AbstractCalculationNodeInvocationContainer {
     ArgumentChecker.notNull(nodes, "nodes");
     getNodes().clear();
     getNodes().addAll(nodes);
+    _prefetchNode = nodes.isEmpty() ? null : nodes.iterator().next();
+    resizeExecutorService(nodes.size(), true);
     onNodeChange();
   }
 
+  /**
+   * Sizes the thread pool to one thread for each node plus one for housekeeping tasks. A node is only
+   * returned to the queue before its worker thread has finished, so a job spawned in that window waits
+   * briefly for the thread rather than a further thread being created.
+   */
+  private synchronized void resizeExecutorService(final int nodes, final boolean replace) {
+    _nodeCount = replace ? nodes : (_nodeCount + nodes);
+    final int threads = _nodeCount + 1;
+    if (threads > _executorService.getMaximumPoolSize()) {
+      _executorService.setMaximumPoolSize(threads);
+      _executorService.setCorePoolSize(threads);
+    } else {
+      _executorService.setCorePoolSize(threads);
+      _executorService.setMaximumPoolSize(threads);
+    }
+    s_logger.debug("Executor sized to {} threads for {} nodes", threads, _nodeCount);
+  }
+
+  /**
+   * Sets whether a tail job released by the completion of a job should be executed next by the same
+   * thread and node, rather than being queued for the next free node. This favors cache locality of
+   * the tail job's inputs over strict ordering of the runnable queue.
+   * 
+   * @param tailJobAffinity true to execute released tail jobs on the same thread
+   */
+  public void setTailJobAffinity(final boolean tailJobAffinity) {
+    _tailJobAffinity = tailJobAffinity;
+  }
+
+  public boolean isTailJobAffinity() {
+    return _tailJobAffinity;
+  }
+
+  /**
+   * Sets whether the inputs of a job should be fetched while it waits for a free node, so that the node
+   * doesn't wait for them when it executes the job. This is worthwhile when the nodes' cache holds local
+   * copies of values from a remote cache and jobs are queued here, for example when they are pipelined
+   * to a remote node.
+   * 
+   * @param prefetchQueuedJobInputs true to prefetch the inputs of queued jobs
+   */
+  public void setPrefetchQueuedJobInputs(final boolean prefetchQueuedJobInputs) {
+    _prefetchQueuedJobInputs = prefetchQueuedJobInputs;
+  }
+
+  public boolean isPrefetchQueuedJobInputs() {
+    return _prefetchQueuedJobInputs;
+  }
+
   protected abstract void onNodeChange();
 
   protected void onJobStart(final CalculationJob job) {
@@ -273,9 +421,14 @@ public abstract class AbstractCalculationNodeInvocationContainer {
           if (node == null) {
             s_logger.debug("Adding job {} to runnable queue", jobexec.getJob().getSpecification().getJobId());
             _runnableJobs.add(jobexec);
-            return;
           }
         }
+        if (node == null) {
+          if (isPrefetchQueuedJobInputs()) {
+            prefetchInputs(jobexec.getJob());
+          }
+          return;
+        }
       }
     }
     s_logger.debug("Spawning execution of job {}", jobexec.getJob().getSpecification().getJobId());
@@ -290,6 +443,44 @@ public abstract class AbstractCalculationNodeInvocationContainer {
     });
   }
 
+  /**
+   * Queues a runnable job to have its inputs fetched while it waits for a node. A single task on the
+   * prefetch thread works through the queue, so prefetching never competes with job execution or
+   * housekeeping for the executor's threads.
+   */
+  private void prefetchInputs(final CalculationJob job) {
+    final AbstractCalculationNode node = _prefetchNode;
+    if (node == null) {
+      return;
+    }
+    _prefetchJobs.add(job);
+    if (_prefetching.compareAndSet(false, true)) {
+      _prefetchExecutorService.execute(new Runnable() {
+
+        @Override
+        public void run() {
+          do {
+            final CalculationJob queued = _prefetchJobs.poll();
+            if (queued == null) {
+              _prefetching.set(false);
+              // A job may have been queued after the poll but before the flag was cleared
+              if (_prefetchJobs.isEmpty() || !_prefetching.compareAndSet(false, true)) {
+                return;
+              }
+            } else if (!queued.isCancelled()) {
+              try {
+                node.prefetchInputs(queued);
+              } catch (RuntimeException e) {
+                s_logger.warn("Couldn't prefetch inputs for job {}: {}", queued.getSpecification().getJobId(), e.getMessage());
+              }
+            }
+          } while (true);
+        }
+
+      });
+    }
+  }
+
   private void failExecution(final JobExecution execution) {
     final Set<JobEntry> blocked;
     synchronized (execution) {
@@ -378,45 +569,81 @@ public abstract class AbstractCalculationNodeInvocationContainer {
     spawnOrQueueJob(jobEntry, node);
   }
 
-  private void threadFree(final JobExecution exec) {
-    // The executor should only go null transiently while the cancel action happens and should then
-    // be restored. If, for probably erroneous reasons, the job has been launched twice we can see
-    // a continuous null here from the second running thread so have a spin count here to give up
-    // after 1s regardless (which may cause further errors, but is better than deadlock).
-    int spin = 0;
-    do {
-      final Pair<Thread, CalculationJob> previous = exec.getAndSetExecutor(null);
-      if (previous != null) {
-        assert previous.getFirst() == Thread.currentThread();
-        return;
-      }
-      // Executor reference is null while the job is being canceled. An interrupt may be done as part of
-      // this so we need to make sure we swallow it rather than leave ourselves in an interrupted state.
-      if (Thread.interrupted()) {
-        s_logger.debug("Interrupt status cleared");
-        return;
+  private void jobCompleted(final JobEntry jobexec, final CalculationJobResult result) {
+    final Set<JobEntry> blocked;
+    synchronized (jobexec.getExecution()) {
+      jobexec.getExecution().setStatus(JobExecution.Status.COMPLETED);
+      blocked = jobexec.getExecution().getBlocked();
+      _executions.remove(jobexec.getExecution().getJobId());
+    }
+    if (blocked != null) {
+      s_logger.info("Job {} completed - releasing blocked jobs", jobexec.getExecution().getJobId());
+      final AffineJob affineJob = _affineJob.get();
+      for (JobEntry tail : blocked) {
+        if (tail.getReceiver() != null) {
+          if (tail.releaseBlockCount()) {
+            if ((affineJob != null) && (affineJob._job == null)) {
+              s_logger.debug("Holding job {} for execution on this thread", tail.getExecution().getJobId());
+              affineJob._job = tail;
+            } else {
+              spawnOrQueueJob(tail, null);
+            }
+          }
+        }
       }
-      switch (spin) {
-        case 0:
-          s_logger.debug("Waiting for interrupt");
-          break;
-        case 1:
-          s_logger.info("Waiting for interrupt");
-          break;
-        case 2:
-          s_logger.warn("Waiting for interrupt");
-          break;
-        default:
-          s_logger.error("Waiting for interrupt");
-          break;
+    } else {
+      s_logger.info("Job {} completed - no tail jobs", jobexec.getExecution().getJobId());
+    }
+    jobexec.getReceiver().executionComplete(result);
+  }
+
+  /**
+   * Completes a job once both its result is available and its values have been written to the shared cache. The
+   * writes may finish on the write-behind thread while the node has moved on to its next job.
+   */
+  private final class JobCompletion implements WriteBehindViewComputationCache.FlushListener {
+
+    private final AbstractCalculationNode _node;
+    private final JobEntry _jobexec;
+    private final AtomicInteger _pending = new AtomicInteger(2);
+    private volatile CalculationJobResult _result;
+    private volatile RuntimeException _failure;
+
+    public JobCompletion(final AbstractCalculationNode node, final JobEntry jobexec) {
+      _node = node;
+      _jobexec = jobexec;
+    }
+
+    public void setResult(final CalculationJobResult result) {
+      _result = result;
+      if (result != null) {
+        release();
       }
-      try {
-        Thread.sleep(10);
-      } catch (InterruptedException e) {
-        s_logger.debug("Interrupt received");
-        return;
+    }
+
+    private void release() {
+      if (_pending.decrementAndGet() == 0) {
+        if (_failure != null) {
+          s_logger.warn("Job {} failed writing results", _jobexec.getExecution().getJobId());
+          failExecution(_jobexec.getExecution());
+          _jobexec.getReceiver().executionFailed(_node, _failure);
+        } else {
+          jobCompleted(_jobexec, _result);
+        }
       }
-    } while (++spin < 1000);
+    }
+
+    @Override
+    public void flushed() {
+      release();
+    }
+
+    @Override
+    public void flushFailed(final RuntimeException exception) {
+      _failure = exception;
+      release();
+    }
+
   }
 
   /**
@@ -426,46 +653,35 @@ public abstract class AbstractCalculationNodeInvocationContainer {
    * @param jobexec The first job to run, not {@code null}
    */
   private void executeJobs(final AbstractCalculationNode node, JobEntry jobexec) {
+    final AffineJob affineJob = isTailJobAffinity() ? new AffineJob() : null;
+    if (affineJob != null) {
+      _affineJob.set(affineJob);
+    }
     do {
       s_logger.info("Executing job {} on {}", jobexec.getExecution().getJobId(), node.getNodeId());
       onJobStart(jobexec.getJob());
-      CalculationJobResult result = null;
       if (jobexec.getExecution().threadBusy(jobexec.getJob())) {
+        final JobCompletion completion = new JobCompletion(node, jobexec);
+        CalculationJobResult result = null;
         try {
-          result = node.executeJob(jobexec.getJob());
-          threadFree(jobexec.getExecution());
+          result = node.executeJob(jobexec.getJob(), completion);
+          jobexec.getExecution().threadFree();
         } catch (Exception e) {
           // Any tail jobs will be abandoned
-          threadFree(jobexec.getExecution());
+          jobexec.getExecution().threadFree();
           s_logger.warn("Job {} failed", jobexec.getExecution().getJobId());
           failExecution(jobexec.getExecution());
           jobexec.getReceiver().executionFailed(node, e);
         }
+        // The job completes when its results have been written, possibly after we've started the next job
+        completion.setResult(result);
       } else {
         s_logger.debug("Job {} cancelled", jobexec.getExecution().getJobId());
       }
-      if (result != null) {
-        final Set<JobEntry> blocked;
-        synchronized (jobexec.getExecution()) {
-          jobexec.getExecution().setStatus(JobExecution.Status.COMPLETED);
-          blocked = jobexec.getExecution().getBlocked();
-          _executions.remove(jobexec.getExecution().getJobId());
-        }
-        if (blocked != null) {
-          s_logger.info("Job {} completed - releasing blocked jobs", jobexec.getExecution().getJobId());
-          for (JobEntry tail : blocked) {
-            if (tail.getReceiver() != null) {
-              if (tail.releaseBlockCount()) {
-                spawnOrQueueJob(tail, null);
-              }
-            }
-          }
-        } else {
-          s_logger.info("Job {} completed - no tail jobs", jobexec.getExecution().getJobId());
-        }
-      }
-      if (result != null) {
-        jobexec.getReceiver().executionComplete(result);
+      if ((affineJob != null) && (affineJob._job != null)) {
+        jobexec = affineJob._job;
+        affineJob._job = null;
+        continue;
       }
       jobexec = _runnableJobs.poll();
       if (jobexec == null) {
@@ -478,6 +694,9 @@ public abstract class AbstractCalculationNodeInvocationContainer {
         }
       }
     } while (true);
+    if (affineJob != null) {
+      _affineJob.remove();
+    }
     s_logger.debug("Finished job execution on {}", node.getNodeId());
     onJobExecutionComplete();
     // Housekeeping
@@ -508,22 +727,8 @@ public abstract class AbstractCalculationNodeInvocationContainer {
     }
     s_logger.info("Cancelling job {}", jobSpec.getJobId());
     failExecution(jobExec);
-    Pair<Thread, CalculationJob> executor = jobExec.getAndSetExecutor(null);
-    if (executor != null) {
-      s_logger.debug("Marking job {} cancelled", executor.getSecond().getSpecification().getJobId());
-      executor.getSecond().cancel();
-      s_logger.info("Interrupting thread {}", executor.getFirst().getName());
-      executor.getFirst().interrupt();
-      // Need to wait for the execution thread to acknowledge the interrupt, or it may be canceled by us swapping the executor
-      // reference back in and the interrupt will affect a subsequent wait causing erroneous behavior
-      while (executor.getFirst().isInterrupted()) {
-        s_logger.debug("Waiting for thread {} to accept the interrupt", executor.getFirst().getName());
-        Thread.yield();
-      }
-      s_logger.debug("Thread {} interrupted", executor.getFirst().getName());
-      executor = jobExec.getAndSetExecutor(executor);
-      assert executor == null;
-    }
+    // Any interrupt is cleared by the executing thread when it frees the execution, so there is no need to wait for it here
+    jobExec.cancelExecutor();
   }
 
   protected boolean isJobAlive(final CalculationJobSpecification jobSpec) {
@@ -44,9 +44,41 @@ public class CapabilityRequirements {
     return new CapabilityRequirements(this);
   }
 
+  /**
+   * Tests whether the exported capabilities of an invoker satisfy these requirements. Each required capability must
+   * be matched by an exported capability with the same identifier whose parameter range lies within the bounds of
+   * the requirement.
+   * 
+   * @param capabilities the exported capabilities
+   * @return {@code true} if the requirements are satisfied, {@code false} otherwise
+   */
   public boolean satisfiedBy(final Collection<Capability> capabilities) {
-    // TODO [ENG-42] Match up our requirements with the exported capabilities of the invoker
+    for (Capability required : getRequiredCapabilities()) {
+      if (!satisfiedBy(required, capabilities)) {
+        return false;
+      }
+    }
     return true;
   }
 
+  private static boolean satisfiedBy(final Capability required, final Collection<Capability> capabilities) {
+    for (Capability exported : capabilities) {
+      if (!required.getIdentifier().equals(exported.getIdentifier())) {
+        continue;
+      }
+      if (required.getLowerBoundParameter() != null) {
+        if ((exported.getLowerBoundParameter() == null) || (exported.getLowerBoundParameter() < required.getLowerBoundParameter())) {
+          continue;
+        }
+      }
+      if (required.getUpperBoundParameter() != null) {
+        if ((exported.getUpperBoundParameter() == null) || (exported.getUpperBoundParameter() > required.getUpperBoundParameter())) {
+          continue;
+        }
+      }
+      return true;
+    }
+    return false;
+  }
+
 }
@@ -18,10 +18,10 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.RunnableScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
@@ -35,6 +35,12 @@ import com.opengamma.util.Cancellable;
 
 /**
  * Manages a set of JobInvokers and dispatches jobs to them for execution.
+ * <p>
+ * Dispatch does not take a lock. A job is offered to the available invokers in round-robin order. If none
+ * will accept it, the job is queued against one of the invokers whose capabilities satisfy its requirements.
+ * When an invoker becomes available again it takes jobs from the shared pending queue, then from its own
+ * queue and then steals from the queues of the other invokers. Job timeouts are tracked by a single timer
+ * wheel rather than a scheduled task per job.
  */
 public class JobDispatcher implements JobInvokerRegister {
 
@@ -42,6 +48,14 @@ public class JobDispatcher implements JobInvokerRegister {
   /* package */static final int DEFAULT_MAX_JOB_ATTEMPTS = 3;
   /* package */static final long DEFAULT_MAX_JOB_EXECUTION_QUERY_TIMEOUT = 5000;
   /* package */static final String DEFAULT_JOB_FAILURE_NODE_ID = "NOT EXECUTED";
+  /**
+   * Resolution of the timeout wheel in milliseconds.
+   */
+  private static final long TIMEOUT_WHEEL_TICK = 50L;
+  /**
+   * Number of slots in the timeout wheel; must be a power of two.
+   */
+  private static final int TIMEOUT_WHEEL_SIZE = 512;
 
   private static List<CalculationJob> getAllJobs(CalculationJob job, List<CalculationJob> jobs) {
     if (jobs == null) {
@@ -56,52 +70,134 @@ public class JobDispatcher implements JobInvokerRegister {
     return jobs;
   }
 
-  private static class Timeout implements Runnable {
+  private static long currentTimeMillis() {
+    return System.nanoTime() / 1000000L;
+  }
+
+  /**
+   * A hashed timer wheel. Each slot holds the timeouts due within one tick of the wheel; a timeout due more than
+   * one revolution ahead stays in its slot until the deadline is reached. Timeouts are removed lazily when they
+   * are found to be cancelled or rescheduled into another slot.
+   */
+  private static final class TimeoutWheel implements Runnable {
+
+    private final List<Queue<Timeout>> _slots;
+    private long _lastTick;
+
+    private TimeoutWheel() {
+      _slots = new ArrayList<Queue<Timeout>>(TIMEOUT_WHEEL_SIZE);
+      for (int i = 0; i < TIMEOUT_WHEEL_SIZE; i++) {
+        _slots.add(new ConcurrentLinkedQueue<Timeout>());
+      }
+      _lastTick = currentTimeMillis() / TIMEOUT_WHEEL_TICK;
+    }
+
+    private int getSlot(final long deadline) {
+      // Round up so that a timeout is never processed before its deadline
+      return (int) ((deadline + TIMEOUT_WHEEL_TICK - 1) / TIMEOUT_WHEEL_TICK) & (TIMEOUT_WHEEL_SIZE - 1);
+    }
+
+    private void add(final int slot, final Timeout timeout) {
+      _slots.get(slot).add(timeout);
+    }
+
+    @Override
+    public void run() {
+      final long now = currentTimeMillis();
+      final long tick = now / TIMEOUT_WHEEL_TICK;
+      // If the timer has fallen behind by more than a revolution, each slot only needs visiting once
+      for (long t = Math.max(_lastTick + 1, tick - TIMEOUT_WHEEL_SIZE + 1); t <= tick; t++) {
+        final int slot = (int) t & (TIMEOUT_WHEEL_SIZE - 1);
+        final Iterator<Timeout> iterator = _slots.get(slot).iterator();
+        while (iterator.hasNext()) {
+          final Timeout timeout = iterator.next();
+          final int state = timeout.check(slot, now);
+          if (state != Timeout.PENDING) {
+            iterator.remove();
+            if (state == Timeout.EXPIRED) {
+              try {
+                timeout.run();
+              } catch (RuntimeException e) {
+                s_logger.error("Error processing job timeout", e);
+              }
+            }
+          }
+        }
+      }
+      _lastTick = tick;
+    }
+
+  }
+
+  private static final class Timeout {
 
     public static final Timeout FINISHED = new Timeout();
     public static final Timeout CANCELLED = new Timeout();
 
-    private final ScheduledThreadPoolExecutor _executor;
-    private DispatchJob _dispatchJob;
-    private JobInvoker _jobInvoker;
-    private RunnableScheduledFuture<?> _future;
+    private static final int PENDING = 0;
+    private static final int EXPIRED = 1;
+    private static final int STALE = 2;
+
+    private final TimeoutWheel _wheel;
+    private final DispatchJob _dispatchJob;
+    private final JobInvoker _jobInvoker;
+    private long _deadline;
+    private int _slot = -1;
+    private boolean _cancelled;
     private long _timeAccrued;
 
     private Timeout() {
-      _executor = null;
+      _wheel = null;
+      _dispatchJob = null;
+      _jobInvoker = null;
     }
 
-    public Timeout(final DispatchJob dispatchJob, final JobInvoker jobInvoker, final ScheduledThreadPoolExecutor executor, final long timeoutMillis) {
+    public Timeout(final DispatchJob dispatchJob, final JobInvoker jobInvoker, final TimeoutWheel wheel, final long timeoutMillis) {
       _dispatchJob = dispatchJob;
       _jobInvoker = jobInvoker;
-      _executor = executor;
+      _wheel = wheel;
       _timeAccrued = timeoutMillis;
-      setTimeout(timeoutMillis);
+      synchronized (this) {
+        setTimeout(timeoutMillis);
+      }
     }
 
+    // caller must already own monitor
     private void setTimeout(final long timeoutMillis) {
-      if (timeoutMillis > 0) {
-        _future = (RunnableScheduledFuture<?>) _executor.schedule(this, timeoutMillis, TimeUnit.MILLISECONDS);
+      if ((timeoutMillis > 0) && (_wheel != null)) {
+        _deadline = currentTimeMillis() + timeoutMillis;
+        final int slot = _wheel.getSlot(_deadline);
+        if (slot != _slot) {
+          _slot = slot;
+          _wheel.add(slot, this);
+        }
       } else {
-        _future = null;
+        _slot = -1;
       }
     }
 
-    @Override
+    private synchronized int check(final int slot, final long now) {
+      if (_cancelled || (_slot != slot)) {
+        return STALE;
+      }
+      if (_deadline > now) {
+        return PENDING;
+      }
+      _slot = -1;
+      return EXPIRED;
+    }
+
     public synchronized void run() {
       _dispatchJob.timeout(_timeAccrued, _jobInvoker);
     }
 
     public synchronized void cancel() {
-      if (_future != null) {
-        _executor.remove(_future);
-        _future = null;
-      }
+      _cancelled = true;
+      _slot = -1;
     }
 
     public synchronized void extend(final long timeoutMillis, final boolean resetAccruedTime) {
-      if (_future != null) {
-        _executor.remove(_future);
+      if (!_cancelled && (_wheel != null)) {
         if (resetAccruedTime) {
           _timeAccrued = timeoutMillis;
         } else {
@@ -117,6 +213,114 @@ public class JobDispatcher implements JobInvokerRegister {
 
   }
 
+  /**
+   * The results of matching capability requirements against one set of exported capabilities. The collection
+   * returned by {@link JobInvoker#getCapabilities} is replaced whenever the capabilities change so is compared
+   * by identity. Requirements are also keyed by identity so the cached matches are discarded once
+   * {@link #MAX_MATCHES} different requirements have been seen.
+   */
+  private static final class CapabilityMatches {
+
+    private static final int MAX_MATCHES = 1024;
+
+    private final Collection<Capability> _capabilities;
+    private final ConcurrentMap<CapabilityRequirements, Boolean> _matches = new ConcurrentHashMap<CapabilityRequirements, Boolean>();
+
+    private CapabilityMatches(final Collection<Capability> capabilities) {
+      _capabilities = capabilities;
+    }
+
+    private boolean satisfies(final CapabilityRequirements requirements) {
+      Boolean result = _matches.get(requirements);
+      if (result == null) {
+        result = requirements.satisfiedBy(_capabilities);
+        if (_matches.size() >= MAX_MATCHES) {
+          _matches.clear();
+        }
+        _matches.put(requirements, result);
+      }
+      return result;
+    }
+
+  }
+
+  /**
+   * A job held in one of the queues. Claiming it removes the job from the queue; the holder is only claimed once so
+   * a job taken and later queued again gets a new holder. A claimed holder still in a queue is unlinked by the next
+   * traversal.
+   */
+  private static final class QueuedJob {
+
+    private final DispatchJob _job;
+    private final AtomicBoolean _claimed = new AtomicBoolean();
+
+    private QueuedJob(final DispatchJob job) {
+      _job = job;
+    }
+
+    private DispatchJob getJob() {
+      return _job;
+    }
+
+    private boolean isClaimed() {
+      return _claimed.get();
+    }
+
+    private boolean claim() {
+      return _claimed.compareAndSet(false, true);
+    }
+
+  }
+
+  /**
+   * The state of a registered invoker.
+   */
+  private final class InvokerEntry {
+
+    private final JobInvoker _invoker;
+    private final Queue<QueuedJob> _queue = new ConcurrentLinkedQueue<QueuedJob>();
+    private final AtomicBoolean _available = new AtomicBoolean();
+    private final AtomicBoolean _draining = new AtomicBoolean();
+    private volatile CapabilityMatches _capabilityMatches;
+
+    private InvokerEntry(final JobInvoker invoker) {
+      _invoker = invoker;
+    }
+
+    private JobInvoker getInvoker() {
+      return _invoker;
+    }
+
+    private Queue<QueuedJob> getQueue() {
+      return _queue;
+    }
+
+    private boolean isAvailable() {
+      return _available.get();
+    }
+
+    private void setAvailable(final boolean available) {
+      _available.set(available);
+    }
+
+    private boolean satisfies(final CapabilityRequirements requirements) {
+      final Collection<Capability> capabilities = getInvoker().getCapabilities();
+      CapabilityMatches matches = _capabilityMatches;
+      if ((matches == null) || (matches._capabilities != capabilities)) {
+        matches = new CapabilityMatches(capabilities);
+        _capabilityMatches = matches;
+        getCapabilityCache().put(getInvoker(), capabilities);
+      }
+      return matches.satisfies(requirements);
+    }
+
+    @Override
+    public String toString() {
+      return getInvoker().toString();
+    }
+
+  }
+
   private final class DispatchJob implements JobInvocationReceiver, Cancellable {
 
     private final CalculationJob _rootJob;
@@ -258,7 +462,7 @@ public class JobDispatcher implements JobInvokerRegister {
     }
 
     private void setTimeout(final JobInvoker jobInvoker) {
-      Timeout timeout = new Timeout(this, jobInvoker, getJobTimeoutExecutor(), Math.min(getMaxJobExecutionTimeQuery(), getMaxJobExecutionTime()));
+      Timeout timeout = new Timeout(this, jobInvoker, getTimeoutWheel(), Math.min(getMaxJobExecutionTimeQuery(), getMaxJobExecutionTime()));
       if (_timeout.compareAndSet(null, timeout)) {
         s_logger.debug("Timeout set for job {}", getJob().getSpecification().getJobId());
       } else {
@@ -306,13 +510,13 @@ public class JobDispatcher implements JobInvokerRegister {
       return _jobCreationTime;
     }
 
-    private boolean canRunOn(final JobInvoker jobInvoker) {
+    private boolean canRunOn(final InvokerEntry invoker) {
       if (_excludeJobInvoker != null) {
-        if (_excludeJobInvoker.contains(jobInvoker)) {
+        if (_excludeJobInvoker.contains(invoker.getInvoker())) {
           return false;
         }
       }
-      return getRequirements().satisfiedBy(jobInvoker.getCapabilities());
+      return invoker.satisfies(getRequirements());
     }
 
     @Override
@@ -342,8 +546,11 @@ public class JobDispatcher implements JobInvokerRegister {
 
   }
 
-  private final Queue<DispatchJob> _pending = new LinkedList<DispatchJob>();
-  private final Queue<JobInvoker> _invokers = new ConcurrentLinkedQueue<JobInvoker>();
+  private final Queue<QueuedJob> _pending = new ConcurrentLinkedQueue<QueuedJob>();
+  private final ConcurrentMap<JobInvoker, InvokerEntry> _invokerEntries = new ConcurrentHashMap<JobInvoker, InvokerEntry>();
+  private volatile InvokerEntry[] _invokers = new InvokerEntry[0];
+  private final AtomicInteger _nextInvoker = new AtomicInteger();
+  private final AtomicInteger _nextQueue = new AtomicInteger();
   private final Map<JobInvoker, Collection<Capability>> _capabilityCache = new ConcurrentHashMap<JobInvoker, Collection<Capability>>();
 
   private int _maxJobAttempts = DEFAULT_MAX_JOB_ATTEMPTS;
@@ -358,6 +565,7 @@ public class JobDispatcher implements JobInvokerRegister {
    */
   private long _maxJobExecutionTimeQuery = DEFAULT_MAX_JOB_EXECUTION_QUERY_TIMEOUT;
   private ScheduledThreadPoolExecutor _jobTimeoutExecutor;
+  private volatile TimeoutWheel _timeoutWheel;
   private CalculationNodeStatisticsGatherer _statisticsGatherer = new DiscardingNodeStatisticsGatherer();
 
   public JobDispatcher() {
@@ -397,6 +605,10 @@ public class JobDispatcher implements JobInvokerRegister {
     return _jobTimeoutExecutor;
   }
 
+  private TimeoutWheel getTimeoutWheel() {
+    return _timeoutWheel;
+  }
+
   /**
    * Sets the maximum time for a job to be with an invoker in milliseconds. To disable the upper limit,
    * pass 0 or negative. This doesn't affect jobs already launched; only ones that are invoked after
@@ -410,6 +622,8 @@ public class JobDispatcher implements JobInvokerRegister {
       if (_jobTimeoutExecutor == null) {
         _jobTimeoutExecutor = new ScheduledThreadPoolExecutor(1);
         _jobTimeoutExecutor.setMaximumPoolSize(1);
+        _timeoutWheel = new TimeoutWheel();
+        _jobTimeoutExecutor.scheduleAtFixedRate(_timeoutWheel, TIMEOUT_WHEEL_TICK, TIMEOUT_WHEEL_TICK, TimeUnit.MILLISECONDS);
       }
     }
   }
@@ -442,107 +656,276 @@ public class JobDispatcher implements JobInvokerRegister {
     return _capabilityRequirementsProvider;
   }
 
-  protected Queue<DispatchJob> getPending() {
+  protected Queue<QueuedJob> getPending() {
     return _pending;
   }
 
-  protected Queue<JobInvoker> getInvokers() {
-    return _invokers;
-  }
-
   protected Map<JobInvoker, Collection<Capability>> getCapabilityCache() {
     return _capabilityCache;
   }
 
+  private InvokerEntry getInvokerEntry(final JobInvoker invoker) {
+    InvokerEntry entry = _invokerEntries.get(invoker);
+    if (entry == null) {
+      synchronized (this) {
+        entry = _invokerEntries.get(invoker);
+        if (entry == null) {
+          s_logger.debug("Registering job invoker {}", invoker);
+          entry = new InvokerEntry(invoker);
+          final InvokerEntry[] invokers = new InvokerEntry[_invokers.length + 1];
+          System.arraycopy(_invokers, 0, invokers, 0, _invokers.length);
+          invokers[_invokers.length] = entry;
+          _invokers = invokers;
+          _invokerEntries.put(invoker, entry);
+        }
+      }
+    }
+    return entry;
+  }
+
+  /**
+   * Removes an invoker. Any jobs queued against it are returned to the pending queue and offered to the other
+   * invokers once the dispatcher monitor has been released.
+   */
+  private void removeInvokerEntry(final JobInvoker invoker) {
+    final List<QueuedJob> orphaned = new ArrayList<QueuedJob>();
+    synchronized (this) {
+      final InvokerEntry entry = _invokerEntries.remove(invoker);
+      if (entry == null) {
+        return;
+      }
+      s_logger.debug("Removing job invoker {}", invoker);
+      final List<InvokerEntry> invokers = new ArrayList<InvokerEntry>(_invokers.length);
+      for (InvokerEntry other : _invokers) {
+        if (other != entry) {
+          invokers.add(other);
+        }
+      }
+      _invokers = invokers.toArray(new InvokerEntry[invokers.size()]);
+      entry.setAvailable(false);
+      entry._capabilityMatches = null;
+      getCapabilityCache().remove(invoker);
+      QueuedJob job;
+      while ((job = entry.getQueue().poll()) != null) {
+        if (!job.isClaimed()) {
+          orphaned.add(job);
+        }
+      }
+    }
+    if (!orphaned.isEmpty()) {
+      getPending().addAll(orphaned);
+      drainAvailable();
+    }
+  }
+
   @Override
-  public synchronized void registerJobInvoker(final JobInvoker invoker) {
+  public void registerJobInvoker(final JobInvoker invoker) {
     ArgumentChecker.notNull(invoker, "invoker");
-    s_logger.debug("Registering job invoker {}", invoker);
-    getInvokers().add(invoker);
+    final InvokerEntry entry = getInvokerEntry(invoker);
     getCapabilityCache().put(invoker, invoker.getCapabilities());
-    if (!getPending().isEmpty()) {
-      retryPending(0L);
-    }
+    entry.setAvailable(true);
+    drain(entry);
   }
 
-  // caller must already own monitor
-  private void retryPending(final long failJobsBefore) {
-    s_logger.debug("Retrying pending operations");
-    final Iterator<DispatchJob> iterator = getPending().iterator();
-    while (iterator.hasNext()) {
-      final DispatchJob job = iterator.next();
-      if (invoke(job)) {
-        iterator.remove();
-      } else {
-        if (failJobsBefore <= 0) {
-          if (getInvokers().isEmpty()) {
-            s_logger.debug("No invokers available - not retrying operations");
+  /**
+   * Passes queued jobs to an invoker until it refuses one or there are no more jobs that it can run. Jobs are
+   * taken from the shared pending queue, then from the invoker's own queue and finally stolen from the queues
+   * of other invokers.
+   */
+  private void drain(final InvokerEntry entry) {
+    do {
+      if (!entry._draining.compareAndSet(false, true)) {
+        // The thread draining the invoker will check again for jobs after it has finished
+        return;
+      }
+      try {
+        while (entry.isAvailable()) {
+          final DispatchJob job = takeJob(entry);
+          if (job == null) {
             break;
           }
-        } else if (job.getJobCreationTime() < failJobsBefore) {
-          iterator.remove();
-          job.jobAbort(null, "no invokers available after timeout");
+          if (!invoke(job, entry)) {
+            // Retry the job ahead of the other queued work
+            enqueue(getPending(), job);
+          }
         }
+      } finally {
+        entry._draining.set(false);
+      }
+    } while (entry.isAvailable() && hasJob(entry));
+  }
+
+  /**
+   * Calls {@link #drain} on all available invokers. This must be called after a job is queued in case an invoker
+   * became available after the job was first offered.
+   */
+  private void drainAvailable() {
+    for (InvokerEntry entry : _invokers) {
+      if (entry.isAvailable()) {
+        drain(entry);
       }
     }
   }
 
-  // TODO [ENG-42] schedule retryPending to be called periodically with failJobsBefore set to `System.nanoTime() - a timeout` to cancel jobs which can't be executed at all
-  // TODO [ENG-42] the invoker selection logic is inefficient; it's likely that capability requirements objects won't vary much so comparison against the capabilities of invokers should be cached
-  // TODO [ENG-42] job dispatch should not be O(n) on number of invokers; the caching of capabilities should allow a nearer O(1) selection
+  private void enqueue(final Queue<QueuedJob> queue, final DispatchJob job) {
+    queue.add(new QueuedJob(job));
+    drainAvailable();
+  }
 
-  // caller must already own monitor
-  private boolean invoke(final DispatchJob job) {
+  /**
+   * Claims the first job in a queue that can run on an invoker. The job is unlinked through the iterator, along
+   * with any jobs already claimed by other threads, so a single pass of the queue is made.
+   */
+  private static DispatchJob claimJob(final Queue<QueuedJob> queue, final InvokerEntry entry) {
+    final Iterator<QueuedJob> itr = queue.iterator();
+    while (itr.hasNext()) {
+      final QueuedJob queued = itr.next();
+      if (queued.isClaimed()) {
+        itr.remove();
+      } else if (queued.getJob().canRunOn(entry) && queued.claim()) {
+        // Only one caller can succeed in claiming the job
+        itr.remove();
+        return queued.getJob();
+      }
+    }
+    return null;
+  }
+
+  private static boolean containsJob(final Queue<QueuedJob> queue, final InvokerEntry entry) {
+    for (QueuedJob queued : queue) {
+      if (!queued.isClaimed() && queued.getJob().canRunOn(entry)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private DispatchJob takeJob(final InvokerEntry entry) {
+    DispatchJob job = claimJob(getPending(), entry);
+    if (job != null) {
+      return job;
+    }
+    QueuedJob queued;
+    while ((queued = entry.getQueue().poll()) != null) {
+      if (!queued.claim()) {
+        // Stolen by another invoker
+        continue;
+      }
+      job = queued.getJob();
+      if (job.canRunOn(entry)) {
+        return job;
+      }
+      // The invoker's capabilities have changed since the job was queued
+      getPending().add(new QueuedJob(job));
+    }
+    final InvokerEntry[] invokers = _invokers;
+    final int start = _nextQueue.getAndIncrement() & Integer.MAX_VALUE;
+    for (int i = 0; i < invokers.length; i++) {
+      final InvokerEntry other = invokers[(start + i) % invokers.length];
+      if (other != entry) {
+        job = claimJob(other.getQueue(), entry);
+        if (job != null) {
+          s_logger.debug("Invoker {} stealing job {} from {}", new Object[] {entry, job.getJob().getSpecification().getJobId(), other});
+          return job;
+        }
+      }
+    }
+    return null;
+  }
+
+  private boolean hasJob(final InvokerEntry entry) {
+    if (containsJob(getPending(), entry) || !entry.getQueue().isEmpty()) {
+      return true;
+    }
+    for (InvokerEntry other : _invokers) {
+      if ((other != entry) && containsJob(other.getQueue(), entry)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Offers a job to an invoker.
+   * 
+   * @return {@code true} if the job was accepted or has already completed, {@code false} if the invoker refused it
+   */
+  private boolean invoke(final DispatchJob job, final InvokerEntry entry) {
     if (job._completed.get()) {
       s_logger.info("Job {} cancelled", job.getJob().getSpecification().getJobId());
       return true;
     }
-    Collection<JobInvoker> retry = null;
+    final JobInvoker jobInvoker = entry.getInvoker();
+    if (jobInvoker.invoke(job.getJob(), job)) {
+      s_logger.debug("Invoker {} accepted job {}", jobInvoker, job.getJob().getSpecification().getJobId());
+      // request a job timeout
+      job.setTimeout(jobInvoker);
+      return true;
+    }
+    s_logger.debug("Invoker {} refused to execute job {}", jobInvoker, job.getJob().getSpecification().getJobId());
+    entry.setAvailable(false);
+    if (jobInvoker.notifyWhenAvailable(this)) {
+      s_logger.info("Invoker {} requested immediate retry", jobInvoker);
+      entry.setAvailable(true);
+    }
+    return false;
+  }
+
+  /**
+   * Offers a job to each available invoker in turn, starting after the last one to accept a job.
+   * 
+   * @return {@code true} if an invoker accepted the job, {@code false} otherwise
+   */
+  private boolean invoke(final DispatchJob job) {
+    boolean retry;
     do {
-      final Iterator<JobInvoker> iterator = getInvokers().iterator();
-      while (iterator.hasNext()) {
-        final JobInvoker jobInvoker = iterator.next();
-        if (job.canRunOn(jobInvoker)) {
-          if (jobInvoker.invoke(job.getJob(), job)) {
-            s_logger.debug("Invoker {} accepted job {}", jobInvoker, job.getJob().getSpecification().getJobId());
-            // request a job timeout
-            job.setTimeout(jobInvoker);
-            // put invoker to the end of the list
-            iterator.remove();
-            getInvokers().add(jobInvoker);
+      retry = false;
+      final InvokerEntry[] invokers = _invokers;
+      final int start = _nextInvoker.get();
+      for (int i = 0; i < invokers.length; i++) {
+        final int index = (start + i) % invokers.length;
+        final InvokerEntry entry = invokers[index];
+        if (entry.isAvailable() && job.canRunOn(entry)) {
+          if (invoke(job, entry)) {
+            _nextInvoker.set(index + 1);
             return true;
-          } else {
-            s_logger.debug("Invoker {} refused to execute job {}", jobInvoker, job.getJob().getSpecification().getJobId());
-            iterator.remove();
-            if (jobInvoker.notifyWhenAvailable(this)) {
-              s_logger.info("Invoker {} requested immediate retry", jobInvoker);
-              if (retry == null) {
-                retry = new LinkedList<JobInvoker>();
-              }
-              retry.add(jobInvoker);
-            }
+          }
+          if (entry.isAvailable()) {
+            retry = true;
           }
         }
       }
-      if (retry != null) {
-        getInvokers().addAll(retry);
-        retry = null;
-      } else {
-        break;
-      }
-    } while (true);
-    s_logger.debug("No invokers available for job {}", job.getJob().getSpecification().getJobId());
+    } while (retry);
     return false;
   }
 
-  private synchronized void dispatchJobImpl(final DispatchJob job) {
-    if (!invoke(job)) {
-      s_logger.debug("Adding job to pending set");
-      getPending().add(job);
-      if (_invokers != null) {
-        retryPending(0L);
+  /**
+   * Queues a job that no invoker would accept against one whose capabilities satisfy its requirements. If there
+   * are none it is added to the shared pending queue to wait for a suitable invoker to register.
+   */
+  private void queueJob(final DispatchJob job) {
+    final InvokerEntry[] invokers = _invokers;
+    final int start = _nextQueue.getAndIncrement() & Integer.MAX_VALUE;
+    for (int i = 0; i < invokers.length; i++) {
+      final InvokerEntry entry = invokers[(start + i) % invokers.length];
+      if (job.canRunOn(entry)) {
+        s_logger.debug("Queuing job {} for invoker {}", job.getJob().getSpecification().getJobId(), entry);
+        enqueue(entry.getQueue(), job);
+        return;
       }
     }
+    s_logger.debug("Adding job {} to pending set", job.getJob().getSpecification().getJobId());
+    enqueue(getPending(), job);
+  }
+
+  private void dispatchJobImpl(final DispatchJob job) {
+    if (job._completed.get()) {
+      s_logger.info("Job {} cancelled", job.getJob().getSpecification().getJobId());
+      return;
+    }
+    if (!invoke(job)) {
+      queueJob(job);
+    }
   }
 
   /**
@@ -578,6 +961,7 @@ public class JobDispatcher implements JobInvokerRegister {
       final String identifier = invokerCapability.getKey().getInvokerId();
       if (identifier == null) {
         invokerCapabilityIterator.remove();
+        removeInvokerEntry(invokerCapability.getKey());
       } else {
         result.put(identifier, invokerCapability.getValue());
       }
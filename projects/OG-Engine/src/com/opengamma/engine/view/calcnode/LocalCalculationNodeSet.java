@@ -34,6 +34,9 @@ public class LocalCalculationNodeSet extends AbstractCollection<LocalCalculation
   private ExecutorService _writeBehindExecutorService;
   private FunctionInvocationStatisticsGatherer _statisticsGatherer = new DiscardingInvocationStatisticsGatherer();
   private String _nodeIdentifier;
+  private int _writeBehindBatchSize = Integer.MAX_VALUE;
+  private long _writeBehindBatchWindow;
+  private int _writeBehindMaxPending = Integer.MAX_VALUE;
 
   private int _nodeCount;
   private double _nodesPerCore;
@@ -134,6 +137,48 @@ public class LocalCalculationNodeSet extends AbstractCollection<LocalCalculation
     _writeBehindExecutorService = writeBehindExecutorService;
   }
 
+  /**
+   * Sets the maximum number of values each node's write-behind cache writes in one operation.
+   * 
+   * @param batchSize the maximum batch size
+   */
+  public void setWriteBehindBatchSize(final int batchSize) {
+    ArgumentChecker.notNegativeOrZero(batchSize, "batchSize");
+    _writeBehindBatchSize = batchSize;
+  }
+
+  public int getWriteBehindBatchSize() {
+    return _writeBehindBatchSize;
+  }
+
+  /**
+   * Sets how long each node's write-behind cache waits for a full batch of values before writing.
+   * 
+   * @param batchWindow the maximum time to wait, in milliseconds
+   */
+  public void setWriteBehindBatchWindow(final long batchWindow) {
+    ArgumentChecker.notNegative(batchWindow, "batchWindow");
+    _writeBehindBatchWindow = batchWindow;
+  }
+
+  public long getWriteBehindBatchWindow() {
+    return _writeBehindBatchWindow;
+  }
+
+  /**
+   * Sets the number of values that can be waiting in a node's write-behind cache before job execution is blocked.
+   * 
+   * @param maxPending the maximum number of pending values
+   */
+  public void setWriteBehindMaxPending(final int maxPending) {
+    ArgumentChecker.notNegativeOrZero(maxPending, "maxPending");
+    _writeBehindMaxPending = maxPending;
+  }
+
+  public int getWriteBehindMaxPending() {
+    return _writeBehindMaxPending;
+  }
+
   public void setNodeCount(final int nodeCount) {
     ArgumentChecker.notNegative(nodeCount, "nodeCount");
     _nodeCount = nodeCount;
@@ -204,6 +249,9 @@ public class LocalCalculationNodeSet extends AbstractCollection<LocalCalculation
     for (int i = 0; i < nodes; i++) {
       final LocalCalculationNode node = new LocalCalculationNode(getViewComputationCache(), getFunctionCompilationService(), getFunctionExecutionContext(), getComputationTargetResolver(),
           getViewProcessorQuery(), getWriteBehindExecutorService(), getStatisticsGatherer());
+      node.setWriteBehindBatchSize(getWriteBehindBatchSize());
+      node.setWriteBehindBatchWindow(getWriteBehindBatchWindow());
+      node.setWriteBehindMaxPending(getWriteBehindMaxPending());
       if (getNodeIdentifier() != null) {
         if (nodes > 1) {
           node.setNodeId(getNodeIdentifier() + ":" + (i + 1));
@@ -35,7 +35,7 @@ public class LocalNodeJobInvoker extends AbstractCalculationNodeInvocationContai
   }
 
   public LocalNodeJobInvoker(final Collection<AbstractCalculationNode> nodes) {
-    getNodes().addAll(nodes);
+    addNodes(nodes);
     recalculateCapabilities();
   }
 
@@ -114,6 +114,8 @@ public class RemoteNodeClient extends AbstractCalculationNodeInvocationContainer
     _identifierMap = identifierMap;
     connection.setFudgeMessageReceiver(this);
     _statistics = statistics;
+    // Jobs may be pipelined to us, so fetch their inputs from the remote cache while they wait for a node
+    setPrefetchQueuedJobInputs(true);
     statistics.setExecutorService(getExecutorService());
     statistics.setFudgeMessageSender(connection.getFudgeMessageSender());
   }
@@ -39,14 +39,30 @@ import com.opengamma.transport.FudgeConnection;
 import com.opengamma.transport.FudgeConnectionStateListener;
 import com.opengamma.transport.FudgeMessageReceiver;
 import com.opengamma.transport.FudgeMessageSender;
+import com.opengamma.util.ArgumentChecker;
 
 /**
  * A JobInvoker for invoking a job on a remote node connected by a FudgeConnection.
+ * <p>
+ * Jobs are pipelined to hide the network latency of short jobs. As well as one job for each of the
+ * remote node's threads, further jobs are sent to queue at the remote node so that a thread can start
+ * its next job as soon as it finishes one rather than waiting a round trip for it. The number of further
+ * jobs is the number needed to cover the round trip overhead at the observed job duration, up to a limit.
  */
 /* package */class RemoteNodeJobInvoker implements JobInvoker, FudgeMessageReceiver, FudgeConnectionStateListener {
 
   private static final Logger s_logger = LoggerFactory.getLogger(RemoteNodeJobInvoker.class);
 
+  /**
+   * The default maximum number of jobs queued at the remote node for each of its threads.
+   */
+  public static final int DEFAULT_MAX_PIPELINE_DEPTH = 4;
+
+  /**
+   * The number of round trips measured before the pipeline depth is recalculated.
+   */
+  private static final int ROUND_TRIP_SAMPLES = 16;
+
   private final ConcurrentMap<CalculationJobSpecification, JobInvocationReceiver> _jobCompletionCallbacks = new ConcurrentHashMap<CalculationJobSpecification, JobInvocationReceiver>();
   private final ExecutorService _executorService;
   private final FudgeMessageSender _fudgeMessageSender;
@@ -57,6 +73,15 @@ import com.opengamma.transport.FudgeMessageSender;
   private final IdentifierMap _identifierMap;
   private final FunctionCosts _functionCosts;
   private volatile String _invokerId;
+  private volatile int _maxPipelineDepth = DEFAULT_MAX_PIPELINE_DEPTH;
+  private volatile int _pipelineDepth;
+  /**
+   * Send times of the jobs whose round trip is being measured.
+   */
+  private final ConcurrentMap<CalculationJobSpecification, Long> _roundTripStart = new ConcurrentHashMap<CalculationJobSpecification, Long>();
+  private int _roundTripSamples;
+  private long _roundTripMinOverhead;
+  private long _roundTripTotalDuration;
   private final RemoteCalcNodeMessageVisitor _messageVisitor = new RemoteCalcNodeMessageVisitor() {
 
     @Override
@@ -78,11 +103,12 @@ import com.opengamma.transport.FudgeMessageSender;
       }
       // We check for below capacity. We can get "equal" here, but that means there is an invoke taking place which will be dealt with
       // by the notifyWhenAvailable that gets called to reschedule the invoker
-      if (_launched.decrementAndGet() < _capacity) {
+      if (_launched.decrementAndGet() < getLaunchLimit()) {
         if (registerIfRequired(true)) {
           s_logger.debug("Notified dispatcher of capacity available");
         }
       }
+      _roundTripStart.remove(message.getJob());
       // We decrement the count (and re-register) before processing the data as the remote node is already available if it's sent us its data.
       final JobInvocationReceiver receiver = getJobCompletionCallbacks().remove(message.getJob());
       if (receiver != null) {
@@ -113,7 +139,7 @@ import com.opengamma.transport.FudgeMessageSender;
       // [ENG-42] this is where we'd detect any other capability changes
       _capacity = message.getCapacity();
       final int launched = _launched.get();
-      if (launched < _capacity) {
+      if (launched < getLaunchLimit()) {
         if (registerIfRequired(true)) {
           s_logger.info("Remote invoker ready for use by dispatcher, capacity {}", message.getCapacity());
         }
@@ -130,7 +156,11 @@ import com.opengamma.transport.FudgeMessageSender;
       }
       // We check for below capacity. We can get "equal" here, but that means there is an invoke taking place which will be dealt with
       // by the notifyWhenAvailable that gets called to reschedule the invoker
-      if (_launched.decrementAndGet() < _capacity) {
+      final Long sent = _roundTripStart.remove(message.getResult().getSpecification());
+      if (sent != null) {
+        roundTripCompleted(System.nanoTime() - sent, message.getResult().getDuration());
+      }
+      if (_launched.decrementAndGet() < getLaunchLimit()) {
         if (registerIfRequired(true)) {
           s_logger.debug("Notified dispatcher of capacity available");
         }
@@ -179,6 +209,65 @@ import com.opengamma.transport.FudgeMessageSender;
     return _jobCompletionCallbacks;
   }
 
+  /**
+   * Sets the maximum number of jobs to queue at the remote node for each of its threads. Zero disables
+   * pipelining, so that jobs are only sent to the node when it has a thread free to execute them.
+   * 
+   * @param maxPipelineDepth the maximum number of queued jobs per thread, not negative
+   */
+  public void setMaxPipelineDepth(final int maxPipelineDepth) {
+    ArgumentChecker.notNegative(maxPipelineDepth, "maxPipelineDepth");
+    _maxPipelineDepth = maxPipelineDepth;
+    _pipelineDepth = Math.min(_pipelineDepth, maxPipelineDepth);
+  }
+
+  public int getMaxPipelineDepth() {
+    return _maxPipelineDepth;
+  }
+
+  /**
+   * Returns the current number of jobs that may be queued at the remote node for each of its threads.
+   * 
+   * @return the pipeline depth
+   */
+  public int getPipelineDepth() {
+    return _pipelineDepth;
+  }
+
+  /**
+   * Returns the number of jobs that may be in flight to the remote node.
+   */
+  private int getLaunchLimit() {
+    return _capacity * (1 + _pipelineDepth);
+  }
+
+  /**
+   * Records the round trip of a job that was sent when the node had a thread free, so the time not
+   * spent executing it is the messaging overhead rather than time queued at the node. After every
+   * {@link #ROUND_TRIP_SAMPLES} round trips the pipeline depth is set, by Little's law, to the number
+   * of jobs each thread executes in the least overhead seen.
+   * 
+   * @param roundTrip the time from sending the job to receiving its result, in nanoseconds
+   * @param duration the time the node spent executing the job, in nanoseconds
+   */
+  private synchronized void roundTripCompleted(final long roundTrip, final long duration) {
+    final long overhead = Math.max(roundTrip - duration, 0);
+    if ((_roundTripSamples == 0) || (overhead < _roundTripMinOverhead)) {
+      _roundTripMinOverhead = overhead;
+    }
+    _roundTripTotalDuration += duration;
+    if (++_roundTripSamples == ROUND_TRIP_SAMPLES) {
+      final long meanDuration = Math.max(_roundTripTotalDuration / ROUND_TRIP_SAMPLES, 1);
+      final int depth = (int) Math.min((_roundTripMinOverhead + meanDuration - 1) / meanDuration, getMaxPipelineDepth());
+      if (depth != _pipelineDepth) {
+        s_logger.info("Pipeline depth for {} now {} (overhead {}ns, job duration {}ns)", new Object[] {this, depth, _roundTripMinOverhead, meanDuration});
+        _pipelineDepth = depth;
+      }
+      _roundTripSamples = 0;
+      _roundTripTotalDuration = 0;
+    }
+  }
+
   private FudgeMessageSender getFudgeMessageSender() {
     return _fudgeMessageSender;
   }
@@ -202,11 +291,14 @@ import com.opengamma.transport.FudgeMessageSender;
 
   @Override
   public boolean invoke(final CalculationJob rootJob, final JobInvocationReceiver receiver) {
-    if (_launched.incrementAndGet() > _capacity) {
+    final int launched = _launched.incrementAndGet();
+    if (launched > getLaunchLimit()) {
       _launched.decrementAndGet();
       s_logger.debug("Capacity reached");
       return false;
     }
+    // Only measure jobs which the node should be able to start straight away
+    final boolean measureRoundTrip = launched <= _capacity;
     s_logger.info("Dispatching job {}", rootJob.getSpecification());
     // Don't block the dispatcher with outgoing serialization and I/O
     getExecutorService().execute(new Runnable() {
@@ -215,9 +307,13 @@ import com.opengamma.transport.FudgeMessageSender;
         try {
           getJobCompletionCallbacks().put(job.getSpecification(), receiver);
           job.convertInputs(getIdentifierMap());
+          if (measureRoundTrip && (job == rootJob)) {
+            _roundTripStart.put(job.getSpecification(), System.nanoTime());
+          }
           sendMessage(new Execute(job));
         } catch (Exception e) {
           s_logger.warn("Error sending job {}", job.getSpecification().getJobId());
+          _roundTripStart.remove(job.getSpecification());
           _launched.decrementAndGet();
           receiver.jobFailed(RemoteNodeJobInvoker.this, "node on " + getInvokerId(), new OpenGammaRuntimeException("Error sending job", e));
         }
@@ -264,7 +360,7 @@ import com.opengamma.transport.FudgeMessageSender;
   @Override
   public boolean notifyWhenAvailable(final JobInvokerRegister callback) {
     _dispatchCallback.set(callback);
-    if (_launched.get() < _capacity) {
+    if (_launched.get() < getLaunchLimit()) {
       if (registerIfRequired(false)) {
         s_logger.debug("Capacity available at notify");
         return true;
@@ -295,8 +391,10 @@ import com.opengamma.transport.FudgeMessageSender;
   @Override
   public void connectionFailed(final FudgeConnection connection, final Exception cause) {
     s_logger.warn("Client connection {} dropped", connection, cause);
+    _pipelineDepth = 0;
     _launched.addAndGet(_capacity);
     _invokerId = null;
+    _roundTripStart.clear();
     for (CalculationJobSpecification jobSpec : getJobCompletionCallbacks().keySet()) {
       final JobInvocationReceiver callback = getJobCompletionCallbacks().remove(jobSpec);
       // There could still be late messages arriving from a buffer even though the connection has now failed
@@ -26,6 +26,7 @@ import com.opengamma.engine.view.calcnode.msg.RemoteCalcNodeMessageVisitor;
 import com.opengamma.engine.view.calcnode.stats.FunctionCosts;
 import com.opengamma.transport.FudgeConnection;
 import com.opengamma.transport.FudgeConnectionReceiver;
+import com.opengamma.util.ArgumentChecker;
 
 /**
  * Server end to RemoteNodeClient to receive requests from remote calculation nodes and marshal
@@ -41,6 +42,7 @@ public class RemoteNodeServer implements FudgeConnectionReceiver {
   private final FunctionCosts _functionCosts;
   private final FunctionCompilationContext _functionCompilationContext;
   private Set<Capability> _capabilitiesToAdd;
+  private int _maxPipelineDepth = RemoteNodeJobInvoker.DEFAULT_MAX_PIPELINE_DEPTH;
 
   public RemoteNodeServer(final JobInvokerRegister jobInvokerRegister, final IdentifierMap identifierMap, final FunctionCosts functionCosts, final FunctionCompilationContext functionCompilationContext) {
     _jobInvokerRegister = jobInvokerRegister;
@@ -63,6 +65,21 @@ public class RemoteNodeServer implements FudgeConnectionReceiver {
     }
   }
 
+  /**
+   * Sets the maximum number of jobs to queue at each remote node for each of its threads, to hide the
+   * network latency of short jobs. The number actually queued adapts to the measured round trip time.
+   * 
+   * @param maxPipelineDepth the maximum number of queued jobs per thread, zero to disable pipelining
+   */
+  public void setMaxPipelineDepth(final int maxPipelineDepth) {
+    ArgumentChecker.notNegative(maxPipelineDepth, "maxPipelineDepth");
+    _maxPipelineDepth = maxPipelineDepth;
+  }
+
+  public int getMaxPipelineDepth() {
+    return _maxPipelineDepth;
+  }
+
   protected JobInvokerRegister getJobInvokerRegister() {
     return _jobInvokerRegister;
   }
@@ -98,6 +115,7 @@ public class RemoteNodeServer implements FudgeConnectionReceiver {
       protected void visitReadyMessage(final Ready message) {
         s_logger.info("Remote node connected - {}", connection);
         final RemoteNodeJobInvoker invoker = new RemoteNodeJobInvoker(getExecutorService(), message, connection, getIdentifierMap(), getFunctionCosts());
+        invoker.setMaxPipelineDepth(getMaxPipelineDepth());
         if (_capabilitiesToAdd != null) {
           invoker.addCapabilities(_capabilitiesToAdd);
         }
@@ -32,6 +32,7 @@ import com.opengamma.engine.view.permission.ViewPermissionProvider;
 import com.opengamma.id.UniqueIdentifier;
 import com.opengamma.livedata.UserPrincipal;
 import com.opengamma.util.ArgumentChecker;
+import com.opengamma.util.monitor.LatencyHistogram;
 
 /**
  * Default implementation of {@link ViewClient}.
@@ -264,6 +265,16 @@ public class ViewClientImpl implements ViewClient {
     _mergingViewProcessListener.setMinimumUpdatePeriodMillis(periodMillis);
   }
   
+  /**
+   * Gets the time from results being received from the view process to the result listener having been notified
+   * of them, including any time spent waiting for a rate-limited or paused update to be released.
+   * 
+   * @return the latency histogram, not null
+   */
+  public LatencyHistogram getResultDispatchLatency() {
+    return _mergingViewProcessListener.getResultDispatchLatency();
+  }
+  
   @Override
   public ViewResultMode getResultMode() {
     return _resultMode.get();
@@ -27,6 +27,7 @@ import com.opengamma.engine.view.listener.ViewDefinitionCompilationFailedCall;
 import com.opengamma.engine.view.listener.ViewDefinitionCompiledCall;
 import com.opengamma.engine.view.listener.ViewResultListener;
 import com.opengamma.util.ArgumentChecker;
+import com.opengamma.util.monitor.LatencyHistogram;
 
 /**
  * Collects and merges view process updates, releasing them only when {@code drain()} is called.
@@ -49,6 +50,12 @@ public class MergingViewProcessListener implements ViewResultListener {
   
   private final List<Function<ViewResultListener, ?>> _callQueue = new LinkedList<Function<ViewResultListener, ?>>();
   
+  /**
+   * The time, from {@link System#nanoTime()}, at which the earliest result merged into the queued result call was received.
+   */
+  private long _resultReceivedNanos;
+  private final LatencyHistogram _resultDispatchLatency = new LatencyHistogram();
+  
   private int _currentResultCompilationIndex = -1;
   private int _resultIndex = -1;
   private int _futureResultCompilationIndex = -1;
@@ -105,6 +112,16 @@ public class MergingViewProcessListener implements ViewResultListener {
     return _lastUpdateMillis.get();
   }
   
+  /**
+   * Gets the time from results being received to the underlying listener having been notified of them. When updates
+   * are merged, this includes the time the earliest result merged into an update waited for the update to be released.
+   * 
+   * @return the latency histogram, not null
+   */
+  public LatencyHistogram getResultDispatchLatency() {
+    return _resultDispatchLatency;
+  }
+  
   //-------------------------------------------------------------------------
   public boolean isLatestResultCycleRetained() {
     return _isLatestResultCycleRetained;
@@ -165,7 +182,9 @@ public class MergingViewProcessListener implements ViewResultListener {
         getCycleRetainer().replaceRetainedCycle(fullResult.getViewCycleId());
       }
       if (isPassThrough()) {
+        long start = System.nanoTime();
         getUnderlying().cycleCompleted(fullResult, deltaResult);
+        _resultDispatchLatency.recordSince(start);
       } else {
         
         // Result merging is the most complicated. It is based on the following rules:
@@ -197,6 +216,7 @@ public class MergingViewProcessListener implements ViewResultListener {
         } else {
           // No existing result call - add new one
           CycleCompletedCall resultCall = new CycleCompletedCall(fullResult, deltaResult);
+          _resultReceivedNanos = System.nanoTime();
           _resultIndex = _callQueue.size();
           _callQueue.add(resultCall);
         }
@@ -268,8 +288,12 @@ public class MergingViewProcessListener implements ViewResultListener {
   public void drain() {
     _mergerLock.lock();
     try {
+      int index = 0;
       for (Function<ViewResultListener, ?> call : _callQueue) {
         call.apply(getUnderlying());
+        if (index++ == _resultIndex) {
+          _resultDispatchLatency.recordSince(_resultReceivedNanos);
+        }
       }
       _callQueue.clear();
       _currentResultCompilationIndex = -1;
@@ -0,0 +1,43 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.compilation;
+
+import com.opengamma.engine.ComputationTargetResolver;
+import com.opengamma.engine.function.CompiledFunctionRepository;
+import com.opengamma.engine.view.ViewDefinition;
+
+/**
+ * A persistent store of compiled view definitions, allowing a view process to start from the dependency graphs
+ * produced by an earlier compilation instead of building them again.
+ * <p>
+ * A stored compilation is only returned for a view definition equal to the one it was compiled from, and only if the
+ * function configuration and the targets of its graphs have not changed since it was stored. The portfolio may have changed since it was stored so it
+ * should be passed to {@link ViewDefinitionCompiler#compile(ViewDefinition, ViewCompilationServices, javax.time.InstantProvider, CompiledViewDefinitionWithGraphsImpl)}
+ * as the previous compilation rather than used directly.
+ */
+public interface CompiledViewDefinitionCache {
+
+  /**
+   * Gets the stored compilation of a view definition.
+   *
+   * @param viewDefinition  the view definition, not null
+   * @param functions  the compiled functions to rebuild the dependency graphs with, not null
+   * @param targetResolver  the resolver for the targets of the dependency graph nodes, not null
+   * @return the compiled view definition, or null if there is none or it is no longer valid
+   */
+  CompiledViewDefinitionWithGraphsImpl get(ViewDefinition viewDefinition, CompiledFunctionRepository functions, ComputationTargetResolver targetResolver);
+
+  /**
+   * Stores a compiled view definition, replacing any previous compilation of the same view definition. This is called
+   * on the computation thread after each compilation so should not block on I/O; an implementation may store the
+   * compilation later, but a subsequent {@link #get} must see it.
+   *
+   * @param compiledViewDefinition  the compiled view definition, not null
+   * @param functions  the compiled functions the dependency graphs were built with, not null
+   */
+  void put(CompiledViewDefinitionWithGraphsImpl compiledViewDefinition, CompiledFunctionRepository functions);
+
+}
@@ -0,0 +1,476 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.compilation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeField;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.fudgemsg.mapping.FudgeDeserializationContext;
+import org.fudgemsg.mapping.FudgeSerializationContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opengamma.OpenGammaRuntimeException;
+import com.opengamma.core.position.Portfolio;
+import com.opengamma.engine.ComputationTarget;
+import com.opengamma.engine.ComputationTargetResolver;
+import com.opengamma.engine.depgraph.DependencyGraph;
+import com.opengamma.engine.depgraph.DependencyNode;
+import com.opengamma.engine.function.CompiledFunctionDefinition;
+import com.opengamma.engine.function.CompiledFunctionRepository;
+import com.opengamma.engine.function.FunctionParameters;
+import com.opengamma.engine.function.LiveDataSourcingFunction;
+import com.opengamma.engine.function.ParameterizedFunction;
+import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.engine.view.ViewDefinition;
+import com.opengamma.util.ArgumentChecker;
+import com.opengamma.util.NamedThreadPoolFactory;
+
+/**
+ * A {@link CompiledViewDefinitionCache} that writes each compiled view definition as a Fudge encoded file in a
+ * directory, named after the view definition and a digest of its content.
+ * <p>
+ * The function initialization identifier is generated afresh each time the function repository is initialized, so
+ * is not used to validate a stored compilation. Instead a fingerprint of the function repository, made from the
+ * identifier, class, name and default parameters of every function, is stored with the compilation and must match
+ * the current repository. Function identifiers may be positional so could otherwise refer to different functions
+ * after a configuration change. The targets of the nodes are resolved again rather than restored, and must not have
+ * changed. A stored compilation that fails these checks is deleted. A compilation that is returned is given the
+ * current function initialization identifier.
+ * <p>
+ * Compilations are written by a single background thread so that storing one does not delay the caller. Only the
+ * latest compilation of each view definition waiting to be written is kept; any earlier one is never written.
+ */
+public class FileCompiledViewDefinitionCache implements CompiledViewDefinitionCache {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(FileCompiledViewDefinitionCache.class);
+
+  private static final String FILE_SUFFIX = ".fudge";
+
+  private static final String VIEW_DEFINITION_FIELD = "viewDefinition";
+  private static final String PORTFOLIO_FIELD = "portfolio";
+  private static final String FUNCTION_INIT_ID_FIELD = "functionInitId";
+  private static final String FUNCTION_FINGERPRINT_FIELD = "functionFingerprint";
+  private static final String GRAPH_FIELD = "graph";
+  private static final String CALCULATION_CONFIGURATION_FIELD = "calculationConfiguration";
+  private static final String NODE_FIELD = "node";
+  private static final String TARGET_FIELD = "target";
+  private static final String FUNCTION_UNIQUE_ID_FIELD = "functionUniqueId";
+  private static final String FUNCTION_NAME_FIELD = "functionName";
+  private static final String FUNCTION_PARAMETERS_FIELD = "functionParameters";
+  private static final String LIVE_DATA_REQUIREMENT_FIELD = "liveDataRequirement";
+  private static final String INPUT_NODE_FIELD = "inputNode";
+  private static final String INPUT_VALUE_FIELD = "inputValue";
+  private static final String OUTPUT_VALUE_FIELD = "outputValue";
+  private static final String TERMINAL_OUTPUT_VALUE_FIELD = "terminalOutputValue";
+
+  private static final long THREAD_KEEP_ALIVE = 60L;
+
+  private final File _directory;
+  private final FudgeContext _fudgeContext;
+  private final ConcurrentMap<String, PendingWrite> _pendingWrites = new ConcurrentHashMap<String, PendingWrite>();
+  private final ThreadPoolExecutor _writer;
+
+  /**
+   * A compilation waiting to be written.
+   */
+  private static final class PendingWrite {
+
+    private final CompiledViewDefinitionWithGraphsImpl _compiledViewDefinition;
+    private final CompiledFunctionRepository _functions;
+
+    public PendingWrite(final CompiledViewDefinitionWithGraphsImpl compiledViewDefinition, final CompiledFunctionRepository functions) {
+      _compiledViewDefinition = compiledViewDefinition;
+      _functions = functions;
+    }
+
+  }
+
+  public FileCompiledViewDefinitionCache(final File directory, final FudgeContext fudgeContext) {
+    ArgumentChecker.notNull(directory, "directory");
+    ArgumentChecker.notNull(fudgeContext, "fudgeContext");
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new OpenGammaRuntimeException("Unable to create directory " + directory);
+    }
+    _directory = directory;
+    _fudgeContext = fudgeContext;
+    _writer = new ThreadPoolExecutor(1, 1, THREAD_KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new NamedThreadPoolFactory(
+        "CompiledViewDefinitionWriter", true));
+    _writer.allowCoreThreadTimeOut(true);
+  }
+
+  public File getDirectory() {
+    return _directory;
+  }
+
+  public FudgeContext getFudgeContext() {
+    return _fudgeContext;
+  }
+
+  /**
+   * Gets the file for a view definition. Different versions of a view definition with the same name are stored in
+   * different files.
+   *
+   * @param viewDefinition  the view definition
+   * @return the file
+   */
+  protected File getFile(final ViewDefinition viewDefinition) {
+    final FudgeSerializationContext context = new FudgeSerializationContext(getFudgeContext());
+    final MutableFudgeMsg msg = context.newMessage();
+    context.addToMessage(msg, VIEW_DEFINITION_FIELD, null, viewDefinition);
+    return new File(getDirectory(), getFilePrefix(viewDefinition) + toHex(digest(getFudgeContext().toByteArray(msg))) + FILE_SUFFIX);
+  }
+
+  private static String getFilePrefix(final ViewDefinition viewDefinition) {
+    try {
+      return URLEncoder.encode(viewDefinition.getName(), "UTF-8") + "-";
+    } catch (UnsupportedEncodingException e) {
+      throw new OpenGammaRuntimeException("UTF-8 not supported", e);
+    }
+  }
+
+  /**
+   * Deletes the files of any other versions of a view definition.
+   */
+  private void deleteOtherVersions(final ViewDefinition viewDefinition, final File file) {
+    final String prefix = getFilePrefix(viewDefinition);
+    final File[] files = getDirectory().listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File other : files) {
+      final String name = other.getName();
+      // The digest never contains a '-', so this won't match the files of other view definitions
+      if (!other.equals(file) && name.startsWith(prefix) && name.endsWith(FILE_SUFFIX) && (name.indexOf('-', prefix.length()) < 0)) {
+        s_logger.debug("Deleting {}", other);
+        other.delete();
+      }
+    }
+  }
+
+  /**
+   * Creates a fingerprint of the function repository, which changes if any function is added, removed or configured
+   * differently.
+   *
+   * @param functions  the function repository
+   * @return the fingerprint
+   */
+  protected String getFunctionFingerprint(final CompiledFunctionRepository functions) {
+    final CompiledFunctionDefinition[] definitions = functions.getAllFunctions().toArray(new CompiledFunctionDefinition[functions.getAllFunctions().size()]);
+    Arrays.sort(definitions, new Comparator<CompiledFunctionDefinition>() {
+      @Override
+      public int compare(final CompiledFunctionDefinition o1, final CompiledFunctionDefinition o2) {
+        return o1.getFunctionDefinition().getUniqueId().compareTo(o2.getFunctionDefinition().getUniqueId());
+      }
+    });
+    final FudgeSerializationContext context = new FudgeSerializationContext(getFudgeContext());
+    final MutableFudgeMsg msg = context.newMessage();
+    for (CompiledFunctionDefinition definition : definitions) {
+      final MutableFudgeMsg functionMsg = context.newMessage();
+      functionMsg.add(FUNCTION_UNIQUE_ID_FIELD, definition.getFunctionDefinition().getUniqueId());
+      functionMsg.add(FUNCTION_NAME_FIELD, definition.getFunctionDefinition().getShortName());
+      context.addToMessageWithClassHeaders(functionMsg, FUNCTION_PARAMETERS_FIELD, null, definition.getFunctionDefinition().getDefaultParameters());
+      msg.add(definition.getFunctionDefinition().getClass().getName(), functionMsg);
+    }
+    return toHex(digest(getFudgeContext().toByteArray(msg)));
+  }
+
+  private static byte[] digest(final byte[] data) {
+    try {
+      return MessageDigest.getInstance("SHA-1").digest(data);
+    } catch (NoSuchAlgorithmException e) {
+      throw new OpenGammaRuntimeException("SHA-1 not supported", e);
+    }
+  }
+
+  private static String toHex(final byte[] data) {
+    final StringBuilder sb = new StringBuilder(data.length * 2);
+    for (byte b : data) {
+      sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return sb.toString();
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public CompiledViewDefinitionWithGraphsImpl get(final ViewDefinition viewDefinition, final CompiledFunctionRepository functions, final ComputationTargetResolver targetResolver) {
+    ArgumentChecker.notNull(viewDefinition, "viewDefinition");
+    ArgumentChecker.notNull(functions, "functions");
+    ArgumentChecker.notNull(targetResolver, "targetResolver");
+    // Any compilation still waiting to be written is newer than the stored one
+    writePending(viewDefinition.getName());
+    final File file = getFile(viewDefinition);
+    if (!file.exists()) {
+      s_logger.debug("No stored compilation of {}", viewDefinition.getName());
+      return null;
+    }
+    CompiledViewDefinitionWithGraphsImpl compiledViewDefinition;
+    try {
+      final FudgeMsg msg = getFudgeContext().deserialize(FileUtils.readFileToByteArray(file)).getMessage();
+      compiledViewDefinition = decode(new FudgeDeserializationContext(getFudgeContext()), msg, viewDefinition, functions, targetResolver);
+    } catch (Exception e) {
+      s_logger.warn("Unable to read stored compilation of {} from {}: {}", new Object[] {viewDefinition.getName(), file, e.getMessage()});
+      s_logger.debug("Caught exception", e);
+      compiledViewDefinition = null;
+    }
+    if (compiledViewDefinition == null) {
+      s_logger.info("Discarding stored compilation of {} in {}", viewDefinition.getName(), file);
+      file.delete();
+    }
+    return compiledViewDefinition;
+  }
+
+  @Override
+  public void put(final CompiledViewDefinitionWithGraphsImpl compiledViewDefinition, final CompiledFunctionRepository functions) {
+    ArgumentChecker.notNull(compiledViewDefinition, "compiledViewDefinition");
+    ArgumentChecker.notNull(functions, "functions");
+    final String name = compiledViewDefinition.getViewDefinition().getName();
+    if (_pendingWrites.put(name, new PendingWrite(compiledViewDefinition, functions)) == null) {
+      _writer.execute(new Runnable() {
+        @Override
+        public void run() {
+          writePending(name);
+        }
+      });
+    } else {
+      s_logger.debug("Replaced compilation of {} waiting to be written", name);
+    }
+  }
+
+  /**
+   * Writes all compilations that are waiting to be written, returning when they have been stored.
+   */
+  public void flush() {
+    for (String name : _pendingWrites.keySet()) {
+      writePending(name);
+    }
+  }
+
+  /**
+   * Writes the latest compilation of a view definition if one is waiting to be written. This is synchronized so that
+   * a caller that writes on demand waits for the background thread to finish writing the same file.
+   *
+   * @param name  the view definition name
+   */
+  private synchronized void writePending(final String name) {
+    final PendingWrite pending = _pendingWrites.remove(name);
+    if (pending != null) {
+      try {
+        write(pending._compiledViewDefinition, pending._functions);
+      } catch (RuntimeException e) {
+        s_logger.warn("Unable to store compilation of {}: {}", name, e.getMessage());
+        s_logger.debug("Caught exception", e);
+      }
+    }
+  }
+
+  /**
+   * Writes a compilation to its file, replacing any other version of the view definition.
+   *
+   * @param compiledViewDefinition  the compiled view definition
+   * @param functions  the function repository the compilation was made with
+   */
+  protected void write(final CompiledViewDefinitionWithGraphsImpl compiledViewDefinition, final CompiledFunctionRepository functions) {
+    final ViewDefinition viewDefinition = compiledViewDefinition.getViewDefinition();
+    final File file = getFile(viewDefinition);
+    deleteOtherVersions(viewDefinition, file);
+    final MutableFudgeMsg msg = encode(new FudgeSerializationContext(getFudgeContext()), compiledViewDefinition, functions);
+    if (msg == null) {
+      // Remove any stale compilation so that it won't be used instead
+      file.delete();
+      return;
+    }
+    final File tempFile = new File(file.getPath() + ".tmp");
+    try {
+      FileUtils.writeByteArrayToFile(tempFile, getFudgeContext().toByteArray(msg));
+      if (file.exists() && !file.delete()) {
+        throw new IOException("Unable to replace " + file);
+      }
+      if (!tempFile.renameTo(file)) {
+        throw new IOException("Unable to rename " + tempFile + " to " + file);
+      }
+      s_logger.info("Stored compilation of {} in {}", viewDefinition.getName(), file);
+    } catch (IOException e) {
+      s_logger.warn("Unable to store compilation of {}: {}", viewDefinition.getName(), e.getMessage());
+      s_logger.debug("Caught exception", e);
+      tempFile.delete();
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Encodes a compiled view definition.
+   *
+   * @param context  the serialization context
+   * @param compiledViewDefinition  the compiled view definition
+   * @param functions  the function repository the compilation was made with
+   * @return the message, or null if the compilation uses functions that can't be restored
+   */
+  protected MutableFudgeMsg encode(final FudgeSerializationContext context, final CompiledViewDefinitionWithGraphsImpl compiledViewDefinition,
+      final CompiledFunctionRepository functions) {
+    final MutableFudgeMsg msg = context.newMessage();
+    context.addToMessage(msg, VIEW_DEFINITION_FIELD, null, compiledViewDefinition.getViewDefinition());
+    if (compiledViewDefinition.getPortfolio() != null) {
+      context.addToMessage(msg, PORTFOLIO_FIELD, null, compiledViewDefinition.getPortfolio());
+    }
+    msg.add(FUNCTION_INIT_ID_FIELD, compiledViewDefinition.getFunctionInitId());
+    msg.add(FUNCTION_FINGERPRINT_FIELD, getFunctionFingerprint(functions));
+    for (DependencyGraph graph : compiledViewDefinition.getAllDependencyGraphs()) {
+      final MutableFudgeMsg graphMsg = encodeGraph(context, graph);
+      if (graphMsg == null) {
+        return null;
+      }
+      msg.add(GRAPH_FIELD, graphMsg);
+    }
+    return msg;
+  }
+
+  private MutableFudgeMsg encodeGraph(final FudgeSerializationContext context, final DependencyGraph graph) {
+    final MutableFudgeMsg msg = context.newMessage();
+    msg.add(CALCULATION_CONFIGURATION_FIELD, graph.getCalculationConfigurationName());
+    final Map<DependencyNode, Integer> nodeIndex = new HashMap<DependencyNode, Integer>();
+    final List<DependencyNode> nodes = graph.getExecutionOrder();
+    for (DependencyNode node : nodes) {
+      nodeIndex.put(node, nodeIndex.size());
+    }
+    for (DependencyNode node : nodes) {
+      final MutableFudgeMsg nodeMsg = context.newMessage();
+      context.addToMessage(nodeMsg, TARGET_FIELD, null, node.getComputationTarget());
+      final CompiledFunctionDefinition function = node.getFunction().getFunction();
+      if (function instanceof LiveDataSourcingFunction) {
+        if (!LiveDataSourcingFunction.class.equals(function.getClass())) {
+          s_logger.info("Can't store {} using {}", graph, function);
+          return null;
+        }
+        context.addToMessage(nodeMsg, LIVE_DATA_REQUIREMENT_FIELD, null, ((LiveDataSourcingFunction) function).getLiveDataRequirement().getFirst());
+      } else {
+        nodeMsg.add(FUNCTION_UNIQUE_ID_FIELD, function.getFunctionDefinition().getUniqueId());
+        nodeMsg.add(FUNCTION_NAME_FIELD, function.getFunctionDefinition().getShortName());
+        context.addToMessageWithClassHeaders(nodeMsg, FUNCTION_PARAMETERS_FIELD, null, node.getFunction().getParameters());
+      }
+      for (DependencyNode inputNode : node.getInputNodes()) {
+        final Integer index = nodeIndex.get(inputNode);
+        if (index != null) {
+          nodeMsg.add(INPUT_NODE_FIELD, index);
+        }
+      }
+      for (ValueSpecification inputValue : node.getInputValues()) {
+        context.addToMessage(nodeMsg, INPUT_VALUE_FIELD, null, inputValue);
+      }
+      for (ValueSpecification outputValue : node.getOutputValues()) {
+        context.addToMessage(nodeMsg, OUTPUT_VALUE_FIELD, null, outputValue);
+      }
+      for (ValueSpecification terminalOutputValue : node.getTerminalOutputValues()) {
+        context.addToMessage(nodeMsg, TERMINAL_OUTPUT_VALUE_FIELD, null, terminalOutputValue);
+      }
+      msg.add(NODE_FIELD, nodeMsg);
+    }
+    return msg;
+  }
+
+  /**
+   * Decodes a compiled view definition.
+   *
+   * @param context  the deserialization context
+   * @param msg  the message
+   * @param viewDefinition  the view definition the compilation is required for
+   * @param functions  the compiled functions
+   * @param targetResolver  the resolver for the node targets
+   * @return the compiled view definition, or null if it is not valid for the view definition, functions or targets
+   */
+  protected CompiledViewDefinitionWithGraphsImpl decode(final FudgeDeserializationContext context, final FudgeMsg msg, final ViewDefinition viewDefinition,
+      final CompiledFunctionRepository functions, final ComputationTargetResolver targetResolver) {
+    final ViewDefinition storedViewDefinition = context.fieldValueToObject(ViewDefinition.class, msg.getByName(VIEW_DEFINITION_FIELD));
+    if (!viewDefinition.equals(storedViewDefinition)) {
+      s_logger.info("Stored compilation of {} is for a different view definition", viewDefinition.getName());
+      return null;
+    }
+    if (!getFunctionFingerprint(functions).equals(msg.getString(FUNCTION_FINGERPRINT_FIELD))) {
+      s_logger.info("Stored compilation of {} is for a different function configuration", viewDefinition.getName());
+      return null;
+    }
+    final FudgeField portfolioField = msg.getByName(PORTFOLIO_FIELD);
+    final Portfolio portfolio = (portfolioField != null) ? context.fieldValueToObject(Portfolio.class, portfolioField) : null;
+    final Map<String, DependencyGraph> graphs = new HashMap<String, DependencyGraph>();
+    for (FudgeField graphField : msg.getAllByName(GRAPH_FIELD)) {
+      final DependencyGraph graph = decodeGraph(context, (FudgeMsg) graphField.getValue(), functions, targetResolver);
+      if (graph == null) {
+        return null;
+      }
+      graphs.put(graph.getCalculationConfigurationName(), graph);
+    }
+    s_logger.debug("Restored compilation of {} made with function init ID {}", viewDefinition.getName(), msg.getLong(FUNCTION_INIT_ID_FIELD));
+    return new CompiledViewDefinitionWithGraphsImpl(viewDefinition, graphs, portfolio, functions.getCompilationContext().getFunctionInitId());
+  }
+
+  private DependencyGraph decodeGraph(final FudgeDeserializationContext context, final FudgeMsg msg, final CompiledFunctionRepository functions,
+      final ComputationTargetResolver targetResolver) {
+    final DependencyGraph graph = new DependencyGraph(msg.getString(CALCULATION_CONFIGURATION_FIELD));
+    final List<FudgeField> nodeFields = msg.getAllByName(NODE_FIELD);
+    final List<DependencyNode> nodes = new ArrayList<DependencyNode>(nodeFields.size());
+    for (FudgeField nodeField : nodeFields) {
+      final FudgeMsg nodeMsg = (FudgeMsg) nodeField.getValue();
+      final ComputationTarget storedTarget = context.fieldValueToObject(ComputationTarget.class, nodeMsg.getByName(TARGET_FIELD));
+      final ComputationTarget target = targetResolver.resolve(storedTarget.toSpecification());
+      if (!storedTarget.equals(target)) {
+        s_logger.info("Target {} has changed", storedTarget.toSpecification());
+        return null;
+      }
+      final DependencyNode node = new DependencyNode(target);
+      final FudgeField liveDataField = nodeMsg.getByName(LIVE_DATA_REQUIREMENT_FIELD);
+      if (liveDataField != null) {
+        final LiveDataSourcingFunction function = new LiveDataSourcingFunction(context.fieldValueToObject(ValueRequirement.class, liveDataField));
+        node.setFunction(new ParameterizedFunction(function, function.getDefaultParameters()));
+      } else {
+        final String functionId = nodeMsg.getString(FUNCTION_UNIQUE_ID_FIELD);
+        final CompiledFunctionDefinition function = functions.getDefinition(functionId);
+        if ((function == null) || !function.getFunctionDefinition().getShortName().equals(nodeMsg.getString(FUNCTION_NAME_FIELD))) {
+          s_logger.info("Function {} ({}) is no longer available", functionId, nodeMsg.getString(FUNCTION_NAME_FIELD));
+          return null;
+        }
+        node.setFunction(new ParameterizedFunction(function, context.fieldValueToObject(FunctionParameters.class, nodeMsg.getByName(FUNCTION_PARAMETERS_FIELD))));
+      }
+      for (FudgeField field : nodeMsg.getAllByName(INPUT_NODE_FIELD)) {
+        // Nodes are written in execution order so the inputs have already been created
+        node.addInputNode(nodes.get(((Number) field.getValue()).intValue()));
+      }
+      for (FudgeField field : nodeMsg.getAllByName(INPUT_VALUE_FIELD)) {
+        node.addInputValue(context.fieldValueToObject(ValueSpecification.class, field));
+      }
+      for (FudgeField field : nodeMsg.getAllByName(OUTPUT_VALUE_FIELD)) {
+        node.addOutputValue(context.fieldValueToObject(ValueSpecification.class, field));
+      }
+      for (FudgeField field : nodeMsg.getAllByName(TERMINAL_OUTPUT_VALUE_FIELD)) {
+        node.addTerminalOutputValue(context.fieldValueToObject(ValueSpecification.class, field));
+      }
+      nodes.add(node);
+      graph.addDependencyNode(node);
+    }
+    return graph;
+  }
+
+}
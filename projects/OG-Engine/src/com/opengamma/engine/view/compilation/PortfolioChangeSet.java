@@ -0,0 +1,165 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.compilation;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.opengamma.core.position.Portfolio;
+import com.opengamma.core.position.PortfolioNode;
+import com.opengamma.core.position.Position;
+import com.opengamma.core.position.Trade;
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.id.UniqueIdentifier;
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * The portfolio targets affected by a change from one fully-resolved portfolio structure to another.
+ * <p>
+ * A position is affected if it has been added, removed or differs in any way from its previous version; all of
+ * its trades are then also affected. A portfolio node is affected if it has been added or removed, if its
+ * immediate children or positions have changed, or if any node or position beneath it is affected.
+ */
+/* package */final class PortfolioChangeSet {
+
+  /**
+   * The change set when nothing has changed, or there is no portfolio.
+   */
+  public static final PortfolioChangeSet EMPTY = new PortfolioChangeSet(Collections.<ComputationTargetSpecification>emptySet(),
+      Collections.<ComputationTargetSpecification>emptySet());
+
+  /**
+   * Targets from the previous portfolio which have been removed or changed.
+   */
+  private final Set<ComputationTargetSpecification> _previousTargets;
+  /**
+   * Targets from the new portfolio which have been added or changed.
+   */
+  private final Set<ComputationTargetSpecification> _newTargets;
+
+  private PortfolioChangeSet(final Set<ComputationTargetSpecification> previousTargets, final Set<ComputationTargetSpecification> newTargets) {
+    _previousTargets = previousTargets;
+    _newTargets = newTargets;
+  }
+
+  /**
+   * Compares two portfolio structures.
+   *
+   * @param previous  the previous portfolio, not null
+   * @param current  the new portfolio, not null
+   * @return the change set, not null
+   */
+  public static PortfolioChangeSet of(final Portfolio previous, final Portfolio current) {
+    ArgumentChecker.notNull(previous, "previous");
+    ArgumentChecker.notNull(current, "current");
+    final Map<UniqueIdentifier, PortfolioNode> previousNodes = new HashMap<UniqueIdentifier, PortfolioNode>();
+    final Map<UniqueIdentifier, Position> previousPositions = new HashMap<UniqueIdentifier, Position>();
+    index(previous.getRootNode(), previousNodes, previousPositions);
+    final Map<UniqueIdentifier, PortfolioNode> currentNodes = new HashMap<UniqueIdentifier, PortfolioNode>();
+    final Map<UniqueIdentifier, Position> currentPositions = new HashMap<UniqueIdentifier, Position>();
+    index(current.getRootNode(), currentNodes, currentPositions);
+    final Set<ComputationTargetSpecification> previousTargets = new HashSet<ComputationTargetSpecification>();
+    addChangedTargets(previous.getRootNode(), currentNodes, currentPositions, previousTargets);
+    final Set<ComputationTargetSpecification> newTargets = new HashSet<ComputationTargetSpecification>();
+    addChangedTargets(current.getRootNode(), previousNodes, previousPositions, newTargets);
+    return new PortfolioChangeSet(previousTargets, newTargets);
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Tests whether there are no changes between the two portfolios.
+   *
+   * @return {@code true} if nothing has changed, {@code false} otherwise
+   */
+  public boolean isEmpty() {
+    return _previousTargets.isEmpty() && _newTargets.isEmpty();
+  }
+
+  /**
+   * Tests whether a target from the previous portfolio has been removed or changed. Any dependency graph nodes
+   * operating on such a target cannot be reused.
+   *
+   * @param target  the target specification, not null
+   * @return {@code true} if the target is affected by the change, {@code false} otherwise
+   */
+  public boolean isAffected(final ComputationTargetSpecification target) {
+    return _previousTargets.contains(target);
+  }
+
+  /**
+   * Gets the targets from the new portfolio which have been added or changed. Requirements on these targets must be
+   * added to the dependency graphs.
+   *
+   * @return the targets, not null
+   */
+  public Set<ComputationTargetSpecification> getNewTargets() {
+    return _newTargets;
+  }
+
+  //-------------------------------------------------------------------------
+  private static void index(final PortfolioNode node, final Map<UniqueIdentifier, PortfolioNode> nodes, final Map<UniqueIdentifier, Position> positions) {
+    if (node == null) {
+      return;
+    }
+    nodes.put(node.getUniqueId(), node);
+    for (Position position : node.getPositions()) {
+      positions.put(position.getUniqueId(), position);
+    }
+    for (PortfolioNode child : node.getChildNodes()) {
+      index(child, nodes, positions);
+    }
+  }
+
+  private static Set<UniqueIdentifier> getChildIdentifiers(final PortfolioNode node) {
+    final Set<UniqueIdentifier> identifiers = new HashSet<UniqueIdentifier>();
+    for (PortfolioNode child : node.getChildNodes()) {
+      identifiers.add(child.getUniqueId());
+    }
+    for (Position position : node.getPositions()) {
+      identifiers.add(position.getUniqueId());
+    }
+    return identifiers;
+  }
+
+  /**
+   * Adds the targets beneath a node which differ from the other portfolio.
+   *
+   * @return {@code true} if the node itself is affected, {@code false} otherwise
+   */
+  private static boolean addChangedTargets(final PortfolioNode node, final Map<UniqueIdentifier, PortfolioNode> otherNodes, final Map<UniqueIdentifier, Position> otherPositions,
+      final Set<ComputationTargetSpecification> changed) {
+    if (node == null) {
+      return false;
+    }
+    boolean nodeChanged = false;
+    for (PortfolioNode child : node.getChildNodes()) {
+      if (addChangedTargets(child, otherNodes, otherPositions, changed)) {
+        nodeChanged = true;
+      }
+    }
+    for (Position position : node.getPositions()) {
+      if (!position.equals(otherPositions.get(position.getUniqueId()))) {
+        changed.add(new ComputationTargetSpecification(position));
+        for (Trade trade : position.getTrades()) {
+          changed.add(new ComputationTargetSpecification(trade));
+        }
+        nodeChanged = true;
+      }
+    }
+    if (!nodeChanged) {
+      final PortfolioNode otherNode = otherNodes.get(node.getUniqueId());
+      nodeChanged = (otherNode == null) || !getChildIdentifiers(node).equals(getChildIdentifiers(otherNode));
+    }
+    if (nodeChanged) {
+      changed.add(new ComputationTargetSpecification(node));
+    }
+    return nodeChanged;
+  }
+
+}
@@ -25,6 +25,7 @@ import com.opengamma.core.position.impl.PositionImpl;
 import com.opengamma.core.position.impl.TradeImpl;
 import com.opengamma.core.security.Security;
 import com.opengamma.engine.CachingComputationTargetResolver;
+import com.opengamma.engine.ComputationTargetSpecification;
 import com.opengamma.engine.depgraph.DependencyGraphBuilder;
 import com.opengamma.engine.view.ResultModelDefinition;
 import com.opengamma.engine.view.ResultOutputMode;
@@ -46,13 +47,15 @@ import com.opengamma.util.monitor.OperationTimer;
 
   // --------------------------------------------------------------------------
   /**
-   * Adds portfolio targets to the dependency graphs as required, and fully resolves the portfolio structure.
+   * Fully resolves the portfolio structure if any portfolio targets are required by the view definition. The
+   * requirements are added to the dependency graphs separately, for each calculation configuration, by
+   * {@link #addPortfolioRequirements} so that the configurations can be compiled concurrently.
    * 
    * @param compilationContext  the context of the view definition compilation
    * @return the fully-resolved portfolio structure if any portfolio targets were required, {@code null}
    *         otherwise.
    */
-  public static Portfolio execute(ViewCompilationContext compilationContext) {
+  public static Portfolio resolvePortfolio(ViewCompilationContext compilationContext) {
     // Everything we do here is geared towards the avoidance of resolution (of portfolios, positions, securities)
     // wherever possible, to prevent needless dependencies (on a position master, security master) when a view never
     // really has them.
@@ -64,27 +67,49 @@ import com.opengamma.util.monitor.OperationTimer;
       return null;
     }
 
-    Portfolio portfolio = null;
-
     for (ViewCalculationConfiguration calcConfig : compilationContext.getViewDefinition().getAllCalculationConfigurations()) {
-      if (calcConfig.getAllPortfolioRequirements().size() == 0) {
-        // No portfolio requirements for this calculation configuration - avoid further processing.
-        continue;
+      if (calcConfig.getAllPortfolioRequirements().size() != 0) {
+        // Actually need the portfolio now
+        return getPortfolio(compilationContext);
       }
+    }
+    // No portfolio requirements for any calculation configuration - avoid further processing.
+    return null;
+  }
 
-      // Actually need the portfolio now
-      if (portfolio == null) {
-        portfolio = getPortfolio(compilationContext);
-      }
-      
-      DependencyGraphBuilder builder = compilationContext.getBuilders().get(calcConfig.getName());
+  /**
+   * Adds portfolio targets to the dependency graph of a single calculation configuration. This only touches the
+   * builder for the given configuration so may be called concurrently for different configurations.
+   * 
+   * @param compilationContext  the context of the view definition compilation
+   * @param calcConfig  the calculation configuration to add requirements for
+   * @param portfolio  the fully-resolved portfolio structure, or {@code null} if there are no portfolio targets
+   */
+  public static void addPortfolioRequirements(ViewCompilationContext compilationContext, ViewCalculationConfiguration calcConfig, Portfolio portfolio) {
+    addPortfolioRequirements(compilationContext, calcConfig, portfolio, null);
+  }
 
-      // Add portfolio requirements to the dependency graph
-      PortfolioCompilerTraversalCallback traversalCallback = new PortfolioCompilerTraversalCallback(builder, calcConfig);
-      PortfolioNodeTraverser.depthFirst(traversalCallback).traverse(portfolio.getRootNode());
+  /**
+   * Adds portfolio targets to the dependency graph of a single calculation configuration, restricted to a subset of
+   * the targets. This is used when updating a previously compiled graph following a change to the portfolio.
+   * 
+   * @param compilationContext  the context of the view definition compilation
+   * @param calcConfig  the calculation configuration to add requirements for
+   * @param portfolio  the fully-resolved portfolio structure, or {@code null} if there are no portfolio targets
+   * @param targets  the targets to add requirements for, or {@code null} for all targets
+   */
+  public static void addPortfolioRequirements(ViewCompilationContext compilationContext, ViewCalculationConfiguration calcConfig, Portfolio portfolio,
+      Set<ComputationTargetSpecification> targets) {
+    if ((portfolio == null) || (calcConfig.getAllPortfolioRequirements().size() == 0)) {
+      // No portfolio requirements for this calculation configuration - avoid further processing.
+      return;
     }
-    
-    return portfolio;
+    DependencyGraphBuilder builder = compilationContext.getBuilders().get(calcConfig.getName());
+
+    // Add portfolio requirements to the dependency graph
+    PortfolioCompilerTraversalCallback traversalCallback = new PortfolioCompilerTraversalCallback(builder, calcConfig, targets);
+    PortfolioNodeTraverser.depthFirst(traversalCallback).traverse(portfolio.getRootNode());
+    traversalCallback.addTargets();
   }
 
   // --------------------------------------------------------------------------
@@ -5,7 +5,10 @@
  */
 package com.opengamma.engine.view.compilation;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
@@ -19,6 +22,7 @@ import com.opengamma.core.position.Trade;
 import com.opengamma.core.position.impl.AbstractPortfolioNodeTraversalCallback;
 import com.opengamma.core.position.impl.PortfolioNodeTraverser;
 import com.opengamma.core.position.impl.PositionAccumulator;
+import com.opengamma.engine.ComputationTargetSpecification;
 import com.opengamma.engine.depgraph.DependencyGraphBuilder;
 import com.opengamma.engine.value.ValueProperties;
 import com.opengamma.engine.value.ValueRequirement;
@@ -28,18 +32,33 @@ import com.opengamma.engine.view.ViewCalculationConfiguration;
 import com.opengamma.util.tuple.Pair;
 
 /**
- * Compiles dependency graphs for each stage in a portfolio tree.
+ * Compiles dependency graphs for each stage in a portfolio tree. The requirements are gathered as the tree is
+ * traversed and added to the builder by {@link #addTargets()}, so that the builder can resolve them in parallel.
  */
 /* package */class PortfolioCompilerTraversalCallback extends AbstractPortfolioNodeTraversalCallback {
   private static final Logger s_logger = LoggerFactory.getLogger(PortfolioCompilerTraversalCallback.class);
   private final DependencyGraphBuilder _dependencyGraphBuilder;
   private final ViewCalculationConfiguration _calculationConfiguration;
   private final ResultModelDefinition _resultModelDefinition;
+  private final Set<ComputationTargetSpecification> _targets;
+  private final List<Set<ValueRequirement>> _requirements = new ArrayList<Set<ValueRequirement>>();
 
   public PortfolioCompilerTraversalCallback(DependencyGraphBuilder dependencyGraphBuilder, ViewCalculationConfiguration calculationConfiguration) {
+    this(dependencyGraphBuilder, calculationConfiguration, null);
+  }
+
+  /**
+   * Creates a callback that only adds requirements on a subset of the portfolio targets.
+   * 
+   * @param dependencyGraphBuilder  the builder to add the requirements to
+   * @param calculationConfiguration  the calculation configuration
+   * @param targets  the targets to add requirements for, or {@code null} for all targets
+   */
+  public PortfolioCompilerTraversalCallback(DependencyGraphBuilder dependencyGraphBuilder, ViewCalculationConfiguration calculationConfiguration, Set<ComputationTargetSpecification> targets) {
     _dependencyGraphBuilder = dependencyGraphBuilder;
     _calculationConfiguration = calculationConfiguration;
     _resultModelDefinition = calculationConfiguration.getViewDefinition().getResultModelDefinition();
+    _targets = targets;
   }
 
   /**
@@ -87,6 +106,32 @@ import com.opengamma.util.tuple.Pair;
     addTradeRequirements(portfolioNode);
   }
 
+  /**
+   * Adds the requirements gathered by traversing the portfolio to the dependency graph builder, in the order they
+   * were found.
+   */
+  public void addTargets() {
+    _dependencyGraphBuilder.addTargets(_requirements);
+    _requirements.clear();
+  }
+
+  private void addTarget(Set<ValueRequirement> requirements) {
+    if (_targets == null) {
+      // The caller reuses the set
+      _requirements.add(new LinkedHashSet<ValueRequirement>(requirements));
+      return;
+    }
+    final Set<ValueRequirement> filtered = new HashSet<ValueRequirement>();
+    for (ValueRequirement requirement : requirements) {
+      if (_targets.contains(requirement.getTargetSpecification())) {
+        filtered.add(requirement);
+      }
+    }
+    if (!filtered.isEmpty()) {
+      _requirements.add(filtered);
+    }
+  }
+
   private void addTradeRequirements(PortfolioNode portfolioNode) {
     Set<String> subNodeSecurityTypes = getSubNodeSecurityTypes(portfolioNode);
     Map<String, Set<Pair<String, ValueProperties>>> outputsBySecurityType = _calculationConfiguration.getTradeRequirementsBySecurityType();
@@ -109,7 +154,7 @@ import com.opengamma.util.tuple.Pair;
               requirements.add(new ValueRequirement(requiredOutput.getFirst(), trade, requiredOutput.getSecond()));
             }
           }
-          _dependencyGraphBuilder.addTarget(requirements);
+          addTarget(requirements);
         }
       }
     }
@@ -129,7 +174,7 @@ import com.opengamma.util.tuple.Pair;
         for (Pair<String, ValueProperties> requiredOutput : requiredOutputs) {
           requirements.add(new ValueRequirement(requiredOutput.getFirst(), portfolioNode, requiredOutput.getSecond()));
         }
-        _dependencyGraphBuilder.addTarget(requirements);
+        addTarget(requirements);
       }
       if (_resultModelDefinition.getPositionOutputMode() != ResultOutputMode.NONE) {
         for (Position position : portfolioNode.getPositions()) {
@@ -137,7 +182,7 @@ import com.opengamma.util.tuple.Pair;
           for (Pair<String, ValueProperties> requiredOutput : requiredOutputs) {
             requirements.add(new ValueRequirement(requiredOutput.getFirst(), position, requiredOutput.getSecond()));
           }
-          _dependencyGraphBuilder.addTarget(requirements);
+          addTarget(requirements);
         }
       }
     }
@@ -5,6 +5,11 @@
  */
 package com.opengamma.engine.view.compilation;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
 import com.opengamma.engine.ComputationTargetSpecification;
 import com.opengamma.engine.depgraph.DependencyGraphBuilder;
 import com.opengamma.engine.value.ValueRequirement;
@@ -26,19 +31,47 @@ public final class SpecificRequirementsCompiler {
    * @param compilationContext  the context of the view definition compilation
    */
   public static void execute(ViewCompilationContext compilationContext) {
-    ResultModelDefinition resultModelDefinition = compilationContext.getViewDefinition().getResultModelDefinition();
     for (ViewCalculationConfiguration calcConfig : compilationContext.getViewDefinition().getAllCalculationConfigurations()) {
-      DependencyGraphBuilder builder = compilationContext.getBuilders().get(calcConfig.getName());
-      for (ValueRequirement requirement : calcConfig.getSpecificRequirements()) {
-        ComputationTargetSpecification targetSpecification = requirement.getTargetSpecification();
-        if (resultModelDefinition.getOutputMode(targetSpecification.getType()) == ResultOutputMode.NONE) {
-          // We're not including this in the results, so no point it being a terminal output. It will be added
-          // automatically if it is needed for some other terminal output.
-          continue;
-        }
-        builder.addTarget(requirement);
+      execute(compilationContext, calcConfig);
+    }
+  }
+
+  /**
+   * Adds any specific requirements mentioned in a single view calculation configuration to its dependency graph. This
+   * only touches the builder for the given configuration so may be called concurrently for different configurations.
+   * 
+   * @param compilationContext  the context of the view definition compilation
+   * @param calcConfig  the calculation configuration to add requirements for
+   */
+  public static void execute(ViewCompilationContext compilationContext, ViewCalculationConfiguration calcConfig) {
+    execute(compilationContext, calcConfig, null);
+  }
+
+  /**
+   * Adds any specific requirements mentioned in a single view calculation configuration to its dependency graph,
+   * restricted to a subset of the targets. This is used when updating a previously compiled graph.
+   * 
+   * @param compilationContext  the context of the view definition compilation
+   * @param calcConfig  the calculation configuration to add requirements for
+   * @param targets  the targets to add requirements for, or {@code null} for all targets
+   */
+  public static void execute(ViewCompilationContext compilationContext, ViewCalculationConfiguration calcConfig, Set<ComputationTargetSpecification> targets) {
+    ResultModelDefinition resultModelDefinition = compilationContext.getViewDefinition().getResultModelDefinition();
+    DependencyGraphBuilder builder = compilationContext.getBuilders().get(calcConfig.getName());
+    final List<Set<ValueRequirement>> requirements = new ArrayList<Set<ValueRequirement>>();
+    for (ValueRequirement requirement : calcConfig.getSpecificRequirements()) {
+      ComputationTargetSpecification targetSpecification = requirement.getTargetSpecification();
+      if ((targets != null) && !targets.contains(targetSpecification)) {
+        continue;
+      }
+      if (resultModelDefinition.getOutputMode(targetSpecification.getType()) == ResultOutputMode.NONE) {
+        // We're not including this in the results, so no point it being a terminal output. It will be added
+        // automatically if it is needed for some other terminal output.
+        continue;
       }
+      requirements.add(Collections.singleton(requirement));
     }
+    builder.addTargets(requirements);
   }
   
 }
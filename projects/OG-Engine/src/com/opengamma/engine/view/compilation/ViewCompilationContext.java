@@ -59,6 +59,7 @@ public class ViewCompilationContext {
       builder.setCalculationConfigurationName(configName);
       builder.setLiveDataAvailabilityProvider(compilationServices.getLiveDataAvailabilityProvider());
       builder.setTargetResolver(compilationServices.getComputationTargetResolver());
+      builder.setExecutorService(compilationServices.getExecutorService());
       final FunctionCompilationContext compilationContext = compilationServices.getFunctionCompilationContext().clone();
       final ViewCalculationConfiguration calcConfig = viewDefinition.getCalculationConfiguration(configName);
       compilationContext.setViewCalculationConfiguration(calcConfig);
@@ -5,9 +5,17 @@
  */
 package com.opengamma.engine.view.compilation;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 
 import javax.time.Instant;
 import javax.time.InstantProvider;
@@ -15,12 +23,16 @@ import javax.time.InstantProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.opengamma.OpenGammaRuntimeException;
 import com.opengamma.core.position.Portfolio;
 import com.opengamma.core.security.SecuritySource;
+import com.opengamma.engine.ComputationTargetSpecification;
 import com.opengamma.engine.depgraph.DependencyGraph;
 import com.opengamma.engine.depgraph.DependencyGraphBuilder;
 import com.opengamma.engine.depgraph.DependencyNode;
 import com.opengamma.engine.depgraph.DependencyNodeFormatter;
+import com.opengamma.engine.function.CompiledFunctionDefinition;
+import com.opengamma.engine.function.FunctionCompilationContext;
 import com.opengamma.engine.value.ValueRequirement;
 import com.opengamma.engine.value.ValueSpecification;
 import com.opengamma.engine.view.ViewCalculationConfiguration;
@@ -57,17 +69,13 @@ public final class ViewDefinitionCompiler {
     ViewCompilationContext viewCompilationContext = new ViewCompilationContext(viewDefinition, compilationServices, Instant.of(atInstant));
 
     long t = -System.nanoTime();
-    Portfolio portfolio = PortfolioCompiler.execute(viewCompilationContext);
+    Portfolio portfolio = PortfolioCompiler.resolvePortfolio(viewCompilationContext);
     t += System.nanoTime();
-    s_logger.debug("Added portfolio requirements after {}ms", (double) t / 1e6);
+    s_logger.debug("Resolved portfolio after {}ms", (double) t / 1e6);
     t -= System.nanoTime();
-    SpecificRequirementsCompiler.execute(viewCompilationContext);
+    Map<String, DependencyGraph> graphsByConfiguration = compileDependencyGraphs(viewCompilationContext, portfolio, null, null, null);
     t += System.nanoTime();
-    s_logger.debug("Added specific requirements after {}ms", (double) t / 1e6);
-    t -= System.nanoTime();
-    Map<String, DependencyGraph> graphsByConfiguration = processDependencyGraphs(viewCompilationContext);
-    t += System.nanoTime();
-    s_logger.debug("Processed dependency graphs after {}ms", (double) t / 1e6);
+    s_logger.debug("Compiled dependency graphs after {}ms", (double) t / 1e6);
     timer.finished();
 
     if (OUTPUT_DEPENDENCY_GRAPHS) {
@@ -80,15 +88,201 @@ public final class ViewDefinitionCompiler {
     return new CompiledViewDefinitionWithGraphsImpl(viewDefinition, graphsByConfiguration, portfolio, compilationServices.getFunctionCompilationContext().getFunctionInitId());
   }
 
+  /**
+   * Compiles a view definition, updating a previous compilation of it. The dependency graph nodes of the previous
+   * compilation are reused, including any shared market data and curve nodes, unless they operate on changed
+   * portfolio targets or their functions can no longer be used at the new valuation time. Only the requirements of
+   * the affected targets are resolved again. A full compilation is performed if the previous one cannot be updated,
+   * for example because the view definition has changed or the function repository has been re-initialized.
+   * <p>
+   * The previous compilation is not modified. Note that the order in which requirements are resolved may affect the
+   * function choices made (see [ENG-259]) so the updated graphs are not necessarily identical to the graphs that a
+   * full compilation would produce.
+   * 
+   * @param viewDefinition  the view definition, not null
+   * @param compilationServices  the compilation services, not null
+   * @param atInstant  the valuation time the graphs must be valid for, not null
+   * @param previous  the previous compilation of the view definition, null to perform a full compilation
+   * @return the compiled view definition, not null
+   */
+  public static CompiledViewDefinitionWithGraphsImpl compile(ViewDefinition viewDefinition, ViewCompilationServices compilationServices, InstantProvider atInstant,
+      CompiledViewDefinitionWithGraphsImpl previous) {
+    ArgumentChecker.notNull(viewDefinition, "viewDefinition");
+    ArgumentChecker.notNull(compilationServices, "compilationServices");
+    final long functionInitId = compilationServices.getFunctionCompilationContext().getFunctionInitId();
+    if ((previous == null) || (previous.getFunctionInitId() != functionInitId) || !viewDefinition.equals(previous.getViewDefinition())) {
+      return compile(viewDefinition, compilationServices, atInstant);
+    }
+
+    s_logger.debug("Incrementally compiling {} for use at {}", viewDefinition.getName(), atInstant);
+
+    OperationTimer timer = new OperationTimer(s_logger, "Incrementally compiling ViewDefinition: {}", viewDefinition.getName());
+    final Instant valuationTime = Instant.of(atInstant);
+    ViewCompilationContext viewCompilationContext = new ViewCompilationContext(viewDefinition, compilationServices, valuationTime);
+    Portfolio portfolio = PortfolioCompiler.resolvePortfolio(viewCompilationContext);
+    final PortfolioChangeSet changes;
+    if (portfolio == null) {
+      changes = (previous.getPortfolio() == null) ? PortfolioChangeSet.EMPTY : null;
+    } else {
+      changes = (previous.getPortfolio() != null) ? PortfolioChangeSet.of(previous.getPortfolio(), portfolio) : null;
+    }
+    final Map<String, DependencyGraph> graphsByConfiguration;
+    if (changes == null) {
+      // Gained or lost the portfolio; nothing worth reusing
+      graphsByConfiguration = compileDependencyGraphs(viewCompilationContext, portfolio, null, null, valuationTime);
+    } else if (changes.isEmpty() && previous.isValidFor(valuationTime)) {
+      s_logger.debug("No portfolio changes; reusing previous compilation of {}", viewDefinition.getName());
+      timer.finished();
+      return previous;
+    } else {
+      graphsByConfiguration = compileDependencyGraphs(viewCompilationContext, portfolio, previous, changes, valuationTime);
+    }
+    timer.finished();
+    return new CompiledViewDefinitionWithGraphsImpl(viewDefinition, graphsByConfiguration, portfolio, functionInitId);
+  }
+
   // --------------------------------------------------------------------------
-  private static Map<String, DependencyGraph> processDependencyGraphs(ViewCompilationContext context) {
-    Map<String, DependencyGraph> result = new HashMap<String, DependencyGraph>();
-    for (DependencyGraphBuilder builder : context.getBuilders().values()) {
-      DependencyGraph dependencyGraph = builder.getDependencyGraph();
-      dependencyGraph.removeUnnecessaryValues();
-      result.put(builder.getCalculationConfigurationName(), dependencyGraph);
-    }
-    return result;
+  /**
+   * Builds the dependency graph for each calculation configuration. The graphs are independent of each other so each
+   * is built by a separate job on the compilation executor. Within a configuration the builder resolves the targets
+   * and candidate functions of the requirements in parallel on the same executor, but still adds them to the graph
+   * in order, on a single thread, as that order can affect the function choices made (see [ENG-259]); each graph is
+   * therefore identical to one built serially.
+   */
+  private static Map<String, DependencyGraph> compileDependencyGraphs(final ViewCompilationContext context, final Portfolio portfolio,
+      final CompiledViewDefinitionWithGraphsImpl previous, final PortfolioChangeSet changes, final Instant valuationTime) {
+    final Collection<ViewCalculationConfiguration> calcConfigs = context.getViewDefinition().getAllCalculationConfigurations();
+    final Map<String, DependencyGraph> result = new ConcurrentHashMap<String, DependencyGraph>();
+    if (calcConfigs.size() == 1) {
+      // No point in going via the executor
+      compileDependencyGraph(context, calcConfigs.iterator().next(), portfolio, previous, changes, valuationTime, result);
+      return new HashMap<String, DependencyGraph>(result);
+    }
+    final ExecutorCompletionService<String> completionService = new ExecutorCompletionService<String>(context.getServices().getExecutorService());
+    for (final ViewCalculationConfiguration calcConfig : calcConfigs) {
+      completionService.submit(new Runnable() {
+        @Override
+        public void run() {
+          compileDependencyGraph(context, calcConfig, portfolio, previous, changes, valuationTime, result);
+        }
+      }, calcConfig.getName());
+    }
+    Throwable failure = null;
+    for (int i = 0; i < calcConfigs.size(); i++) {
+      try {
+        completionService.take().get();
+      } catch (InterruptedException e) {
+        Thread.interrupted();
+        throw new OpenGammaRuntimeException("Interrupted while compiling dependency graphs for " + context.getViewDefinition().getName(), e);
+      } catch (ExecutionException e) {
+        s_logger.warn("Error compiling dependency graph", e.getCause());
+        if (failure == null) {
+          failure = e.getCause();
+        }
+      }
+    }
+    if (failure != null) {
+      throw new OpenGammaRuntimeException("Unable to compile dependency graphs for " + context.getViewDefinition().getName(), failure);
+    }
+    return new HashMap<String, DependencyGraph>(result);
+  }
+
+  private static void compileDependencyGraph(final ViewCompilationContext context, final ViewCalculationConfiguration calcConfig, final Portfolio portfolio,
+      final CompiledViewDefinitionWithGraphsImpl previous, final PortfolioChangeSet changes, final Instant valuationTime, final Map<String, DependencyGraph> result) {
+    OperationTimer timer = new OperationTimer(s_logger, "Compiling dependency graph for {}", calcConfig.getName());
+    final DependencyGraph previousGraph = (previous != null) ? previous.getDependencyGraph(calcConfig.getName()) : null;
+    if (previousGraph != null) {
+      patchDependencyGraph(context, calcConfig, portfolio, previousGraph, changes, valuationTime);
+    } else {
+      PortfolioCompiler.addPortfolioRequirements(context, calcConfig, portfolio);
+      SpecificRequirementsCompiler.execute(context, calcConfig);
+    }
+    DependencyGraphBuilder builder = context.getBuilders().get(calcConfig.getName());
+    DependencyGraph dependencyGraph = builder.getDependencyGraph();
+    dependencyGraph.removeUnnecessaryValues();
+    result.put(builder.getCalculationConfigurationName(), dependencyGraph);
+    timer.finished();
+  }
+
+  /**
+   * Seeds the builder for a calculation configuration with a copy of the reusable part of the previous graph, and then
+   * adds the requirements of the targets affected by the portfolio change.
+   */
+  private static void patchDependencyGraph(final ViewCompilationContext context, final ViewCalculationConfiguration calcConfig, final Portfolio portfolio,
+      final DependencyGraph previousGraph, final PortfolioChangeSet changes, final Instant valuationTime) {
+    final DependencyGraphBuilder builder = context.getBuilders().get(calcConfig.getName());
+    // Discard nodes on changed targets, or that can't be reused, and everything that depends on them
+    final Map<DependencyNode, Set<ValueSpecification>> outputValues = new HashMap<DependencyNode, Set<ValueSpecification>>();
+    final Set<DependencyNode> discard = new HashSet<DependencyNode>();
+    final LinkedList<DependencyNode> pending = new LinkedList<DependencyNode>();
+    for (DependencyNode node : previousGraph.getDependencyNodes()) {
+      final Set<ValueSpecification> results = changes.isAffected(node.getComputationTarget().toSpecification()) ? null
+          : getReusableOutputs(node, builder.getCompilationContext(), valuationTime);
+      if (results != null) {
+        outputValues.put(node, results);
+      } else {
+        discard.add(node);
+        pending.add(node);
+      }
+    }
+    while (!pending.isEmpty()) {
+      for (DependencyNode dependent : pending.removeFirst().getDependentNodes()) {
+        if (previousGraph.containsNode(dependent) && discard.add(dependent)) {
+          pending.add(dependent);
+        }
+      }
+    }
+    // Requirements must be added for the new targets, and for the terminal outputs of any discarded nodes
+    final Set<ComputationTargetSpecification> targets = new HashSet<ComputationTargetSpecification>(changes.getNewTargets());
+    final List<DependencyNode> retained = new ArrayList<DependencyNode>(previousGraph.getSize());
+    for (DependencyNode node : previousGraph.getDependencyNodes()) {
+      if (discard.contains(node)) {
+        for (ValueSpecification terminalOutput : node.getTerminalOutputValues()) {
+          targets.add(terminalOutput.getTargetSpecification());
+        }
+      } else {
+        retained.add(node);
+      }
+    }
+    s_logger.info("Reusing {} of {} nodes from previous {}", new Object[] {retained.size(), previousGraph.getSize(), previousGraph});
+    // The reused nodes get back any outputs pruned from the previous graph, so the builder will find them rather than
+    // create a second node for the same function; anything still unused is pruned again once the graph is built
+    builder.setDependencyGraph(previousGraph.copySubGraph(retained, outputValues));
+    PortfolioCompiler.addPortfolioRequirements(context, calcConfig, portfolio, targets);
+    SpecificRequirementsCompiler.execute(context, calcConfig, targets);
+  }
+
+  /**
+   * Tests whether a node from a previous graph can be reused. A node is reused if its function can still be invoked
+   * at the valuation time, still applies to the node's target and still produces all of the outputs the node is
+   * used for.
+   * 
+   * @return the full set of outputs the function now produces, or null if the node can't be reused
+   */
+  private static Set<ValueSpecification> getReusableOutputs(final DependencyNode node, final FunctionCompilationContext context, final Instant valuationTime) {
+    final CompiledFunctionDefinition function = node.getFunction().getFunction();
+    final Instant earliest = function.getEarliestInvocationTime();
+    final Instant latest = function.getLatestInvocationTime();
+    if (((earliest != null) && valuationTime.isBefore(earliest)) || ((latest != null) && valuationTime.isAfter(latest))) {
+      s_logger.debug("Can't reuse {}; function not valid at {}", node, valuationTime);
+      return null;
+    }
+    try {
+      if (!function.canApplyTo(context, node.getComputationTarget())) {
+        s_logger.debug("Can't reuse {}; function no longer applies", node);
+        return null;
+      }
+      final Set<ValueSpecification> results = function.getResults(context, node.getComputationTarget());
+      if ((results == null) || !results.containsAll(node.getOutputValues())) {
+        s_logger.debug("Can't reuse {}; outputs no longer produced", node);
+        return null;
+      }
+      return results;
+    } catch (RuntimeException e) {
+      s_logger.debug("Can't reuse {}", node);
+      s_logger.debug("Caught exception", e);
+      return null;
+    }
   }
 
   private static void outputDependencyGraphs(Map<String, DependencyGraph> graphsByConfiguration) {
@@ -10,6 +10,7 @@ import static org.testng.AssertJUnit.assertFalse;
 import static org.testng.AssertJUnit.assertNotNull;
 import static org.testng.AssertJUnit.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -19,9 +20,13 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.time.Instant;
+
 import org.apache.commons.lang.ObjectUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,15 +35,21 @@ import org.testng.annotations.Test;
 
 import com.google.common.collect.Sets;
 import com.opengamma.engine.ComputationTarget;
+import com.opengamma.engine.ComputationTargetSpecification;
 import com.opengamma.engine.ComputationTargetType;
 import com.opengamma.engine.MapComputationTargetResolver;
 import com.opengamma.engine.function.AbstractFunction;
+import com.opengamma.engine.function.CachingFunctionRepositoryCompiler;
 import com.opengamma.engine.function.CompiledFunctionDefinition;
+import com.opengamma.engine.function.CompiledFunctionService;
 import com.opengamma.engine.function.FunctionCompilationContext;
 import com.opengamma.engine.function.FunctionExecutionContext;
 import com.opengamma.engine.function.FunctionInputs;
+import com.opengamma.engine.function.InMemoryFunctionRepository;
 import com.opengamma.engine.function.LiveDataSourcingFunction;
+import com.opengamma.engine.function.resolver.DefaultFunctionResolver;
 import com.opengamma.engine.function.resolver.DefaultFunctionResolver.FunctionPriority;
+import com.opengamma.engine.livedata.FixedLiveDataAvailabilityProvider;
 import com.opengamma.engine.test.MockFunction;
 import com.opengamma.engine.value.ComputedValue;
 import com.opengamma.engine.value.ValueProperties;
@@ -46,6 +57,7 @@ import com.opengamma.engine.value.ValuePropertyNames;
 import com.opengamma.engine.value.ValueRequirement;
 import com.opengamma.engine.value.ValueSpecification;
 import com.opengamma.id.UniqueIdentifier;
+import com.opengamma.util.tuple.Pair;
 
 /**
  * 
@@ -847,4 +859,118 @@ public class DependencyGraphBuilderTest {
     //graph.dumpStructureASCII(System.out);
   }
 
+  private static DependencyGraphBuilder createBuilder(final InMemoryFunctionRepository functions, final MapComputationTargetResolver targetResolver,
+      final FixedLiveDataAvailabilityProvider liveData) {
+    final DependencyGraphBuilder builder = new DependencyGraphBuilder();
+    builder.setLiveDataAvailabilityProvider(liveData);
+    final CompiledFunctionService compilationService = new CompiledFunctionService(functions, new CachingFunctionRepositoryCompiler(), new FunctionCompilationContext());
+    builder.setFunctionResolver(new DefaultFunctionResolver(compilationService).compile(Instant.now()));
+    builder.setTargetResolver(targetResolver);
+    builder.setCalculationConfigurationName("testCalcConf");
+    return builder;
+  }
+
+  /**
+   * Describes each output of a graph by the function producing it and the inputs to that function.
+   */
+  private static Map<ValueSpecification, Pair<String, Set<ValueSpecification>>> describe(final DependencyGraph graph) {
+    final Map<ValueSpecification, Pair<String, Set<ValueSpecification>>> result = new HashMap<ValueSpecification, Pair<String, Set<ValueSpecification>>>();
+    for (DependencyNode node : graph.getDependencyNodes()) {
+      for (ValueSpecification output : node.getOutputValues()) {
+        result.put(output, Pair.of(node.getFunction().getFunction().getFunctionDefinition().getUniqueId(), node.getInputValues()));
+      }
+    }
+    return result;
+  }
+
+  public void parallelResolutionMatchesSerial() {
+    final InMemoryFunctionRepository functions = new InMemoryFunctionRepository();
+    final MapComputationTargetResolver targetResolver = new MapComputationTargetResolver();
+    final FixedLiveDataAvailabilityProvider liveData = new FixedLiveDataAvailabilityProvider();
+    final List<Set<ValueRequirement>> requirements = new ArrayList<Set<ValueRequirement>>();
+    final int targets = 40;
+    final int sharedInputs = 5;
+    for (int i = 0; i < targets; i++) {
+      final ComputationTarget target = new ComputationTarget(UniqueIdentifier.of("Test", Integer.toString(i)));
+      targetResolver.addTarget(target);
+      final ComputationTarget inputTarget = new ComputationTarget(UniqueIdentifier.of("Test", Integer.toString(i % sharedInputs)));
+      final MockFunction value = new MockFunction("Value" + i, target);
+      value.addRequirement(new ValueRequirement("Input", inputTarget.toSpecification()));
+      value.addResult(new ValueRequirement("Value", target.toSpecification()), 1.0);
+      functions.addFunction(value);
+      if (i < sharedInputs) {
+        final ValueRequirement market = new ValueRequirement("Market", target.toSpecification());
+        liveData.addRequirement(market);
+        final MockFunction input = new MockFunction("Input" + i, target);
+        input.addRequirement(market);
+        input.addResult(new ValueRequirement("Input", target.toSpecification()), 2.0);
+        functions.addFunction(input);
+      }
+      final Set<ValueRequirement> batch = new HashSet<ValueRequirement>();
+      batch.add(new ValueRequirement("Value", target.toSpecification()));
+      if ((i % 3) == 0) {
+        batch.add(new ValueRequirement("Input", inputTarget.toSpecification()));
+      }
+      requirements.add(batch);
+    }
+
+    final DependencyGraphBuilder serialBuilder = createBuilder(functions, targetResolver, liveData);
+    serialBuilder.addTargets(requirements);
+    final DependencyGraph serialGraph = serialBuilder.getDependencyGraph();
+
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      final DependencyGraphBuilder parallelBuilder = createBuilder(functions, targetResolver, liveData);
+      parallelBuilder.setExecutorService(executor);
+      parallelBuilder.addTargets(requirements);
+      final DependencyGraph parallelGraph = parallelBuilder.getDependencyGraph();
+      assertEquals(targets + 2 * sharedInputs, serialGraph.getSize());
+      assertEquals(serialGraph.getSize(), parallelGraph.getSize());
+      assertEquals(serialGraph.getTerminalOutputSpecifications(), parallelGraph.getTerminalOutputSpecifications());
+      assertEquals(describe(serialGraph), describe(parallelGraph));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  public void prefetchedRulesReusedByGraph() {
+    final InMemoryFunctionRepository functions = new InMemoryFunctionRepository();
+    // Like a resolver backed by a database, each resolution returns a new target instance
+    final MapComputationTargetResolver targetResolver = new MapComputationTargetResolver() {
+      @Override
+      public ComputationTarget resolve(final ComputationTargetSpecification specification) {
+        final ComputationTarget target = super.resolve(specification);
+        return (target != null) ? new ComputationTarget(target.getType(), target.getValue()) : null;
+      }
+    };
+    final AtomicInteger ruleEvaluations = new AtomicInteger();
+    final List<Set<ValueRequirement>> requirements = new ArrayList<Set<ValueRequirement>>();
+    final int targets = 20;
+    for (int i = 0; i < targets; i++) {
+      final ComputationTarget target = new ComputationTarget(UniqueIdentifier.of("Test", Integer.toString(i)));
+      targetResolver.addTarget(target);
+      final MockFunction value = new MockFunction("Value" + i, target) {
+        @Override
+        public boolean canApplyTo(final FunctionCompilationContext context, final ComputationTarget candidate) {
+          ruleEvaluations.incrementAndGet();
+          return super.canApplyTo(context, candidate);
+        }
+      };
+      value.addResult(new ValueRequirement("Value", target.toSpecification()), 1.0);
+      functions.addFunction(value);
+      requirements.add(Collections.singleton(new ValueRequirement("Value", target.toSpecification())));
+    }
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      final DependencyGraphBuilder builder = createBuilder(functions, targetResolver, new FixedLiveDataAvailabilityProvider());
+      builder.setExecutorService(executor);
+      builder.addTargets(requirements);
+      assertEquals(targets, builder.getDependencyGraph().getSize());
+      // Each function is tested against each target once, by the prefetch, and not again as the graph is built
+      assertEquals(targets * targets, ruleEvaluations.get());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
 }
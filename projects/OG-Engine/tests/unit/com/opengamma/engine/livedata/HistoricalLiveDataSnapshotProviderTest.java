@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.livedata;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.time.calendar.LocalDate;
+import javax.time.calendar.TimeZone;
+
+import org.testng.annotations.Test;
+
+import com.opengamma.core.historicaldata.impl.MockHistoricalDataSource;
+import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.id.Identifier;
+import com.opengamma.id.IdentifierBundle;
+import com.opengamma.id.UniqueIdentifier;
+import com.opengamma.livedata.UserPrincipal;
+import com.opengamma.util.timeseries.localdate.ArrayLocalDateDoubleTimeSeries;
+import com.opengamma.util.timeseries.localdate.LocalDateDoubleTimeSeries;
+import com.opengamma.util.tuple.Pair;
+
+/**
+ * Test HistoricalLiveDataSnapshotProvider.
+ */
+@Test
+public class HistoricalLiveDataSnapshotProviderTest {
+
+  private static final LocalDate DATE = LocalDate.of(2005, 11, 12);
+  private static final Identifier FOUND = Identifier.of("mytimeseries", "500");
+  private static final Identifier MISSING = Identifier.of("mytimeseries", "501");
+
+  /**
+   * Counts the requests made to the data source.
+   */
+  private static class CountingHistoricalDataSource extends MockHistoricalDataSource {
+    private int _singleRequests;
+    private int _multipleRequests;
+
+    @Override
+    public Pair<UniqueIdentifier, LocalDateDoubleTimeSeries> getHistoricalData(IdentifierBundle identifiers, String dataSource, String dataProvider, String field,
+        LocalDate start, boolean inclusiveStart, LocalDate end, boolean exclusiveEnd) {
+      _singleRequests++;
+      return super.getHistoricalData(identifiers, dataSource, dataProvider, field, start, inclusiveStart, end, exclusiveEnd);
+    }
+
+    @Override
+    public Map<IdentifierBundle, Pair<UniqueIdentifier, LocalDateDoubleTimeSeries>> getHistoricalData(Set<IdentifierBundle> identifiers, String dataSource,
+        String dataProvider, String dataField, LocalDate start, boolean inclusiveStart, LocalDate end, boolean exclusiveEnd) {
+      _multipleRequests++;
+      // the base implementation makes single requests; don't count them
+      int singleRequests = _singleRequests;
+      Map<IdentifierBundle, Pair<UniqueIdentifier, LocalDateDoubleTimeSeries>> result =
+          super.getHistoricalData(identifiers, dataSource, dataProvider, dataField, start, inclusiveStart, end, exclusiveEnd);
+      _singleRequests = singleRequests;
+      return result;
+    }
+  }
+
+  private static CountingHistoricalDataSource createDataSource() {
+    CountingHistoricalDataSource dataSource = new CountingHistoricalDataSource();
+    LocalDateDoubleTimeSeries timeSeries = new ArrayLocalDateDoubleTimeSeries(
+        new LocalDate[] {DATE.minusDays(1), DATE, DATE.plusDays(1)}, new double[] {11.11, 11.12, 11.13});
+    dataSource.storeHistoricalTimeSeries(IdentifierBundle.of(FOUND), "BLOOMBERG", "CMPL", "PX_LAST", timeSeries);
+    return dataSource;
+  }
+
+  private static long getSnapshotTime() {
+    return DATE.atStartOfDayInZone(TimeZone.UTC).toInstant().toEpochMillisLong();
+  }
+
+  public void snapshotFetchesSubscriptionsInOneRequest() {
+    CountingHistoricalDataSource dataSource = createDataSource();
+    HistoricalLiveDataSnapshotProvider provider = new HistoricalLiveDataSnapshotProvider(dataSource, "BLOOMBERG", "CMPL", "PX_LAST");
+    Set<ValueRequirement> requirements = new HashSet<ValueRequirement>();
+    requirements.add(new ValueRequirement("foo", FOUND));
+    requirements.add(new ValueRequirement("foo", MISSING));
+    provider.addSubscription(UserPrincipal.getLocalUser(), requirements);
+
+    long snapshot = provider.snapshot(getSnapshotTime());
+    assertEquals(1, dataSource._multipleRequests);
+    assertEquals(11.12, provider.querySnapshot(snapshot, new ValueRequirement("foo", FOUND)));
+    assertNull(provider.querySnapshot(snapshot, new ValueRequirement("foo", MISSING)));
+    assertEquals(0, dataSource._singleRequests);
+
+    provider.releaseSnapshot(snapshot);
+    assertEquals(11.12, provider.querySnapshot(snapshot, new ValueRequirement("foo", FOUND)));
+    assertEquals(1, dataSource._singleRequests);
+  }
+
+  public void querySnapshotWithoutSubscription() {
+    CountingHistoricalDataSource dataSource = createDataSource();
+    HistoricalLiveDataSnapshotProvider provider = new HistoricalLiveDataSnapshotProvider(dataSource, "BLOOMBERG", "CMPL", "PX_LAST");
+    long snapshot = provider.snapshot(getSnapshotTime());
+    assertEquals(0, dataSource._multipleRequests);
+    assertEquals(11.12, provider.querySnapshot(snapshot, new ValueRequirement("foo", FOUND)));
+    assertEquals(1, dataSource._singleRequests);
+  }
+
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.livedata;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link PersistentHashMap}.
+ */
+@Test
+public class PersistentHashMapTest {
+
+  /**
+   * A key with a poor hash code to exercise the collision handling.
+   */
+  private static final class Key {
+
+    private final int _value;
+
+    private Key(final int value) {
+      _value = value;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      return (o instanceof Key) && (((Key) o)._value == _value);
+    }
+
+    @Override
+    public int hashCode() {
+      return _value & 0x3F;
+    }
+
+  }
+
+  public void testPutGetRemove() {
+    PersistentHashMap<Integer, String> map = PersistentHashMap.empty();
+    for (int i = 0; i < 10000; i++) {
+      map = map.put(i, Integer.toString(i));
+    }
+    assertEquals(10000, map.size());
+    for (int i = 0; i < 10000; i++) {
+      assertEquals(Integer.toString(i), map.get(i));
+    }
+    assertNull(map.get(10000));
+    for (int i = 0; i < 10000; i += 2) {
+      map = map.remove(i);
+    }
+    assertEquals(5000, map.size());
+    for (int i = 0; i < 10000; i++) {
+      assertEquals((i & 1) == 0, !map.containsKey(i));
+    }
+    final Set<Integer> keys = new HashSet<Integer>();
+    map.addKeysTo(keys);
+    assertEquals(5000, keys.size());
+  }
+
+  public void testUnchanged() {
+    final String value = "Foo";
+    final PersistentHashMap<Integer, String> map = PersistentHashMap.<Integer, String>empty().put(1, value);
+    assertSame(map, map.put(1, value));
+    assertSame(map, map.remove(2));
+    assertEquals(0, map.remove(1).size());
+  }
+
+  public void testVersionsIndependent() {
+    PersistentHashMap<Integer, String> map = PersistentHashMap.empty();
+    for (int i = 0; i < 1000; i++) {
+      map = map.put(i, "A");
+    }
+    final PersistentHashMap<Integer, String> snapshot = map;
+    for (int i = 0; i < 1000; i += 3) {
+      map = map.put(i, "B");
+    }
+    map = map.remove(1);
+    for (int i = 0; i < 1000; i++) {
+      assertEquals("A", snapshot.get(i));
+    }
+    assertEquals(1000, snapshot.size());
+    assertEquals("B", map.get(999));
+    assertFalse(map.containsKey(1));
+  }
+
+  public void testCollisions() {
+    final Random rnd = new Random(1L);
+    final Map<Key, Integer> expected = new HashMap<Key, Integer>();
+    PersistentHashMap<Key, Integer> map = PersistentHashMap.empty();
+    for (int i = 0; i < 20000; i++) {
+      final Key key = new Key(rnd.nextInt(1000));
+      if (rnd.nextInt(3) == 0) {
+        expected.remove(key);
+        map = map.remove(key);
+      } else {
+        expected.put(key, i);
+        map = map.put(key, i);
+      }
+      assertEquals(expected.size(), map.size());
+    }
+    for (int i = 0; i < 1000; i++) {
+      final Key key = new Key(i);
+      assertEquals(expected.get(key), map.get(key));
+    }
+    final Set<Key> keys = new HashSet<Key>();
+    map.addKeysTo(keys);
+    assertTrue(keys.equals(expected.keySet()));
+  }
+
+}
@@ -19,6 +19,7 @@ import com.opengamma.engine.ComputationTargetType;
 import com.opengamma.engine.depgraph.DependencyGraph;
 import com.opengamma.engine.depgraph.DependencyNode;
 import com.opengamma.engine.function.FunctionCompilationContext;
+import com.opengamma.engine.function.LiveDataSourcingFunction;
 import com.opengamma.engine.test.MockFunction;
 import com.opengamma.engine.value.ComputedValue;
 import com.opengamma.engine.value.ValueRequirement;
@@ -171,4 +172,80 @@ public class LiveDataDeltaCalculatorTest {
     assertEquals(_graph.getDependencyNodes(), _deltaCalculator.getChangedNodes());
   }
 
+  public void changeSourcedLiveData() {
+    // A live data sourcing node feeding a node which feeds another
+    final LiveDataSourcingFunction sourcingFunction = new LiveDataSourcingFunction(getValueRequirement("Sourced"));
+    final DependencyNode sourcingNode = new DependencyNode(getTarget("Sourced"));
+    sourcingNode.setFunction(sourcingFunction);
+    sourcingNode.addOutputValue(sourcingFunction.getResult());
+    final DependencyNode node4 = createNode("Node4", Sets.newHashSet(sourcingNode));
+    final DependencyNode node5 = createNode("Node5", Sets.newHashSet(node4));
+    final DependencyNode node6 = createNode("Node6", Collections.<DependencyNode>emptySet());
+    final DependencyGraph graph = new DependencyGraph("test");
+    graph.addDependencyNode(sourcingNode);
+    graph.addDependencyNode(node4);
+    graph.addDependencyNode(node5);
+    graph.addDependencyNode(node6);
+    _cache.putSharedValue(new ComputedValue(sourcingFunction.getResult(), 6.0));
+    _previousCache.putSharedValue(new ComputedValue(sourcingFunction.getResult(), 7.0));
+    final LiveDataDeltaCalculator deltaCalculator = new LiveDataDeltaCalculator(graph, _cache, _previousCache);
+
+    deltaCalculator.computeDelta();
+
+    assertEquals(Sets.newHashSet(node6), deltaCalculator.getUnchangedNodes());
+    assertEquals(Sets.newHashSet(sourcingNode, node4, node5), deltaCalculator.getChangedNodes());
+  }
+
+  public void changeSourcedAndRequiredLiveData() {
+    // A live data sourcing node, and a node whose function declares the same live data as a requirement [ENG-216]
+    final LiveDataSourcingFunction sourcingFunction = new LiveDataSourcingFunction(getValueRequirement("Sourced"));
+    final DependencyNode sourcingNode = new DependencyNode(getTarget("Sourced"));
+    sourcingNode.setFunction(sourcingFunction);
+    sourcingNode.addOutputValue(sourcingFunction.getResult());
+    final MockFunction requiringFunction = new MockFunction(getTarget("Node4"));
+    requiringFunction.addRequiredLiveData(getValueRequirement("Sourced"));
+    final DependencyNode node4 = new DependencyNode(getTarget("Node4"));
+    node4.setFunction(requiringFunction);
+    final DependencyNode node5 = createNode("Node5", Sets.newHashSet(node4));
+    final DependencyGraph graph = new DependencyGraph("test");
+    graph.addDependencyNode(sourcingNode);
+    graph.addDependencyNode(node4);
+    graph.addDependencyNode(node5);
+    _cache.putSharedValue(new ComputedValue(sourcingFunction.getResult(), 6.0));
+    _previousCache.putSharedValue(new ComputedValue(sourcingFunction.getResult(), 7.0));
+    final LiveDataDeltaCalculator deltaCalculator = new LiveDataDeltaCalculator(graph, _cache, _previousCache);
+
+    deltaCalculator.computeDelta();
+
+    assertEquals(Collections.emptySet(), deltaCalculator.getUnchangedNodes());
+    assertEquals(Sets.newHashSet(sourcingNode, node4, node5), deltaCalculator.getChangedNodes());
+  }
+
+  public void changeLongChain() {
+    // A chain deep enough to overflow the stack if the dependents were marked recursively
+    final LiveDataSourcingFunction sourcingFunction = new LiveDataSourcingFunction(getValueRequirement("Sourced"));
+    final DependencyNode sourcingNode = new DependencyNode(getTarget("Sourced"));
+    sourcingNode.setFunction(sourcingFunction);
+    sourcingNode.addOutputValue(sourcingFunction.getResult());
+    final DependencyGraph graph = new DependencyGraph("test");
+    graph.addDependencyNode(sourcingNode);
+    DependencyNode previous = sourcingNode;
+    for (int i = 0; i < 100000; i++) {
+      final ComputationTarget target = getTarget("Chain" + i);
+      final DependencyNode node = new DependencyNode(target);
+      node.setFunction(new MockFunction(target));
+      node.addInputNode(previous);
+      graph.addDependencyNode(node);
+      previous = node;
+    }
+    _cache.putSharedValue(new ComputedValue(sourcingFunction.getResult(), 6.0));
+    _previousCache.putSharedValue(new ComputedValue(sourcingFunction.getResult(), 7.0));
+    final LiveDataDeltaCalculator deltaCalculator = new LiveDataDeltaCalculator(graph, _cache, _previousCache);
+
+    deltaCalculator.computeDelta();
+
+    assertEquals(Collections.emptySet(), deltaCalculator.getUnchangedNodes());
+    assertEquals(graph.getDependencyNodes().size(), deltaCalculator.getChangedNodes().size());
+  }
+
 }
@@ -0,0 +1,186 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.livedata.DomainLiveDataAvailabilityProvider;
+import com.opengamma.engine.livedata.LiveDataSnapshotProviderImpl;
+import com.opengamma.engine.test.MockSecuritySource;
+import com.opengamma.engine.test.TestViewResultListener;
+import com.opengamma.engine.test.ViewProcessorTestEnvironment;
+import com.opengamma.engine.value.ComputedValue;
+import com.opengamma.engine.view.calc.stats.ViewCycleLatencyStatistics;
+import com.opengamma.engine.view.client.ViewClient;
+import com.opengamma.engine.view.client.ViewClientImpl;
+import com.opengamma.engine.view.execution.ExecutionOptions;
+import com.opengamma.id.IdentificationScheme;
+import com.opengamma.id.Identifier;
+import com.opengamma.livedata.LiveDataListener;
+import com.opengamma.livedata.LiveDataSpecification;
+import com.opengamma.livedata.LiveDataValueUpdate;
+import com.opengamma.livedata.client.DistributedLiveDataClient;
+import com.opengamma.livedata.msg.LiveDataSubscriptionResponse;
+import com.opengamma.livedata.normalization.StandardRules;
+import com.opengamma.livedata.server.simulation.MarketDataGenerator;
+import com.opengamma.livedata.server.simulation.RandomWalkMarketDataGenerator;
+import com.opengamma.livedata.server.simulation.SimulatedLiveDataServer;
+import com.opengamma.livedata.test.LiveDataClientTestUtils;
+import com.opengamma.util.fudgemsg.OpenGammaFudgeContext;
+import com.opengamma.util.test.Timeout;
+
+/**
+ * Measures the latency from a tick arriving at a live data server to a view cycle result containing it.
+ * <p>
+ * A {@link SimulatedLiveDataServer} is connected to the view processor through in-memory conduits rather
+ * than JMS, so the whole live data and engine path runs in this process. Probe ticks are published one
+ * at a time to the security the view uses, each waiting for the result containing its value, while the
+ * server optionally publishes random walk ticks to other securities to load the live data path.
+ */
+@Test(enabled = false)
+public class TickToResultLatencyPerformanceTest {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(TickToResultLatencyPerformanceTest.class);
+
+  private static final long TIMEOUT = 10L * Timeout.standardTimeoutMillis();
+  private static final int WARMUP_TICKS = 500;
+  private static final int TICKS = 5000;
+  private static final int LOAD_SECURITIES = 1000;
+  private static final double LOAD_TICKS_PER_SECOND = 50000;
+
+  public void latencyWithoutLoad() throws InterruptedException {
+    measure(0);
+  }
+
+  public void latencyUnderLoad() throws InterruptedException {
+    measure(LOAD_TICKS_PER_SECOND);
+  }
+
+  private void measure(double loadTicksPerSecond) throws InterruptedException {
+    ViewProcessorTestEnvironment env = new ViewProcessorTestEnvironment();
+    final String probeId = env.getPrimitive1().getTargetSpecification().getIdentifier().getValue();
+    IdentificationScheme scheme = env.getPrimitive1().getTargetSpecification().getIdentifier().getScheme();
+    final String valueName = env.getPrimitive1().getValueName();
+    final String otherValueName = env.getPrimitive2().getValueName();
+
+    // The probe security only changes when a probe tick is published
+    final MarketDataGenerator load = new RandomWalkMarketDataGenerator(0, valueName, otherValueName);
+    MarketDataGenerator generator = new MarketDataGenerator() {
+      @Override
+      public FudgeMsg getSnapshot(String uniqueId) {
+        return probeId.equals(uniqueId) ? probeTick(valueName, -1, otherValueName) : load.getSnapshot(uniqueId);
+      }
+
+      @Override
+      public FudgeMsg nextTick(String uniqueId) {
+        return probeId.equals(uniqueId) ? null : load.nextTick(uniqueId);
+      }
+    };
+    SimulatedLiveDataServer server = new SimulatedLiveDataServer(scheme, generator, loadTicksPerSecond);
+    server.setTimestampUpdates(true);
+    server.connect();
+    DistributedLiveDataClient liveDataClient = LiveDataClientTestUtils.getInMemoryConduitClient(server);
+
+    MockSecuritySource securitySource = new MockSecuritySource();
+    LiveDataSnapshotProviderImpl snapshotProvider = new LiveDataSnapshotProviderImpl(liveDataClient, securitySource);
+    env.setSecuritySource(securitySource);
+    env.setLiveDataClient(liveDataClient);
+    env.setProviders(snapshotProvider, new DomainLiveDataAvailabilityProvider(securitySource, Collections.singleton(scheme), Arrays.asList(valueName, otherValueName)));
+    env.init();
+
+    List<LiveDataSpecification> loadSpecs = new ArrayList<LiveDataSpecification>();
+    for (int i = 0; i < LOAD_SECURITIES; i++) {
+      loadSpecs.add(new LiveDataSpecification(StandardRules.getOpenGammaRuleSetId(), Identifier.of(scheme, "Load" + i)));
+    }
+    if (loadTicksPerSecond > 0) {
+      liveDataClient.subscribe(ViewProcessorTestEnvironment.TEST_USER, loadSpecs, new LiveDataListener() {
+        @Override
+        public void subscriptionResultReceived(LiveDataSubscriptionResponse subscriptionResult) {
+        }
+
+        @Override
+        public void subscriptionStopped(LiveDataSpecification fullyQualifiedSpecification) {
+        }
+
+        @Override
+        public void valueUpdate(LiveDataValueUpdate valueUpdate) {
+        }
+      });
+    }
+
+    ViewProcessorImpl vp = env.getViewProcessor();
+    vp.start();
+    ViewClient client = vp.createViewClient(ViewProcessorTestEnvironment.TEST_USER);
+    TestViewResultListener resultListener = new TestViewResultListener();
+    client.setResultListener(resultListener);
+    client.attachToViewProcess(env.getViewDefinition().getName(), ExecutionOptions.realTime());
+    resultListener.assertViewDefinitionCompiled(TIMEOUT);
+    resultListener.assertCycleCompleted(TIMEOUT);
+    try {
+      ComputationTargetSpecification target = env.getPrimitive1().getTargetSpecification();
+      for (int i = 0; i < WARMUP_TICKS; i++) {
+        probe(server, probeId, valueName, otherValueName, i, env, resultListener, target);
+      }
+      long[] latencies = new long[TICKS];
+      for (int i = 0; i < TICKS; i++) {
+        latencies[i] = probe(server, probeId, valueName, otherValueName, WARMUP_TICKS + i, env, resultListener, target);
+      }
+      report(loadTicksPerSecond, latencies);
+      ViewCycleLatencyStatistics cycleLatencies = env.getViewProcess(vp, client.getUniqueId()).getCycleLatencyStatistics();
+      s_logger.info("Tick to result {}", cycleLatencies.getTickToResult());
+      s_logger.info("Prepare inputs {}", cycleLatencies.getPrepareInputs());
+      s_logger.info("Compute delta {}", cycleLatencies.getComputeDelta());
+      s_logger.info("Execute {}", cycleLatencies.getExecute());
+      s_logger.info("Populate result model {}", cycleLatencies.getPopulateResultModel());
+      s_logger.info("Result dispatch {}", ((ViewClientImpl) client).getResultDispatchLatency());
+    } finally {
+      client.shutdown();
+      vp.stop();
+      liveDataClient.close();
+      server.disconnect();
+    }
+  }
+
+  private static FudgeMsg probeTick(String valueName, double value, String otherValueName) {
+    MutableFudgeMsg msg = OpenGammaFudgeContext.getInstance().newMessage();
+    msg.add(valueName, value);
+    msg.add(otherValueName, 0.0);
+    return msg;
+  }
+
+  private static long probe(SimulatedLiveDataServer server, String probeId, String valueName, String otherValueName, int sequence,
+      ViewProcessorTestEnvironment env, TestViewResultListener resultListener, ComputationTargetSpecification target) throws InterruptedException {
+    FudgeMsg tick = probeTick(valueName, sequence, otherValueName);
+    long start = System.nanoTime();
+    server.liveDataReceived(probeId, tick);
+    while (true) {
+      ViewComputationResultModel result = resultListener.getCycleCompleted(TIMEOUT).getFullResult();
+      Map<String, ComputedValue> values = env.getCalculationResult(result).getValues(target);
+      ComputedValue value = (values != null) ? values.get(valueName) : null;
+      if (value != null && ((Number) value.getValue()).doubleValue() == sequence) {
+        return System.nanoTime() - start;
+      }
+    }
+  }
+
+  private static void report(double loadTicksPerSecond, long[] latencies) {
+    Arrays.sort(latencies);
+    s_logger.info("Tick to result latency with {} ticks/s of load: median {}us, 99th percentile {}us, max {}us", new Object[] {
+        loadTicksPerSecond, latencies[latencies.length / 2] / 1000, latencies[latencies.length * 99 / 100] / 1000, latencies[latencies.length - 1] / 1000});
+  }
+
+}
@@ -22,6 +22,7 @@ import com.opengamma.engine.ComputationTargetSpecification;
 import com.opengamma.engine.value.ComputedValue;
 import com.opengamma.engine.value.ValueRequirement;
 import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.id.UniqueIdentifier;
 import com.opengamma.util.tuple.Pair;
 
 @Test
@@ -218,4 +219,42 @@ public class DefaultViewComputationCacheTest {
     assertPutValues (2, CacheSelectHint.sharedValues(Arrays.asList (valueSpecFoo)), CacheSelectHint.privateValues(Arrays.asList(valueSpecFoo)));
   }
 
+  @Test
+  public void testCopySharedValues() {
+    final FudgeMessageStore dataStore = new DefaultFudgeMessageStore(new InMemoryBinaryDataStore(), FudgeContext.GLOBAL_DEFAULT);
+    final DefaultViewComputationCache source = new DefaultViewComputationCache(new InMemoryIdentifierMap(), dataStore, FudgeContext.GLOBAL_DEFAULT);
+    final ValueSpecification valueSpecFoo = new ValueSpecification(new ValueRequirement("foo", new ComputationTargetSpecification(null)), "mockFunctionId");
+    final ValueSpecification valueSpecBar = new ValueSpecification(new ValueRequirement("bar", new ComputationTargetSpecification(null)), "mockFunctionId");
+    final ValueSpecification valueSpecMissing = new ValueSpecification(new ValueRequirement("missing", new ComputationTargetSpecification(null)), "mockFunctionId");
+    source.putSharedValue(new ComputedValue(valueSpecFoo, "Foo"));
+    source.putPrivateValue(new ComputedValue(valueSpecBar, "Bar"));
+    assertEquals(2 * (4 + 1 + 3), source.getBytesCopied());
+    _viewComputationCache.copySharedValues(source, Arrays.asList(valueSpecFoo, valueSpecBar, valueSpecMissing));
+    // The encoded values are forwarded rather than decoded and encoded again
+    assertEquals(0, _viewComputationCache.getBytesCopied());
+    assertEquals("Foo", _viewComputationCache.getValue(valueSpecFoo, CacheSelectHint.allShared()));
+    assertEquals("Bar", _viewComputationCache.getValue(valueSpecBar, CacheSelectHint.allShared()));
+    assertNull(_viewComputationCache.getValue(valueSpecMissing));
+    assertEquals((Integer) (4 + 1 + 3), _viewComputationCache.estimateValueSize(new ComputedValue(valueSpecFoo, "Foo")));
+  }
+
+  @Test
+  public void testSourceBytesCopied() {
+    final DefaultViewComputationCacheSource cacheSource = new InMemoryViewComputationCacheSource(FudgeContext.GLOBAL_DEFAULT);
+    final UniqueIdentifier viewProcessId = UniqueIdentifier.of("Test", "ViewProcess");
+    final ValueSpecification valueSpecFoo = new ValueSpecification(new ValueRequirement("foo", new ComputationTargetSpecification(null)), "mockFunctionId");
+    cacheSource.getCache(viewProcessId, "Default", 1L).putSharedValue(new ComputedValue(valueSpecFoo, "Foo"));
+    cacheSource.getCache(viewProcessId, "Other", 1L).putSharedValue(new ComputedValue(valueSpecFoo, "Foo"));
+    assertEquals(2, cacheSource.getActiveCacheCount());
+    cacheSource.releaseCaches(viewProcessId, 1L);
+    assertEquals(0, cacheSource.getActiveCacheCount());
+    assertEquals(1, cacheSource.getCyclesReleased());
+    assertEquals(2 * (4 + 1 + 3), cacheSource.getLastBytesCopied());
+    cacheSource.getCache(viewProcessId, "Default", 2L).putSharedValue(new ComputedValue(valueSpecFoo, "Foo"));
+    cacheSource.releaseCaches(viewProcessId, 2L);
+    assertEquals(2, cacheSource.getCyclesReleased());
+    assertEquals(4 + 1 + 3, cacheSource.getLastBytesCopied());
+    assertEquals(3 * (4 + 1 + 3), cacheSource.getTotalBytesCopied());
+  }
+
 }
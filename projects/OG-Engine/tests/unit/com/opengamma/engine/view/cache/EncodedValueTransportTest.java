@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.cache;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link EncodedValueTransport}.
+ */
+@Test
+public class EncodedValueTransportTest {
+
+  private static final FudgeContext s_fudgeContext = FudgeContext.GLOBAL_DEFAULT;
+
+  private static FudgeMsg createValue() {
+    final MutableFudgeMsg message = s_fudgeContext.newMessage();
+    message.add("foo", 42.0);
+    message.add("bar", "Bar");
+    return message;
+  }
+
+  public void testWrapUnwrap() {
+    final FudgeMsg value = createValue();
+    final byte[] encoded = EncodedValueTransport.encode(s_fudgeContext, value);
+    // Send the wrapped value over the wire
+    final FudgeMsg received = s_fudgeContext.deserialize(s_fudgeContext.toByteArray(EncodedValueTransport.wrap(s_fudgeContext, value))).getMessage();
+    final FudgeMsg unwrapped = EncodedValueTransport.unwrap(s_fudgeContext, received);
+    assertTrue(EncodedValueTransport.isEncoded(unwrapped));
+    assertEquals(encoded.length, EncodedValueTransport.encode(s_fudgeContext, unwrapped).length);
+    assertEquals(42.0, unwrapped.getDouble("foo"));
+    assertEquals("Bar", unwrapped.getString("bar"));
+  }
+
+  public void testEncodedNotCopied() {
+    final FudgeMsg unwrapped = EncodedValueTransport.unwrap(s_fudgeContext, EncodedValueTransport.wrap(s_fudgeContext, createValue()));
+    final byte[] encoded = EncodedValueTransport.encode(s_fudgeContext, unwrapped);
+    assertSame(encoded, EncodedValueTransport.encode(s_fudgeContext, unwrapped));
+    final FudgeMsg rewrapped = EncodedValueTransport.wrap(s_fudgeContext, unwrapped);
+    assertSame(encoded, EncodedValueTransport.encode(s_fudgeContext, EncodedValueTransport.unwrap(s_fudgeContext, rewrapped)));
+  }
+
+  public void testEmpty() {
+    assertSame(FudgeContext.EMPTY_MESSAGE, EncodedValueTransport.wrap(s_fudgeContext, s_fudgeContext.newMessage()));
+  }
+
+  public void testNotWrapped() {
+    final FudgeMsg value = createValue();
+    assertSame(value, EncodedValueTransport.unwrap(s_fudgeContext, value));
+  }
+
+}
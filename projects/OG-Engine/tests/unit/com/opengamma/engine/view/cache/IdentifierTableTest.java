@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.cache;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertSame;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.testng.annotations.Test;
+
+import com.opengamma.engine.ComputationTargetSpecification;
+import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.id.UniqueIdentifier;
+
+/**
+ * Tests {@link IdentifierTable}.
+ */
+@Test
+public class IdentifierTableTest {
+
+  private static ValueSpecification createValueSpecification(final int i) {
+    return new ValueSpecification(new ValueRequirement("value" + i, new ComputationTargetSpecification(ComputationTargetType.PRIMITIVE, UniqueIdentifier.of("scheme", "fibble"))),
+        "mockFunctionId");
+  }
+
+  public void testPutAndGet() {
+    final IdentifierTable table = new IdentifierTable(4);
+    final ValueSpecification[] specs = new ValueSpecification[1000];
+    for (int i = 0; i < specs.length; i++) {
+      specs[i] = createValueSpecification(i);
+      assertEquals(IdentifierTable.NOT_FOUND, table.getIdentifier(specs[i]));
+      assertEquals(i, table.putIfAbsent(specs[i], i));
+    }
+    assertEquals(specs.length, table.size());
+    for (int i = 0; i < specs.length; i++) {
+      assertEquals(i, table.getIdentifier(createValueSpecification(i)));
+      assertSame(specs[i], table.getValueSpecification(i));
+    }
+    // An existing identifier is not replaced
+    assertEquals(42, table.putIfAbsent(createValueSpecification(42), 4242));
+    assertEquals(specs.length, table.size());
+    assertNull(table.getValueSpecification(4242));
+    assertNull(table.getValueSpecification(-1));
+  }
+
+  public void testConcurrentReaders() throws InterruptedException {
+    final IdentifierTable table = new IdentifierTable(4);
+    final int count = 10000;
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    final Thread reader = new Thread() {
+      @Override
+      public void run() {
+        try {
+          for (int i = 0; i < count; i++) {
+            final ValueSpecification spec = createValueSpecification(i);
+            long identifier;
+            do {
+              identifier = table.getIdentifier(spec);
+            } while (identifier == IdentifierTable.NOT_FOUND);
+            assertEquals(i + 1, identifier);
+            assertEquals(spec, table.getValueSpecification(identifier));
+          }
+        } catch (Throwable t) {
+          failure.set(t);
+        }
+      }
+    };
+    reader.start();
+    for (int i = 0; i < count; i++) {
+      table.putIfAbsent(createValueSpecification(i), i + 1);
+    }
+    reader.join(10000L);
+    assertNull(failure.get());
+    assertEquals(count, table.size());
+  }
+
+  public void testMaxSize() {
+    final IdentifierTable table = new IdentifierTable(4, 100);
+    for (int i = 0; i < 100; i++) {
+      table.putIfAbsent(createValueSpecification(i), i);
+    }
+    assertEquals(100, table.size());
+    assertEquals(99, table.getIdentifier(createValueSpecification(99)));
+    // Adding to a full table discards the existing entries
+    assertEquals(100, table.putIfAbsent(createValueSpecification(100), 100));
+    assertEquals(1, table.size());
+    assertEquals(IdentifierTable.NOT_FOUND, table.getIdentifier(createValueSpecification(99)));
+    assertNull(table.getValueSpecification(99));
+    assertEquals(100, table.getIdentifier(createValueSpecification(100)));
+  }
+
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.cache;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link OffHeapBinaryDataStore}.
+ */
+@Test
+public class OffHeapBinaryDataStoreTest {
+
+  private static byte[] createData(final int length, final int seed) {
+    final byte[] data = new byte[length];
+    for (int i = 0; i < length; i++) {
+      data[i] = (byte) (i + seed);
+    }
+    return data;
+  }
+
+  private void putAndGet(final OffHeapBinaryDataStore dataStore) {
+    assertNull(dataStore.get(1L));
+    for (int i = 0; i < 100; i++) {
+      dataStore.put(i, createData(i * 10, i));
+    }
+    for (int i = 0; i < 100; i++) {
+      assertTrue(Arrays.equals(createData(i * 10, i), dataStore.get(i)));
+    }
+    // 100 values of up to 1000 bytes will not fit in one 4k slab
+    assertTrue(dataStore.getSlabCount() > 1);
+    // Replace a value
+    dataStore.put(42L, createData(5, 0));
+    assertTrue(Arrays.equals(createData(5, 0), dataStore.get(42L)));
+    // Oversize value
+    dataStore.put(1000L, createData(10000, 7));
+    assertTrue(Arrays.equals(createData(10000, 7), dataStore.get(1000L)));
+    // Empty value
+    dataStore.put(1001L, new byte[0]);
+    assertEquals(0, dataStore.get(1001L).length);
+  }
+
+  public void testDirect() {
+    final OffHeapBinaryDataStore dataStore = new OffHeapBinaryDataStore("testDirect", 4096);
+    putAndGet(dataStore);
+    dataStore.delete();
+    assertNull(dataStore.get(1L));
+    assertEquals(0, dataStore.getSlabCount());
+  }
+
+  public void testSlabGrowth() {
+    final OffHeapBinaryDataStore dataStore = new OffHeapBinaryDataStore("testSlabGrowth", OffHeapBinaryDataStore.DEFAULT_SLAB_SIZE);
+    dataStore.put(1L, createData(10, 1));
+    // A small store doesn't take a full slab
+    assertEquals(1, dataStore.getSlabCount());
+    assertEquals(OffHeapBinaryDataStore.INITIAL_SLAB_SIZE, dataStore.getAllocatedSize());
+    // Each further slab doubles in size
+    dataStore.put(2L, createData(OffHeapBinaryDataStore.INITIAL_SLAB_SIZE, 2));
+    assertEquals(2, dataStore.getSlabCount());
+    assertEquals(3 * OffHeapBinaryDataStore.INITIAL_SLAB_SIZE, dataStore.getAllocatedSize());
+    assertTrue(Arrays.equals(createData(10, 1), dataStore.get(1L)));
+    assertTrue(Arrays.equals(createData(OffHeapBinaryDataStore.INITIAL_SLAB_SIZE, 2), dataStore.get(2L)));
+    dataStore.delete();
+  }
+
+  public void testMapped() throws IOException {
+    final File directory = new File(System.getProperty("java.io.tmpdir"), "OffHeapBinaryDataStoreTest-" + System.currentTimeMillis());
+    assertTrue(directory.mkdirs());
+    try {
+      final OffHeapBinaryDataStore dataStore = new OffHeapBinaryDataStore("testMapped", 4096, directory);
+      putAndGet(dataStore);
+      assertEquals(dataStore.getSlabCount(), directory.list().length);
+      dataStore.delete();
+      assertEquals(0, directory.list().length);
+    } finally {
+      FileUtils.deleteDirectory(directory);
+    }
+  }
+
+  public void testBulk() {
+    final OffHeapBinaryDataStore dataStore = new OffHeapBinaryDataStore("testBulk", 4096);
+    final Map<Long, byte[]> data = new HashMap<Long, byte[]>();
+    for (long i = 0; i < 10; i++) {
+      data.put(i, createData(100, (int) i));
+    }
+    dataStore.put(data);
+    assertEquals(1, dataStore.getSlabCount());
+    final Map<Long, byte[]> result = dataStore.get(Arrays.asList(0L, 5L, 9L, 10L));
+    assertEquals(3, result.size());
+    assertFalse(result.containsKey(10L));
+    for (Map.Entry<Long, byte[]> entry : result.entrySet()) {
+      assertTrue(Arrays.equals(data.get(entry.getKey()), entry.getValue()));
+    }
+    // Too large to write contiguously
+    data.clear();
+    for (long i = 100; i < 200; i++) {
+      data.put(i, createData(100, (int) i));
+    }
+    dataStore.put(data);
+    for (long i = 100; i < 200; i++) {
+      assertTrue(Arrays.equals(createData(100, (int) i), dataStore.get(i)));
+    }
+    dataStore.delete();
+  }
+
+  public void testDeleteWhileReading() throws InterruptedException {
+    final OffHeapBinaryDataStore dataStore = new OffHeapBinaryDataStore("testDeleteWhileReading", 4096);
+    for (long i = 0; i < 100; i++) {
+      dataStore.put(i, createData(100, (int) i));
+    }
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    final Thread reader = new Thread() {
+      @Override
+      public void run() {
+        try {
+          long i = 0;
+          byte[] data;
+          do {
+            data = dataStore.get(i);
+            if ((data != null) && !Arrays.equals(createData(100, (int) i), data)) {
+              throw new AssertionError("Incorrect data for " + i);
+            }
+            i = (i + 1) % 100;
+          } while (data != null);
+        } catch (Throwable t) {
+          failure.set(t);
+        }
+      }
+    };
+    reader.start();
+    Thread.sleep(10);
+    dataStore.delete();
+    reader.join(5000);
+    assertFalse(reader.isAlive());
+    assertNull(failure.get());
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void testPutAfterDelete() {
+    final OffHeapBinaryDataStore dataStore = new OffHeapBinaryDataStore("testPutAfterDelete", 4096);
+    dataStore.delete();
+    dataStore.put(1L, new byte[1]);
+  }
+
+}
@@ -6,6 +6,7 @@
 package com.opengamma.engine.view.cache;
 
 import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
 import static org.testng.AssertJUnit.assertNotNull;
 import static org.testng.AssertJUnit.assertNull;
 import static org.testng.AssertJUnit.assertTrue;
@@ -20,6 +21,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
+import org.testng.Assert;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.DataProvider;
@@ -32,6 +34,7 @@ import com.opengamma.engine.test.MockSecurity;
 import com.opengamma.engine.value.ComputedValue;
 import com.opengamma.engine.value.ValueRequirement;
 import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.util.test.Timeout;
 import com.opengamma.util.tuple.Pair;
 
 public class WriteBehindViewComputationCacheTest {
@@ -331,4 +334,155 @@ public class WriteBehindViewComputationCacheTest {
     _cache.waitForPendingWrites();
   }
 
+  @Test
+  public void putValuesCoalescedWrite() {
+    _underlying._allowPutValues.countDown();
+    _cache.setMaxBatchSize(3);
+    _cache.setBatchWindow(10000L);
+    final ComputedValue value1 = new ComputedValue(s_valueSpec1, "foo");
+    final ComputedValue value2 = new ComputedValue(s_valueSpec2, "bar");
+    final ComputedValue value3 = new ComputedValue(s_valueSpec3, "cow");
+    _cache.putValue(value1);
+    _cache.putValue(value2);
+    pause();
+    // Writer is waiting for a full batch
+    assertNull(_underlying._putValue);
+    assertNull(_underlying._putValues);
+    _cache.putValue(value3);
+    _cache.waitForPendingWrites();
+    assertNull(_underlying._putValue);
+    assertEquals(Arrays.asList(value1, value2, value3), _underlying._putValues);
+  }
+
+  private static class FlushListener implements WriteBehindViewComputationCache.FlushListener {
+
+    private final CountDownLatch _flushed = new CountDownLatch(1);
+    private volatile RuntimeException _exception;
+
+    @Override
+    public void flushed() {
+      _flushed.countDown();
+    }
+
+    @Override
+    public void flushFailed(final RuntimeException exception) {
+      _exception = exception;
+      _flushed.countDown();
+    }
+
+    public boolean await() {
+      try {
+        return _flushed.await(Timeout.standardTimeoutMillis(), TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        throw new OpenGammaRuntimeException("Interrupted", e);
+      }
+    }
+
+  }
+
+  @Test
+  public void flushNoPending() {
+    final FlushListener listener = new FlushListener();
+    _cache.flush(listener);
+    assertEquals(0, listener._flushed.getCount());
+    assertNull(listener._exception);
+  }
+
+  @Test
+  public void flushWithPending() {
+    _cache.setBatchWindow(10000L);
+    _cache.setMaxBatchSize(10);
+    final ComputedValue value = new ComputedValue(s_valueSpec1, "foo");
+    _cache.putValue(value);
+    final FlushListener listener = new FlushListener();
+    _cache.flush(listener);
+    assertEquals(1, listener._flushed.getCount());
+    // The flush ends the batch window early
+    _underlying._allowPutValue.countDown();
+    assertTrue(listener.await());
+    assertNull(listener._exception);
+    assertEquals(value, _underlying._putValue);
+    assertNull(_cache.getPending().get(s_valueSpec1));
+  }
+
+  @Test
+  public void flushWithPendingException() {
+    _cache.putValue(new ComputedValue(s_valueSpec1, "foo"));
+    final FlushListener listener = new FlushListener();
+    _cache.flush(listener);
+    _underlying._throwException = true;
+    _underlying._allowPutValue.countDown();
+    assertTrue(listener.await());
+    assertNotNull(listener._exception);
+  }
+
+  @Test
+  public void flushAfterException() {
+    _cache.putValue(new ComputedValue(s_valueSpec1, "foo"));
+    _underlying._throwException = true;
+    _underlying._allowPutValue.countDown();
+    FlushListener listener = new FlushListener();
+    _cache.flush(listener);
+    assertTrue(listener.await());
+    assertNotNull(listener._exception);
+    // The writer carries on with later values
+    assertNull(_cache.getPending().get(s_valueSpec1));
+    _underlying._throwException = false;
+    final ComputedValue value = new ComputedValue(s_valueSpec2, "bar");
+    _cache.putValue(value);
+    try {
+      _cache.waitForPendingWrites();
+      Assert.fail();
+    } catch (OpenGammaRuntimeException e) {
+      // Expected; the first value was dropped
+    }
+    assertEquals(value, _underlying._putValue);
+    // A later flush still covers the dropped value so also fails
+    listener = new FlushListener();
+    _cache.flush(listener);
+    assertTrue(listener.await());
+    assertNotNull(listener._exception);
+  }
+
+  @Test
+  public void putValueBackpressureAfterException() throws InterruptedException {
+    _cache.setMaxPendingValues(1);
+    _underlying._throwException = true;
+    _underlying._allowPutValue.countDown();
+    _cache.putValue(new ComputedValue(s_valueSpec1, "foo"));
+    // The failed value no longer counts as pending
+    assertEquals(0, _cache.getPending().size());
+    final FlushListener listener = new FlushListener();
+    _cache.flush(listener);
+    assertNotNull(listener._exception);
+    _underlying._throwException = false;
+    _cache.putValue(new ComputedValue(s_valueSpec2, "bar"));
+    try {
+      _cache.waitForPendingWrites();
+      Assert.fail();
+    } catch (OpenGammaRuntimeException e) {
+      // Expected; the first value was dropped
+    }
+    assertEquals(s_valueSpec2, _underlying._putValue.getSpecification());
+  }
+
+  @Test
+  public void putValueBackpressure() throws InterruptedException {
+    _cache.setMaxPendingValues(1);
+    final Thread writer = new Thread() {
+      @Override
+      public void run() {
+        _cache.putValue(new ComputedValue(s_valueSpec1, "foo"));
+      }
+    };
+    writer.start();
+    writer.join(100L);
+    // Blocked until the value is written
+    assertTrue(writer.isAlive());
+    _underlying._allowPutValue.countDown();
+    writer.join(Timeout.standardTimeoutMillis());
+    assertFalse(writer.isAlive());
+    assertNotNull(_underlying._putValue);
+  }
+
 }
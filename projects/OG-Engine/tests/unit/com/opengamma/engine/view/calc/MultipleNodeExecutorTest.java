@@ -112,7 +112,11 @@ public class MultipleNodeExecutorTest {
   }
 
   private MultipleNodeExecutor createExecutor(final int minimum, final int maximum, final int concurrency) {
-    return new MultipleNodeExecutor(null, minimum, maximum, 0, Integer.MAX_VALUE, concurrency, new FunctionCosts(), new ExecutionPlanCache(EHCacheUtils.createCacheManager(), 0)) {
+    return createExecutor(minimum, maximum, concurrency, GraphPartitioning.HEURISTIC);
+  }
+
+  private MultipleNodeExecutor createExecutor(final int minimum, final int maximum, final int concurrency, final GraphPartitioning partitioning) {
+    return new MultipleNodeExecutor(null, minimum, maximum, 0, Integer.MAX_VALUE, concurrency, new FunctionCosts(), new ExecutionPlanCache(EHCacheUtils.createCacheManager(), 0), partitioning) {
 
       @Override
       protected long getFunctionInitId() {
@@ -522,4 +526,57 @@ public class MultipleNodeExecutorTest {
     assertEquals(7, mask);
   }
 
+  /**
+   * With the default (unit) costs N2 is on the critical path and has several dependents, so nothing can be merged
+   * with it. Merging N3 with N4, as the heuristic does, would delay N3 until N2 has completed and lengthen the graph.
+   */
+  public void testCriticalPath() {
+    final MultipleNodeExecutor executor = createExecutor(1, Integer.MAX_VALUE, 0, GraphPartitioning.CRITICAL_PATH);
+    final RootGraphFragment root = executor.createExecutionPlan(_testGraph, DiscardingGraphStatisticsGathererProvider.GATHERER_INSTANCE);
+    if (PRINT_GRAPHS) {
+      System.out.println("testCriticalPath");
+      executor.printFragment(root);
+    }
+    assertEquals(3, root.getInputFragments().size());
+    for (GraphFragment fragment : root.getInputFragments()) {
+      assertEquals(1, fragment.getNodes().size());
+    }
+    final RootGraphFragment heuristic = createExecutor(1, Integer.MAX_VALUE, 0).createExecutionPlan(_testGraph, DiscardingGraphStatisticsGathererProvider.GATHERER_INSTANCE);
+    assertTrue(root.getPredictedDuration() > 0);
+    assertTrue(root.getPredictedDuration() < heuristic.getPredictedDuration());
+  }
+
+  /**
+   * A chain of nodes has no parallelism to lose so becomes a single job.
+   */
+  public void testCriticalPathChain() {
+    final DependencyGraph graph = new DependencyGraph("Default");
+    final DependencyNode[] nodes = new DependencyNode[3];
+    ValueSpecification input = null;
+    for (int i = 0; i < nodes.length; i++) {
+      nodes[i] = new DependencyNode(new ComputationTarget("Chain" + i));
+      nodes[i].setFunction(MockFunction.getMockFunction(nodes[i].getComputationTarget(), "foo"));
+      final ValueSpecification output = ValueSpecification.of("Test", ComputationTargetType.PRIMITIVE, UniqueIdentifier.of("Chain", Integer.toString(i)), ValueProperties.builder().with(
+          ValuePropertyNames.FUNCTION, "Mock").get());
+      nodes[i].addOutputValue(output);
+      if (input != null) {
+        nodes[i].addInputNode(nodes[i - 1]);
+        nodes[i].addInputValue(input);
+      }
+      graph.addDependencyNode(nodes[i]);
+      input = output;
+    }
+    graph.addTerminalOutputValue(input);
+    final MultipleNodeExecutor executor = createExecutor(1, Integer.MAX_VALUE, 0, GraphPartitioning.CRITICAL_PATH);
+    final RootGraphFragment root = executor.createExecutionPlan(graph, DiscardingGraphStatisticsGathererProvider.GATHERER_INSTANCE);
+    if (PRINT_GRAPHS) {
+      System.out.println("testCriticalPathChain");
+      executor.printFragment(root);
+    }
+    assertEquals(1, root.getInputFragments().size());
+    final GraphFragment fragment = root.getInputFragments().iterator().next();
+    assertEquals(3, fragment.getNodes().size());
+    assertEquals(fragment.getJobCost(), root.getPredictedDuration());
+  }
+
 }
@@ -6,16 +6,44 @@
 package com.opengamma.engine.view.calc;
 
 import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNotSame;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.time.Instant;
+import javax.time.InstantProvider;
 
 import org.testng.annotations.Test;
 
 import com.opengamma.OpenGammaRuntimeException;
+import com.opengamma.engine.ComputationTarget;
+import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.engine.function.AbstractFunction;
+import com.opengamma.engine.function.CompiledFunctionDefinition;
+import com.opengamma.engine.function.FunctionCompilationContext;
+import com.opengamma.engine.function.FunctionExecutionContext;
+import com.opengamma.engine.function.FunctionInputs;
+import com.opengamma.engine.function.InMemoryFunctionRepository;
+import com.opengamma.engine.livedata.InMemoryLKVSnapshotProvider;
+import com.opengamma.engine.test.MockFunction;
 import com.opengamma.engine.test.TestViewResultListener;
 import com.opengamma.engine.test.ViewProcessorTestEnvironment;
+import com.opengamma.engine.value.ComputedValue;
+import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.engine.value.ValueSpecification;
+import com.opengamma.engine.view.ViewCalculationConfiguration;
+import com.opengamma.engine.view.ViewComputationResultModel;
+import com.opengamma.engine.view.ViewDefinition;
 import com.opengamma.engine.view.ViewProcessImpl;
 import com.opengamma.engine.view.ViewProcessorImpl;
 import com.opengamma.engine.view.client.ViewClient;
+import com.opengamma.engine.view.compilation.CompiledViewDefinition;
+import com.opengamma.engine.view.execution.ArbitraryViewCycleExecutionSequence;
 import com.opengamma.engine.view.execution.ExecutionOptions;
+import com.opengamma.id.UniqueIdentifier;
 import com.opengamma.util.test.Timeout;
 
 /**
@@ -66,5 +94,128 @@ public class ViewComputationJobTest {
     recalcThread.join(TIMEOUT);
     assertEquals(Thread.State.TERMINATED, recalcThread.getState());
   }
+
+  @Test
+  public void testRecompileAfterValidityReusesUnchangedNodes() throws InterruptedException {
+    final long validity = 60000L;
+    final ComputationTarget target1 = new ComputationTarget(ComputationTargetType.PRIMITIVE, UniqueIdentifier.of("Test", "1"));
+    final ComputationTarget target2 = new ComputationTarget(ComputationTargetType.PRIMITIVE, UniqueIdentifier.of("Test", "2"));
+    final ValueRequirement value1 = new ValueRequirement("Value1", target1.toSpecification());
+    final ValueRequirement value2 = new ValueRequirement("Value2", target2.toSpecification());
+    
+    // Function 1 is valid at any time; function 2 must be recompiled for each validity window
+    final AtomicInteger function1Resolutions = new AtomicInteger();
+    final MockFunction function1 = new MockFunction("Function1", target1) {
+      @Override
+      public Set<ValueRequirement> getRequirements(FunctionCompilationContext context, ComputationTarget target, ValueRequirement desiredValue) {
+        function1Resolutions.incrementAndGet();
+        return super.getRequirements(context, target, desiredValue);
+      }
+    };
+    function1.addResult(value1, 1.0);
+    final ExpiringFunction function2 = new ExpiringFunction(target2, value2, validity);
+    final InMemoryFunctionRepository functionRepository = new InMemoryFunctionRepository();
+    functionRepository.addFunction(function1);
+    functionRepository.addFunction(function2);
+    
+    final ViewProcessorTestEnvironment env = new ViewProcessorTestEnvironment();
+    final ViewDefinition viewDefinition = new ViewDefinition(ViewProcessorTestEnvironment.TEST_VIEW_DEFINITION_NAME, ViewProcessorTestEnvironment.TEST_USER);
+    final ViewCalculationConfiguration calcConfig = new ViewCalculationConfiguration(viewDefinition, ViewProcessorTestEnvironment.TEST_CALC_CONFIG_NAME);
+    calcConfig.addSpecificRequirement(value1);
+    calcConfig.addSpecificRequirement(value2);
+    viewDefinition.addViewCalculationConfiguration(calcConfig);
+    env.setViewDefinition(viewDefinition);
+    env.setFunctionRepository(functionRepository);
+    final InMemoryLKVSnapshotProvider liveData = new InMemoryLKVSnapshotProvider();
+    env.setProviders(liveData, liveData);
+    env.init();
+    
+    ViewProcessorImpl vp = env.getViewProcessor();
+    vp.start();
+    
+    ViewClient client = vp.createViewClient(ViewProcessorTestEnvironment.TEST_USER);
+    TestViewResultListener resultListener = new TestViewResultListener();
+    client.setResultListener(resultListener);
+    final long time0 = System.currentTimeMillis();
+    client.attachToViewProcess(viewDefinition.getName(), ExecutionOptions.batch(ArbitraryViewCycleExecutionSequence.of(time0, time0 + 2 * validity)));
+    
+    CompiledViewDefinition compilation1 = resultListener.getViewDefinitionCompiled(TIMEOUT).getCompiledViewDefinition();
+    ViewComputationResultModel result1 = resultListener.getCycleCompleted(TIMEOUT).getFullResult();
+    assertEquals(time0, result1.getValuationTime().toEpochMillisLong());
+    assertNotNull(env.getCalculationResult(result1).getValues(target2.toSpecification()).get("Value2"));
+    assertEquals(1, function1Resolutions.get());
+    assertEquals(1, function2.getResolutions());
+    
+    // The function 2 node has expired, but the function 1 node can be reused without resolving it again
+    CompiledViewDefinition compilation2 = resultListener.getViewDefinitionCompiled(TIMEOUT).getCompiledViewDefinition();
+    assertNotSame(compilation1, compilation2);
+    ViewComputationResultModel result2 = resultListener.getCycleCompleted(TIMEOUT).getFullResult();
+    assertEquals(time0 + 2 * validity, result2.getValuationTime().toEpochMillisLong());
+    assertNotNull(env.getCalculationResult(result2).getValues(target1.toSpecification()).get("Value1"));
+    assertNotNull(env.getCalculationResult(result2).getValues(target2.toSpecification()).get("Value2"));
+    assertEquals(1, function1Resolutions.get());
+    assertEquals(2, function2.getResolutions());
+    resultListener.assertProcessCompleted(TIMEOUT);
+    
+    vp.stop();
+  }
   
+  //-------------------------------------------------------------------------
+  /**
+   * A function which, when compiled, is only valid for a fixed period from the compilation time.
+   */
+  private static class ExpiringFunction extends AbstractFunction {
+
+    private final ComputationTarget _target;
+    private final ValueRequirement _output;
+    private final long _validity;
+    private final AtomicInteger _resolutions = new AtomicInteger();
+
+    public ExpiringFunction(final ComputationTarget target, final ValueRequirement output, final long validity) {
+      _target = target;
+      _output = output;
+      _validity = validity;
+    }
+
+    public int getResolutions() {
+      return _resolutions.get();
+    }
+
+    @Override
+    public CompiledFunctionDefinition compile(final FunctionCompilationContext context, final InstantProvider atInstant) {
+      final Instant earliest = atInstant.toInstant();
+      return new AbstractInvokingCompiledFunction(earliest, Instant.ofEpochMillis(earliest.toEpochMillisLong() + _validity)) {
+
+        @Override
+        public ComputationTargetType getTargetType() {
+          return _target.getType();
+        }
+
+        @Override
+        public boolean canApplyTo(final FunctionCompilationContext context, final ComputationTarget target) {
+          return _target.toSpecification().equals(target.toSpecification());
+        }
+
+        @Override
+        public Set<ValueRequirement> getRequirements(final FunctionCompilationContext context, final ComputationTarget target, final ValueRequirement desiredValue) {
+          _resolutions.incrementAndGet();
+          return Collections.emptySet();
+        }
+
+        @Override
+        public Set<ValueSpecification> getResults(final FunctionCompilationContext context, final ComputationTarget target) {
+          return Collections.singleton(new ValueSpecification(_output, getUniqueId()));
+        }
+
+        @Override
+        public Set<ComputedValue> execute(final FunctionExecutionContext executionContext, final FunctionInputs inputs, final ComputationTarget target,
+            final Set<ValueRequirement> desiredValues) {
+          return Collections.singleton(new ComputedValue(new ValueSpecification(_output, getUniqueId()), 2.0));
+        }
+
+      };
+    }
+
+  }
+
 }
@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calcnode;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import com.opengamma.util.monitor.OperationTimer;
+import com.opengamma.util.test.Timeout;
+
+/**
+ * Measures the rate at which a {@link JobDispatcher} can hand jobs submitted from several threads to
+ * invokers with a limited capacity.
+ */
+@Test(enabled = false)
+public class JobDispatcherPerformanceTest {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(JobDispatcherPerformanceTest.class);
+
+  private static final long TIMEOUT = 10L * Timeout.standardTimeoutMillis();
+  private static final int THREADS = 4;
+  private static final int JOBS_PER_THREAD = 2500;
+  private static final int INVOKERS = 8;
+  private static final int INVOKER_CAPACITY = 4;
+
+  private final ExecutorService _executorService = Executors.newCachedThreadPool();
+
+  private class CapacityJobInvoker extends AbstractJobInvoker {
+
+    private final int _capacity;
+    private final AtomicInteger _launched = new AtomicInteger();
+    private final AtomicInteger _invoked = new AtomicInteger();
+    private final AtomicReference<JobInvokerRegister> _callback = new AtomicReference<JobInvokerRegister>();
+
+    public CapacityJobInvoker(final String nodeId, final int capacity) {
+      super(nodeId);
+      _capacity = capacity;
+    }
+
+    @Override
+    public boolean invoke(final CalculationJob job, final JobInvocationReceiver receiver) {
+      if (_launched.incrementAndGet() > _capacity) {
+        _launched.decrementAndGet();
+        return false;
+      }
+      _invoked.incrementAndGet();
+      _executorService.execute(new Runnable() {
+        @Override
+        public void run() {
+          receiver.jobCompleted(JobDispatcherTest.createTestJobResult(job.getSpecification(), 0L, getInvokerId()));
+          _launched.decrementAndGet();
+          final JobInvokerRegister callback = _callback.getAndSet(null);
+          if (callback != null) {
+            callback.registerJobInvoker(CapacityJobInvoker.this);
+          }
+        }
+      });
+      return true;
+    }
+
+    @Override
+    public boolean notifyWhenAvailable(final JobInvokerRegister callback) {
+      _callback.set(callback);
+      if (_launched.get() < _capacity) {
+        return _callback.getAndSet(null) != null;
+      }
+      return false;
+    }
+
+  }
+
+  public void dispatchThroughput() throws InterruptedException {
+    final JobDispatcher jobDispatcher = new JobDispatcher();
+    final CapacityJobInvoker[] jobInvokers = new CapacityJobInvoker[INVOKERS];
+    for (int i = 0; i < jobInvokers.length; i++) {
+      jobInvokers[i] = new CapacityJobInvoker("" + (i + 1), INVOKER_CAPACITY);
+      jobDispatcher.registerJobInvoker(jobInvokers[i]);
+    }
+    final CountDownLatch completed = new CountDownLatch(THREADS * JOBS_PER_THREAD);
+    final JobResultReceiver resultReceiver = new JobResultReceiver() {
+      @Override
+      public void resultReceived(final CalculationJobResult result) {
+        completed.countDown();
+      }
+    };
+    final Thread[] threads = new Thread[THREADS];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < JOBS_PER_THREAD; j++) {
+            jobDispatcher.dispatchJob(JobDispatcherTest.createTestJob(), resultReceiver);
+          }
+        }
+      };
+    }
+    final OperationTimer timer = new OperationTimer(s_logger, "Dispatching {} jobs from {} threads to {} invokers", THREADS * JOBS_PER_THREAD, THREADS, jobInvokers.length);
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    assertTrue(completed.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    timer.finished();
+    int invoked = 0;
+    for (CapacityJobInvoker jobInvoker : jobInvokers) {
+      s_logger.debug("Invoker {} ran {} jobs", jobInvoker.getInvokerId(), jobInvoker._invoked.get());
+      invoked += jobInvoker._invoked.get();
+    }
+    assertEquals(THREADS * JOBS_PER_THREAD, invoked);
+    _executorService.shutdown();
+  }
+
+}
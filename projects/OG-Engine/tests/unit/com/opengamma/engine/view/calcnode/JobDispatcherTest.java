@@ -427,4 +427,40 @@ public class JobDispatcherTest {
     assertTrue (blockingInvoker.isCancelled ());
   }
 
+  @Test
+  public void capabilityAwarePlacement() {
+    s_logger.info("capabilityAwarePlacement");
+    final JobDispatcher jobDispatcher = new JobDispatcher();
+    final StaticCapabilityRequirementsProvider requirements = new StaticCapabilityRequirementsProvider();
+    requirements.addCapabilityRequirement(Capability.lowerBoundInstanceOf(PlatformCapabilities.NODE_COUNT, 2));
+    jobDispatcher.setCapabilityRequirementsProvider(requirements);
+    final TestJobInvoker node1 = new TestJobInvoker("1") {
+      @Override
+      public Collection<Capability> getCapabilities() {
+        return Collections.singleton(Capability.parameterInstanceOf(PlatformCapabilities.NODE_COUNT, 1));
+      }
+    };
+    final TestJobInvoker node2 = new TestJobInvoker("2") {
+      @Override
+      public Collection<Capability> getCapabilities() {
+        return Collections.singleton(Capability.parameterInstanceOf(PlatformCapabilities.NODE_COUNT, 4));
+      }
+    };
+    jobDispatcher.registerJobInvoker(node1);
+    jobDispatcher.registerJobInvoker(node2);
+    nodeTest("2", jobDispatcher);
+    nodeTest("2", jobDispatcher);
+    // A job that can't run anywhere waits for a suitable invoker
+    node2._disabled = true;
+    final TestJobResultReceiver result = new TestJobResultReceiver();
+    final CalculationJob job = createTestJob();
+    jobDispatcher.dispatchJob(job, result);
+    assertNull(result.waitForResult(TIMEOUT / 10));
+    node2._disabled = false;
+    jobDispatcher.registerJobInvoker(node2);
+    final CalculationJobResult jobResult = result.waitForResult(TIMEOUT);
+    assertNotNull(jobResult);
+    assertEquals("2", jobResult.getComputeNodeId());
+  }
+
 }
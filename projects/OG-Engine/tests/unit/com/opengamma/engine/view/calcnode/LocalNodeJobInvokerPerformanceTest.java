@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.calcnode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import com.opengamma.engine.test.TestCalculationNode;
+import com.opengamma.engine.view.cache.CacheSelectHint;
+import com.opengamma.engine.view.cache.WriteBehindViewComputationCache;
+import com.opengamma.util.test.Timeout;
+
+/**
+ * Measures the jobs per second a {@link LocalNodeJobInvoker} with one node per core can execute.
+ * <p>
+ * Jobs are submitted in chains of a head job and a tail job requiring it. Most jobs are small, but
+ * every tenth chain is a hundred times larger, so that small jobs have to find free nodes around
+ * the large ones. Each job works through an array standing in for its inputs; a tail works through
+ * the array its head produced, which is still in the processor caches if it runs on the same thread.
+ */
+@Test(enabled = false)
+public class LocalNodeJobInvokerPerformanceTest {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(LocalNodeJobInvokerPerformanceTest.class);
+
+  private static final long TIMEOUT = 10L * Timeout.standardTimeoutMillis();
+  private static final int WARMUP_CHAINS = 2000;
+  private static final int CHAINS = 20000;
+  private static final int SMALL_JOB_SIZE = 1000;
+  private static final int LARGE_JOB_SIZE = 100000;
+  private static final int LARGE_JOB_PERIOD = 10;
+
+  public void throughputWithoutAffinity() throws InterruptedException {
+    measure(false);
+  }
+
+  public void throughputWithTailJobAffinity() throws InterruptedException {
+    measure(true);
+  }
+
+  private void measure(final boolean tailJobAffinity) throws InterruptedException {
+    final int cores = Runtime.getRuntime().availableProcessors();
+    final List<AbstractCalculationNode> nodes = new ArrayList<AbstractCalculationNode>(cores);
+    for (int i = 0; i < cores; i++) {
+      final BusyNode node = new BusyNode();
+      node.setNodeId("Node" + i);
+      nodes.add(node);
+    }
+    final LocalNodeJobInvoker invoker = new LocalNodeJobInvoker(nodes);
+    invoker.setTailJobAffinity(tailJobAffinity);
+    run(invoker, WARMUP_CHAINS);
+    final long start = System.nanoTime();
+    run(invoker, CHAINS);
+    final double seconds = (double) (System.nanoTime() - start) / 1e9;
+    s_logger.info("{} nodes, tail job affinity {}: {} jobs/s", new Object[] {cores, tailJobAffinity, (int) (2 * CHAINS / seconds)});
+  }
+
+  private static void run(final LocalNodeJobInvoker invoker, final int chains) throws InterruptedException {
+    final CountDownLatch completed = new CountDownLatch(2 * chains);
+    final JobInvocationReceiver receiver = new JobInvocationReceiver() {
+
+      @Override
+      public void jobCompleted(final CalculationJobResult result) {
+        completed.countDown();
+      }
+
+      @Override
+      public void jobFailed(final JobInvoker jobInvoker, final String nodeId, final Exception exception) {
+        throw new AssertionError(exception);
+      }
+
+    };
+    for (int i = 0; i < chains; i++) {
+      final CalculationJob job = JobDispatcherTest.createTestJob();
+      job.addTail(new CalculationJob(JobDispatcherTest.createTestJobSpec(), 0L, Collections.singleton(job.getSpecification().getJobId()),
+          JobDispatcherTest.createTestJobItems(), CacheSelectHint.allPrivate()));
+      while (!invoker.invoke(job, receiver)) {
+        final CountDownLatch available = new CountDownLatch(1);
+        if (!invoker.notifyWhenAvailable(new JobInvokerRegister() {
+          @Override
+          public void registerJobInvoker(final JobInvoker jobInvoker) {
+            available.countDown();
+          }
+        })) {
+          available.await(TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+      }
+    }
+    if (!completed.await(TIMEOUT, TimeUnit.MILLISECONDS)) {
+      throw new AssertionError(completed.getCount() + " jobs not completed");
+    }
+  }
+
+  /**
+   * Node that works through an array, sized by the job chain, before executing the job.
+   */
+  private static final class BusyNode extends TestCalculationNode {
+
+    private double[] _values;
+    private double _sink;
+
+    @Override
+    public CalculationJobResult executeJob(final CalculationJob job, final WriteBehindViewComputationCache.FlushListener listener) {
+      final long jobId = job.getSpecification().getJobId();
+      final boolean tail = job.getRequiredJobIds() != null;
+      final int size = ((jobId / 2) % LARGE_JOB_PERIOD == 0) ? LARGE_JOB_SIZE : SMALL_JOB_SIZE;
+      // A tail job reads what the last job on this node wrote; a head job writes new values
+      if (!tail || (_values == null) || (_values.length != size)) {
+        _values = new double[size];
+        for (int i = 0; i < size; i++) {
+          _values[i] = jobId + i;
+        }
+      }
+      double total = 0;
+      for (int i = 0; i < size; i++) {
+        total += Math.sqrt(_values[i]);
+      }
+      _sink += total;
+      return super.executeJob(job, listener);
+    }
+
+  }
+
+}
@@ -11,9 +11,19 @@ import static org.testng.AssertJUnit.assertEquals;
 import static org.testng.AssertJUnit.assertNotNull;
 import static org.testng.AssertJUnit.assertTrue;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
+
 import com.opengamma.engine.test.TestCalculationNode;
+import com.opengamma.engine.view.cache.CacheSelectHint;
+import com.opengamma.engine.view.cache.WriteBehindViewComputationCache;
 import com.opengamma.util.test.Timeout;
 
 /**
@@ -67,6 +77,91 @@ public class LocalNodeJobInvokerTest {
     assertEquals(job.getSpecification(), jobResult.getSpecification());
   }
 
+  public void testTailJobAffinity() throws InterruptedException {
+    final CountDownLatch tailAdded = new CountDownLatch(1);
+    final TestCalculationNode node1 = new TestCalculationNode() {
+
+      @Override
+      public CalculationJobResult executeJob(final CalculationJob job, final WriteBehindViewComputationCache.FlushListener listener) {
+        // Don't complete the first job before its tail has been added
+        try {
+          tailAdded.await(TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+        return super.executeJob(job, listener);
+      }
+
+    };
+    node1.setNodeId("1");
+    final TestCalculationNode node2 = new TestCalculationNode();
+    node2.setNodeId("2");
+    final LocalNodeJobInvoker invoker = new LocalNodeJobInvoker(Arrays.<AbstractCalculationNode>asList(node1, node2));
+    invoker.setTailJobAffinity(true);
+    final CalculationJob job = JobDispatcherTest.createTestJob();
+    final CalculationJob tail = new CalculationJob(JobDispatcherTest.createTestJobSpec(), 0L, Collections.singleton(job.getSpecification().getJobId()),
+        JobDispatcherTest.createTestJobItems(), CacheSelectHint.allPrivate());
+    job.addTail(tail);
+    final BlockingQueue<CalculationJobResult> results = new LinkedBlockingQueue<CalculationJobResult>();
+    assertTrue(invoker.invoke(job, new JobInvocationReceiver() {
+
+      @Override
+      public void jobCompleted(final CalculationJobResult result) {
+        results.add(result);
+      }
+
+      @Override
+      public void jobFailed(final JobInvoker jobInvoker, final String nodeId, final Exception exception) {
+      }
+
+    }));
+    tailAdded.countDown();
+    final CalculationJobResult jobResult = results.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+    final CalculationJobResult tailResult = results.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+    assertNotNull(jobResult);
+    assertNotNull(tailResult);
+    // The tail must run on the node that completed its predecessor, even though the other node is free
+    assertEquals(jobResult.getComputeNodeId(), tailResult.getComputeNodeId());
+  }
+
+  public void testCancelInterruptsOnlyTheCancelledJob() throws InterruptedException {
+    final CountDownLatch started = new CountDownLatch(1);
+    final boolean[] interrupted = new boolean[2];
+    final LocalNodeJobInvoker invoker = new LocalNodeJobInvoker(new TestCalculationNode() {
+
+      private int _jobs;
+
+      @Override
+      public CalculationJobResult executeJob(final CalculationJob job, final WriteBehindViewComputationCache.FlushListener listener) {
+        if (_jobs++ == 0) {
+          started.countDown();
+          try {
+            Thread.sleep(TIMEOUT);
+          } catch (InterruptedException e) {
+            interrupted[0] = true;
+          }
+          return null;
+        }
+        interrupted[1] = Thread.currentThread().isInterrupted();
+        return super.executeJob(job, listener);
+      }
+
+    });
+    final CalculationJob job = JobDispatcherTest.createTestJob();
+    assertTrue(invoker.invoke(job, new TestJobInvocationReceiver()));
+    assertTrue(started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    invoker.cancel(Collections.singleton(job.getSpecification()));
+    final TestJobInvocationReceiver receiver = new TestJobInvocationReceiver();
+    final long timeout = System.currentTimeMillis() + TIMEOUT;
+    while (!invoker.invoke(JobDispatcherTest.createTestJob(), receiver)) {
+      assertTrue(System.currentTimeMillis() < timeout);
+      Thread.sleep(10);
+    }
+    assertNotNull(receiver.waitForCompletionResult(TIMEOUT));
+    assertTrue(interrupted[0]);
+    assertFalse(interrupted[1]);
+  }
+
   class Register implements JobInvokerRegister {
     @Override
     public void registerJobInvoker(final JobInvoker invoker) {
@@ -5,6 +5,7 @@
  */
 package com.opengamma.engine.view.calcnode;
 
+import static org.testng.AssertJUnit.assertEquals;
 import static org.testng.AssertJUnit.assertNotNull;
 import static org.testng.AssertJUnit.assertTrue;
 
@@ -102,5 +103,48 @@ public class RemoteNodeJobInvokerTest {
       assertNotNull(resultReceivers[i].waitForResult(TIMEOUT));
     }
   }
-  
+
+  public void pipelineDepthCoversLatency() {
+    assertEquals(RemoteNodeJobInvoker.DEFAULT_MAX_PIPELINE_DEPTH, measurePipelineDepth(RemoteNodeJobInvoker.DEFAULT_MAX_PIPELINE_DEPTH));
+  }
+
+  public void pipelineDisabled() {
+    assertEquals(0, measurePipelineDepth(0));
+  }
+
+  /**
+   * Runs jobs on a remote node which takes far longer to reply than the jobs take to execute.
+   */
+  private int measurePipelineDepth(final int maxPipelineDepth) {
+    final JobDispatcher jobDispatcher = new JobDispatcher();
+    final Ready initialMessage = new Ready(1);
+    final DirectFudgeConnection conduit = new DirectFudgeConnection(s_fudgeContext);
+    final RemoteNodeJobInvoker jobInvoker = new RemoteNodeJobInvoker(Executors.newCachedThreadPool(), initialMessage, conduit.getEnd1(), new InMemoryIdentifierMap(), new FunctionCosts());
+    jobInvoker.setMaxPipelineDepth(maxPipelineDepth);
+    assertEquals(0, jobInvoker.getPipelineDepth());
+    jobDispatcher.registerJobInvoker(jobInvoker);
+    final FudgeConnection remoteNode = conduit.getEnd2();
+    remoteNode.setFudgeMessageReceiver(new FudgeMessageReceiver() {
+      @Override
+      public void messageReceived(FudgeContext fudgeContext, FudgeMsgEnvelope msgEnvelope) {
+        final FudgeDeserializationContext dcontext = new FudgeDeserializationContext(fudgeContext);
+        final Execute job = (Execute) dcontext.fudgeMsgToObject(RemoteCalcNodeMessage.class, msgEnvelope.getMessage());
+        try {
+          Thread.sleep(5);
+        } catch (InterruptedException e) {
+        }
+        // Report an execution time of 0.1ms
+        final Result result = new Result(JobDispatcherTest.createTestJobResult(job.getJob().getSpecification(), 100000L, "Test"));
+        final FudgeSerializationContext scontext = new FudgeSerializationContext(fudgeContext);
+        remoteNode.getFudgeMessageSender().send(FudgeSerializationContext.addClassHeader(scontext.objectToFudgeMsg(result), result.getClass(), RemoteCalcNodeMessage.class));
+      }
+    });
+    for (int i = 0; i < 20; i++) {
+      final TestJobResultReceiver resultReceiver = new TestJobResultReceiver();
+      jobDispatcher.dispatchJob(JobDispatcherTest.createTestJob(), resultReceiver);
+      assertNotNull(resultReceiver.waitForResult(TIMEOUT));
+    }
+    return jobInvoker.getPipelineDepth();
+  }
+
 }
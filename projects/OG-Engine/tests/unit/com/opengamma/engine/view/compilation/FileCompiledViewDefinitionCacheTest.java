@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.engine.view.compilation;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+
+import javax.time.Instant;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.opengamma.engine.ComputationTarget;
+import com.opengamma.engine.ComputationTargetResolver;
+import com.opengamma.engine.ComputationTargetType;
+import com.opengamma.engine.DefaultCachingComputationTargetResolver;
+import com.opengamma.engine.DefaultComputationTargetResolver;
+import com.opengamma.engine.depgraph.DependencyGraph;
+import com.opengamma.engine.depgraph.DependencyNode;
+import com.opengamma.engine.function.CachingFunctionRepositoryCompiler;
+import com.opengamma.engine.function.CompiledFunctionService;
+import com.opengamma.engine.function.FunctionCompilationContext;
+import com.opengamma.engine.function.InMemoryFunctionRepository;
+import com.opengamma.engine.function.resolver.DefaultFunctionResolver;
+import com.opengamma.engine.livedata.InMemoryLKVSnapshotProvider;
+import com.opengamma.engine.test.MockFunction;
+import com.opengamma.engine.view.ViewCalculationConfiguration;
+import com.opengamma.engine.view.ViewDefinition;
+import com.opengamma.id.UniqueIdentifier;
+import com.opengamma.util.ehcache.EHCacheUtils;
+import com.opengamma.util.fudgemsg.OpenGammaFudgeContext;
+
+/**
+ * Tests {@link FileCompiledViewDefinitionCache}.
+ */
+@Test
+public class FileCompiledViewDefinitionCacheTest {
+
+  private static final ComputationTargetResolver TARGET_RESOLVER = new DefaultComputationTargetResolver();
+
+  private File _directory;
+
+  @BeforeMethod
+  public void createDirectory() {
+    _directory = new File(System.getProperty("java.io.tmpdir"), "FileCompiledViewDefinitionCacheTest-" + System.currentTimeMillis());
+  }
+
+  @AfterMethod
+  public void deleteDirectory() throws IOException {
+    FileUtils.deleteDirectory(_directory);
+  }
+
+  private static ViewDefinition createViewDefinition(final MockFunction function) {
+    ViewDefinition viewDefinition = new ViewDefinition("Test/View", "jonathan");
+    ViewCalculationConfiguration calcConfig = new ViewCalculationConfiguration(viewDefinition, "Config1");
+    calcConfig.addSpecificRequirement(function.getResultSpec().toRequirementSpecification());
+    viewDefinition.addViewCalculationConfiguration(calcConfig);
+    return viewDefinition;
+  }
+
+  private static CompiledFunctionService createFunctionService(final long initId, final MockFunction... functions) {
+    InMemoryFunctionRepository functionRepo = new InMemoryFunctionRepository();
+    for (MockFunction function : functions) {
+      functionRepo.addFunction(function);
+    }
+    FunctionCompilationContext compilationContext = new FunctionCompilationContext();
+    compilationContext.setFunctionInitId(initId);
+    return new CompiledFunctionService(functionRepo, new CachingFunctionRepositoryCompiler(), compilationContext);
+  }
+
+  private static ViewCompilationServices createCompilationServices(final CompiledFunctionService functions) {
+    DefaultCachingComputationTargetResolver computationTargetResolver = new DefaultCachingComputationTargetResolver(new DefaultComputationTargetResolver(), EHCacheUtils.createCacheManager());
+    return new ViewCompilationServices(new InMemoryLKVSnapshotProvider(), new DefaultFunctionResolver(functions), functions.getFunctionCompilationContext(), computationTargetResolver,
+        Executors.newSingleThreadExecutor());
+  }
+
+  public void testRoundTrip() {
+    MockFunction f1 = MockFunction.getMockFunction("f1", new ComputationTarget(ComputationTargetType.PRIMITIVE, UniqueIdentifier.of("TestScheme", "t1")), 42);
+    MockFunction f2 = MockFunction.getMockFunction("f2", new ComputationTarget(ComputationTargetType.PRIMITIVE, UniqueIdentifier.of("TestScheme", "t2")), 60, f1);
+    ViewDefinition viewDefinition = createViewDefinition(f2);
+    CompiledFunctionService functions = createFunctionService(123, f1, f2);
+    CompiledViewDefinitionWithGraphsImpl compiled = ViewDefinitionCompiler.compile(viewDefinition, createCompilationServices(functions), Instant.now());
+
+    FileCompiledViewDefinitionCache cache = new FileCompiledViewDefinitionCache(_directory, OpenGammaFudgeContext.getInstance());
+    cache.put(compiled, functions.compileFunctionRepository(Instant.now()));
+
+    // A restart gives a new function initialization identifier
+    CompiledFunctionService restartedFunctions = createFunctionService(456, f1, f2);
+    CompiledViewDefinitionWithGraphsImpl restored = cache.get(viewDefinition, restartedFunctions.compileFunctionRepository(Instant.now()), TARGET_RESOLVER);
+    assertNotNull(restored);
+    assertEquals(456, restored.getFunctionInitId());
+    DependencyGraph graph = compiled.getDependencyGraph("Config1");
+    DependencyGraph restoredGraph = restored.getDependencyGraph("Config1");
+    assertEquals(graph.getSize(), restoredGraph.getSize());
+    assertEquals(graph.getOutputSpecifications(), restoredGraph.getOutputSpecifications());
+    assertEquals(graph.getTerminalOutputSpecifications(), restoredGraph.getTerminalOutputSpecifications());
+    for (DependencyNode node : graph.getDependencyNodes()) {
+      DependencyNode restoredNode = restoredGraph.getNodeProducing(node.getOutputValues().iterator().next());
+      assertEquals(node.getFunction().getFunction().getFunctionDefinition().getUniqueId(), restoredNode.getFunction().getFunction().getFunctionDefinition().getUniqueId());
+      assertEquals(node.getInputValues(), restoredNode.getInputValues());
+      assertEquals(node.getInputNodes().size(), restoredNode.getInputNodes().size());
+    }
+
+    // Nothing has changed, so the restored compilation can be used without further compilation
+    assertSame(restored, ViewDefinitionCompiler.compile(viewDefinition, createCompilationServices(restartedFunctions), Instant.now(), restored));
+  }
+
+  public void testInvalidated() {
+    MockFunction f1 = MockFunction.getMockFunction("f1", new ComputationTarget(ComputationTargetType.PRIMITIVE, UniqueIdentifier.of("TestScheme", "t1")), 42);
+    MockFunction f2 = MockFunction.getMockFunction("f2", new ComputationTarget(ComputationTargetType.PRIMITIVE, UniqueIdentifier.of("TestScheme", "t2")), 60, f1);
+    ViewDefinition viewDefinition = createViewDefinition(f2);
+    CompiledFunctionService functions = createFunctionService(123, f1, f2);
+    FileCompiledViewDefinitionCache cache = new FileCompiledViewDefinitionCache(_directory, OpenGammaFudgeContext.getInstance());
+    assertNull(cache.get(viewDefinition, functions.compileFunctionRepository(Instant.now()), TARGET_RESOLVER));
+    cache.put(ViewDefinitionCompiler.compile(viewDefinition, createCompilationServices(functions), Instant.now()), functions.compileFunctionRepository(Instant.now()));
+
+    // A different view definition with the same name
+    ViewDefinition otherViewDefinition = createViewDefinition(f1);
+    assertNull(cache.get(otherViewDefinition, functions.compileFunctionRepository(Instant.now()), TARGET_RESOLVER));
+    assertNotNull(cache.get(viewDefinition, functions.compileFunctionRepository(Instant.now()), TARGET_RESOLVER));
+
+    // A function used by the graph is no longer available
+    assertNull(cache.get(viewDefinition, createFunctionService(456, f2).compileFunctionRepository(Instant.now()), TARGET_RESOLVER));
+    // ... and the stored compilation was discarded
+    assertNull(cache.get(viewDefinition, functions.compileFunctionRepository(Instant.now()), TARGET_RESOLVER));
+  }
+
+  public void testFunctionConfigurationChanged() {
+    MockFunction f1 = MockFunction.getMockFunction("f1", new ComputationTarget(ComputationTargetType.PRIMITIVE, UniqueIdentifier.of("TestScheme", "t1")), 42);
+    MockFunction f2 = MockFunction.getMockFunction("f2", new ComputationTarget(ComputationTargetType.PRIMITIVE, UniqueIdentifier.of("TestScheme", "t2")), 60, f1);
+    ViewDefinition viewDefinition = createViewDefinition(f2);
+    CompiledFunctionService functions = createFunctionService(123, f1, f2);
+    FileCompiledViewDefinitionCache cache = new FileCompiledViewDefinitionCache(_directory, OpenGammaFudgeContext.getInstance());
+    cache.put(ViewDefinitionCompiler.compile(viewDefinition, createCompilationServices(functions), Instant.now()), functions.compileFunctionRepository(Instant.now()));
+
+    // The same identifiers and names, but a different implementation behind "f1"
+    MockFunction otherF1 = new MockFunction("f1", f1.getTarget()) {
+    };
+    otherF1.addResults(f1.getResults());
+    assertNull(cache.get(viewDefinition, createFunctionService(456, otherF1, f2).compileFunctionRepository(Instant.now()), TARGET_RESOLVER));
+
+    // An additional function also changes the configuration
+    MockFunction f3 = MockFunction.getMockFunction("f3", new ComputationTarget(ComputationTargetType.PRIMITIVE, UniqueIdentifier.of("TestScheme", "t3")), 1);
+    cache.put(ViewDefinitionCompiler.compile(viewDefinition, createCompilationServices(functions), Instant.now()), functions.compileFunctionRepository(Instant.now()));
+    assertNull(cache.get(viewDefinition, createFunctionService(456, f1, f2, f3).compileFunctionRepository(Instant.now()), TARGET_RESOLVER));
+  }
+
+  public void testVersionsStoredSeparately() {
+    MockFunction f1 = MockFunction.getMockFunction("f1", new ComputationTarget(ComputationTargetType.PRIMITIVE, UniqueIdentifier.of("TestScheme", "t1")), 42);
+    MockFunction f2 = MockFunction.getMockFunction("f2", new ComputationTarget(ComputationTargetType.PRIMITIVE, UniqueIdentifier.of("TestScheme", "t2")), 60, f1);
+    ViewDefinition viewDefinition1 = createViewDefinition(f1);
+    ViewDefinition viewDefinition2 = createViewDefinition(f2);
+    CompiledFunctionService functions = createFunctionService(123, f1, f2);
+    FileCompiledViewDefinitionCache cache = new FileCompiledViewDefinitionCache(_directory, OpenGammaFudgeContext.getInstance());
+    assertFalse(cache.getFile(viewDefinition1).equals(cache.getFile(viewDefinition2)));
+    cache.put(ViewDefinitionCompiler.compile(viewDefinition1, createCompilationServices(functions), Instant.now()), functions.compileFunctionRepository(Instant.now()));
+    cache.flush();
+    assertTrue(cache.getFile(viewDefinition1).exists());
+
+    // Storing the new version replaces the old one
+    cache.put(ViewDefinitionCompiler.compile(viewDefinition2, createCompilationServices(functions), Instant.now()), functions.compileFunctionRepository(Instant.now()));
+    cache.flush();
+    assertFalse(cache.getFile(viewDefinition1).exists());
+    assertNotNull(cache.get(viewDefinition2, functions.compileFunctionRepository(Instant.now()), TARGET_RESOLVER));
+  }
+
+}
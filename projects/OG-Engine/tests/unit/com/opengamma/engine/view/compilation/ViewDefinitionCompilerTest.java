@@ -6,7 +6,10 @@
 package com.opengamma.engine.view.compilation;
 
 import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
 import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNotSame;
+import static org.testng.AssertJUnit.assertSame;
 import static org.testng.AssertJUnit.assertTrue;
 import org.testng.annotations.Test;
 import java.math.BigDecimal;
@@ -27,6 +30,7 @@ import com.opengamma.engine.ComputationTargetType;
 import com.opengamma.engine.DefaultCachingComputationTargetResolver;
 import com.opengamma.engine.DefaultComputationTargetResolver;
 import com.opengamma.engine.depgraph.DependencyGraph;
+import com.opengamma.engine.depgraph.DependencyNode;
 import com.opengamma.engine.function.CachingFunctionRepositoryCompiler;
 import com.opengamma.engine.function.CompiledFunctionService;
 import com.opengamma.engine.function.FunctionCompilationContext;
@@ -206,6 +210,74 @@ public class ViewDefinitionCompilerTest {
     assertTargets(compiledViewDefinition, sec2.getUniqueId(), pn.getUniqueId());
   }
 
+  public void testIncrementalCompilation() {
+    Identifier secIdentifier1 = Identifier.of("SEC", "1");
+    Identifier secIdentifier2 = Identifier.of("SEC", "2");
+    PositionImpl pos = new PositionImpl(new BigDecimal(1), secIdentifier1);
+    PortfolioNodeImpl pn = new PortfolioNodeImpl("node");
+    pn.addPosition(pos);
+    PortfolioImpl p = new PortfolioImpl(UniqueIdentifier.of("FOO", "BAR"), "portfolio");
+    p.setRootNode(pn);
+
+    MockPositionSource positionSource = new MockPositionSource();
+    positionSource.addPortfolio(p);
+
+    MockSecurity sec1 = new MockSecurity("My Sec");
+    sec1.addIdentifier(secIdentifier1);
+
+    MockSecurity sec2 = new MockSecurity("Your Sec");
+    sec2.addIdentifier(secIdentifier2);
+
+    MockSecuritySource securitySource = new MockSecuritySource();
+    securitySource.addSecurity(sec1);
+    securitySource.addSecurity(sec2);
+
+    InMemoryLKVSnapshotProvider snapshotProvider = new InMemoryLKVSnapshotProvider();
+
+    MockFunction fn2 = MockFunction.getMockFunction("fn2", new ComputationTarget(sec2), 14.2);
+    MockFunction fn1 = MockFunction.getMockFunction("fn1", new ComputationTarget(pn), 14.2, fn2);
+
+    InMemoryFunctionRepository functionRepo = new InMemoryFunctionRepository();
+    functionRepo.addFunction(fn1);
+    functionRepo.addFunction(fn2);
+    FunctionCompilationContext functionCompilationContext = new FunctionCompilationContext();
+    functionCompilationContext.setFunctionInitId(123);
+    DefaultFunctionResolver functionResolver = new DefaultFunctionResolver(new CompiledFunctionService(functionRepo, new CachingFunctionRepositoryCompiler(), functionCompilationContext));
+    DefaultCachingComputationTargetResolver computationTargetResolver = new DefaultCachingComputationTargetResolver(new DefaultComputationTargetResolver(securitySource, positionSource), EHCacheUtils
+        .createCacheManager());
+
+    ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+    ViewCompilationServices vcs = new ViewCompilationServices(snapshotProvider, functionResolver, functionCompilationContext, computationTargetResolver, executorService, securitySource,
+        positionSource);
+
+    ViewDefinition viewDefinition = new ViewDefinition("My View", UniqueIdentifier.of("FOO", "BAR"), "kirk");
+    viewDefinition.getResultModelDefinition().setPositionOutputMode(ResultOutputMode.NONE);
+    ViewCalculationConfiguration calcConfig = new ViewCalculationConfiguration(viewDefinition, "Fibble");
+    calcConfig.addPortfolioRequirementName("My Sec", "OUTPUT");
+    viewDefinition.addViewCalculationConfiguration(calcConfig);
+    CompiledViewDefinitionWithGraphsImpl previous = ViewDefinitionCompiler.compile(viewDefinition, vcs, Instant.now());
+
+    // Nothing has changed, so the previous compilation can be used as it is
+    assertSame(previous, ViewDefinitionCompiler.compile(viewDefinition, vcs, Instant.now(), previous));
+
+    // Adding a position changes the node; the security node can be reused
+    pn.addPosition(new PositionImpl(UniqueIdentifier.of("TEST", "POS2"), new BigDecimal(2), secIdentifier1));
+    CompiledViewDefinitionWithGraphsImpl compiledViewDefinition = ViewDefinitionCompiler.compile(viewDefinition, vcs, Instant.now(), previous);
+    assertNotSame(previous, compiledViewDefinition);
+    assertEquals(2, compiledViewDefinition.getPortfolio().getRootNode().getPositions().size());
+    DependencyGraph dg = compiledViewDefinition.getDependencyGraph("Fibble");
+    assertEquals(2, dg.getDependencyNodes().size());
+    assertTargets(compiledViewDefinition, sec2.getUniqueId(), pn.getUniqueId());
+
+    // The previous graph must not have been modified
+    DependencyGraph previousGraph = previous.getDependencyGraph("Fibble");
+    assertEquals(2, previousGraph.getDependencyNodes().size());
+    for (DependencyNode node : previousGraph.getDependencyNodes()) {
+      assertFalse(dg.containsNode(node));
+    }
+  }
+
   public void testPrimitivesOnlyNoPortfolioReference() {
     ViewDefinition viewDefinition = new ViewDefinition("Test", "jonathan");
     ViewCalculationConfiguration calcConfig = new ViewCalculationConfiguration(viewDefinition, "Config1");
@@ -290,6 +362,45 @@ public class ViewDefinitionCompilerTest {
     assertTargets(compiledViewDefinition);
   }
 
+  public void testMultipleConfigurationsCompiledConcurrently() {
+    ViewDefinition viewDefinition = new ViewDefinition("Test", "jonathan");
+    ViewCalculationConfiguration calcConfig1 = new ViewCalculationConfiguration(viewDefinition, "Config1");
+    viewDefinition.addViewCalculationConfiguration(calcConfig1);
+    ViewCalculationConfiguration calcConfig2 = new ViewCalculationConfiguration(viewDefinition, "Config2");
+    viewDefinition.addViewCalculationConfiguration(calcConfig2);
+
+    UniqueIdentifier t1 = UniqueIdentifier.of("TestScheme", "t1");
+    UniqueIdentifier t2 = UniqueIdentifier.of("TestScheme", "t2");
+
+    InMemoryLKVSnapshotProvider snapshotProvider = new InMemoryLKVSnapshotProvider();
+
+    InMemoryFunctionRepository functionRepo = new InMemoryFunctionRepository();
+    MockFunction f1 = MockFunction.getMockFunction("f1", new ComputationTarget(ComputationTargetType.PRIMITIVE, t1), 42);
+    MockFunction f2 = MockFunction.getMockFunction("f2", new ComputationTarget(ComputationTargetType.PRIMITIVE, t2), 60, f1);
+    functionRepo.addFunction(f1);
+    functionRepo.addFunction(f2);
+
+    FunctionCompilationContext compilationContext = new FunctionCompilationContext();
+    compilationContext.setFunctionInitId(123);
+    DefaultFunctionResolver functionResolver = new DefaultFunctionResolver(new CompiledFunctionService(functionRepo, new CachingFunctionRepositoryCompiler(), compilationContext));
+    DefaultCachingComputationTargetResolver computationTargetResolver = new DefaultCachingComputationTargetResolver(new DefaultComputationTargetResolver(), EHCacheUtils.createCacheManager());
+    ExecutorService executorService = Executors.newFixedThreadPool(2);
+    ViewCompilationServices compilationServices = new ViewCompilationServices(snapshotProvider, functionResolver, compilationContext, computationTargetResolver, executorService);
+
+    calcConfig1.addSpecificRequirement(f1.getResultSpec().toRequirementSpecification());
+    calcConfig2.addSpecificRequirement(f2.getResultSpec().toRequirementSpecification());
+
+    try {
+      CompiledViewDefinitionWithGraphsImpl compiledViewDefinition = ViewDefinitionCompiler.compile(viewDefinition, compilationServices, Instant.now());
+      assertEquals(2, compiledViewDefinition.getAllDependencyGraphs().size());
+      assertEquals(1, compiledViewDefinition.getDependencyGraph("Config1").getSize());
+      assertEquals(2, compiledViewDefinition.getDependencyGraph("Config2").getSize());
+      assertTargets(compiledViewDefinition, t1, t2);
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
   private void assertTargets(CompiledViewDefinitionWithGraphsImpl compiledViewDefinition, UniqueIdentifier... targets) {
     Set<UniqueIdentifier> expectedTargets = new HashSet<UniqueIdentifier>(Arrays.asList(targets));
     Set<ComputationTarget> actualTargets = compiledViewDefinition.getComputationTargets();
@@ -11,6 +11,7 @@ import java.util.Set;
 import com.opengamma.engine.livedata.HistoricalLiveDataSnapshotProvider;
 import com.opengamma.engine.livedata.InMemoryLKVSnapshotProvider;
 import com.opengamma.engine.value.ValueRequirement;
+import com.opengamma.livedata.UserPrincipal;
 import com.opengamma.util.ArgumentChecker;
 
 /**
@@ -64,6 +65,25 @@ public class BatchLiveDataSnapshotProvider extends InMemoryLKVSnapshotProvider {
   }
 
   //-------------------------------------------------------------------------
+  @Override
+  public void addSubscription(UserPrincipal user, Set<ValueRequirement> valueRequirements) {
+    super.addSubscription(user, valueRequirements);
+    _historicalDataProvider.addSubscription(user, valueRequirements);
+  }
+
+  @Override
+  public long snapshot(long snapshotTime) {
+    // lets the historical provider fetch all subscribed values in one request
+    _historicalDataProvider.snapshot(snapshotTime);
+    return super.snapshot(snapshotTime);
+  }
+
+  @Override
+  public void releaseSnapshot(long snapshot) {
+    super.releaseSnapshot(snapshot);
+    _historicalDataProvider.releaseSnapshot(snapshot);
+  }
+
   // method is synchronized for now because of the call to .addValuesToSnapshot() which
   // you don't want to be doing multiple times. Could synchronize just on snapshot+requirement 
   // combo
@@ -46,9 +46,25 @@ public class BatchResultWriterExecutor implements DependencyGraphExecutor<Object
   public BatchResultWriterExecutor(
       BatchResultWriter writer,
       DependencyGraphExecutor<CalculationJobResult> delegate) {
+    this(writer, delegate, 1);
+  }
+
+  /**
+   * Creates an instance writing results from several threads.
+   * <p>
+   * The writer must accept concurrent calls for results of different jobs.
+   * 
+   * @param writer  the result writer, not null
+   * @param delegate  the underlying graph executor, not null
+   * @param writerThreads  the number of threads writing results, greater than zero
+   */
+  public BatchResultWriterExecutor(
+      BatchResultWriter writer,
+      DependencyGraphExecutor<CalculationJobResult> delegate,
+      int writerThreads) {
     this(writer,
         delegate,
-        Executors.newSingleThreadExecutor(new NamedThreadPoolFactory("BatchResultWriterExecutor")));
+        Executors.newFixedThreadPool(writerThreads, new NamedThreadPoolFactory("BatchResultWriterExecutor")));
   }
 
   /**
@@ -216,9 +216,9 @@ public class HistoricalDataSourceResource {
     String dataSource = msg.getString(REQUEST_DATA_SOURCE);
     String dataProvider = msg.getString(REQUEST_DATA_PROVIDER);
     String dataField = msg.getString(REQUEST_DATA_FIELD);
-    LocalDate start = deserializationContext.fieldValueToObject(LocalDate.class, msg.getByName(REQUEST_START));
+    LocalDate start = msg.hasField(REQUEST_START) ? deserializationContext.fieldValueToObject(LocalDate.class, msg.getByName(REQUEST_START)) : null;
     boolean inclusiveStart = msg.getBoolean(REQUEST_INCLUSIVE_START);
-    LocalDate end = deserializationContext.fieldValueToObject(LocalDate.class, msg.getByName(REQUEST_END));
+    LocalDate end = msg.hasField(REQUEST_END) ? deserializationContext.fieldValueToObject(LocalDate.class, msg.getByName(REQUEST_END)) : null;
     boolean exclusiveEnd = msg.getBoolean(REQUEST_EXCLUSIVE_END);
     
     Map<IdentifierBundle, Pair<UniqueIdentifier, LocalDateDoubleTimeSeries>> result = _dataSource.getHistoricalData(
@@ -234,9 +234,13 @@ public class RemoteHistoricalDataSource implements HistoricalDataSource {
     serializationContext.addToMessage(msg, REQUEST_DATA_SOURCE, null, dataSource);
     serializationContext.addToMessage(msg, REQUEST_DATA_PROVIDER, null, dataProvider);
     serializationContext.addToMessage(msg, REQUEST_DATA_FIELD, null, dataField);
-    serializationContext.addToMessage(msg, REQUEST_START, null, start);
+    if (start != null) {
+      serializationContext.addToMessage(msg, REQUEST_START, null, start);
+    }
     serializationContext.addToMessage(msg, REQUEST_INCLUSIVE_START, null, inclusiveStart);
-    serializationContext.addToMessage(msg, REQUEST_END, null, end);
+    if (end != null) {
+      serializationContext.addToMessage(msg, REQUEST_END, null, end);
+    }
     serializationContext.addToMessage(msg, REQUEST_EXCLUSIVE_END, null, exclusiveEnd);
     
     FudgeMsgEnvelope result = getRestClient().post(target, msg);
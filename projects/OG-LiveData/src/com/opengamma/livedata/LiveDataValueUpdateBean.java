@@ -24,15 +24,29 @@ public class LiveDataValueUpdateBean implements LiveDataValueUpdate,
   private static final String SEQUENCE_NUMBER_FIELD_NAME = "sequenceNumber";
   private static final String SPECIFICATION_FIELD_NAME = "specification";
   private static final String FIELDS_FIELD_NAME = "fields";
+  private static final String TIMESTAMP_FIELD_NAME = "timestamp";
   private final long _sequenceNumber;
   private final LiveDataSpecification _specification;
   private final FudgeMsg _fieldContainer;
+  private final long _timestamp;
   
   public LiveDataValueUpdateBean(long sequenceNumber, LiveDataSpecification specification, FudgeMsg fieldContainer) {
+    this(sequenceNumber, specification, fieldContainer, 0);
+  }
+  
+  /**
+   * @param sequenceNumber the sequence number of the update
+   * @param specification the fully qualified specification of the data
+   * @param fieldContainer the fields of the update
+   * @param timestamp when the server received the earliest tick in the update, in nanoseconds
+   * since the epoch as given by {@link com.opengamma.util.monitor.LatencyClock}, or 0 if not timestamped
+   */
+  public LiveDataValueUpdateBean(long sequenceNumber, LiveDataSpecification specification, FudgeMsg fieldContainer, long timestamp) {
     // TODO kirk 2009-09-29 -- Check Inputs.
     _sequenceNumber = sequenceNumber;
     _specification = specification;
     _fieldContainer = fieldContainer;
+    _timestamp = timestamp;
   }
 
   @Override
@@ -50,6 +64,18 @@ public class LiveDataValueUpdateBean implements LiveDataValueUpdate,
     return _specification;
   }
   
+  /**
+   * Gets when the server received the tick the update was published for, so that the
+   * latency of its distribution and processing can be traced. If the update merges
+   * several ticks, this is when the earliest of them was received.
+   * 
+   * @return the time in nanoseconds since the epoch, as given by
+   * {@link com.opengamma.util.monitor.LatencyClock}, or 0 if the update is not timestamped
+   */
+  public long getTimestamp() {
+    return _timestamp;
+  }
+  
   public FudgeMsg toFudgeMsg(FudgeMsgFactory fudgeMessageFactory) {
     MutableFudgeMsg msg = fudgeMessageFactory.newMessage();
     msg.add(SEQUENCE_NUMBER_FIELD_NAME, getSequenceNumber());
@@ -59,6 +85,9 @@ public class LiveDataValueUpdateBean implements LiveDataValueUpdate,
     if (getFields() != null) {
       msg.add(FIELDS_FIELD_NAME, getFields());
     }
+    if (getTimestamp() != 0) {
+      msg.add(TIMESTAMP_FIELD_NAME, getTimestamp());
+    }
     return msg;
   
   }
@@ -66,6 +95,7 @@ public class LiveDataValueUpdateBean implements LiveDataValueUpdate,
     Long sequenceNumber = msg.getLong(SEQUENCE_NUMBER_FIELD_NAME);
     FudgeMsg specificationFields = msg.getMessage(SPECIFICATION_FIELD_NAME);
     FudgeMsg fields = msg.getMessage(FIELDS_FIELD_NAME);
+    Long timestamp = msg.getLong(TIMESTAMP_FIELD_NAME);
     // REVIEW kirk 2009-10-28 -- Right thing to do here?
     if (sequenceNumber == null) {
       return null;
@@ -77,7 +107,7 @@ public class LiveDataValueUpdateBean implements LiveDataValueUpdate,
       return null;
     }
     LiveDataSpecification spec = LiveDataSpecification.fromFudgeMsg(specificationFields);
-    return new LiveDataValueUpdateBean(sequenceNumber, spec, fields);
+    return new LiveDataValueUpdateBean(sequenceNumber, spec, fields, (timestamp != null) ? timestamp : 0);
   }
 
   @Override
@@ -50,7 +50,7 @@ public abstract class AbstractLiveDataClient implements LiveDataClient {
   private long _heartbeatPeriod = HeartbeatSender.DEFAULT_PERIOD;
   private FudgeContext _fudgeContext = FudgeContext.GLOBAL_DEFAULT;
   // Running State:
-  private final ValueDistributor _valueDistributor = new ValueDistributor();
+  private ValueDistributor _valueDistributor = new ValueDistributor();
   private final Timer _timer = new Timer("LiveDataClient Timer");
   private HeartbeatSender _heartbeatSender;
   private final Lock _subscriptionLock = new ReentrantLock();
@@ -67,6 +67,7 @@ public abstract class AbstractLiveDataClient implements LiveDataClient {
   @Override
   public void close() {
     _timer.cancel();
+    _valueDistributor.close();
   }
 
   /**
@@ -104,6 +105,18 @@ public abstract class AbstractLiveDataClient implements LiveDataClient {
     return _valueDistributor;
   }
 
+  /**
+   * Sets the distributor which notifies listeners of values received, for example
+   * an {@link AsynchronousValueDistributor}. This must be set before any
+   * subscriptions are made or a heartbeat sender is set.
+   *
+   * @param valueDistributor the valueDistributor to set, not null
+   */
+  public void setValueDistributor(ValueDistributor valueDistributor) {
+    ArgumentChecker.notNull(valueDistributor, "Value Distributor");
+    _valueDistributor = valueDistributor;
+  }
+
   /**
    * @return the fudgeContext
    */
@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.client;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opengamma.livedata.LiveDataListener;
+import com.opengamma.livedata.LiveDataValueUpdateBean;
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * A {@link ValueDistributor} which hands values to a dispatch thread to notify the listeners,
+ * so that the threads receiving values are not held up by slow listeners.
+ * <p>
+ * Values are passed to the dispatch thread through a fixed size ring buffer. Each value is
+ * placed in the next slot of the buffer without taking any locks. A thread receiving a
+ * value only waits when the buffer is full, which happens only when the listeners fall
+ * behind by the whole buffer.
+ * <p>
+ * Each value is delivered to the listeners to its specification when the value was received,
+ * so a listener may be notified of values received shortly before it was removed. Listeners
+ * are always notified in the order the values were received. An exception or error thrown by a
+ * listener is logged and doesn't stop the others being notified.
+ */
+public class AsynchronousValueDistributor extends ValueDistributor {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(AsynchronousValueDistributor.class);
+
+  /**
+   * The default number of values the buffer holds.
+   */
+  public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+  private static final int SPINS = 1000;
+  private static final long PARK_NANOS = 1000000;
+
+  private final int _mask;
+  private final LiveDataListener[][] _listeners;
+  private final LiveDataValueUpdateBean[] _updates;
+  /** The sequence number of the value each slot holds, once it can be read. */
+  private final AtomicLongArray _published;
+  /** The sequence number of the last value claimed by a receiving thread. */
+  private final AtomicLong _claimed = new AtomicLong(-1);
+  /** The sequence number of the last value delivered by the dispatch thread. */
+  private volatile long _dispatched = -1;
+  private volatile boolean _dispatcherWaiting;
+  private volatile boolean _running = true;
+  private final Thread _dispatcher;
+
+  public AsynchronousValueDistributor() {
+    this(DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * @param bufferSize the number of values the buffer holds, a power of two
+   */
+  public AsynchronousValueDistributor(int bufferSize) {
+    ArgumentChecker.isTrue(bufferSize > 0 && Integer.bitCount(bufferSize) == 1, "Buffer size must be a power of two");
+    _mask = bufferSize - 1;
+    _listeners = new LiveDataListener[bufferSize][];
+    _updates = new LiveDataValueUpdateBean[bufferSize];
+    _published = new AtomicLongArray(bufferSize);
+    for (int i = 0; i < bufferSize; i++) {
+      _published.set(i, -1);
+    }
+    _dispatcher = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          dispatch();
+        } finally {
+          // Don't leave receiving threads waiting for a dispatcher that has gone
+          _running = false;
+        }
+      }
+    }, "LiveData Value Dispatcher");
+    _dispatcher.setDaemon(true);
+    _dispatcher.start();
+  }
+
+  public int getBufferSize() {
+    return _updates.length;
+  }
+
+  @Override
+  public void notifyListeners(LiveDataValueUpdateBean updateBean) {
+    LiveDataListener[] listeners = getListeners(updateBean.getSpecification());
+    if (listeners == null) {
+      return;
+    }
+    long sequence = _claimed.incrementAndGet();
+    int spins = 0;
+    while (sequence - _dispatched > _updates.length) {
+      // The dispatcher is a whole buffer behind
+      if (!_running) {
+        return;
+      }
+      if (++spins > SPINS) {
+        LockSupport.parkNanos(PARK_NANOS);
+      } else {
+        Thread.yield();
+      }
+    }
+    int slot = (int) sequence & _mask;
+    _listeners[slot] = listeners;
+    _updates[slot] = updateBean;
+    _published.set(slot, sequence);
+    if (_dispatcherWaiting) {
+      LockSupport.unpark(_dispatcher);
+    }
+  }
+
+  private void dispatch() {
+    long sequence = _dispatched + 1;
+    while (true) {
+      int slot = (int) sequence & _mask;
+      int spins = 0;
+      while (_published.get(slot) != sequence) {
+        if (!_running) {
+          return;
+        }
+        if (++spins > SPINS) {
+          _dispatcherWaiting = true;
+          if (_published.get(slot) != sequence && _running) {
+            LockSupport.parkNanos(this, PARK_NANOS);
+          }
+          _dispatcherWaiting = false;
+        }
+      }
+      LiveDataListener[] listeners = _listeners[slot];
+      LiveDataValueUpdateBean updateBean = _updates[slot];
+      _listeners[slot] = null;
+      _updates[slot] = null;
+      _dispatched = sequence;
+      for (LiveDataListener listener : listeners) {
+        try {
+          listener.valueUpdate(updateBean);
+        } catch (Throwable t) {
+          s_logger.error("Listener " + listener + " failed to process " + updateBean, t);
+        }
+      }
+      sequence++;
+    }
+  }
+
+  /**
+   * Stops the dispatch thread. Values received but not yet delivered are discarded.
+   */
+  @Override
+  public void close() {
+    _running = false;
+    LockSupport.unpark(_dispatcher);
+  }
+
+}
@@ -25,6 +25,7 @@ public class RemoteLiveDataClientFactoryBean extends SingletonFactoryBean<LiveDa
   private String _subscriptionTopic;
   private String _entitlementTopic;
   private String _heartbeatTopic;
+  private int _dispatchBufferSize; // = 0
   
   public void setConnectionFactory(final ConnectionFactory connectionFactory) {
     _connectionFactory = connectionFactory;
@@ -57,6 +58,21 @@ public class RemoteLiveDataClientFactoryBean extends SingletonFactoryBean<LiveDa
   public String getHeartbeatTopic() {
     return _heartbeatTopic;
   }
+
+  /**
+   * Sets the size of the buffer used to pass values to a dispatch thread, which notifies
+   * listeners. If zero, the default, listeners are notified by the JMS threads receiving
+   * the values.
+   *
+   * @param dispatchBufferSize the buffer size, zero or a power of two
+   */
+  public void setDispatchBufferSize(int dispatchBufferSize) {
+    _dispatchBufferSize = dispatchBufferSize;
+  }
+
+  public int getDispatchBufferSize() {
+    return _dispatchBufferSize;
+  }
   
   @Override
   protected LiveDataClient createObject() {
@@ -77,6 +93,9 @@ public class RemoteLiveDataClientFactoryBean extends SingletonFactoryBean<LiveDa
         OpenGammaFudgeContext.getInstance(),
         JmsLiveDataClient.DEFAULT_NUM_SESSIONS);
     liveDataClient.setFudgeContext(OpenGammaFudgeContext.getInstance());
+    if (getDispatchBufferSize() > 0) {
+      liveDataClient.setValueDistributor(new AsynchronousValueDistributor(getDispatchBufferSize()));
+    }
     if (getHeartbeatTopic() != null) {
       JmsByteArrayMessageSender jmsHeartbeatSender = new JmsByteArrayMessageSender(getHeartbeatTopic(), jmsTemplate);
       liveDataClient.setHeartbeatMessageSender(jmsHeartbeatSender);
@@ -19,58 +19,80 @@ import com.opengamma.livedata.LiveDataValueUpdateBean;
  * {@link LiveDataListener}'s.
  * This is separate from all live data client instances as it needs to be
  * compact to be able to have efficient concurrency.
- *
+ * <p>
+ * The listeners of each specification are held in an array which is replaced,
+ * never modified, when a listener is added or removed. Notifying listeners
+ * therefore takes one lookup and no locks.
  */
 public class ValueDistributor {
-  private final ConcurrentMap<LiveDataSpecification, Set<LiveDataListener>> _listenersBySpec =
-    new ConcurrentHashMap<LiveDataSpecification, Set<LiveDataListener>>();
-  
+  private final ConcurrentMap<LiveDataSpecification, LiveDataListener[]> _listenersBySpec =
+    new ConcurrentHashMap<LiveDataSpecification, LiveDataListener[]>();
+
   public Set<LiveDataSpecification> getActiveSpecifications() {
     return new HashSet<LiveDataSpecification>(_listenersBySpec.keySet());
   }
-  
-  public void addListener(LiveDataSpecification fullyQualifiedSpecification, LiveDataListener listener) {
-    Set<LiveDataListener> freshListeners = new HashSet<LiveDataListener>();
-    Set<LiveDataListener> actualListeners = _listenersBySpec.putIfAbsent(fullyQualifiedSpecification, freshListeners);
-    if (actualListeners == null) {
-      actualListeners = freshListeners;
+
+  public synchronized void addListener(LiveDataSpecification fullyQualifiedSpecification, LiveDataListener listener) {
+    LiveDataListener[] listeners = _listenersBySpec.get(fullyQualifiedSpecification);
+    if (listeners == null) {
+      _listenersBySpec.put(fullyQualifiedSpecification, new LiveDataListener[] {listener});
+      return;
     }
-    synchronized (actualListeners) {
-      actualListeners.add(listener);
+    for (LiveDataListener existing : listeners) {
+      if (existing.equals(listener)) {
+        return;
+      }
     }
+    LiveDataListener[] newListeners = new LiveDataListener[listeners.length + 1];
+    System.arraycopy(listeners, 0, newListeners, 0, listeners.length);
+    newListeners[listeners.length] = listener;
+    _listenersBySpec.put(fullyQualifiedSpecification, newListeners);
   }
-  
+
   /**
-   * 
+   *
    * @param fullyQualifiedSpecification Fully qualified spec
    * @param listener LiveDataListener
    * @return {@code true} iff there are still active listeners.
    */
-  public boolean removeListener(LiveDataSpecification fullyQualifiedSpecification, LiveDataListener listener) {
-    Set<LiveDataListener> actualListeners = _listenersBySpec.get(fullyQualifiedSpecification);
-    if (actualListeners == null) {
+  public synchronized boolean removeListener(LiveDataSpecification fullyQualifiedSpecification, LiveDataListener listener) {
+    LiveDataListener[] listeners = _listenersBySpec.get(fullyQualifiedSpecification);
+    if (listeners == null) {
       return false;
     }
-    synchronized (actualListeners) {
-      actualListeners.remove(listener);
-      if (actualListeners.isEmpty()) {
-        boolean removed = _listenersBySpec.remove(fullyQualifiedSpecification, actualListeners);
-        if (removed) {
-          return false;
-        } else {
-          // Someone else added a new one in addListener.
-          return true;
-        }
-      } else {
-        return true;
+    int index = -1;
+    for (int i = 0; i < listeners.length; i++) {
+      if (listeners[i].equals(listener)) {
+        index = i;
+        break;
       }
     }
+    if (index < 0) {
+      return true;
+    }
+    if (listeners.length == 1) {
+      _listenersBySpec.remove(fullyQualifiedSpecification);
+      return false;
+    }
+    LiveDataListener[] newListeners = new LiveDataListener[listeners.length - 1];
+    System.arraycopy(listeners, 0, newListeners, 0, index);
+    System.arraycopy(listeners, index + 1, newListeners, index, newListeners.length - index);
+    _listenersBySpec.put(fullyQualifiedSpecification, newListeners);
+    return true;
   }
-  
-  // TODO kirk 2009-09-29 -- This should be handed an executor service to
-  // invoke the updates asynchronously.
+
+  /**
+   * Gets the listeners to a specification.
+   *
+   * @param fullyQualifiedSpecification Fully qualified spec
+   * @return the listeners, null if there are none. The array must not be modified.
+   */
+  protected LiveDataListener[] getListeners(LiveDataSpecification fullyQualifiedSpecification) {
+    return _listenersBySpec.get(fullyQualifiedSpecification);
+  }
+
   public void notifyListeners(LiveDataValueUpdateBean updateBean) {
-    Set<LiveDataListener> listeners = _listenersBySpec.get(updateBean.getSpecification());
+    LiveDataListener[] listeners = getListeners(updateBean.getSpecification());
     if (listeners == null) {
       return;
     }
@@ -79,4 +101,11 @@ public class ValueDistributor {
     }
   }
 
+  /**
+   * Stops distributing values, releasing any resources held.
+   */
+  public void close() {
+    // Nothing to release
+  }
+
 }
@@ -8,6 +8,7 @@ package com.opengamma.livedata.normalization;
 import org.fudgemsg.MutableFudgeMsg;
 
 import com.opengamma.livedata.server.FieldHistoryStore;
+import com.opengamma.util.ArgumentChecker;
 
 /**
  * Stores the current state of the message normalization pipeline in the history store.
@@ -15,14 +16,39 @@ import com.opengamma.livedata.server.FieldHistoryStore;
  * rule is inserted, the message stored in the history could
  * either be completely unnormalized, partially normalized,
  * or fully normalized.   
+ * <p>
+ * The rule can also ask the store to keep the last N values
+ * of each field, for rules later in the chain that need them.
  *
  * @author pietari
  */
 public class FieldHistoryUpdater implements NormalizationRule {
+  
+  private final int _historyDepth;
+  
+  public FieldHistoryUpdater() {
+    this(0);
+  }
+  
+  /**
+   * @param historyDepth how many values of each field the history
+   * should keep, 0 to keep only the last value
+   */
+  public FieldHistoryUpdater(int historyDepth) {
+    ArgumentChecker.notNegative(historyDepth, "History depth");
+    _historyDepth = historyDepth;
+  }
+  
+  public int getHistoryDepth() {
+    return _historyDepth;
+  }
 
   @Override
   public MutableFudgeMsg apply(MutableFudgeMsg msg,
       FieldHistoryStore fieldHistory) {
+    if (_historyDepth > 0) {
+      fieldHistory.ensureHistoryDepth(_historyDepth);
+    }
     fieldHistory.liveDataReceived(msg);
     return msg;
   }
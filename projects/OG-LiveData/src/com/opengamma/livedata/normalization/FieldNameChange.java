@@ -28,6 +28,20 @@ public class FieldNameChange implements NormalizationRule {
     _to = to;
   }
   
+  /**
+   * @return the name of the field to rename
+   */
+  public String getFrom() {
+    return _from;
+  }
+  
+  /**
+   * @return the new name of the field
+   */
+  public String getTo() {
+    return _to;
+  }
+  
   @Override
   public MutableFudgeMsg apply(
       MutableFudgeMsg msg,
@@ -0,0 +1,233 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.normalization;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeField;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+
+import com.opengamma.livedata.server.FieldHistoryStore;
+
+/**
+ * A sequence of {@link FieldFilter}, {@link FieldNameChange} and {@link UnitChange} rules
+ * fused by {@link NormalizationRuleSet} into a single pass over the fields of a message.
+ * <p>
+ * What the rules do to a field with a given name is worked out when the rules are fused,
+ * so normalizing a message only needs one lookup for each of its fields and builds one new
+ * message, rather than each rule copying or editing the message in turn. The result is the
+ * same as applying the rules one at a time, including the order of the fields: a field renamed
+ * or rescaled by a rule is moved to the end of the message. Messages where a rule would apply
+ * to more than one field, for example because a field is repeated or renamed onto another,
+ * are normalized by applying the rules one at a time.
+ */
+final class FusedFieldRule implements NormalizationRule {
+
+  /**
+   * What happens to a field with a particular name.
+   */
+  private static final class Action {
+
+    private final String _name;
+    private final double[] _multipliers;
+    private final int _lastRule;
+    private int _slot;
+
+    private Action(String name, double[] multipliers, int lastRule) {
+      _name = name;
+      _multipliers = multipliers;
+      _lastRule = lastRule;
+    }
+
+  }
+
+  private static final Action DROP = new Action(null, null, -1);
+  private static final Action KEEP = new Action(null, null, -1);
+
+  private final FudgeContext _context;
+  private final List<NormalizationRule> _rules;
+  private final Map<String, Action> _actions;
+  private final String[] _slotNames;
+  private final boolean _filtered;
+
+  private FusedFieldRule(FudgeContext context, List<NormalizationRule> rules, Map<String, Action> actions, String[] slotNames, boolean filtered) {
+    _context = context;
+    _rules = rules;
+    _actions = actions;
+    _slotNames = slotNames;
+    _filtered = filtered;
+  }
+
+  /**
+   * Tests whether a rule can be fused with others.
+   *
+   * @param rule the rule
+   * @return true if {@link #fuse} accepts the rule
+   */
+  static boolean isFusable(NormalizationRule rule) {
+    // Subclasses might not do what their superclass says
+    Class<?> clazz = rule.getClass();
+    return clazz == FieldFilter.class || clazz == FieldNameChange.class || clazz == UnitChange.class;
+  }
+
+  /**
+   * Fuses a sequence of rules.
+   *
+   * @param context the Fudge context to create normalized messages with
+   * @param rules the rules, each accepted by {@link #isFusable}
+   * @return the fused rule
+   */
+  static FusedFieldRule fuse(FudgeContext context, List<NormalizationRule> rules) {
+    Set<String> names = new HashSet<String>();
+    boolean filtered = false;
+    for (NormalizationRule rule : rules) {
+      if (rule instanceof FieldFilter) {
+        names.addAll(((FieldFilter) rule).getFieldsToAccept());
+        filtered = true;
+      } else if (rule instanceof FieldNameChange) {
+        names.add(((FieldNameChange) rule).getFrom());
+        names.add(((FieldNameChange) rule).getTo());
+      } else {
+        names.add(((UnitChange) rule).getField());
+      }
+    }
+
+    Map<String, Action> actions = new HashMap<String, Action>();
+    List<Action> changed = new ArrayList<Action>();
+    for (String name : names) {
+      Action action = trace(name, rules);
+      if (action._lastRule >= 0) {
+        changed.add(action);
+      }
+      actions.put(name, action);
+    }
+
+    // Each changed field is added to the end of the message by the last rule to change it, so
+    // that gives the order of the fields. Fields which end up with the same name after the same
+    // rule share a slot; the rule would only have applied to one of them.
+    Collections.sort(changed, new Comparator<Action>() {
+      @Override
+      public int compare(Action a1, Action a2) {
+        return a1._lastRule - a2._lastRule;
+      }
+    });
+    List<String> slotNames = new ArrayList<String>();
+    Action previous = null;
+    for (Action action : changed) {
+      if (previous == null || previous._lastRule != action._lastRule) {
+        slotNames.add(action._name);
+      }
+      action._slot = slotNames.size() - 1;
+      previous = action;
+    }
+    return new FusedFieldRule(context, new ArrayList<NormalizationRule>(rules), actions, slotNames.toArray(new String[slotNames.size()]), filtered);
+  }
+
+  private static Action trace(String name, List<NormalizationRule> rules) {
+    String current = name;
+    double[] multipliers = new double[0];
+    int lastRule = -1;
+    for (int i = 0; i < rules.size(); i++) {
+      NormalizationRule rule = rules.get(i);
+      if (rule instanceof FieldFilter) {
+        if (!((FieldFilter) rule).getFieldsToAccept().contains(current)) {
+          return DROP;
+        }
+      } else if (rule instanceof FieldNameChange) {
+        if (current.equals(((FieldNameChange) rule).getFrom())) {
+          current = ((FieldNameChange) rule).getTo();
+          lastRule = i;
+        }
+      } else {
+        if (current.equals(((UnitChange) rule).getField())) {
+          double[] newMultipliers = new double[multipliers.length + 1];
+          System.arraycopy(multipliers, 0, newMultipliers, 0, multipliers.length);
+          newMultipliers[multipliers.length] = ((UnitChange) rule).getMultiplier();
+          multipliers = newMultipliers;
+          lastRule = i;
+        }
+      }
+    }
+    return (lastRule < 0) ? KEEP : new Action(current, multipliers, lastRule);
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Normalizes a message.
+   *
+   * @param msg the message, not modified
+   * @param fieldHistory the field history
+   * @return a new normalized message, or null if the rules rejected the message
+   */
+  MutableFudgeMsg normalize(FudgeMsg msg, FieldHistoryStore fieldHistory) {
+    Object[] changedValues = (_slotNames.length > 0) ? new Object[_slotNames.length] : null;
+    MutableFudgeMsg normalizedMsg = _context.newMessage();
+    for (FudgeField field : msg) {
+      String name = field.getName();
+      Action action = (name != null) ? _actions.get(name) : null;
+      if (action == null) {
+        // Filters only accept the fields they name
+        if (!_filtered) {
+          normalizedMsg.add(field);
+        }
+      } else if (action == KEEP) {
+        normalizedMsg.add(field);
+      } else if (action != DROP) {
+        if (changedValues[action._slot] != null) {
+          return applySequentially(msg, fieldHistory);
+        }
+        Object value = field.getValue();
+        if (action._multipliers.length > 0) {
+          Double doubleValue = msg.getFieldValue(Double.class, field);
+          if (doubleValue == null) {
+            return applySequentially(msg, fieldHistory);
+          }
+          double newValue = doubleValue;
+          for (double multiplier : action._multipliers) {
+            newValue = newValue * multiplier;
+          }
+          value = newValue;
+        }
+        changedValues[action._slot] = value;
+      }
+    }
+    for (int i = 0; i < _slotNames.length; i++) {
+      if (changedValues[i] != null) {
+        normalizedMsg.add(_slotNames[i], changedValues[i]);
+      }
+    }
+    if (_filtered && normalizedMsg.getNumFields() == 0) {
+      return null; // extinguish message
+    }
+    return normalizedMsg;
+  }
+
+  private MutableFudgeMsg applySequentially(FudgeMsg msg, FieldHistoryStore fieldHistory) {
+    MutableFudgeMsg normalizedMsg = _context.newMessage(msg);
+    for (NormalizationRule rule : _rules) {
+      normalizedMsg = rule.apply(normalizedMsg, fieldHistory);
+      if (normalizedMsg == null) {
+        break;
+      }
+    }
+    return normalizedMsg;
+  }
+
+  @Override
+  public MutableFudgeMsg apply(MutableFudgeMsg msg, FieldHistoryStore fieldHistory) {
+    return normalize(msg, fieldHistory);
+  }
+
+}
@@ -20,11 +20,15 @@ import com.opengamma.util.fudgemsg.OpenGammaFudgeContext;
 
 /**
  * An ordered set of normalization rules.
+ * <p>
+ * Consecutive {@link FieldFilter}, {@link FieldNameChange} and {@link UnitChange}
+ * rules are fused into a single pass over the fields of each message when the
+ * rule set is created. See {@link FusedFieldRule}.
  */
 public class NormalizationRuleSet {
   private final String _id;
   private final String _jmsTopicSuffix;
-  private final List<NormalizationRule> _rules;
+  private final NormalizationRule[] _pipeline;
   
   /* Useful for tests */
   public NormalizationRuleSet(String id) {
@@ -50,7 +54,25 @@ public class NormalizationRuleSet {
       _jmsTopicSuffix = jmsTopicSuffix;
     }
     
-    _rules = new ArrayList<NormalizationRule>(rules);    
+    _pipeline = compile(new ArrayList<NormalizationRule>(rules));
+  }
+  
+  private static NormalizationRule[] compile(List<NormalizationRule> rules) {
+    List<NormalizationRule> pipeline = new ArrayList<NormalizationRule>();
+    int i = 0;
+    while (i < rules.size()) {
+      int end = i;
+      while (end < rules.size() && FusedFieldRule.isFusable(rules.get(end))) {
+        end++;
+      }
+      if (end == i) {
+        pipeline.add(rules.get(i++));
+        continue;
+      }
+      pipeline.add(FusedFieldRule.fuse(OpenGammaFudgeContext.getInstance(), rules.subList(i, end)));
+      i = end;
+    }
+    return pipeline.toArray(new NormalizationRule[pipeline.size()]);
   }
   
   /**
@@ -66,13 +88,17 @@ public class NormalizationRuleSet {
   public FudgeMsg getNormalizedMessage(
       FudgeMsg msg,
       FieldHistoryStore fieldHistory) {
-    MutableFudgeMsg normalizedMsg = OpenGammaFudgeContext.getInstance().newMessage(msg);
-    for (NormalizationRule rule : _rules) {
-      normalizedMsg = rule.apply(normalizedMsg, fieldHistory);
-      if (normalizedMsg == null) {
-        // One of the rules rejected the message entirely.
-        break;
-      }
+    MutableFudgeMsg normalizedMsg;
+    int i = 0;
+    if (_pipeline.length > 0 && _pipeline[0] instanceof FusedFieldRule) {
+      // Builds a new message so there's no need to copy the original first
+      normalizedMsg = ((FusedFieldRule) _pipeline[i++]).normalize(msg, fieldHistory);
+    } else {
+      normalizedMsg = OpenGammaFudgeContext.getInstance().newMessage(msg);
+    }
+    while (normalizedMsg != null && i < _pipeline.length) {
+      // A null message means one of the rules rejected the message entirely.
+      normalizedMsg = _pipeline[i++].apply(normalizedMsg, fieldHistory);
     }
     return normalizedMsg;
   }
@@ -26,6 +26,20 @@ public class UnitChange implements NormalizationRule {
     _multiplier = multiplier;        
   }
   
+  /**
+   * @return the name of the field to multiply
+   */
+  public String getField() {
+    return _field;
+  }
+  
+  /**
+   * @return the constant the field is multiplied by
+   */
+  public double getMultiplier() {
+    return _multiplier;
+  }
+  
   @Override
   public MutableFudgeMsg apply(
       MutableFudgeMsg msg,
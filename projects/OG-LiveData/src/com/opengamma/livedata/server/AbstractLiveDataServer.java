@@ -10,9 +10,15 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -38,9 +44,11 @@ import com.opengamma.livedata.normalization.StandardRules;
 import com.opengamma.livedata.resolver.DistributionSpecificationResolver;
 import com.opengamma.livedata.resolver.NaiveDistributionSpecificationResolver;
 import com.opengamma.livedata.server.distribution.EmptyMarketDataSenderFactory;
+import com.opengamma.livedata.server.distribution.MarketDataConflator;
 import com.opengamma.livedata.server.distribution.MarketDataDistributor;
 import com.opengamma.livedata.server.distribution.MarketDataSenderFactory;
 import com.opengamma.util.ArgumentChecker;
+import com.opengamma.util.NamedThreadPoolFactory;
 import com.opengamma.util.PerformanceCounter;
 import com.opengamma.util.PublicAPI;
 
@@ -55,26 +63,129 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
       .getLogger(AbstractLiveDataServer.class);
   
   private volatile MarketDataSenderFactory _marketDataSenderFactory = new EmptyMarketDataSenderFactory();
+  private volatile MarketDataConflator _conflator = new MarketDataConflator();
+  private volatile MappedLastKnownValueStore _lastKnownValueStore;
+  /**
+   * Takes the snapshots that refresh last known values restored from the store.
+   */
+  private final ExecutorService _restoredSnapshotExecutor = Executors.newSingleThreadExecutor(new NamedThreadPoolFactory("RestoredSnapshot", true));
+  private volatile boolean _timestampUpdates; // = false;
   private final Collection<SubscriptionListener> _subscriptionListeners = new CopyOnWriteArrayList<SubscriptionListener>();
   
-  /** Access controlled via _subscriptionLock */
-  private final Set<Subscription> _currentlyActiveSubscriptions = new HashSet<Subscription>();
+  /**
+   * The number of locks the subscription tables are striped over. Must be a power of two.
+   */
+  private static final int SUBSCRIPTION_LOCK_STRIPES = 64;
   
-  /** Access controlled via _subscriptionLock */
-  private final Map<String, Subscription> _securityUniqueId2Subscription = new HashMap<String, Subscription>();
+  /**
+   * The outcome of a call to the underlying market data API which concurrent requests
+   * for the same security wait for rather than making the call again.
+   *
+   * @param <T> the type of the result
+   */
+  private static final class Pending<T> {
+    
+    private final CountDownLatch _done = new CountDownLatch(1);
+    private volatile T _value;
+    private volatile String _failure;
+    
+    private Pending(T value) {
+      _value = value;
+    }
+    
+    private T getValue() {
+      return _value;
+    }
+    
+    private boolean isDone() {
+      return _done.getCount() == 0;
+    }
+    
+    private void succeeded(T value) {
+      _value = value;
+      _done.countDown();
+    }
+    
+    private void failed(String failure) {
+      _failure = failure;
+      _done.countDown();
+    }
+    
+    /**
+     * @return null if the call succeeded, otherwise a description of the failure
+     */
+    private String await() {
+      try {
+        _done.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return "Interrupted while waiting for the market data API";
+      }
+      return _failure;
+    }
+    
+  }
   
-  /** Access controlled via _subscriptionLock */
-  private final Map<LiveDataSpecification, MarketDataDistributor> _fullyQualifiedSpec2Distributor = new HashMap<LiveDataSpecification, MarketDataDistributor>();
+  /**
+   * A client specification to respond to once a {@link Pending} call completes.
+   *
+   * @param <T> the type of the result
+   */
+  private static final class PendingResponse<T> {
+    
+    private final LiveDataSpecification _specFromClient;
+    private final DistributionSpecification _distributionSpec;
+    private final Pending<T> _pending;
+    
+    private PendingResponse(LiveDataSpecification specFromClient, DistributionSpecification distributionSpec, Pending<T> pending) {
+      _specFromClient = specFromClient;
+      _distributionSpec = distributionSpec;
+      _pending = pending;
+    }
+    
+  }
+  
+  /**
+   * Changes to the subscription tables for a security are made holding its stripe
+   * of these locks. Calls to the underlying market data API are made without them.
+   */
+  private final Lock[] _subscriptionLocks = createSubscriptionLocks();
+  
+  /** Modified holding the lock for the security */
+  private final Set<Subscription> _currentlyActiveSubscriptions = Collections.newSetFromMap(new ConcurrentHashMap<Subscription, Boolean>());
+  
+  /** Modified holding the lock for the security */
+  private final ConcurrentMap<String, Subscription> _securityUniqueId2Subscription = new ConcurrentHashMap<String, Subscription>();
+  
+  /** Modified holding the lock for the security */
+  private final ConcurrentMap<LiveDataSpecification, MarketDataDistributor> _fullyQualifiedSpec2Distributor = new ConcurrentHashMap<LiveDataSpecification, MarketDataDistributor>();
+  
+  /** Subscriptions being created in the underlying market data API. Modified holding the lock for the security */
+  private final ConcurrentMap<String, Pending<Subscription>> _pendingSubscriptions = new ConcurrentHashMap<String, Pending<Subscription>>();
+  
+  /** Snapshots being taken from the underlying market data API */
+  private final ConcurrentMap<String, Pending<FudgeMsg>> _pendingSnapshots = new ConcurrentHashMap<String, Pending<FudgeMsg>>();
 
   private final AtomicLong _numMarketDataUpdatesReceived = new AtomicLong(0);
   private final PerformanceCounter _performanceCounter = new PerformanceCounter(60);
 
-  private final Lock _subscriptionLock = new ReentrantLock();
-
   private DistributionSpecificationResolver _distributionSpecificationResolver = new NaiveDistributionSpecificationResolver();
   private LiveDataEntitlementChecker _entitlementChecker = new PermissiveLiveDataEntitlementChecker();
   
   private volatile ConnectionStatus _connectionStatus = ConnectionStatus.NOT_CONNECTED;
+  
+  private static Lock[] createSubscriptionLocks() {
+    Lock[] locks = new Lock[SUBSCRIPTION_LOCK_STRIPES];
+    for (int i = 0; i < locks.length; i++) {
+      locks[i] = new ReentrantLock();
+    }
+    return locks;
+  }
+  
+  private Lock getSubscriptionLock(String securityUniqueId) {
+    int hash = securityUniqueId.hashCode();
+    return _subscriptionLocks[(hash ^ (hash >>> 16)) & (SUBSCRIPTION_LOCK_STRIPES - 1)];
+  }
 
   /**
    * @return the distributionSpecificationResolver
@@ -99,6 +210,56 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
   public void setMarketDataSenderFactory(MarketDataSenderFactory marketDataSenderFactory) {
     _marketDataSenderFactory = marketDataSenderFactory;
   }
+  
+  public MarketDataConflator getConflator() {
+    return _conflator;
+  }
+  
+  /**
+   * Sets the conflator used by distributors created from now on.
+   * By default ticks are not conflated.
+   * 
+   * @param conflator Controls tick conflation, not null
+   */
+  public void setConflator(MarketDataConflator conflator) {
+    ArgumentChecker.notNull(conflator, "Conflator");
+    _conflator = conflator;
+  }
+
+  public MappedLastKnownValueStore getLastKnownValueStore() {
+    return _lastKnownValueStore;
+  }
+  
+  /**
+   * Sets the store used by distributors created from now on to keep
+   * their last known values across server restarts.
+   * <p>
+   * A new subscription whose distributors all have last known values
+   * in the store is started without waiting for a snapshot from the
+   * underlying market data API. The snapshot is taken in the background
+   * and distributed as an update, replacing the restored values, which
+   * may be stale. By default no store is used.
+   * 
+   * @param lastKnownValueStore The store, null for none
+   */
+  public void setLastKnownValueStore(MappedLastKnownValueStore lastKnownValueStore) {
+    _lastKnownValueStore = lastKnownValueStore;
+  }
+
+  public boolean isTimestampUpdates() {
+    return _timestampUpdates;
+  }
+  
+  /**
+   * Sets whether distributors created from now on stamp each update with
+   * the time its tick was received, so that clients can trace the latency
+   * from the tick to their use of it. By default updates are not timestamped.
+   * 
+   * @param timestampUpdates Whether to timestamp updates
+   */
+  public void setTimestampUpdates(boolean timestampUpdates) {
+    _timestampUpdates = timestampUpdates;
+  }
 
   public void addSubscriptionListener(SubscriptionListener subscriptionListener) {
     ArgumentChecker.notNull(subscriptionListener, "Subscription Listener");
@@ -272,6 +433,11 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
     }
     doDisconnect();
     setConnectionStatus(ConnectionStatus.NOT_CONNECTED);
+    getConflator().shutdown();
+    MappedLastKnownValueStore lastKnownValueStore = getLastKnownValueStore();
+    if (lastKnownValueStore != null) {
+      lastKnownValueStore.flush();
+    }
   }
   
   /**
@@ -334,6 +500,19 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
     return result;
   }
   
+  /**
+   * Subscribes to market data.
+   * <p>
+   * Requests for securities already being subscribed to by a concurrent call wait for that
+   * subscription to be created rather than creating another. The underlying market data API
+   * is called without holding any of the locks guarding the subscription tables.
+   * 
+   * @param liveDataSpecificationsFromClient What to subscribe to. Not null
+   * @param persistent See {@link MarketDataDistributor#isPersistent()}
+   * @return Responses to subscription requests. Some, or even all, of them might be failures.
+   * @throws RuntimeException If the subscriptions required by this call could not be created
+   * due to unexpected error.
+   */
   public Collection<LiveDataSubscriptionResponse> subscribe(
       Collection<LiveDataSpecification> liveDataSpecificationsFromClient, boolean persistent) {
     ArgumentChecker.notNull(liveDataSpecificationsFromClient, "Subscriptions to be created");
@@ -343,137 +522,263 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
     verifyConnectionOk();
     
     Collection<LiveDataSubscriptionResponse> responses = new ArrayList<LiveDataSubscriptionResponse>();
-    Map<String, Subscription> securityUniqueId2NewSubscription = new HashMap<String, Subscription>();
-    Map<String, LiveDataSpecification> securityUniqueId2SpecFromClient = new HashMap<String, LiveDataSpecification>();
-    
-    _subscriptionLock.lock();
-    try {
+    List<PendingResponse<Subscription>> pendingResponses = new ArrayList<PendingResponse<Subscription>>();
+    Map<String, Pending<Subscription>> securityUniqueId2NewSubscription = new HashMap<String, Pending<Subscription>>();
     
-      for (LiveDataSpecification specFromClient : liveDataSpecificationsFromClient) {
+    for (LiveDataSpecification specFromClient : liveDataSpecificationsFromClient) {
+      
+      // this is the only place where subscribe() can 'partially' fail
+      DistributionSpecification distributionSpec;
+      try {
+        distributionSpec = getDistributionSpecificationResolver().resolve(specFromClient);
+      } catch (RuntimeException e) {
+        s_logger.info("Unable to work out distribution spec for specification " + specFromClient, e);
+        responses.add(getErrorResponse(specFromClient, LiveDataSubscriptionResult.NOT_PRESENT, e.getMessage()));                    
+        continue;
+      }
+      
+      LiveDataSpecification fullyQualifiedSpec = distributionSpec.getFullyQualifiedLiveDataSpecification();
+      String securityUniqueId = fullyQualifiedSpec.getIdentifier(getUniqueIdDomain());
+      if (securityUniqueId == null) {
+        responses.add(getErrorResponse(specFromClient, LiveDataSubscriptionResult.INTERNAL_ERROR,
+            "Qualified spec " + fullyQualifiedSpec + " does not contain ID of domain " + getUniqueIdDomain()));
+        continue;
+      }
+      
+      Lock lock = getSubscriptionLock(securityUniqueId);
+      lock.lock();
+      try {
         
-        // this is the only place where subscribe() can 'partially' fail
-        DistributionSpecification distributionSpec;
-        try {
-          distributionSpec = getDistributionSpecificationResolver().resolve(specFromClient);
-        } catch (RuntimeException e) {
-          s_logger.info("Unable to work out distribution spec for specification " + specFromClient, e);
-          responses.add(getErrorResponse(specFromClient, LiveDataSubscriptionResult.NOT_PRESENT, e.getMessage()));                    
+        Pending<Subscription> pending = _pendingSubscriptions.get(securityUniqueId);
+        if (pending != null) {
+          s_logger.info("Subscription to {} already in progress", securityUniqueId);
+          
+          // The distributor is published with the rest of the subscription when it has been created
+          createDistributor(pending.getValue(), distributionSpec, persistent);
+          pendingResponses.add(new PendingResponse<Subscription>(specFromClient, distributionSpec, pending));
           continue;
         }
         
-        LiveDataSpecification fullyQualifiedSpec = distributionSpec.getFullyQualifiedLiveDataSpecification();
-      
-        Subscription subscription = getSubscription(fullyQualifiedSpec);
+        Subscription subscription = _securityUniqueId2Subscription.get(securityUniqueId);
         if (subscription != null) {
           s_logger.info("Already subscribed to {}", fullyQualifiedSpec);
           
-          subscription.createDistributor(distributionSpec, persistent);
-    
-          responses.add(getSubscriptionResponse(specFromClient, distributionSpec));                    
-    
-        } else {
-    
-          String securityUniqueId = fullyQualifiedSpec.getIdentifier(getUniqueIdDomain());
-          if (securityUniqueId == null) {
-            responses.add(getErrorResponse(specFromClient, LiveDataSubscriptionResult.INTERNAL_ERROR,
-                "Qualified spec " + fullyQualifiedSpec + " does not contain ID of domain " + getUniqueIdDomain()));
-            continue;
-          }
+          MarketDataDistributor distributor = createDistributor(subscription, distributionSpec, persistent);
+          _fullyQualifiedSpec2Distributor.put(fullyQualifiedSpec, distributor);
           
-          subscription = new Subscription(securityUniqueId, getMarketDataSenderFactory());
-          subscription.createDistributor(distributionSpec, persistent);
-          securityUniqueId2NewSubscription.put(subscription.getSecurityUniqueId(), subscription);
-          securityUniqueId2SpecFromClient.put(subscription.getSecurityUniqueId(), specFromClient);
+          responses.add(getSubscriptionResponse(specFromClient, distributionSpec));
+          continue;
         }
+        
+        subscription = new Subscription(securityUniqueId, getMarketDataSenderFactory());
+        createDistributor(subscription, distributionSpec, persistent);
+        pending = new Pending<Subscription>(subscription);
+        _pendingSubscriptions.put(securityUniqueId, pending);
+        securityUniqueId2NewSubscription.put(securityUniqueId, pending);
+        pendingResponses.add(new PendingResponse<Subscription>(specFromClient, distributionSpec, pending));
+        
+      } finally {
+        lock.unlock();
+      }
+    }
+    
+    if (!securityUniqueId2NewSubscription.isEmpty()) {
+      createSubscriptions(securityUniqueId2NewSubscription);
+    }
+    
+    for (PendingResponse<Subscription> pendingResponse : pendingResponses) {
+      String failure = pendingResponse._pending.await();
+      if (failure == null) {
+        responses.add(getSubscriptionResponse(pendingResponse._specFromClient, pendingResponse._distributionSpec));
+      } else {
+        responses.add(getErrorResponse(pendingResponse._specFromClient, LiveDataSubscriptionResult.INTERNAL_ERROR, failure));
       }
+    }
+
+    return responses;
+  }
+  
+  /**
+   * Creates subscriptions in the underlying market data API and publishes them.
+   * Any that cannot be created are removed and their pending requests failed.
+   * 
+   * @param securityUniqueId2NewSubscription The subscriptions to create, registered as pending
+   * @throws RuntimeException If the underlying market data API failed
+   */
+  private void createSubscriptions(Map<String, Pending<Subscription>> securityUniqueId2NewSubscription) {
+    String failure = "Subscribing to the underlying market data API failed";
+    try {
       
       // In some cases, the underlying market data API may not, when the subscription is started,
       // return a full image of all fields. If so, we need to get the full image explicitly.
+      // Subscriptions with restored last known values don't wait for the snapshot.
       Collection<String> newSubscriptionsForWhichSnapshotIsRequired = new ArrayList<String>();
-      for (Subscription subscription : securityUniqueId2NewSubscription.values()) {
-        if (snapshotOnSubscriptionStartRequired(subscription)) {
-          newSubscriptionsForWhichSnapshotIsRequired.add(subscription.getSecurityUniqueId());
+      List<Subscription> restoredSubscriptions = new ArrayList<Subscription>();
+      for (Pending<Subscription> pending : securityUniqueId2NewSubscription.values()) {
+        if (snapshotOnSubscriptionStartRequired(pending.getValue())) {
+          if (isLastKnownValueRestored(pending.getValue())) {
+            restoredSubscriptions.add(pending.getValue());
+          } else {
+            newSubscriptionsForWhichSnapshotIsRequired.add(pending.getValue().getSecurityUniqueId());
+          }
         }
       }
       
-      s_logger.info("Subscription snapshot required for {}", newSubscriptionsForWhichSnapshotIsRequired);
-      Map<String, FudgeMsg> snapshots = doSnapshot(newSubscriptionsForWhichSnapshotIsRequired);
-      for (Map.Entry<String, FudgeMsg> snapshot : snapshots.entrySet()) {
-        Subscription subscription = securityUniqueId2NewSubscription.get(snapshot.getKey());
-        subscription.initialSnapshotReceived(snapshot.getValue());
+      if (!newSubscriptionsForWhichSnapshotIsRequired.isEmpty()) {
+        s_logger.info("Subscription snapshot required for {}", newSubscriptionsForWhichSnapshotIsRequired);
+        Map<String, FudgeMsg> snapshots = doSnapshot(newSubscriptionsForWhichSnapshotIsRequired);
+        for (Map.Entry<String, FudgeMsg> snapshot : snapshots.entrySet()) {
+          Pending<Subscription> pending = securityUniqueId2NewSubscription.get(snapshot.getKey());
+          if (pending != null) {
+            pending.getValue().initialSnapshotReceived(snapshot.getValue());
+          }
+        }
       }
     
       // Setup the subscriptions in the underlying data provider.
-      for (Subscription subscription : securityUniqueId2NewSubscription.values()) {
+      for (Pending<Subscription> pending : securityUniqueId2NewSubscription.values()) {
         // this is necessary so we don't lose any updates immediately after doSubscribe(). See AbstractLiveDataServer#liveDataReceived()
         // and how it calls AbstractLiveDataServer#getSubscription()
-        _securityUniqueId2Subscription.put(subscription.getSecurityUniqueId(), subscription); 
+        _securityUniqueId2Subscription.put(pending.getValue().getSecurityUniqueId(), pending.getValue()); 
       }
 
       s_logger.info("Creating underlying market data API subscription to {}", securityUniqueId2NewSubscription.keySet());
       Map<String, Object> subscriptionHandles = doSubscribe(securityUniqueId2NewSubscription.keySet());
+      failure = "doSubscribe() did not fulfill its contract to populate map for each unique ID";
     
       // Set up data structures
       for (Map.Entry<String, Object> subscriptionHandle : subscriptionHandles.entrySet()) {
         String securityUniqueId = subscriptionHandle.getKey();
-        Object handle = subscriptionHandle.getValue();
-        LiveDataSpecification specFromClient = securityUniqueId2SpecFromClient.get(securityUniqueId);
-        
-        Subscription subscription = securityUniqueId2NewSubscription.get(securityUniqueId); 
-        subscription.setHandle(handle);
-          
-        for (SubscriptionListener listener : _subscriptionListeners) {
-          try {
-            listener.subscribed(subscription);
-          } catch (RuntimeException e) {
-            s_logger.error("Listener " + listener + " subscribe failed", e);
-          }
-        }
-          
-        _currentlyActiveSubscriptions.add(subscription);
-
-        if (subscription.getDistributionSpecifications().size() != 1) {
-          responses.add(getErrorResponse(specFromClient, LiveDataSubscriptionResult.INTERNAL_ERROR,
-              "The subscription should only have 1 distribution specification at the moment: " + subscription));
+        Pending<Subscription> pending = securityUniqueId2NewSubscription.get(securityUniqueId);
+        if (pending == null) {
           continue;
         }
+        Subscription subscription = pending.getValue();
+        subscription.setHandle(subscriptionHandle.getValue());
         
-        for (MarketDataDistributor distributor : subscription.getDistributors()) {
-          _fullyQualifiedSpec2Distributor.put(distributor.getFullyQualifiedLiveDataSpecification(),
-              distributor);
-          responses.add(getSubscriptionResponse(specFromClient, distributor.getDistributionSpec()));
+        Lock lock = getSubscriptionLock(securityUniqueId);
+        lock.lock();
+        try {
+          for (SubscriptionListener listener : _subscriptionListeners) {
+            try {
+              listener.subscribed(subscription);
+            } catch (RuntimeException e) {
+              s_logger.error("Listener " + listener + " subscribe failed", e);
+            }
+          }
+          
+          _currentlyActiveSubscriptions.add(subscription);
+          for (MarketDataDistributor distributor : subscription.getDistributors()) {
+            _fullyQualifiedSpec2Distributor.put(distributor.getFullyQualifiedLiveDataSpecification(), distributor);
+          }
+          _pendingSubscriptions.remove(securityUniqueId, pending);
+          pending.succeeded(subscription);
+        } finally {
+          lock.unlock();
         }
         
         s_logger.info("Created {}", subscription);
       }
+      
+      if (!restoredSubscriptions.isEmpty()) {
+        refreshRestoredSubscriptions(restoredSubscriptions);
+      }
 
     } catch (RuntimeException e) {
-      
       s_logger.info("Unexpected exception thrown when subscribing. Cleaning up.");
+      failure = "Subscribing to the underlying market data API failed: " + e.getMessage();
+      throw e;
       
-      for (Subscription subscription : securityUniqueId2NewSubscription.values()) {
-        _securityUniqueId2Subscription.remove(subscription.getSecurityUniqueId());
-        
-        for (MarketDataDistributor distributor : subscription.getDistributors()) {
-          _fullyQualifiedSpec2Distributor.remove(distributor.getFullyQualifiedLiveDataSpecification());
+    } finally {
+      for (Pending<Subscription> pending : securityUniqueId2NewSubscription.values()) {
+        if (!pending.isDone()) {
+          abandonSubscription(pending, failure);
         }
       }
-      _currentlyActiveSubscriptions.removeAll(securityUniqueId2NewSubscription.values());
-      
-      throw e;
-        
+    }
+  }
+  
+  /**
+   * Removes a subscription that could not be created.
+   * 
+   * @param pending The pending subscription
+   * @param failure Why the subscription could not be created
+   */
+  private void abandonSubscription(Pending<Subscription> pending, String failure) {
+    Subscription subscription = pending.getValue();
+    Lock lock = getSubscriptionLock(subscription.getSecurityUniqueId());
+    lock.lock();
+    try {
+      _securityUniqueId2Subscription.remove(subscription.getSecurityUniqueId(), subscription);
+      _pendingSubscriptions.remove(subscription.getSecurityUniqueId(), pending);
+      pending.failed(failure);
     } finally {
-      _subscriptionLock.unlock();
+      lock.unlock();
     }
-
-    return responses;
+  }
+  
+  private MarketDataDistributor createDistributor(Subscription subscription, DistributionSpecification distributionSpec, boolean persistent) {
+    MarketDataDistributor distributor = subscription.createDistributor(distributionSpec, persistent);
+    distributor.setConflator(getConflator());
+    distributor.setLastKnownValueStore(getLastKnownValueStore());
+    distributor.setTimestampUpdates(isTimestampUpdates());
+    return distributor;
+  }
+  
+  /**
+   * Takes snapshots of subscriptions started with last known values restored
+   * from the store, in the background, and distributes them as updates so the
+   * restored values don't stay in use. A snapshot is not distributed if the
+   * subscription has been stopped in the meantime.
+   * 
+   * @param subscriptions The active subscriptions
+   */
+  private void refreshRestoredSubscriptions(final List<Subscription> subscriptions) {
+    _restoredSnapshotExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        final Map<String, Subscription> securityUniqueId2Subscription = new HashMap<String, Subscription>();
+        for (Subscription subscription : subscriptions) {
+          securityUniqueId2Subscription.put(subscription.getSecurityUniqueId(), subscription);
+        }
+        s_logger.info("Refreshing restored last known values of {}", securityUniqueId2Subscription.keySet());
+        final Map<String, FudgeMsg> snapshots;
+        try {
+          snapshots = doSnapshot(securityUniqueId2Subscription.keySet());
+        } catch (RuntimeException e) {
+          s_logger.error("Could not refresh restored last known values of " + securityUniqueId2Subscription.keySet(), e);
+          return;
+        }
+        for (Map.Entry<String, FudgeMsg> snapshot : snapshots.entrySet()) {
+          Subscription subscription = securityUniqueId2Subscription.get(snapshot.getKey());
+          if (subscription != null && getSubscription(snapshot.getKey()) == subscription) {
+            subscription.liveDataReceived(snapshot.getValue());
+          }
+        }
+      }
+    });
+  }
+  
+  /**
+   * @param subscription A new subscription
+   * @return true if all the distributors of the subscription have last known
+   * values restored from the last known value store 
+   */
+  private static boolean isLastKnownValueRestored(Subscription subscription) {
+    for (MarketDataDistributor distributor : subscription.getDistributors()) {
+      if (distributor.getSnapshot() == null) {
+        return false;
+      }
+    }
+    return true;
   }
   
   /**
    * Returns a snapshot of the requested market data.
    * If the server already subscribes to the market data,
    * the last known value from that subscription is used.
-   * Otherwise a snapshot is requested from the underlying market data API.
+   * Otherwise a snapshot is requested from the underlying market data API,
+   * unless a concurrent call is already requesting one for the same security.
    * 
    * @param liveDataSpecificationsFromClient What snapshot(s) are being requested. Not empty
    * @return Responses to snapshot requests. Some, or even all, of them might be failures.
@@ -487,9 +792,8 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
     verifyConnectionOk();
     
     Collection<LiveDataSubscriptionResponse> responses = new ArrayList<LiveDataSubscriptionResponse>();
-    
-    Collection<String> snapshotsToActuallyDo = new ArrayList<String>();
-    Map<String, LiveDataSpecification> securityUniqueId2LiveDataSpecificationFromClient = new HashMap<String, LiveDataSpecification>(); 
+    List<PendingResponse<FudgeMsg>> pendingResponses = new ArrayList<PendingResponse<FudgeMsg>>();
+    Map<String, Pending<FudgeMsg>> snapshotsToActuallyDo = new HashMap<String, Pending<FudgeMsg>>();
     
     for (LiveDataSpecification liveDataSpecificationFromClient : liveDataSpecificationsFromClient) {
       DistributionSpecification distributionSpec = getDistributionSpecificationResolver()
@@ -514,20 +818,53 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
         continue;
       }
       
-      snapshotsToActuallyDo.add(securityUniqueId);
-      securityUniqueId2LiveDataSpecificationFromClient.put(securityUniqueId, liveDataSpecificationFromClient);      
+      Pending<FudgeMsg> pending = snapshotsToActuallyDo.get(securityUniqueId);
+      if (pending == null) {
+        pending = new Pending<FudgeMsg>(null);
+        Pending<FudgeMsg> existing = _pendingSnapshots.putIfAbsent(securityUniqueId, pending);
+        if (existing != null) {
+          s_logger.info("Snapshot of {} already in progress", securityUniqueId);
+          pending = existing;
+        } else {
+          snapshotsToActuallyDo.put(securityUniqueId, pending);
+        }
+      }
+      pendingResponses.add(new PendingResponse<FudgeMsg>(liveDataSpecificationFromClient, distributionSpec, pending));
     }
 
-    s_logger.info("Need to actually snapshot {}", snapshotsToActuallyDo);
-    Map<String, FudgeMsg> snapshots = doSnapshot(snapshotsToActuallyDo);
-    for (Map.Entry<String, FudgeMsg> snapshotEntry : snapshots.entrySet()) {
-      String securityUniqueId = snapshotEntry.getKey();
-      FudgeMsg msg = snapshotEntry.getValue();
-      
-      LiveDataSpecification liveDataSpecFromClient = securityUniqueId2LiveDataSpecificationFromClient.get(securityUniqueId);
+    if (!snapshotsToActuallyDo.isEmpty()) {
+      s_logger.info("Need to actually snapshot {}", snapshotsToActuallyDo.keySet());
+      try {
+        Map<String, FudgeMsg> snapshots = doSnapshot(snapshotsToActuallyDo.keySet());
+        for (Map.Entry<String, Pending<FudgeMsg>> pending : snapshotsToActuallyDo.entrySet()) {
+          FudgeMsg msg = snapshots.get(pending.getKey());
+          if (msg != null) {
+            pending.getValue().succeeded(msg);
+          } else {
+            pending.getValue().failed("doSnapshot() did not fulfill its contract to populate map for each unique ID");
+          }
+        }
+      } finally {
+        for (Map.Entry<String, Pending<FudgeMsg>> pending : snapshotsToActuallyDo.entrySet()) {
+          _pendingSnapshots.remove(pending.getKey(), pending.getValue());
+          if (!pending.getValue().isDone()) {
+            pending.getValue().failed("Snapshot of " + pending.getKey() + " from the underlying market data API failed");
+          }
+        }
+      }
+    }
+    
+    for (PendingResponse<FudgeMsg> pendingResponse : pendingResponses) {
+      LiveDataSpecification liveDataSpecFromClient = pendingResponse._specFromClient;
+      String failure = pendingResponse._pending.await();
+      if (failure != null) {
+        responses.add(getErrorResponse(liveDataSpecFromClient, LiveDataSubscriptionResult.INTERNAL_ERROR, failure));
+        continue;
+      }
+      FudgeMsg msg = pendingResponse._pending.getValue();
       
-      DistributionSpecification distributionSpec = getDistributionSpecificationResolver()
-        .resolve(liveDataSpecFromClient);
+      DistributionSpecification distributionSpec = pendingResponse._distributionSpec;
+      String securityUniqueId = distributionSpec.getFullyQualifiedLiveDataSpecification().getIdentifier(getUniqueIdDomain());
       FudgeMsg normalizedMsg = distributionSpec.getNormalizedMessage(msg);
       if (normalizedMsg == null) {
         responses.add(getErrorResponse(
@@ -714,52 +1051,66 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
     ArgumentChecker.notNull(subscription, "Subscription");
     verifyConnectionOk();
 
-    boolean actuallyUnsubscribed = false;
-
-    _subscriptionLock.lock();
+    Lock lock = getSubscriptionLock(subscription.getSecurityUniqueId());
+    lock.lock();
     try {
-      if (isSubscribedTo(subscription)) {
-
-        s_logger.info("Unsubscribing from {}", subscription);
-
-        actuallyUnsubscribed = true;
-        
-        Object subscriptionHandle = subscription.getHandle();
-        if (subscriptionHandle != null) {
-          doUnsubscribe(Collections.singleton(subscriptionHandle)); // todo, optimize to use batch
-        }
-
-        _currentlyActiveSubscriptions.remove(subscription);
-        _securityUniqueId2Subscription.remove(subscription
-            .getSecurityUniqueId());
-        
-        for (MarketDataDistributor distributor : subscription.getDistributors()) {
-          _fullyQualifiedSpec2Distributor.remove(distributor.getFullyQualifiedLiveDataSpecification());
-        }
-        subscription.removeAllDistributors();
-
-        for (SubscriptionListener listener : _subscriptionListeners) {
-          try {
-            listener.unsubscribed(subscription);
-          } catch (RuntimeException e) {
-            s_logger.error("Listener unsubscribe failed", e);
-          }
-        }
-
-        s_logger.info("Unsubscribed from {}", subscription);
-
-      } else {
+      if (!removeSubscription(subscription)) {
         s_logger
             .warn(
                 "Received unsubscription request for non-active subscription: {}",
                 subscription);
+        return false;
       }
-
     } finally {
-      _subscriptionLock.unlock();
+      lock.unlock();
+    }
+
+    releaseSubscription(subscription);
+    return true;
+  }
+  
+  /**
+   * Removes a subscription from the subscription tables. The caller must hold
+   * the lock for the security.
+   * 
+   * @param subscription What to remove
+   * @return true if the subscription was active
+   */
+  private boolean removeSubscription(Subscription subscription) {
+    if (!_currentlyActiveSubscriptions.remove(subscription)) {
+      return false;
+    }
+    
+    s_logger.info("Unsubscribing from {}", subscription);
+    
+    _securityUniqueId2Subscription.remove(subscription.getSecurityUniqueId(), subscription);
+    for (MarketDataDistributor distributor : subscription.getDistributors()) {
+      _fullyQualifiedSpec2Distributor.remove(distributor.getFullyQualifiedLiveDataSpecification(), distributor);
+      distributor.discardStoredLastKnownValues();
     }
+    subscription.removeAllDistributors();
 
-    return actuallyUnsubscribed;
+    for (SubscriptionListener listener : _subscriptionListeners) {
+      try {
+        listener.unsubscribed(subscription);
+      } catch (RuntimeException e) {
+        s_logger.error("Listener unsubscribe failed", e);
+      }
+    }
+    return true;
+  }
+  
+  /**
+   * Unsubscribes from a removed subscription in the underlying market data API.
+   * 
+   * @param subscription The removed subscription
+   */
+  private void releaseSubscription(Subscription subscription) {
+    Object subscriptionHandle = subscription.getHandle();
+    if (subscriptionHandle != null) {
+      doUnsubscribe(Collections.singleton(subscriptionHandle)); // todo, optimize to use batch
+    }
+    s_logger.info("Unsubscribed from {}", subscription);
   }
   
   /**
@@ -777,7 +1128,11 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
   public boolean stopDistributor(MarketDataDistributor distributor) {
     ArgumentChecker.notNull(distributor, "Distributor");
     
-    _subscriptionLock.lock();
+    Subscription subscription = distributor.getSubscription();
+    boolean unsubscribed = false;
+    
+    Lock lock = getSubscriptionLock(subscription.getSecurityUniqueId());
+    lock.lock();
     try {
       MarketDataDistributor realDistributor = getMarketDataDistributor(distributor.getDistributionSpec());
       if (realDistributor != distributor) {
@@ -788,40 +1143,35 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
         return false;
       }
       
-      distributor.getSubscription().removeDistributor(distributor);
-      _fullyQualifiedSpec2Distributor.remove(distributor.getFullyQualifiedLiveDataSpecification());
+      subscription.removeDistributor(distributor);
+      _fullyQualifiedSpec2Distributor.remove(distributor.getFullyQualifiedLiveDataSpecification(), distributor);
+      distributor.discardStoredLastKnownValues();
       
-      if (distributor.getSubscription().getDistributors().isEmpty()) {
-        unsubscribe(distributor.getSubscription());                
+      if (subscription.getDistributors().isEmpty()) {
+        unsubscribed = removeSubscription(subscription);
       }
       
     } finally {
-      _subscriptionLock.unlock();
+      lock.unlock();
+    }
+    
+    if (unsubscribed) {
+      releaseSubscription(subscription);
     }
 
     return true;
   }
 
   public boolean isSubscribedTo(String securityUniqueId) {
-    _subscriptionLock.lock();
-    try {
-      return _securityUniqueId2Subscription.containsKey(securityUniqueId);
-    } finally {
-      _subscriptionLock.unlock();
-    }
+    return _securityUniqueId2Subscription.containsKey(securityUniqueId);
   }
   
   public boolean isSubscribedTo(LiveDataSpecification fullyQualifiedSpec) {
-    _subscriptionLock.lock();
-    try {
-      return _fullyQualifiedSpec2Distributor.containsKey(fullyQualifiedSpec);
-    } finally {
-      _subscriptionLock.unlock();
-    }
+    return _fullyQualifiedSpec2Distributor.containsKey(fullyQualifiedSpec);
   }
 
   public boolean isSubscribedTo(Subscription subscription) {
-    return getSubscriptions().contains(subscription);
+    return _currentlyActiveSubscriptions.contains(subscription);
   }
 
   public void liveDataReceived(String securityUniqueId,
@@ -869,14 +1219,23 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
   public double getNumLiveDataUpdatesSentPerSecondOverLastMinute() {
     return _performanceCounter.getHitsPerSecond();
   }
+  
+  /**
+   * @return the number of normalized ticks received by distributors using the current conflator
+   */
+  public long getNumTicksReceived() {
+    return getConflator().getNumTicksReceived();
+  }
+  
+  /**
+   * @return the number of updates sent by distributors using the current conflator
+   */
+  public long getNumUpdatesSent() {
+    return getConflator().getNumUpdatesSent();
+  }
 
   public Set<Subscription> getSubscriptions() {
-    _subscriptionLock.lock();
-    try {
-      return new HashSet<Subscription>(_currentlyActiveSubscriptions);
-    } finally {
-      _subscriptionLock.unlock();
-    }
+    return new HashSet<Subscription>(_currentlyActiveSubscriptions);
   }
 
   public Subscription getSubscription(LiveDataSpecification fullyQualifiedSpec) {
@@ -888,12 +1247,7 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
   }
 
   public Subscription getSubscription(String securityUniqueId) {
-    _subscriptionLock.lock();
-    try {
-      return _securityUniqueId2Subscription.get(securityUniqueId);
-    } finally {
-      _subscriptionLock.unlock();
-    }
+    return _securityUniqueId2Subscription.get(securityUniqueId);
   }
   
   public MarketDataDistributor getMarketDataDistributor(DistributionSpecification distributionSpec) {
@@ -905,12 +1259,7 @@ public abstract class AbstractLiveDataServer implements Lifecycle {
   }
   
   public MarketDataDistributor getMarketDataDistributor(LiveDataSpecification fullyQualifiedSpec) {
-    _subscriptionLock.lock();
-    try {
-      return _fullyQualifiedSpec2Distributor.get(fullyQualifiedSpec);
-    } finally {
-      _subscriptionLock.unlock();
-    }
+    return _fullyQualifiedSpec2Distributor.get(fullyQualifiedSpec);
   }
   
   /**
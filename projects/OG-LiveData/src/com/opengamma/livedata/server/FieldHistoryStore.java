@@ -5,6 +5,12 @@
  */
 package com.opengamma.livedata.server;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.fudgemsg.FudgeContext;
 import org.fudgemsg.FudgeField;
 import org.fudgemsg.FudgeMsg;
@@ -13,14 +19,55 @@ import org.fudgemsg.MutableFudgeMsg;
 /**
  * A store of historical message field values.
  * <p>
- * At the moment, the field history only stores the last value.
- * This class could be extended in future to store the last N 
- * values, values at a certain interval for the last N minutes, etc. 
+ * The store always holds the last value of each field. It can also
+ * hold the last N values of each named field, once a history depth
+ * has been set.
  */
 public class FieldHistoryStore {
   
+  /**
+   * The last values of a field, held in a ring buffer.
+   */
+  private static final class FieldTicks {
+
+    private final Object[] _values;
+    private int _next;
+    private int _count;
+
+    private FieldTicks(int depth) {
+      _values = new Object[depth];
+    }
+
+    private FieldTicks(FieldTicks original, int depth) {
+      this(depth);
+      List<Object> values = original.getValues();
+      for (int i = Math.min(values.size(), depth) - 1; i >= 0; i--) {
+        add(values.get(i));
+      }
+    }
+
+    private void add(Object value) {
+      _values[_next] = value;
+      _next = (_next + 1) % _values.length;
+      if (_count < _values.length) {
+        _count++;
+      }
+    }
+
+    private List<Object> getValues() {
+      List<Object> values = new ArrayList<Object>(_count);
+      for (int i = 1; i <= _count; i++) {
+        values.add(_values[(_next - i + _values.length) % _values.length]);
+      }
+      return values;
+    }
+
+  }
+
   private final FudgeContext _context = FudgeContext.GLOBAL_DEFAULT;
   private final MutableFudgeMsg _lastKnownValues;
+  private int _historyDepth; // = 0
+  private Map<String, FieldTicks> _fieldTicks; // = null
   
   public FieldHistoryStore() {
     _lastKnownValues = _context.newMessage();
@@ -31,14 +78,70 @@ public class FieldHistoryStore {
   }
   
   public FieldHistoryStore(FieldHistoryStore original) {
-    _lastKnownValues = _context.newMessage(original._lastKnownValues);   
+    synchronized (original) {
+      _lastKnownValues = _context.newMessage(original._lastKnownValues);
+      if (original._fieldTicks != null) {
+        _historyDepth = original._historyDepth;
+        _fieldTicks = new HashMap<String, FieldTicks>();
+        for (Map.Entry<String, FieldTicks> ticks : original._fieldTicks.entrySet()) {
+          _fieldTicks.put(ticks.getKey(), new FieldTicks(ticks.getValue(), _historyDepth));
+        }
+      }
+    }
   }
   
   public synchronized void liveDataReceived(FudgeMsg msg) {
     for (FudgeField field : msg.getAllFields()) {
       _lastKnownValues.remove(field.getName());
       _lastKnownValues.add(field);
+      if (_fieldTicks != null && field.getName() != null) {
+        FieldTicks ticks = _fieldTicks.get(field.getName());
+        if (ticks == null) {
+          ticks = new FieldTicks(_historyDepth);
+          _fieldTicks.put(field.getName(), ticks);
+        }
+        ticks.add(field.getValue());
+      }
+    }
+  }
+
+  /**
+   * Makes sure the store holds at least the last {@code depth} values of
+   * each named field received from now on.
+   *
+   * @param depth the number of values to hold for each field
+   */
+  public synchronized void ensureHistoryDepth(int depth) {
+    if (depth <= _historyDepth) {
+      return;
+    }
+    Map<String, FieldTicks> fieldTicks = new HashMap<String, FieldTicks>();
+    if (_fieldTicks != null) {
+      for (Map.Entry<String, FieldTicks> ticks : _fieldTicks.entrySet()) {
+        fieldTicks.put(ticks.getKey(), new FieldTicks(ticks.getValue(), depth));
+      }
+    }
+    _historyDepth = depth;
+    _fieldTicks = fieldTicks;
+  }
+
+  public synchronized int getHistoryDepth() {
+    return _historyDepth;
+  }
+
+  /**
+   * Gets the last values of a field, up to the history depth.
+   *
+   * @param fieldName the field name, not null
+   * @return the values, most recent first. Empty if there are none
+   * or no history depth has been set.
+   */
+  public synchronized List<Object> getHistory(String fieldName) {
+    FieldTicks ticks = (_fieldTicks != null) ? _fieldTicks.get(fieldName) : null;
+    if (ticks == null) {
+      return Collections.emptyList();
     }
+    return ticks.getValues();
   }
   
   public void clear() {
@@ -88,6 +88,27 @@ public class LiveDataServerMBean {
     }
   }
   
+  @ManagedAttribute(description = "The number of normalized ticks received by the distributors. Compare with"
+      + " NumUpdatesSent to see how many ticks have been conflated.")
+  public long getNumTicksReceived() {
+    try {
+      return _server.getNumTicksReceived();
+    } catch (RuntimeException e) {
+      s_logger.error("getNumTicksReceived() failed", e);
+      throw new RuntimeException(e.getMessage());
+    }
+  }
+  
+  @ManagedAttribute(description = "The number of updates sent by the distributors.")
+  public long getNumUpdatesSent() {
+    try {
+      return _server.getNumUpdatesSent();
+    } catch (RuntimeException e) {
+      s_logger.error("getNumUpdatesSent() failed", e);
+      throw new RuntimeException(e.getMessage());
+    }
+  }
+  
   @ManagedOperation(description = "Subscribes to market data. The subscription will be non-persistent."
       + " If the server already subscribes to the given market data, this method is a "
       + " no-op. Returns the name of the JMS topic market data will be published on.")
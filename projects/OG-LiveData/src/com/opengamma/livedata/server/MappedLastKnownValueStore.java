@@ -0,0 +1,425 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsg;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opengamma.OpenGammaRuntimeException;
+import com.opengamma.util.ArgumentChecker;
+import com.opengamma.util.NamedThreadPoolFactory;
+import com.opengamma.util.fudgemsg.OpenGammaFudgeContext;
+
+/**
+ * A store of last known values, held in a memory-mapped file so that they
+ * survive a server restart.
+ * <p>
+ * One store is shared by all the distributors of a server. Each distributor's
+ * values are written, Fudge encoded, to a fixed size slot of the file, and the
+ * slots are read back when the store is opened. Values too large for a slot,
+ * or arriving when every slot is in use, are not stored.
+ * <p>
+ * Distributors don't write their values on every tick. They {@link #update mark}
+ * them as changed, which is cheap and never blocks, and a background thread
+ * periodically encodes and writes the values that have changed, in batches.
+ * Values that change between writes are only written once. A crash loses at
+ * most the changes made since the last write.
+ * <p>
+ * A slot is marked as empty while it is being written, so a slot left half
+ * written by a crash is ignored when the store is next opened.
+ * <p>
+ * This class is internally synchronized.
+ */
+public class MappedLastKnownValueStore {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(MappedLastKnownValueStore.class);
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  /**
+   * The default number of slots.
+   */
+  public static final int DEFAULT_SLOT_COUNT = 65536;
+  /**
+   * The default slot size in bytes.
+   */
+  public static final int DEFAULT_SLOT_SIZE = 1024;
+  /**
+   * The default interval between writes of changed values, in milliseconds.
+   */
+  public static final long DEFAULT_WRITE_INTERVAL = 100;
+
+  private static final int WRITE_BATCH_SIZE = 256;
+
+  private static final int MAGIC = 0x4F474C56;
+  private static final int FILE_HEADER_SIZE = 12;
+  private static final int SLOT_HEADER_SIZE = 8;
+  private static final int EMPTY = -1;
+
+  private final File _file;
+  private final int _slotCount;
+  private final int _slotSize;
+  private final FudgeContext _fudgeContext;
+  private final MappedByteBuffer _buffer;
+  private final Map<String, Integer> _key2Slot = new HashMap<String, Integer>();
+  private final LinkedList<Integer> _freeSlots = new LinkedList<Integer>();
+  /**
+   * The values to write, by key. Each is written from the distributor's history
+   * as it is when written, not as it was when it changed.
+   */
+  private final ConcurrentMap<String, FieldHistoryStore> _changed = new ConcurrentHashMap<String, FieldHistoryStore>();
+  /**
+   * The values that have been marked as changed, by key. A value is only
+   * written if it is still registered, so a write can't restore a removed key.
+   */
+  private final ConcurrentMap<String, FieldHistoryStore> _registered = new ConcurrentHashMap<String, FieldHistoryStore>();
+  private volatile ScheduledExecutorService _writer;
+
+  /**
+   * Opens the store with the default number and size of slots, creating the file if it doesn't exist.
+   *
+   * @param file the file, not null
+   */
+  public MappedLastKnownValueStore(File file) {
+    this(file, DEFAULT_SLOT_COUNT, DEFAULT_SLOT_SIZE);
+  }
+
+  /**
+   * Opens the store, creating the file if it doesn't exist.
+   *
+   * @param file the file, not null
+   * @param slotCount the maximum number of distributors with stored values
+   * @param slotSize the bytes available for each distributor's key and values
+   * @throws OpenGammaRuntimeException if the file can't be mapped, or was created with a different layout
+   */
+  public MappedLastKnownValueStore(File file, int slotCount, int slotSize) {
+    this(file, slotCount, slotSize, OpenGammaFudgeContext.getInstance());
+  }
+
+  /**
+   * Opens the store, creating the file if it doesn't exist, and starts writing
+   * changed values at the default interval.
+   *
+   * @param file the file, not null
+   * @param slotCount the maximum number of distributors with stored values
+   * @param slotSize the bytes available for each distributor's key and values
+   * @param fudgeContext the context used to encode values, not null
+   * @throws OpenGammaRuntimeException if the file can't be mapped, or was created with a different layout
+   */
+  public MappedLastKnownValueStore(File file, int slotCount, int slotSize, FudgeContext fudgeContext) {
+    this(file, slotCount, slotSize, fudgeContext, DEFAULT_WRITE_INTERVAL);
+  }
+
+  /**
+   * Opens the store, creating the file if it doesn't exist.
+   *
+   * @param file the file, not null
+   * @param slotCount the maximum number of distributors with stored values
+   * @param slotSize the bytes available for each distributor's key and values
+   * @param fudgeContext the context used to encode values, not null
+   * @param writeInterval the interval between writes of changed values, in milliseconds,
+   * or zero to write them only when {@link #flush()} is called
+   * @throws OpenGammaRuntimeException if the file can't be mapped, or was created with a different layout
+   */
+  public MappedLastKnownValueStore(File file, int slotCount, int slotSize, FudgeContext fudgeContext, long writeInterval) {
+    ArgumentChecker.notNull(file, "File");
+    ArgumentChecker.isTrue(slotCount > 0, "Slot count must be positive");
+    ArgumentChecker.isTrue(slotSize > SLOT_HEADER_SIZE, "Slot size must be larger than " + SLOT_HEADER_SIZE + " bytes");
+    ArgumentChecker.notNull(fudgeContext, "Fudge context");
+    ArgumentChecker.isTrue(writeInterval >= 0, "Write interval must not be negative");
+    ArgumentChecker.isTrue(FILE_HEADER_SIZE + (long) slotCount * slotSize <= Integer.MAX_VALUE, "Store must be smaller than 2Gb");
+    _file = file;
+    _slotCount = slotCount;
+    _slotSize = slotSize;
+    _fudgeContext = fudgeContext;
+
+    boolean existing = file.length() > 0;
+    int size = FILE_HEADER_SIZE + slotCount * slotSize;
+    try {
+      RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      try {
+        // The mapping remains valid after the file is closed
+        _buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+      } finally {
+        raf.close();
+      }
+    } catch (IOException e) {
+      throw new OpenGammaRuntimeException("Unable to map " + size + " bytes of " + file, e);
+    }
+
+    if (existing) {
+      if (_buffer.getInt(0) != MAGIC || _buffer.getInt(4) != slotCount || _buffer.getInt(8) != slotSize) {
+        throw new OpenGammaRuntimeException(file + " is not a last known value store with " + slotCount + " slots of " + slotSize + " bytes");
+      }
+      load();
+    } else {
+      _buffer.putInt(0, MAGIC);
+      _buffer.putInt(4, slotCount);
+      _buffer.putInt(8, slotSize);
+      for (int slot = 0; slot < slotCount; slot++) {
+        _buffer.putInt(getSlotOffset(slot), EMPTY);
+        _freeSlots.add(slot);
+      }
+    }
+
+    if (writeInterval > 0) {
+      _writer = Executors.newSingleThreadScheduledExecutor(new NamedThreadPoolFactory("LastKnownValueWriter", true));
+      _writer.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            writeChanged();
+          } catch (RuntimeException e) {
+            s_logger.error("Writing last known values to " + _file + " failed", e);
+          }
+        }
+      }, writeInterval, writeInterval, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void load() {
+    for (int slot = 0; slot < _slotCount; slot++) {
+      int offset = getSlotOffset(slot);
+      int keyLength = _buffer.getInt(offset);
+      int valueLength = _buffer.getInt(offset + 4);
+      if (keyLength < 0 || valueLength < 0 || SLOT_HEADER_SIZE + (long) keyLength + valueLength > _slotSize) {
+        _buffer.putInt(offset, EMPTY);
+        _freeSlots.add(slot);
+        continue;
+      }
+      _key2Slot.put(readKey(offset, keyLength), slot);
+    }
+    s_logger.info("Loaded last known values of {} distributors from {}", _key2Slot.size(), _file);
+  }
+
+  public File getFile() {
+    return _file;
+  }
+
+  public int getSlotCount() {
+    return _slotCount;
+  }
+
+  public int getSlotSize() {
+    return _slotSize;
+  }
+
+  private int getSlotOffset(int slot) {
+    return FILE_HEADER_SIZE + slot * _slotSize;
+  }
+
+  private String readKey(int offset, int keyLength) {
+    return new String(read(offset + SLOT_HEADER_SIZE, keyLength), UTF8);
+  }
+
+  private byte[] read(int position, int length) {
+    ByteBuffer buffer = _buffer.duplicate();
+    buffer.position(position);
+    byte[] data = new byte[length];
+    buffer.get(data);
+    return data;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the stored values for a key.
+   *
+   * @param key the key, not null
+   * @return the values, null if none are stored
+   */
+  public synchronized FudgeMsg get(String key) {
+    Integer slot = _key2Slot.get(key);
+    if (slot == null) {
+      return null;
+    }
+    int offset = getSlotOffset(slot);
+    int keyLength = _buffer.getInt(offset);
+    int valueLength = _buffer.getInt(offset + 4);
+    byte[] value = read(offset + SLOT_HEADER_SIZE + keyLength, valueLength);
+    return _fudgeContext.deserialize(value).getMessage();
+  }
+
+  /**
+   * Marks the values for a key as changed, so they will be written by the
+   * background writer. This does not encode the values or wait for any lock
+   * held while values are written, so can be called for every tick.
+   *
+   * @param key the key, not null
+   * @param values the values, not null. Read, holding its lock, when written.
+   */
+  public void update(String key, FieldHistoryStore values) {
+    if (_registered.get(key) != values) {
+      _registered.put(key, values);
+    }
+    _changed.put(key, values);
+  }
+
+  /**
+   * Writes the values marked as changed since they were last written.
+   * The values are encoded before taking the store's lock, and written in batches.
+   */
+  /* package */ void writeChanged() {
+    final List<String> keys = new ArrayList<String>(WRITE_BATCH_SIZE);
+    final List<FieldHistoryStore> sources = new ArrayList<FieldHistoryStore>(WRITE_BATCH_SIZE);
+    final List<byte[]> encoded = new ArrayList<byte[]>(WRITE_BATCH_SIZE);
+    final Iterator<Map.Entry<String, FieldHistoryStore>> itr = _changed.entrySet().iterator();
+    while (itr.hasNext()) {
+      final Map.Entry<String, FieldHistoryStore> entry = itr.next();
+      final FieldHistoryStore source = entry.getValue();
+      // Removing first means a change made while encoding is written next time
+      if (!_changed.remove(entry.getKey(), source)) {
+        continue;
+      }
+      final FudgeMsg values;
+      synchronized (source) {
+        values = _fudgeContext.newMessage(source.getLastKnownValues());
+      }
+      keys.add(entry.getKey());
+      sources.add(source);
+      encoded.add(_fudgeContext.toByteArray(values));
+      if (keys.size() == WRITE_BATCH_SIZE) {
+        write(keys, sources, encoded);
+      }
+    }
+    if (!keys.isEmpty()) {
+      write(keys, sources, encoded);
+    }
+  }
+
+  private synchronized void write(final List<String> keys, final List<FieldHistoryStore> sources, final List<byte[]> encoded) {
+    for (int i = 0; i < keys.size(); i++) {
+      final String key = keys.get(i);
+      if (_registered.get(key) == sources.get(i)) {
+        write(key, encoded.get(i));
+      }
+    }
+    keys.clear();
+    sources.clear();
+    encoded.clear();
+  }
+
+  /**
+   * Stores the values for a key, replacing any already stored.
+   *
+   * @param key the key, not null
+   * @param values the values, not null
+   * @return true if the values were stored, false if there was no room for them
+   */
+  public boolean put(String key, FudgeMsg values) {
+    byte[] valueBytes = _fudgeContext.toByteArray(values);
+    synchronized (this) {
+      _registered.remove(key);
+      _changed.remove(key);
+      return write(key, valueBytes);
+    }
+  }
+
+  private boolean write(String key, byte[] valueBytes) {
+    byte[] keyBytes = key.getBytes(UTF8);
+    if (SLOT_HEADER_SIZE + keyBytes.length + valueBytes.length > _slotSize) {
+      s_logger.warn("Last known values of {} are {} bytes, too large to store", key, valueBytes.length);
+      freeSlot(key);
+      return false;
+    }
+    Integer slot = _key2Slot.get(key);
+    if (slot == null) {
+      slot = _freeSlots.poll();
+      if (slot == null) {
+        s_logger.warn("No room to store last known values of {}", key);
+        return false;
+      }
+      _key2Slot.put(key, slot);
+    }
+    int offset = getSlotOffset(slot);
+    _buffer.putInt(offset + 4, EMPTY);
+    _buffer.putInt(offset, keyBytes.length);
+    ByteBuffer buffer = _buffer.duplicate();
+    buffer.position(offset + SLOT_HEADER_SIZE);
+    buffer.put(keyBytes);
+    buffer.put(valueBytes);
+    _buffer.putInt(offset + 4, valueBytes.length);
+    return true;
+  }
+
+  /**
+   * Removes the values for a key.
+   *
+   * @param key the key, not null
+   */
+  public synchronized void remove(String key) {
+    _registered.remove(key);
+    _changed.remove(key);
+    freeSlot(key);
+  }
+
+  private void freeSlot(String key) {
+    Integer slot = _key2Slot.remove(key);
+    if (slot != null) {
+      _buffer.putInt(getSlotOffset(slot), EMPTY);
+      _freeSlots.add(slot);
+    }
+  }
+
+  /**
+   * @return the keys with stored values
+   */
+  public synchronized Set<String> getKeys() {
+    return new HashSet<String>(_key2Slot.keySet());
+  }
+
+  /**
+   * Writes any values marked as changed, and then writes any changes to the
+   * file. Changes are written by the operating system in any case, but may be
+   * lost if it stops without doing so.
+   */
+  public void flush() {
+    writeChanged();
+    synchronized (this) {
+      _buffer.force();
+    }
+  }
+
+  /**
+   * Stops the background writer and flushes any changes. Values marked as
+   * changed after this are only written by {@link #flush()}.
+   */
+  public void close() {
+    final ScheduledExecutorService writer = _writer;
+    if (writer != null) {
+      _writer = null;
+      writer.shutdown();
+      try {
+        writer.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    flush();
+  }
+
+}
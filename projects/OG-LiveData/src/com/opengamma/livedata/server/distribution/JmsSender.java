@@ -42,6 +42,10 @@ public class JmsSender implements MarketDataSender {
   
   private final FieldHistoryStore _cumulativeDelta = new FieldHistoryStore();
   private long _lastSequenceNumber;
+  /**
+   * When the earliest tick in the cumulative delta was received, 0 if not timestamped.
+   */
+  private long _timestamp;
   
   private volatile boolean _interrupted; // = false;
   private final Semaphore _lock = new Semaphore(1);
@@ -66,6 +70,9 @@ public class JmsSender implements MarketDataSender {
     try {
       _cumulativeDelta.liveDataReceived(data.getFields());
       _lastSequenceNumber = data.getSequenceNumber(); 
+      if (_timestamp == 0) {
+        _timestamp = data.getTimestamp();
+      }
       
       if (_interrupted) {
         s_logger.debug("{}: Interrupted - not sending message", this);
@@ -84,7 +91,8 @@ public class JmsSender implements MarketDataSender {
     LiveDataValueUpdateBean liveDataValueUpdateBean = new LiveDataValueUpdateBean(
         _lastSequenceNumber, 
         _distributor.getDistributionSpec().getFullyQualifiedLiveDataSpecification(), 
-        _cumulativeDelta.getLastKnownValues());
+        _cumulativeDelta.getLastKnownValues(),
+        _timestamp);
     s_logger.debug("{}: Sending Live Data update {}", this, liveDataValueUpdateBean);
     
     FudgeMsg fudgeMsg = liveDataValueUpdateBean.toFudgeMsg(_fudgeContext);
@@ -102,6 +110,7 @@ public class JmsSender implements MarketDataSender {
     });
     
     _cumulativeDelta.clear();
+    _timestamp = 0;
   }
   
   public boolean isInterrupted() {
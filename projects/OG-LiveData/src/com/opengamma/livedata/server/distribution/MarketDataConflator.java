@@ -0,0 +1,215 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.server.distribution;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opengamma.livedata.server.DistributionSpecification;
+import com.opengamma.util.ArgumentChecker;
+import com.opengamma.util.NamedThreadPoolFactory;
+
+/**
+ * Controls tick conflation for {@link MarketDataDistributor}s.
+ * <p>
+ * A distributor with a conflation interval merges the ticks it receives and only publishes the latest value of each
+ * field at the end of the interval. Distributors with updates pending are queued by interval and published together
+ * by a single task for each interval, rather than each one being scheduled separately.
+ * <p>
+ * The conflator also counts the ticks received and the updates published by all the distributors attached to it.
+ */
+public class MarketDataConflator {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(MarketDataConflator.class);
+
+  /**
+   * Distributors with updates pending for one conflation interval.
+   */
+  private final class Batch implements Runnable {
+
+    private final Queue<MarketDataDistributor> _pending = new ConcurrentLinkedQueue<MarketDataDistributor>();
+    private volatile boolean _stopped;
+
+    public boolean isStopped() {
+      return _stopped;
+    }
+
+    @Override
+    public void run() {
+      MarketDataDistributor distributor = isStopped() ? null : _pending.poll();
+      while (distributor != null) {
+        publish(distributor);
+        distributor = isStopped() ? null : _pending.poll();
+      }
+    }
+
+    /**
+     * Stops the scheduled task publishing and publishes the updates still pending.
+     */
+    private void stop() {
+      _stopped = true;
+      MarketDataDistributor distributor = _pending.poll();
+      while (distributor != null) {
+        publish(distributor);
+        distributor = _pending.poll();
+      }
+    }
+
+  }
+
+  private final ConcurrentMap<Long, Batch> _batches = new ConcurrentHashMap<Long, Batch>();
+  private final Map<String, Long> _conflationIntervals = new ConcurrentHashMap<String, Long>();
+  private final AtomicLong _numTicksReceived = new AtomicLong();
+  private final AtomicLong _numUpdatesSent = new AtomicLong();
+  private volatile long _defaultConflationInterval; // = 0;
+  private ScheduledExecutorService _executor;
+
+  public MarketDataConflator() {
+  }
+
+  /**
+   * @param defaultConflationInterval the conflation interval in milliseconds for distribution specifications with no
+   * specific interval, 0 to publish every tick as it arrives
+   */
+  public MarketDataConflator(final long defaultConflationInterval) {
+    setDefaultConflationInterval(defaultConflationInterval);
+  }
+
+  public long getDefaultConflationInterval() {
+    return _defaultConflationInterval;
+  }
+
+  /**
+   * @param defaultConflationInterval the conflation interval in milliseconds for distribution specifications with no
+   * specific interval, 0 to publish every tick as it arrives
+   */
+  public void setDefaultConflationInterval(final long defaultConflationInterval) {
+    ArgumentChecker.notNegative(defaultConflationInterval, "defaultConflationInterval");
+    _defaultConflationInterval = defaultConflationInterval;
+  }
+
+  /**
+   * Sets the conflation intervals for distribution specifications using particular normalization rules.
+   *
+   * @param conflationIntervals the intervals in milliseconds, keyed by normalization rule set ID
+   */
+  public void setConflationIntervals(final Map<String, Long> conflationIntervals) {
+    ArgumentChecker.notNull(conflationIntervals, "conflationIntervals");
+    _conflationIntervals.clear();
+    _conflationIntervals.putAll(conflationIntervals);
+  }
+
+  /**
+   * Gets the conflation interval for a distribution specification. Override this for finer control than the
+   * normalization rule set.
+   *
+   * @param distributionSpec the distribution specification, not null
+   * @return the interval in milliseconds, 0 to publish every tick as it arrives
+   */
+  public long getConflationInterval(final DistributionSpecification distributionSpec) {
+    final Long interval = _conflationIntervals.get(distributionSpec.getNormalizationRuleSet().getId());
+    return (interval != null) ? interval : getDefaultConflationInterval();
+  }
+
+  private synchronized ScheduledExecutorService getExecutor() {
+    if (_executor == null) {
+      _executor = Executors.newSingleThreadScheduledExecutor(new NamedThreadPoolFactory("MarketDataConflator", true));
+    }
+    return _executor;
+  }
+
+  private static void publish(final MarketDataDistributor distributor) {
+    try {
+      distributor.publishConflated();
+    } catch (RuntimeException e) {
+      s_logger.error("Publishing conflated update for " + distributor + " failed", e);
+    }
+  }
+
+  /**
+   * Queues a distributor to publish its conflated update at the end of the current interval.
+   *
+   * @param distributor the distributor
+   * @param conflationInterval the interval in milliseconds
+   */
+  /*package*/ void schedule(final MarketDataDistributor distributor, final long conflationInterval) {
+    Batch batch = _batches.get(conflationInterval);
+    if (batch == null) {
+      synchronized (this) {
+        batch = _batches.get(conflationInterval);
+        if (batch == null) {
+          batch = new Batch();
+          getExecutor().scheduleAtFixedRate(batch, conflationInterval, conflationInterval, TimeUnit.MILLISECONDS);
+          _batches.put(conflationInterval, batch);
+        }
+      }
+    }
+    batch._pending.add(distributor);
+    if (batch.isStopped() && batch._pending.remove(distributor)) {
+      // the conflator was shut down after the batch was found, so nothing will publish the update
+      publish(distributor);
+    }
+  }
+
+  /*package*/ void tickReceived() {
+    _numTicksReceived.incrementAndGet();
+  }
+
+  /*package*/ void updateSent() {
+    _numUpdatesSent.incrementAndGet();
+  }
+
+  /**
+   * @return the number of normalized ticks received by the distributors
+   */
+  public long getNumTicksReceived() {
+    return _numTicksReceived.get();
+  }
+
+  /**
+   * @return the number of updates published by the distributors
+   */
+  public long getNumUpdatesSent() {
+    return _numUpdatesSent.get();
+  }
+
+  /**
+   * Stops publishing conflated updates. Any pending updates are published immediately.
+   * <p>
+   * The conflator can still be used after it has been shut down, and will start a new
+   * thread to publish conflated updates when they are next scheduled.
+   */
+  public void shutdown() {
+    final ScheduledExecutorService executor;
+    final Collection<Batch> batches;
+    synchronized (this) {
+      executor = _executor;
+      _executor = null;
+      batches = new ArrayList<Batch>(_batches.values());
+      _batches.clear();
+    }
+    if (executor != null) {
+      executor.shutdown();
+    }
+    // published outside the lock, as distributors hold their own lock when scheduling updates
+    for (Batch batch : batches) {
+      batch.stop();
+    }
+  }
+
+}
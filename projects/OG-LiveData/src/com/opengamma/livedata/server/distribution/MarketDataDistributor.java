@@ -17,8 +17,10 @@ import com.opengamma.livedata.LiveDataSpecification;
 import com.opengamma.livedata.LiveDataValueUpdateBean;
 import com.opengamma.livedata.server.DistributionSpecification;
 import com.opengamma.livedata.server.FieldHistoryStore;
+import com.opengamma.livedata.server.MappedLastKnownValueStore;
 import com.opengamma.livedata.server.Subscription;
 import com.opengamma.util.ArgumentChecker;
+import com.opengamma.util.monitor.LatencyClock;
 
 /**
  * Distributes market data to clients and keeps a history of what has been distributed.
@@ -50,6 +52,11 @@ public class MarketDataDistributor {
    */
   private FieldHistoryStore _lastKnownValues;
   
+  /**
+   * Keeps the last known values across server restarts. Null if they are not kept.
+   */
+  private MappedLastKnownValueStore _lastKnownValueStore;
+  
   /** 
    * A history store to be used by the FieldHistoryUpdater normalization rule.
    * Fields stored in this history could either be completely unnormalized, 
@@ -62,6 +69,40 @@ public class MarketDataDistributor {
    */
   private final AtomicLong _numMessagesSent = new AtomicLong(0);
   
+  /**
+   * Stores how many normalized ticks have been received. This is greater
+   * than the number of messages sent if ticks are being conflated.
+   */
+  private final AtomicLong _numTicksReceived = new AtomicLong(0);
+  
+  /**
+   * Controls conflation of ticks. Null if ticks are not being conflated.
+   */
+  private MarketDataConflator _conflator;
+  
+  /**
+   * How long ticks are conflated for, in milliseconds. 0 = send every tick.
+   */
+  private long _conflationInterval; // = 0;
+  
+  /**
+   * The merged fields of ticks received since the last conflated update 
+   * was sent. Null if there is no update waiting to be sent.
+   */
+  private FieldHistoryStore _pendingUpdate;
+  
+  /**
+   * When the earliest tick merged into the pending update was received. 
+   * 0 if updates are not timestamped.
+   */
+  private long _pendingUpdateTimestamp;
+  
+  /**
+   * Whether updates are stamped with the time their tick was received,
+   * for tracing latency. 
+   */
+  private boolean _timestampUpdates; // = false;
+  
   /**
    * Whether this distributor is persistent. 
    * <p>
@@ -122,6 +163,46 @@ public class MarketDataDistributor {
       _lastKnownValues = new FieldHistoryStore();
     }
     _lastKnownValues.liveDataReceived(lastKnownValue);
+    if (_lastKnownValueStore != null) {
+      // Encoded and written by the store's writer thread, not on the tick path
+      _lastKnownValueStore.update(getLastKnownValueKey(), _lastKnownValues);
+    }
+  }
+  
+  private String getLastKnownValueKey() {
+    return getDistributionSpec().getJmsTopic();
+  }
+  
+  public synchronized MappedLastKnownValueStore getLastKnownValueStore() {
+    return _lastKnownValueStore;
+  }
+  
+  /**
+   * Keeps the last known values of this distributor in a store, so they
+   * survive a server restart. If this distributor has no last known values
+   * yet, they are restored from the store.
+   * 
+   * @param lastKnownValueStore The store. Null to stop keeping the values.
+   */
+  public synchronized void setLastKnownValueStore(MappedLastKnownValueStore lastKnownValueStore) {
+    _lastKnownValueStore = lastKnownValueStore;
+    if (lastKnownValueStore != null && _lastKnownValues == null) {
+      FudgeMsg stored = lastKnownValueStore.get(getLastKnownValueKey());
+      if (stored != null) {
+        s_logger.debug("Restored last known values of {}", this);
+        _lastKnownValues = new FieldHistoryStore(stored);
+      }
+    }
+  }
+  
+  /**
+   * Removes the last known values of this distributor from the store, if any. 
+   * Called when the distributor is stopped.
+   */
+  public synchronized void discardStoredLastKnownValues() {
+    if (_lastKnownValueStore != null) {
+      _lastKnownValueStore.remove(getLastKnownValueKey());
+    }
   }
 
   public LiveDataValueUpdateBean getSnapshot() {
@@ -147,6 +228,49 @@ public class MarketDataDistributor {
     return _numMessagesSent.get();
   }
   
+  public long getNumTicksReceived() {
+    return _numTicksReceived.get();
+  }
+  
+  public synchronized MarketDataConflator getConflator() {
+    return _conflator;
+  }
+  
+  /**
+   * Attaches this distributor to a conflator, which decides how long
+   * ticks are conflated for and publishes the conflated updates.
+   * 
+   * @param conflator The conflator. Null to send every tick as it arrives.
+   */
+  public synchronized void setConflator(MarketDataConflator conflator) {
+    if (conflator == _conflator) {
+      return;
+    }
+    publishConflated();
+    _conflator = conflator;
+    _conflationInterval = (conflator != null) ? conflator.getConflationInterval(getDistributionSpec()) : 0;
+  }
+  
+  /**
+   * @return How long ticks are conflated for, in milliseconds. 0 if every tick is sent.
+   */
+  public synchronized long getConflationInterval() {
+    return _conflationInterval;
+  }
+  
+  public synchronized boolean isTimestampUpdates() {
+    return _timestampUpdates;
+  }
+  
+  /**
+   * @param timestampUpdates Whether to stamp each update sent with the time its
+   * tick was received, so that clients can trace the latency of the tick.
+   * Off by default.
+   */
+  public synchronized void setTimestampUpdates(boolean timestampUpdates) {
+    _timestampUpdates = timestampUpdates;
+  }
+  
   /**
    * @param msg message received from underlying market data API in its native format.
    * @return the normalized message. Null if in the process of normalization,
@@ -173,10 +297,14 @@ public class MarketDataDistributor {
    * Sends normalized market data to field receivers. 
    * <p>
    * Serialized to ensure a well-defined distribution order for this topic.
+   * <p>
+   * If a conflation interval is set, the normalized fields are merged with any
+   * others received in the interval and sent when it ends instead.
    * 
    * @param liveDataFields Unnormalized market data from underlying market data API.
    */
   public synchronized void distributeLiveData(FudgeMsg liveDataFields) {
+    final long timestamp = _timestampUpdates ? LatencyClock.currentTimeNanos() : 0;
     FudgeMsg normalizedMsg;
     try {
       normalizedMsg = normalize(liveDataFields);
@@ -187,29 +315,66 @@ public class MarketDataDistributor {
     
     if (normalizedMsg != null) {
       updateLastKnownValues(normalizedMsg);
+      _numTicksReceived.incrementAndGet();
+      if (_conflator != null) {
+        _conflator.tickReceived();
+      }
       
-      LiveDataValueUpdateBean data = new LiveDataValueUpdateBean(
-          getNumMessagesSent(), // 0-based as it should be
-          getDistributionSpec().getFullyQualifiedLiveDataSpecification(),
-          normalizedMsg);
-      
-      s_logger.debug("{}: Sending Live Data update {}", this, data);
-      
-      for (MarketDataSender sender : _marketDataSenders) {
-        try {
-          sender.sendMarketData(data);
-        } catch (RuntimeException e) {
-          s_logger.error(sender + " failed", e);
+      if (_conflationInterval > 0) {
+        if (_pendingUpdate == null) {
+          _pendingUpdate = new FieldHistoryStore(normalizedMsg);
+          _pendingUpdateTimestamp = timestamp;
+          _conflator.schedule(this, _conflationInterval);
+        } else {
+          _pendingUpdate.liveDataReceived(normalizedMsg);
         }
+        s_logger.debug("{}: Conflating Live Data update {}", this, normalizedMsg);
+      } else {
+        send(normalizedMsg, timestamp);
       }
-      
-      _numMessagesSent.incrementAndGet();
     
     } else {
       s_logger.debug("{}: Not sending Live Data update (message extinguished).", this);
     }
   }
   
+  /**
+   * Sends the merged fields of any ticks received since the last
+   * conflated update. Called by the {@link MarketDataConflator} at 
+   * the end of each conflation interval.
+   */
+  /*package*/ synchronized void publishConflated() {
+    if (_pendingUpdate == null) {
+      return;
+    }
+    final FudgeMsg merged = _pendingUpdate.getLastKnownValues();
+    _pendingUpdate = null;
+    send(merged, _pendingUpdateTimestamp);
+  }
+  
+  private void send(FudgeMsg normalizedMsg, long timestamp) {
+    LiveDataValueUpdateBean data = new LiveDataValueUpdateBean(
+        getNumMessagesSent(), // 0-based as it should be
+        getDistributionSpec().getFullyQualifiedLiveDataSpecification(),
+        normalizedMsg,
+        timestamp);
+    
+    s_logger.debug("{}: Sending Live Data update {}", this, data);
+    
+    for (MarketDataSender sender : _marketDataSenders) {
+      try {
+        sender.sendMarketData(data);
+      } catch (RuntimeException e) {
+        s_logger.error(sender + " failed", e);
+      }
+    }
+    
+    _numMessagesSent.incrementAndGet();
+    if (_conflator != null) {
+      _conflator.updateSent();
+    }
+  }
+  
   /**
    * @return Milliseconds from UTC epoch, or null if 
    * the distributor never expires.
@@ -0,0 +1,33 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.server.simulation;
+
+import org.fudgemsg.FudgeMsg;
+
+/**
+ * Generates the market data published by a {@link SimulatedLiveDataServer}.
+ * <p>
+ * Implementations must be thread-safe.
+ */
+public interface MarketDataGenerator {
+
+  /**
+   * Gets the current values of all fields of a security.
+   *
+   * @param uniqueId the security's unique ID, not null
+   * @return the values, not null
+   */
+  FudgeMsg getSnapshot(String uniqueId);
+
+  /**
+   * Generates the next update to a security's fields.
+   *
+   * @param uniqueId the security's unique ID, not null
+   * @return the fields changed, null if the security has no more updates
+   */
+  FudgeMsg nextTick(String uniqueId);
+
+}
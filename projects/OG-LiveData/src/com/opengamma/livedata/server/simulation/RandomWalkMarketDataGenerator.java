@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.server.simulation;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+
+import com.opengamma.util.ArgumentChecker;
+import com.opengamma.util.fudgemsg.OpenGammaFudgeContext;
+
+/**
+ * Generates market data as a geometric random walk of each field.
+ * <p>
+ * Each tick moves every field of a security by a normally distributed proportion of its value.
+ * The values a security takes depend only on the seed and its unique ID, so runs can be repeated.
+ */
+public class RandomWalkMarketDataGenerator implements MarketDataGenerator {
+
+  /**
+   * The default value of each field when a security is first used.
+   */
+  public static final double DEFAULT_INITIAL_VALUE = 100.0;
+  /**
+   * The default standard deviation of the proportional change in a field each tick.
+   */
+  public static final double DEFAULT_VOLATILITY = 0.001;
+
+  /**
+   * The values of a security.
+   */
+  private static final class Walk {
+
+    private final Random _random;
+    private final double[] _values;
+
+    private Walk(long seed, int fields, double initialValue) {
+      _random = new Random(seed);
+      _values = new double[fields];
+      for (int i = 0; i < fields; i++) {
+        // Spread the starting values so securities are distinguishable
+        _values[i] = initialValue * (0.5 + _random.nextDouble());
+      }
+    }
+
+  }
+
+  private final FudgeContext _fudgeContext;
+  private final long _seed;
+  private final String[] _fieldNames;
+  private final double _initialValue;
+  private final double _volatility;
+  private final ConcurrentMap<String, Walk> _walks = new ConcurrentHashMap<String, Walk>();
+
+  /**
+   * @param seed the seed for the random walks
+   * @param fieldNames the fields to generate, not empty
+   */
+  public RandomWalkMarketDataGenerator(long seed, String... fieldNames) {
+    this(seed, DEFAULT_INITIAL_VALUE, DEFAULT_VOLATILITY, fieldNames);
+  }
+
+  /**
+   * @param seed the seed for the random walks
+   * @param initialValue the approximate value of each field when a security is first used
+   * @param volatility the standard deviation of the proportional change in a field each tick
+   * @param fieldNames the fields to generate, not empty
+   */
+  public RandomWalkMarketDataGenerator(long seed, double initialValue, double volatility, String... fieldNames) {
+    this(OpenGammaFudgeContext.getInstance(), seed, initialValue, volatility, fieldNames);
+  }
+
+  public RandomWalkMarketDataGenerator(FudgeContext fudgeContext, long seed, double initialValue, double volatility, String... fieldNames) {
+    ArgumentChecker.notNull(fudgeContext, "Fudge context");
+    ArgumentChecker.notEmpty(fieldNames, "Field names");
+    ArgumentChecker.isTrue(volatility >= 0, "Volatility must not be negative");
+    _fudgeContext = fudgeContext;
+    _seed = seed;
+    _initialValue = initialValue;
+    _volatility = volatility;
+    _fieldNames = fieldNames.clone();
+  }
+
+  private Walk getWalk(String uniqueId) {
+    Walk walk = _walks.get(uniqueId);
+    if (walk == null) {
+      Walk newWalk = new Walk(_seed * 31 + uniqueId.hashCode(), _fieldNames.length, _initialValue);
+      walk = _walks.putIfAbsent(uniqueId, newWalk);
+      if (walk == null) {
+        walk = newWalk;
+      }
+    }
+    return walk;
+  }
+
+  private FudgeMsg toMessage(double[] values) {
+    MutableFudgeMsg msg = _fudgeContext.newMessage();
+    for (int i = 0; i < _fieldNames.length; i++) {
+      msg.add(_fieldNames[i], values[i]);
+    }
+    return msg;
+  }
+
+  @Override
+  public FudgeMsg getSnapshot(String uniqueId) {
+    Walk walk = getWalk(uniqueId);
+    synchronized (walk) {
+      return toMessage(walk._values);
+    }
+  }
+
+  @Override
+  public FudgeMsg nextTick(String uniqueId) {
+    Walk walk = getWalk(uniqueId);
+    synchronized (walk) {
+      for (int i = 0; i < walk._values.length; i++) {
+        walk._values[i] *= Math.exp(_volatility * walk._random.nextGaussian());
+      }
+      return toMessage(walk._values);
+    }
+  }
+
+}
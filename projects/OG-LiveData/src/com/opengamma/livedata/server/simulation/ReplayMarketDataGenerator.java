@@ -0,0 +1,187 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.server.simulation;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeField;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+
+import com.opengamma.OpenGammaRuntimeException;
+import com.opengamma.util.ArgumentChecker;
+import com.opengamma.util.fudgemsg.OpenGammaFudgeContext;
+
+/**
+ * Generates market data by replaying recorded ticks.
+ * <p>
+ * Each line of the recording is one tick, giving the unique ID of the security and
+ * the values of the fields that changed, for example:
+ * <pre>
+ * AAPL.O,BID=101.25,ASK=101.5
+ * # Comments and blank lines are ignored
+ * AAPL.O,LAST_PRICE=101.3,EXCHANGE=XNAS
+ * </pre>
+ * Values which can be parsed as numbers are published as doubles, others as strings.
+ * <p>
+ * The ticks of each security are replayed in the order they were recorded. If looping, each
+ * security starts again from its first tick after its last; otherwise it stops updating.
+ * The snapshot of a security holds the latest value of every field replayed so far, or the
+ * fields of its first tick if none has been replayed.
+ */
+public class ReplayMarketDataGenerator implements MarketDataGenerator {
+
+  /**
+   * The recorded ticks of a security.
+   */
+  private static final class Recording {
+
+    private final List<FudgeMsg> _ticks = new ArrayList<FudgeMsg>();
+    private MutableFudgeMsg _snapshot;
+    private int _next;
+
+  }
+
+  private final FudgeContext _fudgeContext;
+  private final boolean _loop;
+  private final Map<String, Recording> _recordings = new HashMap<String, Recording>();
+
+  /**
+   * Reads the recording from a file, replaying it in a loop.
+   *
+   * @param file the recording, not null
+   */
+  public ReplayMarketDataGenerator(File file) {
+    this(file, true);
+  }
+
+  /**
+   * Reads the recording from a file.
+   *
+   * @param file the recording, not null
+   * @param loop true to replay each security's ticks repeatedly
+   */
+  public ReplayMarketDataGenerator(File file, boolean loop) {
+    this(OpenGammaFudgeContext.getInstance(), openFile(file), loop);
+  }
+
+  /**
+   * Reads the recording, closing the reader.
+   *
+   * @param fudgeContext the Fudge context, not null
+   * @param recording the recording, not null
+   * @param loop true to replay each security's ticks repeatedly
+   */
+  public ReplayMarketDataGenerator(FudgeContext fudgeContext, Reader recording, boolean loop) {
+    ArgumentChecker.notNull(fudgeContext, "Fudge context");
+    ArgumentChecker.notNull(recording, "Recording");
+    _fudgeContext = fudgeContext;
+    _loop = loop;
+    try {
+      try {
+        read(new BufferedReader(recording));
+      } finally {
+        recording.close();
+      }
+    } catch (IOException e) {
+      throw new OpenGammaRuntimeException("Unable to read market data recording", e);
+    }
+  }
+
+  private static Reader openFile(File file) {
+    ArgumentChecker.notNull(file, "File");
+    try {
+      return new FileReader(file);
+    } catch (IOException e) {
+      throw new OpenGammaRuntimeException("Unable to open market data recording " + file, e);
+    }
+  }
+
+  private void read(BufferedReader reader) throws IOException {
+    int lineNumber = 0;
+    String line;
+    while ((line = reader.readLine()) != null) {
+      lineNumber++;
+      line = line.trim();
+      if (line.length() == 0 || line.startsWith("#")) {
+        continue;
+      }
+      String[] tokens = line.split(",");
+      MutableFudgeMsg tick = _fudgeContext.newMessage();
+      for (int i = 1; i < tokens.length; i++) {
+        int equals = tokens[i].indexOf('=');
+        if (equals <= 0) {
+          throw new OpenGammaRuntimeException("Expected FIELD=value but found " + tokens[i] + " on line " + lineNumber);
+        }
+        tick.add(tokens[i].substring(0, equals).trim(), parseValue(tokens[i].substring(equals + 1).trim()));
+      }
+      String uniqueId = tokens[0].trim();
+      Recording recording = _recordings.get(uniqueId);
+      if (recording == null) {
+        recording = new Recording();
+        _recordings.put(uniqueId, recording);
+      }
+      recording._ticks.add(tick);
+    }
+  }
+
+  private static Object parseValue(String value) {
+    try {
+      return Double.parseDouble(value);
+    } catch (NumberFormatException e) {
+      return value;
+    }
+  }
+
+  @Override
+  public FudgeMsg getSnapshot(String uniqueId) {
+    Recording recording = _recordings.get(uniqueId);
+    if (recording == null) {
+      return _fudgeContext.newMessage();
+    }
+    synchronized (recording) {
+      if (recording._snapshot == null) {
+        return recording._ticks.get(0);
+      }
+      return _fudgeContext.newMessage(recording._snapshot);
+    }
+  }
+
+  @Override
+  public FudgeMsg nextTick(String uniqueId) {
+    Recording recording = _recordings.get(uniqueId);
+    if (recording == null) {
+      return null;
+    }
+    synchronized (recording) {
+      if (recording._next == recording._ticks.size()) {
+        if (!_loop) {
+          return null;
+        }
+        recording._next = 0;
+      }
+      FudgeMsg tick = recording._ticks.get(recording._next++);
+      if (recording._snapshot == null) {
+        recording._snapshot = _fudgeContext.newMessage();
+      }
+      for (FudgeField field : tick) {
+        recording._snapshot.remove(field.getName());
+        recording._snapshot.add(field);
+      }
+      return tick;
+    }
+  }
+
+}
@@ -0,0 +1,181 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.server.simulation;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+
+import org.fudgemsg.FudgeMsg;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opengamma.id.IdentificationScheme;
+import com.opengamma.livedata.server.AbstractLiveDataServer;
+import com.opengamma.livedata.server.Subscription;
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * A live data server publishing market data from a {@link MarketDataGenerator}, so that the live
+ * data and engine can be driven at production rates without a connection to a market data provider.
+ * <p>
+ * While connected, a tick thread publishes updates to the subscribed securities in turn, at a
+ * fixed total rate. If the server falls behind, ticks are published as fast as possible until it
+ * catches up. With a rate of zero, ticks are only published by calling {@link #tick(String)}.
+ */
+public class SimulatedLiveDataServer extends AbstractLiveDataServer {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(SimulatedLiveDataServer.class);
+
+  private static final long IDLE_NANOS = 10000000;
+
+  private final IdentificationScheme _domain;
+  private final MarketDataGenerator _generator;
+  private final double _ticksPerSecond;
+  private final Set<String> _subscribedIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  private volatile Thread _tickThread;
+
+  /**
+   * @param domain the identification scheme of the securities, not null
+   * @param generator the source of the market data, not null
+   * @param ticksPerSecond the total rate to publish ticks at, zero to only publish ticks on request
+   */
+  public SimulatedLiveDataServer(IdentificationScheme domain, MarketDataGenerator generator, double ticksPerSecond) {
+    ArgumentChecker.notNull(domain, "Identification domain");
+    ArgumentChecker.notNull(generator, "Market data generator");
+    ArgumentChecker.isTrue(ticksPerSecond >= 0, "Ticks per second must not be negative");
+    _domain = domain;
+    _generator = generator;
+    _ticksPerSecond = ticksPerSecond;
+  }
+
+  public MarketDataGenerator getGenerator() {
+    return _generator;
+  }
+
+  public double getTicksPerSecond() {
+    return _ticksPerSecond;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Publishes the next tick of a security.
+   *
+   * @param uniqueId the security's unique ID, not null
+   * @return the tick published, null if the security isn't subscribed or has no more ticks
+   */
+  public FudgeMsg tick(String uniqueId) {
+    if (!_subscribedIds.contains(uniqueId)) {
+      return null;
+    }
+    FudgeMsg tick = _generator.nextTick(uniqueId);
+    if (tick != null) {
+      liveDataReceived(uniqueId, tick);
+    }
+    return tick;
+  }
+
+  private void publishTicks() {
+    long tickNanos = (long) (1e9 / _ticksPerSecond);
+    long nextTick = System.nanoTime();
+    while (_tickThread == Thread.currentThread()) {
+      String[] uniqueIds = _subscribedIds.toArray(new String[0]);
+      if (uniqueIds.length == 0) {
+        LockSupport.parkNanos(IDLE_NANOS);
+        nextTick = System.nanoTime();
+        continue;
+      }
+      for (String uniqueId : uniqueIds) {
+        if (_tickThread != Thread.currentThread()) {
+          return;
+        }
+        long wait = nextTick - System.nanoTime();
+        if (wait > 0) {
+          LockSupport.parkNanos(wait);
+        }
+        nextTick += tickNanos;
+        try {
+          tick(uniqueId);
+        } catch (RuntimeException e) {
+          s_logger.error("Failed to publish tick for " + uniqueId, e);
+        }
+      }
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  protected IdentificationScheme getUniqueIdDomain() {
+    return _domain;
+  }
+
+  @Override
+  protected Map<String, Object> doSubscribe(Collection<String> uniqueIds) {
+    Map<String, Object> handles = new HashMap<String, Object>();
+    for (String uniqueId : uniqueIds) {
+      _subscribedIds.add(uniqueId);
+      handles.put(uniqueId, uniqueId);
+    }
+    return handles;
+  }
+
+  @Override
+  protected void doUnsubscribe(Collection<Object> subscriptionHandles) {
+    for (Object handle : subscriptionHandles) {
+      _subscribedIds.remove(handle);
+    }
+  }
+
+  @Override
+  protected Map<String, FudgeMsg> doSnapshot(Collection<String> uniqueIds) {
+    Map<String, FudgeMsg> snapshots = new HashMap<String, FudgeMsg>();
+    for (String uniqueId : uniqueIds) {
+      snapshots.put(uniqueId, _generator.getSnapshot(uniqueId));
+    }
+    return snapshots;
+  }
+
+  @Override
+  protected void doConnect() {
+    if (_ticksPerSecond == 0) {
+      return;
+    }
+    Thread tickThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        publishTicks();
+      }
+    }, "SimulatedLiveDataServer Ticks");
+    tickThread.setDaemon(true);
+    _tickThread = tickThread;
+    tickThread.start();
+    s_logger.info("Publishing {} ticks per second", _ticksPerSecond);
+  }
+
+  @Override
+  protected void doDisconnect() {
+    Thread tickThread = _tickThread;
+    _tickThread = null;
+    if (tickThread != null) {
+      try {
+        tickThread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  @Override
+  protected boolean snapshotOnSubscriptionStartRequired(Subscription subscription) {
+    // Subscribing doesn't publish an image
+    return true;
+  }
+
+}
@@ -0,0 +1,10 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+
+/**
+ * Provides a live data server publishing simulated market data, for load testing without a market data provider.
+ */
+package com.opengamma.livedata.server.simulation;
@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.client;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.List;
+
+import org.fudgemsg.FudgeContext;
+import org.testng.annotations.Test;
+
+import com.opengamma.id.Identifier;
+import com.opengamma.livedata.LiveDataSpecification;
+import com.opengamma.livedata.LiveDataValueUpdate;
+import com.opengamma.livedata.LiveDataValueUpdateBean;
+import com.opengamma.livedata.test.CollectingLiveDataListener;
+
+/**
+ * Tests {@link AsynchronousValueDistributor}.
+ */
+@Test
+public class AsynchronousValueDistributorTest {
+
+  private final FudgeContext _fudgeContext = new FudgeContext();
+
+  public void valuesDeliveredInOrder() {
+    // A small buffer, so that the receiving threads wrap around it many times
+    AsynchronousValueDistributor distributor = new AsynchronousValueDistributor(16);
+    try {
+      final int updatesPerThread = 5000;
+      final LiveDataSpecification spec = new LiveDataSpecification("foo", Identifier.of("bar", "baz"));
+      CollectingLiveDataListener listener = new CollectingLiveDataListener(1, 2 * updatesPerThread);
+      distributor.addListener(spec, listener);
+
+      Thread[] threads = new Thread[2];
+      for (int i = 0; i < threads.length; i++) {
+        final ValueDistributor target = distributor;
+        final int thread = i;
+        threads[i] = new Thread(new Runnable() {
+          @Override
+          public void run() {
+            for (int j = 0; j < updatesPerThread; j++) {
+              target.notifyListeners(new LiveDataValueUpdateBean(thread * updatesPerThread + j, spec, _fudgeContext.newMessage()));
+            }
+          }
+        });
+        threads[i].start();
+      }
+      assertTrue(listener.waitUntilEnoughUpdatesReceived(10000));
+
+      List<LiveDataValueUpdate> updates = listener.getValueUpdates();
+      assertEquals(2 * updatesPerThread, updates.size());
+      long[] lastSequenceNumbers = new long[] {-1, updatesPerThread - 1};
+      for (LiveDataValueUpdate update : updates) {
+        int thread = (int) (update.getSequenceNumber() / updatesPerThread);
+        assertTrue(update.getSequenceNumber() > lastSequenceNumbers[thread]);
+        lastSequenceNumbers[thread] = update.getSequenceNumber();
+      }
+    } finally {
+      distributor.close();
+    }
+  }
+
+  public void failingListenerDoesNotStopOthers() {
+    AsynchronousValueDistributor distributor = new AsynchronousValueDistributor();
+    try {
+      LiveDataSpecification spec = new LiveDataSpecification("foo", Identifier.of("bar", "baz"));
+      CollectingLiveDataListener failingListener = new CollectingLiveDataListener() {
+        @Override
+        public synchronized void valueUpdate(LiveDataValueUpdate valueUpdate) {
+          throw new IllegalStateException("Listener failure");
+        }
+      };
+      CollectingLiveDataListener listener = new CollectingLiveDataListener(1, 2);
+      distributor.addListener(spec, failingListener);
+      distributor.addListener(spec, listener);
+
+      distributor.notifyListeners(new LiveDataValueUpdateBean(1, spec, _fudgeContext.newMessage()));
+      distributor.notifyListeners(new LiveDataValueUpdateBean(2, spec, _fudgeContext.newMessage()));
+      assertTrue(listener.waitUntilEnoughUpdatesReceived(10000));
+      assertEquals(2, listener.getValueUpdates().size());
+    } finally {
+      distributor.close();
+    }
+  }
+
+  public void listenerErrorDoesNotStopDispatcher() {
+    // A buffer smaller than the number of values, so the receiving thread waits on the dispatcher
+    AsynchronousValueDistributor distributor = new AsynchronousValueDistributor(4);
+    try {
+      LiveDataSpecification spec = new LiveDataSpecification("foo", Identifier.of("bar", "baz"));
+      CollectingLiveDataListener failingListener = new CollectingLiveDataListener() {
+        @Override
+        public synchronized void valueUpdate(LiveDataValueUpdate valueUpdate) {
+          throw new AssertionError("Listener error");
+        }
+      };
+      CollectingLiveDataListener listener = new CollectingLiveDataListener(1, 16);
+      distributor.addListener(spec, failingListener);
+      distributor.addListener(spec, listener);
+
+      for (int i = 0; i < 16; i++) {
+        distributor.notifyListeners(new LiveDataValueUpdateBean(i, spec, _fudgeContext.newMessage()));
+      }
+      assertTrue(listener.waitUntilEnoughUpdatesReceived(10000));
+      assertEquals(16, listener.getValueUpdates().size());
+    } finally {
+      distributor.close();
+    }
+  }
+
+}
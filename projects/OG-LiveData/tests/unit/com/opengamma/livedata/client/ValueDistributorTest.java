@@ -6,6 +6,7 @@
 package com.opengamma.livedata.client;
 
 import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
 import static org.testng.AssertJUnit.assertNotNull;
 import static org.testng.AssertJUnit.assertTrue;
 import org.testng.annotations.Test;
@@ -100,4 +101,21 @@ public class ValueDistributorTest {
     assertNotNull(update.getFields());
   }
 
+  @Test
+  public void removedListenerNotNotified() {
+    ValueDistributor distributor = new ValueDistributor();
+    CollectingLiveDataListener listener1 = new CollectingLiveDataListener();
+    CollectingLiveDataListener listener2 = new CollectingLiveDataListener();
+    LiveDataSpecification spec1 = new LiveDataSpecification("foo", Identifier.of("bar", "baz"));
+    
+    distributor.addListener(spec1, listener1);
+    distributor.addListener(spec1, listener2);
+    assertTrue(distributor.removeListener(spec1, listener1));
+    distributor.notifyListeners(new LiveDataValueUpdateBean(1, spec1, _fudgeContext.newMessage()));
+    
+    assertTrue(listener1.getValueUpdates().isEmpty());
+    assertEquals(1, listener2.getValueUpdates().size());
+    assertFalse(distributor.removeListener(spec1, listener2));
+  }
+
 }
@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.normalization;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeField;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.testng.annotations.Test;
+
+import com.opengamma.livedata.server.FieldHistoryStore;
+
+/**
+ * Tests {@link FusedFieldRule} gives the same results as applying the rules one at a time.
+ */
+@Test
+public class FusedFieldRuleTest {
+
+  private static MutableFudgeMsg applySequentially(List<NormalizationRule> rules, FudgeMsg msg) {
+    MutableFudgeMsg normalizedMsg = FudgeContext.GLOBAL_DEFAULT.newMessage(msg);
+    for (NormalizationRule rule : rules) {
+      normalizedMsg = rule.apply(normalizedMsg, new FieldHistoryStore());
+      if (normalizedMsg == null) {
+        break;
+      }
+    }
+    return normalizedMsg;
+  }
+
+  private static void assertFused(List<NormalizationRule> rules, FudgeMsg msg) {
+    FusedFieldRule fused = FusedFieldRule.fuse(FudgeContext.GLOBAL_DEFAULT, rules);
+    assertNotNull(fused);
+    MutableFudgeMsg expected = applySequentially(rules, msg);
+    MutableFudgeMsg actual = fused.normalize(msg, new FieldHistoryStore());
+    if (expected == null) {
+      assertNull(actual);
+      return;
+    }
+    assertNotNull(actual);
+    List<FudgeField> expectedFields = expected.getAllFields();
+    List<FudgeField> actualFields = actual.getAllFields();
+    assertEquals(expectedFields.size(), actualFields.size());
+    for (int i = 0; i < expectedFields.size(); i++) {
+      assertEquals(expectedFields.get(i).getName(), actualFields.get(i).getName());
+      assertEquals(expectedFields.get(i).getValue(), actualFields.get(i).getValue());
+    }
+  }
+
+  private static MutableFudgeMsg message() {
+    MutableFudgeMsg msg = FudgeContext.GLOBAL_DEFAULT.newMessage();
+    msg.add("BID", 1.5);
+    msg.add("ASK", 1.75);
+    msg.add("LAST", 1.6);
+    msg.add("VOLUME", 500);
+    msg.add("NAME", "Foo");
+    msg.add(null, 1, "Unnamed");
+    return msg;
+  }
+
+  public void renameAndRescale() {
+    List<NormalizationRule> rules = Arrays.<NormalizationRule>asList(
+        new FieldNameChange("BID", "Bid"),
+        new UnitChange("ASK", 100),
+        new FieldNameChange("ASK", "Ask"),
+        new UnitChange("Bid", 0.01),
+        new UnitChange("Bid", 3));
+    assertFused(rules, message());
+  }
+
+  public void filter() {
+    List<NormalizationRule> rules = Arrays.<NormalizationRule>asList(
+        new FieldNameChange("LAST", "Last"),
+        new FieldFilter("Last", "VOLUME", "BID"),
+        new UnitChange("VOLUME", 2));
+    assertFused(rules, message());
+  }
+
+  public void filterRemovingMessageEntirely() {
+    List<NormalizationRule> rules = Arrays.<NormalizationRule>asList(
+        new UnitChange("BID", 2),
+        new FieldFilter("Foo"));
+    assertFused(rules, message());
+  }
+
+  public void renameOntoExistingField() {
+    List<NormalizationRule> rules = Arrays.<NormalizationRule>asList(new FieldNameChange("BID", "ASK"));
+    assertFused(rules, message());
+  }
+
+  public void repeatedField() {
+    List<NormalizationRule> rules = Arrays.<NormalizationRule>asList(
+        new FieldNameChange("BID", "Bid"),
+        new UnitChange("ASK", 10));
+    MutableFudgeMsg msg = message();
+    msg.add("BID", 1.25);
+    msg.add("ASK", 1.5);
+    assertFused(rules, msg);
+  }
+
+  public void ruleApplyingToTwoFields() {
+    List<NormalizationRule> rules = Arrays.<NormalizationRule>asList(
+        new FieldNameChange("BID", "ASK"),
+        new UnitChange("ASK", 10));
+    assertFused(rules, message());
+  }
+
+  public void renamedFieldsKeptInRuleOrder() {
+    List<NormalizationRule> rules = Arrays.<NormalizationRule>asList(
+        new UnitChange("ASK", 10),
+        new FieldNameChange("BID", "ASK"),
+        new FieldNameChange("LAST", "Last"));
+    assertFused(rules, message());
+  }
+
+  public void ruleSet() {
+    NormalizationRuleSet ruleSet = new NormalizationRuleSet("Test",
+        new FieldNameChange("BID", "Bid"),
+        new FieldHistoryUpdater(),
+        new FieldNameChange("BID", "ASK"),
+        new UnitChange("ASK", 10));
+    FieldHistoryStore history = new FieldHistoryStore();
+    FudgeMsg normalized = ruleSet.getNormalizedMessage(message(), history);
+    assertEquals(1.5, normalized.getDouble("Bid"), 0.0001);
+    assertEquals(17.5, normalized.getDouble("ASK"), 0.0001);
+    assertEquals(1.5, history.getLastKnownValues().getDouble("Bid"), 0.0001);
+  }
+
+}
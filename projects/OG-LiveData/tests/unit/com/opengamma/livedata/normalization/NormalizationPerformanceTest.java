@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.normalization;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import com.opengamma.livedata.server.FieldHistoryStore;
+import com.opengamma.util.fudgemsg.OpenGammaFudgeContext;
+
+/**
+ * Measures the ticks normalized per second on one thread by a {@link NormalizationRuleSet},
+ * against applying its rules one at a time.
+ */
+@Test(enabled = false)
+public class NormalizationPerformanceTest {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(NormalizationPerformanceTest.class);
+
+  private static final int WARMUP_TICKS = 200000;
+  private static final int TICKS = 2000000;
+
+  private static final List<NormalizationRule> RULES = Arrays.<NormalizationRule>asList(
+      new FieldFilter("BID", "ASK", "LAST_PRICE", "VOLUME", "IMPLIED_VOLATILITY"),
+      new FieldNameChange("BID", "Bid"),
+      new FieldNameChange("ASK", "Ask"),
+      new FieldNameChange("LAST_PRICE", "Last"),
+      new FieldNameChange("IMPLIED_VOLATILITY", "ImpliedVolatility"),
+      new UnitChange("ImpliedVolatility", 0.01),
+      new FieldHistoryUpdater());
+
+  private static FudgeMsg[] ticks() {
+    FudgeMsg[] ticks = new FudgeMsg[1024];
+    for (int i = 0; i < ticks.length; i++) {
+      MutableFudgeMsg msg = OpenGammaFudgeContext.getInstance().newMessage();
+      msg.add("BID", 100.0 + i);
+      msg.add("ASK", 100.5 + i);
+      msg.add("LAST_PRICE", 100.25 + i);
+      msg.add("VOLUME", 1000 + i);
+      msg.add("IMPLIED_VOLATILITY", 25.0);
+      msg.add("BID_SIZE", 10);
+      msg.add("ASK_SIZE", 20);
+      msg.add("EXCHANGE", "XLON");
+      ticks[i] = msg;
+    }
+    return ticks;
+  }
+
+  private static int normalizeSequentially(FudgeMsg[] ticks, int count, FieldHistoryStore history) {
+    int fields = 0;
+    for (int i = 0; i < count; i++) {
+      MutableFudgeMsg msg = OpenGammaFudgeContext.getInstance().newMessage(ticks[i & (ticks.length - 1)]);
+      for (NormalizationRule rule : RULES) {
+        msg = rule.apply(msg, history);
+        if (msg == null) {
+          break;
+        }
+      }
+      fields += msg.getNumFields();
+    }
+    return fields;
+  }
+
+  private static int normalize(NormalizationRuleSet ruleSet, FudgeMsg[] ticks, int count, FieldHistoryStore history) {
+    int fields = 0;
+    for (int i = 0; i < count; i++) {
+      fields += ruleSet.getNormalizedMessage(ticks[i & (ticks.length - 1)], history).getNumFields();
+    }
+    return fields;
+  }
+
+  private static void report(String name, long nanos, int fields) {
+    s_logger.info("{}: {} ticks/s ({} fields)", new Object[] {name, (long) (TICKS * 1e9 / nanos), fields});
+  }
+
+  public void ticksPerSecond() {
+    FudgeMsg[] ticks = ticks();
+    NormalizationRuleSet ruleSet = new NormalizationRuleSet("Test", "Test", RULES);
+    FieldHistoryStore history = new FieldHistoryStore();
+
+    normalizeSequentially(ticks, WARMUP_TICKS, history);
+    normalize(ruleSet, ticks, WARMUP_TICKS, history);
+
+    long start = System.nanoTime();
+    int fields = normalizeSequentially(ticks, TICKS, history);
+    report("Rules applied one at a time", System.nanoTime() - start, fields);
+
+    start = System.nanoTime();
+    fields = normalize(ruleSet, ticks, TICKS, history);
+    report("Fused rule set", System.nanoTime() - start, fields);
+  }
+
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.server;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.Arrays;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.MutableFudgeMsg;
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link FieldHistoryStore}.
+ */
+@Test
+public class FieldHistoryStoreTest {
+
+  private static void tick(FieldHistoryStore store, double bid) {
+    MutableFudgeMsg msg = FudgeContext.GLOBAL_DEFAULT.newMessage();
+    msg.add("BID", bid);
+    store.liveDataReceived(msg);
+  }
+
+  public void lastKnownValues() {
+    FieldHistoryStore store = new FieldHistoryStore();
+    tick(store, 1.0);
+    tick(store, 2.0);
+    assertEquals(1, store.getLastKnownValues().getNumFields());
+    assertEquals(2.0, store.getLastKnownValues().getDouble("BID"), 0.0001);
+    assertTrue(store.getHistory("BID").isEmpty());
+  }
+
+  public void history() {
+    FieldHistoryStore store = new FieldHistoryStore();
+    store.ensureHistoryDepth(2);
+    tick(store, 1.0);
+    assertEquals(Arrays.<Object>asList(1.0), store.getHistory("BID"));
+    tick(store, 2.0);
+    tick(store, 3.0);
+    assertEquals(Arrays.<Object>asList(3.0, 2.0), store.getHistory("BID"));
+
+    store.ensureHistoryDepth(3);
+    tick(store, 4.0);
+    assertEquals(Arrays.<Object>asList(4.0, 3.0, 2.0), store.getHistory("BID"));
+    store.ensureHistoryDepth(1);
+    assertEquals(3, store.getHistoryDepth());
+
+    FieldHistoryStore copy = new FieldHistoryStore(store);
+    tick(store, 5.0);
+    assertEquals(Arrays.<Object>asList(4.0, 3.0, 2.0), copy.getHistory("BID"));
+  }
+
+}
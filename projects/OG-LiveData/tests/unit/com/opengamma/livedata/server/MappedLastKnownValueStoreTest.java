@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.server;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link MappedLastKnownValueStore}.
+ */
+@Test
+public class MappedLastKnownValueStoreTest {
+
+  private File _file;
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    _file = File.createTempFile("lkv", ".dat");
+    _file.delete();
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    _file.delete();
+  }
+
+  private static FudgeMsg values(double bid) {
+    MutableFudgeMsg msg = FudgeContext.GLOBAL_DEFAULT.newMessage();
+    msg.add("BID", bid);
+    msg.add("ASK", bid + 0.5);
+    return msg;
+  }
+
+  public void putGetRemove() {
+    MappedLastKnownValueStore store = new MappedLastKnownValueStore(_file, 4, 256, FudgeContext.GLOBAL_DEFAULT);
+    assertNull(store.get("A"));
+    assertTrue(store.put("A", values(1.0)));
+    assertTrue(store.put("A", values(2.0)));
+    assertEquals(2.0, store.get("A").getDouble("BID"), 0.0001);
+    assertEquals(Collections.singleton("A"), store.getKeys());
+    store.remove("A");
+    assertNull(store.get("A"));
+  }
+
+  public void reopen() {
+    MappedLastKnownValueStore store = new MappedLastKnownValueStore(_file, 4, 256, FudgeContext.GLOBAL_DEFAULT);
+    store.put("A", values(1.0));
+    store.put("B", values(2.0));
+    store.put("C", values(3.0));
+    store.remove("B");
+    store.flush();
+
+    store = new MappedLastKnownValueStore(_file, 4, 256, FudgeContext.GLOBAL_DEFAULT);
+    assertEquals(2, store.getKeys().size());
+    assertEquals(1.0, store.get("A").getDouble("BID"), 0.0001);
+    assertNull(store.get("B"));
+    assertEquals(3.5, store.get("C").getDouble("ASK"), 0.0001);
+  }
+
+  public void full() {
+    MappedLastKnownValueStore store = new MappedLastKnownValueStore(_file, 2, 256, FudgeContext.GLOBAL_DEFAULT);
+    assertTrue(store.put("A", values(1.0)));
+    assertTrue(store.put("B", values(2.0)));
+    assertFalse(store.put("C", values(3.0)));
+    store.remove("A");
+    assertTrue(store.put("C", values(3.0)));
+  }
+
+  public void updateWrittenInBackground() {
+    MappedLastKnownValueStore store = new MappedLastKnownValueStore(_file, 4, 256, FudgeContext.GLOBAL_DEFAULT, 0);
+    FieldHistoryStore history = new FieldHistoryStore();
+    history.liveDataReceived(values(1.0));
+    store.update("A", history);
+    // Not written until the writer runs
+    assertNull(store.get("A"));
+    history.liveDataReceived(values(2.0));
+    store.writeChanged();
+    assertEquals(2.0, store.get("A").getDouble("BID"), 0.0001);
+
+    // A removed key isn't restored by a pending write
+    history.liveDataReceived(values(3.0));
+    store.update("A", history);
+    store.remove("A");
+    store.flush();
+    assertNull(store.get("A"));
+    store.close();
+  }
+
+  public void writerThread() throws InterruptedException {
+    MappedLastKnownValueStore store = new MappedLastKnownValueStore(_file, 4, 256, FudgeContext.GLOBAL_DEFAULT, 10);
+    try {
+      FieldHistoryStore history = new FieldHistoryStore();
+      history.liveDataReceived(values(1.0));
+      store.update("A", history);
+      for (int i = 0; (i < 500) && (store.get("A") == null); i++) {
+        Thread.sleep(10);
+      }
+      assertEquals(1.0, store.get("A").getDouble("BID"), 0.0001);
+    } finally {
+      store.close();
+    }
+  }
+
+  public void tooLarge() {
+    MappedLastKnownValueStore store = new MappedLastKnownValueStore(_file, 2, 32, FudgeContext.GLOBAL_DEFAULT);
+    assertFalse(store.put("A", values(1.0)));
+    assertNull(store.get("A"));
+  }
+
+}
@@ -13,8 +13,18 @@ import static org.testng.AssertJUnit.assertNotNull;
 import static org.testng.AssertJUnit.assertTrue;
 import org.testng.annotations.Test;
 import org.testng.annotations.BeforeMethod;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import com.opengamma.OpenGammaRuntimeException;
 import com.opengamma.id.IdentificationScheme;
 import com.opengamma.id.Identifier;
 import com.opengamma.livedata.LiveDataSpecification;
@@ -184,6 +194,63 @@ public class MockLiveDataServerTest {
     assertFalse(_server.stopDistributor(distributor));
   }
 
+  @Test
+  public void concurrentSubscriptionsCoalesced() throws Exception {
+    final CountDownLatch subscribing = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger doSubscribeCalls = new AtomicInteger();
+    final MockLiveDataServer server = new MockLiveDataServer(_domain) {
+      @Override
+      protected Map<String, Object> doSubscribe(Collection<String> uniqueIds) {
+        doSubscribeCalls.incrementAndGet();
+        subscribing.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new OpenGammaRuntimeException("Interrupted", e);
+        }
+        return super.doSubscribe(uniqueIds);
+      }
+    };
+    server.connect();
+    
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<LiveDataSubscriptionResponse> first = executor.submit(new Callable<LiveDataSubscriptionResponse>() {
+        @Override
+        public LiveDataSubscriptionResponse call() {
+          return server.subscribe("mysub", false);
+        }
+      });
+      assertTrue(subscribing.await(5, TimeUnit.SECONDS));
+      
+      Future<LiveDataSubscriptionResponse> second = executor.submit(new Callable<LiveDataSubscriptionResponse>() {
+        @Override
+        public LiveDataSubscriptionResponse call() {
+          return server.subscribe("mysub", true);
+        }
+      });
+      Thread.sleep(100);
+      assertFalse(second.isDone());
+      
+      // The subscription is not published until it has been created
+      assertFalse(server.isSubscribedTo(getSpec("mysub")));
+      assertEquals(0, server.getNumActiveSubscriptions());
+      
+      release.countDown();
+      assertEquals(LiveDataSubscriptionResult.SUCCESS, first.get(5, TimeUnit.SECONDS).getSubscriptionResult());
+      assertEquals(LiveDataSubscriptionResult.SUCCESS, second.get(5, TimeUnit.SECONDS).getSubscriptionResult());
+    } finally {
+      executor.shutdown();
+    }
+    
+    assertEquals(1, doSubscribeCalls.get());
+    assertEquals(1, server.getNumActiveSubscriptions());
+    MarketDataDistributor distributor = server.getMarketDataDistributor(getSpec("mysub"));
+    assertNotNull(distributor);
+    assertTrue(distributor.isPersistent());
+  }
+
   private void checkResponse(UserPrincipal user, LiveDataSpecification requestedSpec,
       LiveDataSubscriptionResponseMsg response) {
     assertEquals(user, response.getRequestingUser());
@@ -6,14 +6,23 @@
 package com.opengamma.livedata.server.distribution;
 
 import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
 import org.testng.annotations.Test;
 import org.fudgemsg.FudgeContext;
 import org.fudgemsg.MutableFudgeMsg;
 import com.opengamma.id.Identifier;
 import com.opengamma.livedata.LiveDataValueUpdate;
+import com.opengamma.livedata.LiveDataValueUpdateBean;
 import com.opengamma.livedata.normalization.StandardRules;
 import com.opengamma.livedata.server.DistributionSpecification;
 import com.opengamma.livedata.server.Subscription;
+import com.opengamma.util.monitor.LatencyClock;
 
 /**
  * 
@@ -34,6 +43,25 @@ public class MarketDataDistributorTest {
     return getTestDistributor(new EmptyMarketDataSenderFactory());
   }
   
+  private static MarketDataDistributor getTestDistributor(final List<LiveDataValueUpdateBean> sent) {
+    return getTestDistributor(new MarketDataSenderFactory() {
+      @Override
+      public Collection<MarketDataSender> create(final MarketDataDistributor distributor) {
+        return Collections.<MarketDataSender>singleton(new MarketDataSender() {
+          @Override
+          public void sendMarketData(LiveDataValueUpdateBean data) {
+            sent.add(data);
+          }
+
+          @Override
+          public MarketDataDistributor getDistributor() {
+            return distributor;
+          }
+        });
+      }
+    });
+  }
+  
   @Test
   public void sequenceNumber() {
     MarketDataDistributor mdd = getTestDistributor();
@@ -49,4 +77,86 @@ public class MarketDataDistributorTest {
     assertEquals(1, mdd.getNumMessagesSent());
   }
   
+  @Test
+  public void conflation() {
+    final List<LiveDataValueUpdateBean> sent = new ArrayList<LiveDataValueUpdateBean>();
+    MarketDataDistributor mdd = getTestDistributor(sent);
+    // Long enough that the conflator won't publish during the test
+    MarketDataConflator conflator = new MarketDataConflator(3600000L);
+    try {
+      mdd.setConflator(conflator);
+      assertEquals(3600000L, mdd.getConflationInterval());
+      
+      MutableFudgeMsg msg = FudgeContext.GLOBAL_DEFAULT.newMessage();
+      msg.add("BID", 1.0);
+      msg.add("ASK", 2.0);
+      mdd.distributeLiveData(msg);
+      msg = FudgeContext.GLOBAL_DEFAULT.newMessage();
+      msg.add("BID", 1.5);
+      mdd.distributeLiveData(msg);
+      assertEquals(0, sent.size());
+      assertEquals(2, mdd.getNumTicksReceived());
+      
+      mdd.publishConflated();
+      assertEquals(1, sent.size());
+      assertEquals(1.5, sent.get(0).getFields().getDouble("BID"));
+      assertEquals(2.0, sent.get(0).getFields().getDouble("ASK"));
+      assertEquals(1, mdd.getNumMessagesSent());
+      assertEquals(2, conflator.getNumTicksReceived());
+      assertEquals(1, conflator.getNumUpdatesSent());
+      
+      // Nothing more to send
+      mdd.publishConflated();
+      assertEquals(1, sent.size());
+    } finally {
+      conflator.shutdown();
+    }
+  }
+  
+  @Test
+  public void conflatorShutdownPublishesPending() {
+    final List<LiveDataValueUpdateBean> sent = new ArrayList<LiveDataValueUpdateBean>();
+    MarketDataDistributor mdd = getTestDistributor(sent);
+    MarketDataConflator conflator = new MarketDataConflator(3600000L);
+    try {
+      mdd.setConflator(conflator);
+      MutableFudgeMsg msg = FudgeContext.GLOBAL_DEFAULT.newMessage();
+      msg.add("BID", 1.0);
+      mdd.distributeLiveData(msg);
+      assertEquals(0, sent.size());
+
+      conflator.shutdown();
+      assertEquals(1, sent.size());
+      assertEquals(1.0, sent.get(0).getFields().getDouble("BID"));
+
+      // Conflation resumes after the shutdown
+      msg = FudgeContext.GLOBAL_DEFAULT.newMessage();
+      msg.add("BID", 1.5);
+      mdd.distributeLiveData(msg);
+      assertEquals(1, sent.size());
+      mdd.publishConflated();
+      assertEquals(2, sent.size());
+    } finally {
+      conflator.shutdown();
+    }
+  }
+
+  @Test
+  public void timestamps() {
+    final List<LiveDataValueUpdateBean> sent = new ArrayList<LiveDataValueUpdateBean>();
+    MarketDataDistributor mdd = getTestDistributor(sent);
+    MutableFudgeMsg msg = FudgeContext.GLOBAL_DEFAULT.newMessage();
+    msg.add("BID", 1.0);
+    mdd.distributeLiveData(msg);
+    assertEquals(0, sent.get(0).getTimestamp());
+    assertEquals(0, LiveDataValueUpdateBean.fromFudgeMsg(sent.get(0).toFudgeMsg(FudgeContext.GLOBAL_DEFAULT)).getTimestamp());
+    
+    mdd.setTimestampUpdates(true);
+    long before = LatencyClock.currentTimeNanos();
+    mdd.distributeLiveData(msg);
+    long timestamp = sent.get(1).getTimestamp();
+    assertTrue(timestamp >= before && timestamp <= LatencyClock.currentTimeNanos());
+    assertEquals(timestamp, LiveDataValueUpdateBean.fromFudgeMsg(sent.get(1).toFudgeMsg(FudgeContext.GLOBAL_DEFAULT)).getTimestamp());
+  }
+  
 }
@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.livedata.server.simulation;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.StringReader;
+
+import org.fudgemsg.FudgeMsg;
+import org.testng.annotations.Test;
+
+import com.opengamma.id.IdentificationScheme;
+import com.opengamma.util.fudgemsg.OpenGammaFudgeContext;
+
+/**
+ * Tests {@link SimulatedLiveDataServer} and its generators.
+ */
+@Test
+public class SimulatedLiveDataServerTest {
+
+  private static final IdentificationScheme DOMAIN = IdentificationScheme.of("test");
+
+  private static final String RECORDING =
+      "# A recording\n" +
+      "A,BID=1.5,ASK=1.75\n" +
+      "B,LAST=10\n" +
+      "\n" +
+      "A,BID=1.6,EXCHANGE=XLON\n";
+
+  public void tickOnRequest() {
+    SimulatedLiveDataServer server = new SimulatedLiveDataServer(DOMAIN, new RandomWalkMarketDataGenerator(0, "BID", "ASK"), 0);
+    server.connect();
+    try {
+      server.subscribe("A", false);
+      assertNull(server.tick("B"));
+
+      FudgeMsg tick = server.tick("A");
+      assertNotNull(tick);
+      FudgeMsg lastKnownValues = server.getMarketDataDistributor("A").getSnapshot().getFields();
+      assertEquals(tick.getDouble("BID"), lastKnownValues.getDouble("BID"), 0.0);
+      assertEquals(tick.getDouble("ASK"), lastKnownValues.getDouble("ASK"), 0.0);
+    } finally {
+      server.disconnect();
+    }
+  }
+
+  public void ticksAtRate() throws InterruptedException {
+    SimulatedLiveDataServer server = new SimulatedLiveDataServer(DOMAIN, new RandomWalkMarketDataGenerator(0, "BID"), 1000);
+    server.connect();
+    try {
+      server.subscribe("A", false);
+      server.subscribe("B", false);
+      long timeout = System.currentTimeMillis() + 10000;
+      while (server.getMarketDataDistributor("A").getNumTicksReceived() < 50 || server.getMarketDataDistributor("B").getNumTicksReceived() < 50) {
+        assertTrue(System.currentTimeMillis() < timeout);
+        Thread.sleep(10);
+      }
+    } finally {
+      server.disconnect();
+    }
+  }
+
+  public void randomWalkRepeatable() {
+    RandomWalkMarketDataGenerator generator1 = new RandomWalkMarketDataGenerator(42, "BID", "ASK");
+    RandomWalkMarketDataGenerator generator2 = new RandomWalkMarketDataGenerator(42, "BID", "ASK");
+    assertEquals(generator1.getSnapshot("A").getDouble("BID"), generator2.getSnapshot("A").getDouble("BID"), 0.0);
+    for (int i = 0; i < 10; i++) {
+      FudgeMsg tick1 = generator1.nextTick("A");
+      FudgeMsg tick2 = generator2.nextTick("A");
+      assertEquals(tick1.getDouble("BID"), tick2.getDouble("BID"), 0.0);
+      assertEquals(tick1.getDouble("ASK"), tick2.getDouble("ASK"), 0.0);
+      assertTrue(tick1.getDouble("BID") > 0);
+    }
+  }
+
+  public void replay() {
+    ReplayMarketDataGenerator generator = new ReplayMarketDataGenerator(OpenGammaFudgeContext.getInstance(), new StringReader(RECORDING), false);
+    assertEquals(1.5, generator.getSnapshot("A").getDouble("BID"), 0.0);
+    assertEquals(0, generator.getSnapshot("C").getNumFields());
+
+    assertEquals(1.75, generator.nextTick("A").getDouble("ASK"), 0.0);
+    FudgeMsg tick = generator.nextTick("A");
+    assertEquals(1.6, tick.getDouble("BID"), 0.0);
+    assertEquals("XLON", tick.getString("EXCHANGE"));
+    assertNull(generator.nextTick("A"));
+    assertNull(generator.nextTick("C"));
+
+    FudgeMsg snapshot = generator.getSnapshot("A");
+    assertEquals(1.6, snapshot.getDouble("BID"), 0.0);
+    assertEquals(1.75, snapshot.getDouble("ASK"), 0.0);
+    assertEquals("XLON", snapshot.getString("EXCHANGE"));
+  }
+
+  public void replayLoop() {
+    ReplayMarketDataGenerator generator = new ReplayMarketDataGenerator(OpenGammaFudgeContext.getInstance(), new StringReader(RECORDING), true);
+    for (int i = 0; i < 3; i++) {
+      assertEquals(10.0, generator.nextTick("B").getDouble("LAST"), 0.0);
+    }
+  }
+
+}
@@ -0,0 +1,806 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.master.timeseries.impl;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.time.calendar.LocalDate;
+import javax.time.calendar.format.CalendricalParseException;
+
+import org.apache.commons.lang.StringUtils;
+import org.fudgemsg.FudgeContext;
+import org.fudgemsg.FudgeField;
+import org.fudgemsg.FudgeMsg;
+import org.fudgemsg.MutableFudgeMsg;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opengamma.DataNotFoundException;
+import com.opengamma.id.Identifier;
+import com.opengamma.id.IdentifierBundle;
+import com.opengamma.id.IdentifierBundleWithDates;
+import com.opengamma.id.IdentifierWithDates;
+import com.opengamma.id.UniqueIdentifier;
+import com.opengamma.master.timeseries.DataFieldBean;
+import com.opengamma.master.timeseries.DataPointDocument;
+import com.opengamma.master.timeseries.DataProviderBean;
+import com.opengamma.master.timeseries.DataSourceBean;
+import com.opengamma.master.timeseries.ObservationTimeBean;
+import com.opengamma.master.timeseries.SchemeBean;
+import com.opengamma.master.timeseries.TimeSeriesDocument;
+import com.opengamma.master.timeseries.TimeSeriesMaster;
+import com.opengamma.master.timeseries.TimeSeriesSearchHistoricRequest;
+import com.opengamma.master.timeseries.TimeSeriesSearchHistoricResult;
+import com.opengamma.master.timeseries.TimeSeriesSearchRequest;
+import com.opengamma.master.timeseries.TimeSeriesSearchResult;
+import com.opengamma.util.ArgumentChecker;
+import com.opengamma.util.db.Paging;
+import com.opengamma.util.fudgemsg.OpenGammaFudgeContext;
+import com.opengamma.util.time.DateUtil;
+import com.opengamma.util.timeseries.DoubleTimeSeries;
+import com.opengamma.util.timeseries.DoubleTimeSeriesOperators;
+import com.opengamma.util.timeseries.fast.DateTimeNumericEncoding;
+import com.opengamma.util.timeseries.fast.integer.FastIntDoubleTimeSeries;
+import com.opengamma.util.timeseries.fast.integer.IntDoubleTimeSeriesBlockCodec;
+import com.opengamma.util.timeseries.localdate.ArrayLocalDateDoubleTimeSeries;
+import com.opengamma.util.timeseries.localdate.LocalDateEpochDaysConverter;
+import com.opengamma.util.timeseries.localdate.MapLocalDateDoubleTimeSeries;
+import com.opengamma.util.tuple.Pair;
+
+/**
+ * A time-series master storing data points in a local, memory-mapped file of compressed columns.
+ * <p>
+ * Each time-series is stored as one record holding its description and a block of its data points,
+ * encoded by {@link IntDoubleTimeSeriesBlockCodec}. Records are only ever appended: replacing a
+ * time-series appends a new record, and removing it appends a marker. Appending, adding or updating
+ * data points appends a delta record holding just those points, which is merged with the earlier
+ * records of the time-series when it is read. Once a time-series has {@value #MAX_DELTAS} delta
+ * records the next change writes the merged time-series as a new record instead, bounding the
+ * work of a read.
+ * The file is scanned when the master is created, keeping the descriptions and the locations of
+ * the latest records in memory, and data points are decoded from the mapped file only when read.
+ * Searches with a date range decode only the points up to the end of the range.
+ * <p>
+ * Replaced records stay in the file until it is rewritten with {@link #compact(File)}.
+ * Data sources, providers, fields, observation times and schemes are not supported.
+ */
+public class ColumnarLocalDateTimeSeriesMaster implements TimeSeriesMaster<LocalDate> {
+
+  /** Logger. */
+  private static final Logger s_logger = LoggerFactory.getLogger(ColumnarLocalDateTimeSeriesMaster.class);
+
+  /**
+   * The default scheme used for each {@link UniqueIdentifier}.
+   */
+  public static final String DEFAULT_UID_SCHEME = "TssColumnar";
+
+  private static final byte SERIES_RECORD = 1;
+  private static final byte REMOVED_RECORD = 2;
+  private static final byte DELTA_RECORD = 3;
+  /**
+   * The number of delta records a time-series can have before the next change rewrites it.
+   */
+  static final int MAX_DELTAS = 32;
+  /**
+   * The length of a record header: the record length, the record type and the description length.
+   */
+  private static final int RECORD_HEADER_LENGTH = 9;
+
+  private static final String UNIQUE_ID_FIELD = "uniqueId";
+  private static final String IDENTIFIER_FIELD = "identifier";
+  private static final String VALID_FROM_FIELD = "validFrom";
+  private static final String VALID_TO_FIELD = "validTo";
+  private static final String DATA_SOURCE_FIELD = "dataSource";
+  private static final String DATA_PROVIDER_FIELD = "dataProvider";
+  private static final String DATA_FIELD_FIELD = "dataField";
+  private static final String OBSERVATION_TIME_FIELD = "observationTime";
+
+  private static final LocalDateEpochDaysConverter s_converter = new LocalDateEpochDaysConverter();
+  private static final DateTimeNumericEncoding ENCODING = DateTimeNumericEncoding.DATE_EPOCH_DAYS;
+
+  /**
+   * The file holding the records.
+   */
+  private final TimeSeriesBlockFile _file;
+  /**
+   * The latest record of each time-series, by unique identifier.
+   */
+  private final ConcurrentHashMap<UniqueIdentifier, Entry> _entries = new ConcurrentHashMap<UniqueIdentifier, Entry>();
+  /**
+   * The next unique identifier value.
+   */
+  private final AtomicLong _nextId = new AtomicLong(1);
+
+  /**
+   * Creates a master reading and writing the given file, creating it if it doesn't exist.
+   *
+   * @param file  the file, not null
+   */
+  public ColumnarLocalDateTimeSeriesMaster(final File file) {
+    ArgumentChecker.notNull(file, "file");
+    _file = new TimeSeriesBlockFile(file);
+    load();
+  }
+
+  private void load() {
+    final long size = _file.getSize();
+    long offset = 0;
+    while (offset + RECORD_HEADER_LENGTH <= size) {
+      final ByteBuffer header = _file.read(offset, RECORD_HEADER_LENGTH);
+      final int length = header.getInt(0);
+      if ((length < RECORD_HEADER_LENGTH - 4) || (offset + 4 + length > size)) {
+        break;
+      }
+      final ByteBuffer record = _file.read(offset, 4 + length);
+      final Entry entry = readEntry(record, offset);
+      final UniqueIdentifier uniqueId = entry.getMetadata().getUniqueId();
+      final byte type = record.get(4);
+      if (type == REMOVED_RECORD) {
+        _entries.remove(uniqueId);
+      } else if (type == DELTA_RECORD) {
+        final Entry previous = _entries.get(uniqueId);
+        if (previous != null) {
+          _entries.put(uniqueId, previous.withDelta(entry));
+        }
+      } else {
+        _entries.put(uniqueId, entry);
+      }
+      final long id = Long.parseLong(uniqueId.getValue());
+      if (id >= _nextId.get()) {
+        _nextId.set(id + 1);
+      }
+      offset += 4 + length;
+    }
+    if (offset < size) {
+      s_logger.warn("Discarding {} bytes of incomplete record at the end of {}", size - offset, _file.getFile());
+      _file.truncate(offset);
+    }
+    s_logger.info("Loaded {} time-series from {}", _entries.size(), _file.getFile());
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Writes the current time-series to a new file, leaving out replaced and removed ones.
+   * <p>
+   * A master can then be created from the new file in place of this one.
+   *
+   * @param target  the file to write, not null
+   */
+  public void compact(final File target) {
+    ArgumentChecker.notNull(target, "target");
+    final TimeSeriesBlockFile compacted = new TimeSeriesBlockFile(target);
+    try {
+      compacted.truncate(0);
+      for (Entry entry : _entries.values()) {
+        if (entry.getDeltaCount() == 0) {
+          compacted.append(_file.read(entry.getRecordOffset(), entry.getRecordLength()));
+        } else {
+          compacted.append(createRecord(SERIES_RECORD, entry.getMetadata(), readFastSeries(entry, Integer.MIN_VALUE, Integer.MAX_VALUE)));
+        }
+      }
+      compacted.force();
+    } finally {
+      compacted.close();
+    }
+  }
+
+  /**
+   * Forces changes to the storage device.
+   */
+  public void flush() {
+    _file.force();
+  }
+
+  /**
+   * Closes the file.
+   */
+  public void close() {
+    _file.close();
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public DataSourceBean getOrCreateDataSource(String dataSource, String description) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public List<DataSourceBean> getDataSources() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public DataProviderBean getOrCreateDataProvider(String dataProvider, String description) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public List<DataProviderBean> getDataProviders() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public DataFieldBean getOrCreateDataField(String field, String description) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public List<DataFieldBean> getDataFields() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public ObservationTimeBean getOrCreateObservationTime(String observationTime, String description) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public List<ObservationTimeBean> getObservationTimes() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public SchemeBean getOrCreateScheme(String scheme, String descrption) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public List<SchemeBean> getSchemes() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public List<IdentifierBundleWithDates> getAllIdentifiers() {
+    final List<IdentifierBundleWithDates> result = new ArrayList<IdentifierBundleWithDates>();
+    for (Entry entry : _entries.values()) {
+      result.add(entry.getMetadata().getIdentifiers());
+    }
+    return result;
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public TimeSeriesSearchResult<LocalDate> searchTimeSeries(final TimeSeriesSearchRequest<LocalDate> request) {
+    ArgumentChecker.notNull(request, "request");
+    Collection<Entry> entries = _entries.values();
+    if (request.getTimeSeriesId() != null) {
+      entries = Collections.singleton(getEntry(request.getTimeSeriesId()));
+    }
+    final int startTime = (request.getStart() != null) ? s_converter.convertToInt(request.getStart()) : Integer.MIN_VALUE;
+    final int endTime = (request.getEnd() != null) ? s_converter.convertToInt(request.getEnd()) : Integer.MAX_VALUE;
+    final List<TimeSeriesDocument<LocalDate>> documents = new ArrayList<TimeSeriesDocument<LocalDate>>();
+    for (Entry entry : entries) {
+      final TimeSeriesDocument<LocalDate> metadata = entry.getMetadata();
+      if (matches(request, metadata)) {
+        final TimeSeriesDocument<LocalDate> document = copyMetadata(metadata);
+        if (request.isLoadDates() && !entry.isEmpty()) {
+          document.setEarliest(s_converter.convertFromInt(entry.getEarliestTime()));
+          document.setLatest(s_converter.convertFromInt(entry.getLatestTime()));
+        }
+        if (request.isLoadTimeSeries()) {
+          document.setTimeSeries(new ArrayLocalDateDoubleTimeSeries(readFastSeries(entry, startTime, endTime)));
+        }
+        documents.add(document);
+      }
+    }
+    final TimeSeriesSearchResult<LocalDate> result = new TimeSeriesSearchResult<LocalDate>();
+    result.getDocuments().addAll(documents);
+    result.setPaging(Paging.of(documents));
+    return result;
+  }
+
+  private static boolean matches(final TimeSeriesSearchRequest<LocalDate> request, final TimeSeriesDocument<LocalDate> metadata) {
+    if ((request.getDataField() != null) && !request.getDataField().equals(metadata.getDataField())) {
+      return false;
+    }
+    if ((request.getDataProvider() != null) && !request.getDataProvider().equals(metadata.getDataProvider())) {
+      return false;
+    }
+    if ((request.getDataSource() != null) && !request.getDataSource().equals(metadata.getDataSource())) {
+      return false;
+    }
+    if ((request.getObservationTime() != null) && !request.getObservationTime().equals(metadata.getObservationTime())) {
+      return false;
+    }
+    if ((request.getIdentifiers() != null) && !request.getIdentifiers().isEmpty() && !matchesIdentifiers(request, metadata.getIdentifiers())) {
+      return false;
+    }
+    if (request.getIdentifierValue() != null) {
+      for (Identifier identifier : metadata.getIdentifiers().asIdentifierBundle().getIdentifiers()) {
+        if (request.getIdentifierValue().equals(identifier.getValue())) {
+          return true;
+        }
+      }
+      return false;
+    }
+    return true;
+  }
+
+  private static boolean matchesIdentifiers(final TimeSeriesSearchRequest<LocalDate> request, final IdentifierBundleWithDates bundleWithDates) {
+    final List<Identifier> requestIdentifiers = request.getIdentifiers();
+    final LocalDate currentDate = request.getCurrentDate();
+    for (IdentifierWithDates idWithDates : bundleWithDates) {
+      if (requestIdentifiers.contains(idWithDates.asIdentifier())) {
+        if (currentDate == null) {
+          return true;
+        }
+        final LocalDate validFrom = idWithDates.getValidFrom();
+        final LocalDate validTo = idWithDates.getValidTo();
+        if (validFrom == null && validTo != null) {
+          return !currentDate.isAfter(validTo);
+        }
+        if (validFrom != null && validTo == null) {
+          return !currentDate.isBefore(validFrom);
+        }
+        if (validFrom != null && validTo != null) {
+          return !currentDate.isBefore(validFrom) && !currentDate.isAfter(validTo);
+        }
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public TimeSeriesDocument<LocalDate> getTimeSeries(final UniqueIdentifier uniqueId) {
+    final Entry entry = getEntry(uniqueId);
+    final TimeSeriesDocument<LocalDate> document = copyMetadata(entry.getMetadata());
+    document.setTimeSeries(readTimeSeries(entry));
+    return document;
+  }
+
+  @Override
+  public synchronized TimeSeriesDocument<LocalDate> addTimeSeries(final TimeSeriesDocument<LocalDate> document) {
+    validateTimeSeriesDocument(document);
+    if (contains(document)) {
+      throw new IllegalArgumentException("cannot add duplicate TimeSeries for identifiers " + document.getIdentifiers());
+    }
+    final UniqueIdentifier uniqueId = UniqueIdentifier.of(DEFAULT_UID_SCHEME, Long.toString(_nextId.getAndIncrement()));
+    final TimeSeriesDocument<LocalDate> metadata = copyMetadata(document);
+    metadata.setUniqueId(uniqueId);
+    write(metadata, document.getTimeSeries());
+    document.setUniqueId(uniqueId);
+    return document;
+  }
+
+  private void validateTimeSeriesDocument(final TimeSeriesDocument<LocalDate> document) {
+    ArgumentChecker.notNull(document, "timeseries document");
+    ArgumentChecker.notNull(document.getTimeSeries(), "Timeseries");
+    ArgumentChecker.notNull(document.getIdentifiers(), "identifiers");
+    ArgumentChecker.isTrue(!document.getIdentifiers().asIdentifierBundle().getIdentifiers().isEmpty(), "cannot add timeseries with empty identifiers");
+    ArgumentChecker.isTrue(!StringUtils.isBlank(document.getDataSource()), "cannot add timeseries with blank dataSource");
+    ArgumentChecker.isTrue(!StringUtils.isBlank(document.getDataProvider()), "cannot add timeseries with blank dataProvider");
+    ArgumentChecker.isTrue(!StringUtils.isBlank(document.getDataField()), "cannot add timeseries with blank field");
+    ArgumentChecker.isTrue(!StringUtils.isBlank(document.getObservationTime()), "cannot add timeseries with blank observationTime");
+  }
+
+  private boolean contains(final TimeSeriesDocument<LocalDate> document) {
+    for (IdentifierWithDates identifierWithDates : document.getIdentifiers()) {
+      final UniqueIdentifier uniqueId = resolveIdentifier(IdentifierBundle.of(identifierWithDates.asIdentifier()), identifierWithDates.getValidFrom(),
+          document.getDataSource(), document.getDataProvider(), document.getDataField());
+      if (uniqueId != null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public synchronized TimeSeriesDocument<LocalDate> updateTimeSeries(final TimeSeriesDocument<LocalDate> document) {
+    ArgumentChecker.notNull(document, "document");
+    ArgumentChecker.notNull(document.getTimeSeries(), "document.timeseries");
+    ArgumentChecker.notNull(document.getDataField(), "document.dataField");
+    ArgumentChecker.notNull(document.getDataProvider(), "document.dataProvider");
+    ArgumentChecker.notNull(document.getDataSource(), "document.dataSource");
+    ArgumentChecker.notNull(document.getObservationTime(), "document.observationTime");
+    ArgumentChecker.notNull(document.getUniqueId(), "document.uniqueId");
+    getEntry(document.getUniqueId());
+    write(copyMetadata(document), document.getTimeSeries());
+    return document;
+  }
+
+  @Override
+  public synchronized void removeTimeSeries(final UniqueIdentifier uniqueId) {
+    final Entry entry = getEntry(uniqueId);
+    final TimeSeriesDocument<LocalDate> marker = new TimeSeriesDocument<LocalDate>();
+    marker.setUniqueId(entry.getMetadata().getUniqueId());
+    final byte[] metadata = toMetadataBytes(marker);
+    final ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_LENGTH + metadata.length);
+    record.putInt(RECORD_HEADER_LENGTH - 4 + metadata.length).put(REMOVED_RECORD).putInt(metadata.length).put(metadata);
+    record.flip();
+    _file.append(record);
+    _entries.remove(uniqueId);
+  }
+
+  @Override
+  public TimeSeriesSearchHistoricResult<LocalDate> searchHistoric(final TimeSeriesSearchHistoricRequest request) {
+    ArgumentChecker.notNull(request, "request");
+    ArgumentChecker.notNull(request.getTimeSeriesId(), "request.timeseriesId");
+    final TimeSeriesSearchHistoricResult<LocalDate> result = new TimeSeriesSearchHistoricResult<LocalDate>();
+    result.getDocuments().add(getTimeSeries(request.getTimeSeriesId()));
+    result.setPaging(Paging.of(result.getDocuments()));
+    return result;
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public DataPointDocument<LocalDate> getDataPoint(final UniqueIdentifier uniqueId) {
+    final Pair<Long, LocalDate> uniqueIdPair = validateAndGetDataPointId(uniqueId);
+    final UniqueIdentifier timeSeriesId = UniqueIdentifier.of(DEFAULT_UID_SCHEME, String.valueOf(uniqueIdPair.getFirst()));
+    final int time = s_converter.convertToInt(uniqueIdPair.getSecond());
+    final FastIntDoubleTimeSeries point = readFastSeries(getEntry(timeSeriesId), time, time);
+    final DataPointDocument<LocalDate> result = new DataPointDocument<LocalDate>();
+    result.setDate(uniqueIdPair.getSecond());
+    result.setTimeSeriesId(timeSeriesId);
+    result.setDataPointId(uniqueId);
+    result.setValue(point.isEmpty() ? null : point.getEarliestValueFast());
+    return result;
+  }
+
+  @Override
+  public synchronized DataPointDocument<LocalDate> addDataPoint(final DataPointDocument<LocalDate> document) {
+    ArgumentChecker.notNull(document, "dataPoint document");
+    ArgumentChecker.notNull(document.getDate(), "data point date");
+    ArgumentChecker.notNull(document.getValue(), "data point value");
+    final UniqueIdentifier timeSeriesId = document.getTimeSeriesId();
+    final Entry entry = getEntry(timeSeriesId);
+    final MapLocalDateDoubleTimeSeries point = new MapLocalDateDoubleTimeSeries();
+    point.putDataPoint(document.getDate(), document.getValue());
+    writeDelta(entry, point, false);
+    final String uniqueId = new StringBuilder(timeSeriesId.getValue()).append("/").append(DateUtil.printYYYYMMDD(document.getDate())).toString();
+    document.setDataPointId(UniqueIdentifier.of(DEFAULT_UID_SCHEME, uniqueId));
+    return document;
+  }
+
+  @Override
+  public synchronized DataPointDocument<LocalDate> updateDataPoint(final DataPointDocument<LocalDate> document) {
+    ArgumentChecker.notNull(document, "dataPoint document");
+    ArgumentChecker.notNull(document.getDate(), "data point date");
+    ArgumentChecker.notNull(document.getValue(), "data point value");
+    final Entry entry = getEntry(document.getTimeSeriesId());
+    final MapLocalDateDoubleTimeSeries point = new MapLocalDateDoubleTimeSeries();
+    point.putDataPoint(document.getDate(), document.getValue());
+    writeDelta(entry, point, true);
+    return document;
+  }
+
+  @Override
+  public synchronized void removeDataPoint(final UniqueIdentifier uniqueId) {
+    final Pair<Long, LocalDate> uniqueIdPair = validateAndGetDataPointId(uniqueId);
+    final Entry entry = getEntry(UniqueIdentifier.of(DEFAULT_UID_SCHEME, String.valueOf(uniqueIdPair.getFirst())));
+    final MapLocalDateDoubleTimeSeries mutableTS = new MapLocalDateDoubleTimeSeries(readTimeSeries(entry));
+    mutableTS.removeDataPoint(uniqueIdPair.getSecond());
+    write(entry.getMetadata(), mutableTS);
+  }
+
+  private Pair<Long, LocalDate> validateAndGetDataPointId(final UniqueIdentifier uniqueId) {
+    ArgumentChecker.notNull(uniqueId, "DataPoint UID");
+    ArgumentChecker.isTrue(uniqueId.getScheme().equals(DEFAULT_UID_SCHEME), "UID not " + DEFAULT_UID_SCHEME);
+    ArgumentChecker.isTrue(uniqueId.getValue() != null, "Uid value cannot be null");
+    final String[] tokens = StringUtils.split(uniqueId.getValue(), '/');
+    if (tokens.length != 2) {
+      throw new IllegalArgumentException("UID not expected format<12345/date> " + uniqueId);
+    }
+    try {
+      return Pair.of(Long.parseLong(tokens[0]), DateUtil.toLocalDate(tokens[1]));
+    } catch (NumberFormatException ex) {
+      throw new IllegalArgumentException("UID not expected format<12345/date> " + uniqueId, ex);
+    } catch (CalendricalParseException ex) {
+      throw new IllegalArgumentException("UID not expected format<12345/date> " + uniqueId, ex);
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public synchronized void appendTimeSeries(final TimeSeriesDocument<LocalDate> document) {
+    ArgumentChecker.notNull(document, "document");
+    ArgumentChecker.notNull(document.getIdentifiers(), "identifiers");
+    ArgumentChecker.notNull(document.getDataSource(), "dataSource");
+    ArgumentChecker.notNull(document.getDataProvider(), "dataProvider");
+    ArgumentChecker.notNull(document.getDataField(), "dataField");
+    final Entry entry = getEntry(document.getUniqueId());
+    writeDelta(entry, document.getTimeSeries(), false);
+  }
+
+  @Override
+  public synchronized void removeDataPoints(final UniqueIdentifier timeSeriesUid, final LocalDate firstDateToRetain) {
+    ArgumentChecker.notNull(firstDateToRetain, "firstDateToRetain");
+    final Entry entry = getEntry(timeSeriesUid);
+    final FastIntDoubleTimeSeries retained = readFastSeries(entry, s_converter.convertToInt(firstDateToRetain), Integer.MAX_VALUE);
+    write(entry.getMetadata(), new ArrayLocalDateDoubleTimeSeries(retained));
+  }
+
+  //-------------------------------------------------------------------------
+  @Override
+  public UniqueIdentifier resolveIdentifier(IdentifierBundle securityBundle, String dataSource, String dataProvider, String dataField) {
+    return resolveIdentifier(securityBundle, (LocalDate) null, dataSource, dataProvider, dataField);
+  }
+
+  @Override
+  public UniqueIdentifier resolveIdentifier(IdentifierBundle securityBundle, LocalDate currentDate, String dataSource, String dataProvider, String dataField) {
+    ArgumentChecker.notNull(securityBundle, "securityBundle");
+    ArgumentChecker.notNull(dataSource, "dataSource");
+    ArgumentChecker.notNull(dataProvider, "dataProvider");
+    ArgumentChecker.notNull(dataField, "dataField");
+    for (Map.Entry<UniqueIdentifier, Entry> mapEntry : _entries.entrySet()) {
+      final TimeSeriesDocument<LocalDate> tsDoc = mapEntry.getValue().getMetadata();
+      if (tsDoc.getDataSource().equals(dataSource) && tsDoc.getDataProvider().equals(dataProvider) && tsDoc.getDataField().equals(dataField)) {
+        for (IdentifierWithDates idWithDates : tsDoc.getIdentifiers()) {
+          if (securityBundle.contains(idWithDates.asIdentifier())) {
+            final LocalDate validFrom = idWithDates.getValidFrom();
+            final LocalDate validTo = idWithDates.getValidTo();
+            if (currentDate != null) {
+              if (currentDate.equals(validFrom) || (currentDate.isAfter(validFrom) && currentDate.isBefore(validTo)) || currentDate.equals(validTo)) {
+                return mapEntry.getKey();
+              }
+            } else {
+              return mapEntry.getKey();
+            }
+          }
+        }
+      }
+    }
+    return null;
+  }
+
+  //-------------------------------------------------------------------------
+  private Entry getEntry(final UniqueIdentifier uniqueId) {
+    ArgumentChecker.notNull(uniqueId, "TimeSeries UID");
+    ArgumentChecker.isTrue(uniqueId.getScheme().equals(DEFAULT_UID_SCHEME), "UID not " + DEFAULT_UID_SCHEME);
+    final Entry entry = _entries.get(uniqueId);
+    if (entry == null) {
+      throw new DataNotFoundException("Timeseries not found: " + uniqueId);
+    }
+    return entry;
+  }
+
+  /**
+   * Decodes the points of a time-series between two times, inclusive, merging its delta records
+   * over its latest full record.
+   */
+  private FastIntDoubleTimeSeries readFastSeries(final Entry entry, final int startTime, final int endTime) {
+    FastIntDoubleTimeSeries result = IntDoubleTimeSeriesBlockCodec.decode(_file.read(entry.getBlockOffset(0), entry.getBlockLength(0)), ENCODING, startTime, endTime);
+    for (int i = 1; i <= entry.getDeltaCount(); i++) {
+      final FastIntDoubleTimeSeries delta = IntDoubleTimeSeriesBlockCodec.decode(_file.read(entry.getBlockOffset(i), entry.getBlockLength(i)), ENCODING, startTime, endTime);
+      if (!delta.isEmpty()) {
+        result = result.unionOperate(delta, DoubleTimeSeriesOperators.SECOND_OPERATOR);
+      }
+    }
+    return result;
+  }
+
+  private DoubleTimeSeries<LocalDate> readTimeSeries(final Entry entry) {
+    return new ArrayLocalDateDoubleTimeSeries(readFastSeries(entry, Integer.MIN_VALUE, Integer.MAX_VALUE));
+  }
+
+  private static FastIntDoubleTimeSeries toFastSeries(final DoubleTimeSeries<LocalDate> timeSeries) {
+    return (timeSeries instanceof ArrayLocalDateDoubleTimeSeries)
+        ? ((ArrayLocalDateDoubleTimeSeries) timeSeries).getFastSeries() : new ArrayLocalDateDoubleTimeSeries(timeSeries).getFastSeries();
+  }
+
+  /**
+   * Appends a record for a time-series, replacing any previous one.
+   */
+  private void write(final TimeSeriesDocument<LocalDate> metadata, final DoubleTimeSeries<LocalDate> timeSeries) {
+    final ByteBuffer record = createRecord(SERIES_RECORD, metadata, toFastSeries(timeSeries));
+    final long offset = _file.append(record);
+    _entries.put(metadata.getUniqueId(), readEntry(record, offset));
+  }
+
+  /**
+   * Appends a delta record holding data points for a time-series, or rewrites the time-series if it
+   * already has the maximum number of delta records.
+   *
+   * @param entry  the time-series, not null
+   * @param points  the data points, not null
+   * @param replace  true to replace existing points at the same dates, false to reject them
+   */
+  private void writeDelta(final Entry entry, final DoubleTimeSeries<LocalDate> points, final boolean replace) {
+    final FastIntDoubleTimeSeries fastPoints = toFastSeries(points);
+    if (fastPoints.isEmpty()) {
+      return;
+    }
+    if (!replace && (fastPoints.getEarliestTimeFast() <= entry.getLatestTime())) {
+      // throws if any of the points are already present
+      readTimeSeries(entry).noIntersectionOperation(points);
+    }
+    if (entry.getDeltaCount() >= MAX_DELTAS) {
+      write(entry.getMetadata(), new ArrayLocalDateDoubleTimeSeries(
+          readFastSeries(entry, Integer.MIN_VALUE, Integer.MAX_VALUE).unionOperate(fastPoints, DoubleTimeSeriesOperators.SECOND_OPERATOR)));
+      return;
+    }
+    final TimeSeriesDocument<LocalDate> marker = new TimeSeriesDocument<LocalDate>();
+    marker.setUniqueId(entry.getMetadata().getUniqueId());
+    final ByteBuffer record = createRecord(DELTA_RECORD, marker, fastPoints);
+    final long offset = _file.append(record);
+    _entries.put(marker.getUniqueId(), entry.withDelta(readEntry(record, offset)));
+  }
+
+  private static ByteBuffer createRecord(final byte type, final TimeSeriesDocument<LocalDate> metadata, final FastIntDoubleTimeSeries fastSeries) {
+    final byte[] metadataBytes = toMetadataBytes(metadata);
+    final ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_LENGTH + metadataBytes.length + IntDoubleTimeSeriesBlockCodec.maxEncodedLength(fastSeries.size()));
+    record.position(4);
+    record.put(type).putInt(metadataBytes.length).put(metadataBytes);
+    IntDoubleTimeSeriesBlockCodec.encode(fastSeries, record);
+    record.putInt(0, record.position() - 4);
+    record.flip();
+    return record;
+  }
+
+  /**
+   * Reads the description, block location and date range from a record.
+   */
+  private static Entry readEntry(final ByteBuffer record, final long offset) {
+    final int length = record.getInt(0);
+    final int metadataLength = record.getInt(5);
+    final byte[] metadataBytes = new byte[metadataLength];
+    final ByteBuffer metadata = record.duplicate();
+    metadata.position(RECORD_HEADER_LENGTH);
+    metadata.get(metadataBytes);
+    final int blockStart = RECORD_HEADER_LENGTH + metadataLength;
+    final int blockLength = 4 + length - blockStart;
+    int earliestTime = Integer.MAX_VALUE;
+    int latestTime = Integer.MIN_VALUE;
+    if (blockLength >= IntDoubleTimeSeriesBlockCodec.HEADER_LENGTH) {
+      final ByteBuffer block = record.duplicate();
+      block.position(blockStart);
+      if (IntDoubleTimeSeriesBlockCodec.getCount(block) > 0) {
+        earliestTime = IntDoubleTimeSeriesBlockCodec.getEarliestTime(block);
+        latestTime = IntDoubleTimeSeriesBlockCodec.getLatestTime(block);
+      }
+    }
+    return new Entry(fromMetadataBytes(metadataBytes), offset, 4 + length, new long[] {offset + blockStart}, new int[] {blockLength}, earliestTime, latestTime);
+  }
+
+  private static TimeSeriesDocument<LocalDate> copyMetadata(final TimeSeriesDocument<LocalDate> document) {
+    final TimeSeriesDocument<LocalDate> copy = new TimeSeriesDocument<LocalDate>();
+    copy.setUniqueId(document.getUniqueId());
+    copy.setIdentifiers(document.getIdentifiers());
+    copy.setDataSource(document.getDataSource());
+    copy.setDataProvider(document.getDataProvider());
+    copy.setDataField(document.getDataField());
+    copy.setObservationTime(document.getObservationTime());
+    return copy;
+  }
+
+  private static byte[] toMetadataBytes(final TimeSeriesDocument<LocalDate> document) {
+    final FudgeContext context = OpenGammaFudgeContext.getInstance();
+    final MutableFudgeMsg msg = context.newMessage();
+    msg.add(UNIQUE_ID_FIELD, document.getUniqueId().toFudgeMsg(context));
+    if (document.getIdentifiers() != null) {
+      for (IdentifierWithDates identifier : document.getIdentifiers()) {
+        final MutableFudgeMsg identifierMsg = identifier.asIdentifier().toFudgeMsg(context, context.newMessage());
+        if (identifier.getValidFrom() != null) {
+          identifierMsg.add(VALID_FROM_FIELD, identifier.getValidFrom());
+        }
+        if (identifier.getValidTo() != null) {
+          identifierMsg.add(VALID_TO_FIELD, identifier.getValidTo());
+        }
+        msg.add(IDENTIFIER_FIELD, identifierMsg);
+      }
+    }
+    addIfNotNull(msg, DATA_SOURCE_FIELD, document.getDataSource());
+    addIfNotNull(msg, DATA_PROVIDER_FIELD, document.getDataProvider());
+    addIfNotNull(msg, DATA_FIELD_FIELD, document.getDataField());
+    addIfNotNull(msg, OBSERVATION_TIME_FIELD, document.getObservationTime());
+    return context.toByteArray(msg);
+  }
+
+  private static void addIfNotNull(final MutableFudgeMsg msg, final String name, final String value) {
+    if (value != null) {
+      msg.add(name, value);
+    }
+  }
+
+  private static TimeSeriesDocument<LocalDate> fromMetadataBytes(final byte[] bytes) {
+    final FudgeMsg msg = OpenGammaFudgeContext.getInstance().deserialize(bytes).getMessage();
+    final TimeSeriesDocument<LocalDate> document = new TimeSeriesDocument<LocalDate>();
+    document.setUniqueId(UniqueIdentifier.fromFudgeMsg(msg.getMessage(UNIQUE_ID_FIELD)));
+    final List<IdentifierWithDates> identifiers = new ArrayList<IdentifierWithDates>();
+    for (FudgeField field : msg.getAllByName(IDENTIFIER_FIELD)) {
+      final FudgeMsg identifierMsg = (FudgeMsg) field.getValue();
+      final FudgeField validFrom = identifierMsg.getByName(VALID_FROM_FIELD);
+      final FudgeField validTo = identifierMsg.getByName(VALID_TO_FIELD);
+      identifiers.add(IdentifierWithDates.of(Identifier.fromFudgeMsg(identifierMsg),
+          (validFrom != null) ? identifierMsg.getFieldValue(LocalDate.class, validFrom) : null,
+          (validTo != null) ? identifierMsg.getFieldValue(LocalDate.class, validTo) : null));
+    }
+    if (!identifiers.isEmpty()) {
+      document.setIdentifiers(new IdentifierBundleWithDates(identifiers));
+    }
+    document.setDataSource(msg.getString(DATA_SOURCE_FIELD));
+    document.setDataProvider(msg.getString(DATA_PROVIDER_FIELD));
+    document.setDataField(msg.getString(DATA_FIELD_FIELD));
+    document.setObservationTime(msg.getString(OBSERVATION_TIME_FIELD));
+    return document;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * The description of a time-series, the location of its latest full record and the blocks of
+   * that record and of the delta records following it.
+   */
+  private static final class Entry {
+
+    private final TimeSeriesDocument<LocalDate> _metadata;
+    private final long _recordOffset;
+    private final int _recordLength;
+    private final long[] _blockOffsets;
+    private final int[] _blockLengths;
+    private final int _earliestTime;
+    private final int _latestTime;
+
+    private Entry(final TimeSeriesDocument<LocalDate> metadata, final long recordOffset, final int recordLength, final long[] blockOffsets, final int[] blockLengths,
+        final int earliestTime, final int latestTime) {
+      _metadata = metadata;
+      _recordOffset = recordOffset;
+      _recordLength = recordLength;
+      _blockOffsets = blockOffsets;
+      _blockLengths = blockLengths;
+      _earliestTime = earliestTime;
+      _latestTime = latestTime;
+    }
+
+    /**
+     * Creates an entry with the block of a delta record added.
+     */
+    private Entry withDelta(final Entry delta) {
+      final int count = _blockOffsets.length;
+      final long[] blockOffsets = Arrays.copyOf(_blockOffsets, count + 1);
+      final int[] blockLengths = Arrays.copyOf(_blockLengths, count + 1);
+      blockOffsets[count] = delta.getBlockOffset(0);
+      blockLengths[count] = delta.getBlockLength(0);
+      return new Entry(_metadata, _recordOffset, _recordLength, blockOffsets, blockLengths,
+          Math.min(_earliestTime, delta.getEarliestTime()), Math.max(_latestTime, delta.getLatestTime()));
+    }
+
+    private TimeSeriesDocument<LocalDate> getMetadata() {
+      return _metadata;
+    }
+
+    private long getRecordOffset() {
+      return _recordOffset;
+    }
+
+    private int getRecordLength() {
+      return _recordLength;
+    }
+
+    private int getDeltaCount() {
+      return _blockOffsets.length - 1;
+    }
+
+    private long getBlockOffset(final int index) {
+      return _blockOffsets[index];
+    }
+
+    private int getBlockLength(final int index) {
+      return _blockLengths[index];
+    }
+
+    private boolean isEmpty() {
+      return _earliestTime > _latestTime;
+    }
+
+    private int getEarliestTime() {
+      return _earliestTime;
+    }
+
+    private int getLatestTime() {
+      return _latestTime;
+    }
+
+  }
+
+}
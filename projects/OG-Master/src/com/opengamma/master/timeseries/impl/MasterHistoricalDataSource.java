@@ -5,19 +5,22 @@
  */
 package com.opengamma.master.timeseries.impl;
 
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import javax.time.calendar.LocalDate;
 
-import org.apache.commons.lang.NotImplementedException;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.opengamma.core.historicaldata.HistoricalDataSource;
+import com.opengamma.id.Identifier;
 import com.opengamma.id.IdentifierBundle;
+import com.opengamma.id.IdentifierWithDates;
 import com.opengamma.id.UniqueIdentifier;
 import com.opengamma.master.timeseries.TimeSeriesDocument;
 import com.opengamma.master.timeseries.TimeSeriesMaster;
@@ -240,8 +243,65 @@ public class MasterHistoricalDataSource implements HistoricalDataSource {
   public Map<IdentifierBundle, Pair<UniqueIdentifier, LocalDateDoubleTimeSeries>> getHistoricalData(
       Set<IdentifierBundle> identifierSet, String dataSource, String dataProvider, String dataField, LocalDate start,
       boolean inclusiveStart, LocalDate end, boolean exclusiveEnd) {
-    // TODO [PLAT-1046]
-    throw new NotImplementedException();
+    ArgumentChecker.notNull(identifierSet, "identifierSet");
+    ArgumentChecker.notNull(dataSource, "dataSource");
+    ArgumentChecker.notNull(dataField, "field");
+    if (start != null && !inclusiveStart) {
+      start = start.plusDays(1);
+    }
+    if (end != null && exclusiveEnd) {
+      end = end.minusDays(1);
+    }
+    
+    // one search for all the bundles, then match each time-series back to the bundles it was found for
+    Map<Identifier, Set<IdentifierBundle>> bundlesByIdentifier = new HashMap<Identifier, Set<IdentifierBundle>>();
+    TimeSeriesSearchRequest<LocalDate> request = new TimeSeriesSearchRequest<LocalDate>();
+    for (IdentifierBundle securityBundle : identifierSet) {
+      for (Identifier identifier : securityBundle.getIdentifiers()) {
+        Set<IdentifierBundle> securityBundles = bundlesByIdentifier.get(identifier);
+        if (securityBundles == null) {
+          securityBundles = new HashSet<IdentifierBundle>();
+          bundlesByIdentifier.put(identifier, securityBundles);
+        }
+        securityBundles.add(securityBundle);
+      }
+      request.getIdentifiers().addAll(securityBundle.getIdentifiers());
+    }
+    request.setDataSource(dataSource);
+    request.setDataProvider(dataProvider);
+    request.setDataField(dataField);
+    request.setStart(start);
+    request.setEnd(end);
+    request.setLoadTimeSeries(true);
+    
+    Map<IdentifierBundle, Pair<UniqueIdentifier, LocalDateDoubleTimeSeries>> result = new HashMap<IdentifierBundle, Pair<UniqueIdentifier, LocalDateDoubleTimeSeries>>();
+    if (!request.getIdentifiers().isEmpty()) {
+      TimeSeriesSearchResult<LocalDate> searchResult = getTimeSeriesMaster().searchTimeSeries(request);
+      for (TimeSeriesDocument<LocalDate> document : searchResult.getDocuments()) {
+        Set<IdentifierBundle> securityBundles = new HashSet<IdentifierBundle>();
+        for (IdentifierWithDates identifierWithDates : document.getIdentifiers()) {
+          Set<IdentifierBundle> matched = bundlesByIdentifier.get(identifierWithDates.asIdentifier());
+          if (matched != null) {
+            securityBundles.addAll(matched);
+          }
+        }
+        for (IdentifierBundle securityBundle : securityBundles) {
+          if (result.containsKey(securityBundle)) {
+            Object[] param = new Object[]{securityBundle, dataSource, dataProvider, dataField, start, end};
+            s_logger.warn("multiple timeseries return for identifiers={}, dataSource={}, dataProvider={}, dataField={}, start={} end={}", param);
+          } else {
+            result.put(securityBundle, new ObjectsPair<UniqueIdentifier, LocalDateDoubleTimeSeries>(
+                document.getUniqueId(), document.getTimeSeries().toLocalDateDoubleTimeSeries()));
+          }
+        }
+      }
+    }
+    for (IdentifierBundle securityBundle : identifierSet) {
+      if (!result.containsKey(securityBundle)) {
+        result.put(securityBundle, new ObjectsPair<UniqueIdentifier, LocalDateDoubleTimeSeries>(null, new ArrayLocalDateDoubleTimeSeries()));
+      }
+    }
+    return result;
   }
 
   //-------------------------------------------------------------------------
@@ -0,0 +1,199 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.master.timeseries.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.opengamma.OpenGammaRuntimeException;
+import com.opengamma.util.ArgumentChecker;
+
+/**
+ * An append-only file of records, read through a memory mapping.
+ * <p>
+ * Records are written at the end of the file with positional writes and never modified, so a
+ * mapping of the file stays valid as the file grows. Records appended since the file was mapped are
+ * read with positional reads until the unmapped part of the file is as large as the mapped part,
+ * when the whole file is mapped again. The file can't be mapped beyond its end without growing it,
+ * so doubling the mapping in this way bounds the number of mappings made as the file grows.
+ * Files larger than a single mapping can cover are read by mapping each record.
+ */
+final class TimeSeriesBlockFile {
+
+  private final File _file;
+  private final RandomAccessFile _randomAccessFile;
+  private final FileChannel _channel;
+  private volatile MappedByteBuffer _mapped;
+  private long _size;
+
+  /**
+   * Opens a file, creating it if it doesn't exist.
+   *
+   * @param file  the file, not null
+   */
+  TimeSeriesBlockFile(final File file) {
+    ArgumentChecker.notNull(file, "file");
+    _file = file;
+    try {
+      _randomAccessFile = new RandomAccessFile(file, "rw");
+      _channel = _randomAccessFile.getChannel();
+      _size = _channel.size();
+    } catch (IOException ex) {
+      throw new OpenGammaRuntimeException("Couldn't open " + file, ex);
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the file.
+   *
+   * @return the file, not null
+   */
+  File getFile() {
+    return _file;
+  }
+
+  /**
+   * Gets the length of the file.
+   *
+   * @return the length in bytes
+   */
+  synchronized long getSize() {
+    return _size;
+  }
+
+  /**
+   * Writes a record at the end of the file.
+   *
+   * @param record  the record, from its position to its limit, not null
+   * @return the offset of the record in the file
+   */
+  synchronized long append(final ByteBuffer record) {
+    final long offset = _size;
+    long position = offset;
+    try {
+      while (record.hasRemaining()) {
+        position += _channel.write(record, position);
+      }
+    } catch (IOException ex) {
+      throw new OpenGammaRuntimeException("Couldn't write to " + _file, ex);
+    }
+    _size = position;
+    return offset;
+  }
+
+  /**
+   * Reads part of the file.
+   *
+   * @param offset  the offset of the data
+   * @param length  the length of the data
+   * @return a buffer positioned at the data and limited to it, not null
+   */
+  ByteBuffer read(final long offset, final int length) {
+    final long end = offset + length;
+    MappedByteBuffer mapped = _mapped;
+    if ((mapped == null) || (mapped.capacity() < end)) {
+      if (end > Integer.MAX_VALUE) {
+        try {
+          return _channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        } catch (IOException ex) {
+          throw new OpenGammaRuntimeException("Couldn't read " + _file, ex);
+        }
+      }
+      mapped = remap(end);
+      if (mapped == null) {
+        return readUnmapped(offset, length);
+      }
+    }
+    final ByteBuffer buffer = mapped.duplicate();
+    buffer.limit((int) end);
+    buffer.position((int) offset);
+    return buffer.slice();
+  }
+
+  /**
+   * Maps the whole file again if the part not yet mapped is at least as large as the mapped part.
+   *
+   * @param required  the length of the file that must be mapped
+   * @return the mapping, or null if the file has not grown enough to map it again
+   */
+  private synchronized MappedByteBuffer remap(final long required) {
+    MappedByteBuffer mapped = _mapped;
+    if ((mapped == null) || (mapped.capacity() < required)) {
+      if ((mapped != null) && (_size - mapped.capacity() < mapped.capacity())) {
+        return null;
+      }
+      try {
+        mapped = _channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(_size, Integer.MAX_VALUE));
+      } catch (IOException ex) {
+        throw new OpenGammaRuntimeException("Couldn't map " + _file, ex);
+      }
+      _mapped = mapped;
+    }
+    return mapped;
+  }
+
+  private ByteBuffer readUnmapped(final long offset, final int length) {
+    final ByteBuffer buffer = ByteBuffer.allocate(length);
+    long position = offset;
+    try {
+      while (buffer.hasRemaining()) {
+        final int read = _channel.read(buffer, position);
+        if (read < 0) {
+          throw new OpenGammaRuntimeException("Unexpected end of " + _file + " at " + position);
+        }
+        position += read;
+      }
+    } catch (IOException ex) {
+      throw new OpenGammaRuntimeException("Couldn't read " + _file, ex);
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Discards the end of the file, such as a record only partly written before a failure.
+   *
+   * @param size  the length to truncate the file to
+   */
+  synchronized void truncate(final long size) {
+    try {
+      _channel.truncate(size);
+    } catch (IOException ex) {
+      throw new OpenGammaRuntimeException("Couldn't truncate " + _file, ex);
+    }
+    _size = size;
+    _mapped = null;
+  }
+
+  /**
+   * Forces written records to the storage device.
+   */
+  void force() {
+    try {
+      _channel.force(false);
+    } catch (IOException ex) {
+      throw new OpenGammaRuntimeException("Couldn't write to " + _file, ex);
+    }
+  }
+
+  /**
+   * Closes the file.
+   */
+  synchronized void close() {
+    _mapped = null;
+    try {
+      _randomAccessFile.close();
+    } catch (IOException ex) {
+      throw new OpenGammaRuntimeException("Couldn't close " + _file, ex);
+    }
+  }
+
+}
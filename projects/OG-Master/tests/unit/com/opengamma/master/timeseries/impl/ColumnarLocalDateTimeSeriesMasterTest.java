@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.master.timeseries.impl;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.File;
+import java.util.List;
+
+import javax.time.calendar.LocalDate;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import com.opengamma.DataNotFoundException;
+import com.opengamma.id.UniqueIdentifier;
+import com.opengamma.master.timeseries.DataPointDocument;
+import com.opengamma.master.timeseries.TimeSeriesDocument;
+import com.opengamma.master.timeseries.TimeSeriesMaster;
+import com.opengamma.util.time.DateUtil;
+import com.opengamma.util.timeseries.DoubleTimeSeries;
+import com.opengamma.util.timeseries.localdate.ArrayLocalDateDoubleTimeSeries;
+import com.opengamma.util.timeseries.localdate.MapLocalDateDoubleTimeSeries;
+
+/**
+ * Test ColumnarLocalDateTimeSeriesMaster.
+ */
+@Test
+public class ColumnarLocalDateTimeSeriesMasterTest extends InMemoryTimeSeriesMasterTest<LocalDate> {
+
+  private File _file;
+  private ColumnarLocalDateTimeSeriesMaster _master;
+
+  @Override
+  protected TimeSeriesMaster<LocalDate> createTimeSeriesMaster() {
+    _file = new File(System.getProperty("java.io.tmpdir"), "ColumnarLocalDateTimeSeriesMasterTest-" + System.nanoTime() + ".dat");
+    _master = new ColumnarLocalDateTimeSeriesMaster(_file);
+    return _master;
+  }
+
+  @AfterMethod
+  public void deleteFile() {
+    _master.close();
+    _file.delete();
+  }
+
+  @Override
+  protected DoubleTimeSeries<LocalDate> getTimeSeries(MapLocalDateDoubleTimeSeries tsMap) {
+    return new ArrayLocalDateDoubleTimeSeries(tsMap);
+  }
+
+  @Override
+  protected DoubleTimeSeries<LocalDate> getEmptyTimeSeries() {
+    return new ArrayLocalDateDoubleTimeSeries();
+  }
+
+  @Override
+  protected DoubleTimeSeries<LocalDate> getTimeSeries(List<LocalDate> dates, List<Double> values) {
+    return new ArrayLocalDateDoubleTimeSeries(dates, values);
+  }
+
+  @Override
+  protected LocalDate convert(LocalDate date) {
+    return date;
+  }
+
+  @Override
+  protected String print(LocalDate date) {
+    return DateUtil.printYYYYMMDD(date);
+  }
+
+  //-------------------------------------------------------------------------
+  public void reopen() throws Exception {
+    final List<TimeSeriesDocument<LocalDate>> tsList = addAndTestTimeSeries();
+    final TimeSeriesDocument<LocalDate> removed = tsList.remove(0);
+    _master.removeTimeSeries(removed.getUniqueId());
+    _master.close();
+    _master = new ColumnarLocalDateTimeSeriesMaster(_file);
+    assertEquals(tsList.size(), _master.getAllIdentifiers().size());
+    for (TimeSeriesDocument<LocalDate> tsDoc : tsList) {
+      assertEquals(tsDoc, _master.getTimeSeries(tsDoc.getUniqueId()));
+    }
+    try {
+      _master.getTimeSeries(removed.getUniqueId());
+      assertTrue(false);
+    } catch (DataNotFoundException ex) {
+      // expected
+    }
+    final UniqueIdentifier removedId = removed.getUniqueId();
+    assertTrue(!removedId.equals(_master.addTimeSeries(removed).getUniqueId()));
+  }
+
+  public void compact() throws Exception {
+    final List<TimeSeriesDocument<LocalDate>> tsList = addAndTestTimeSeries();
+    for (TimeSeriesDocument<LocalDate> tsDoc : tsList) {
+      _master.updateTimeSeries(tsDoc);
+    }
+    final File compacted = new File(_file.getPath() + ".compact");
+    try {
+      _master.compact(compacted);
+      assertTrue(compacted.length() < _file.length());
+      final ColumnarLocalDateTimeSeriesMaster master = new ColumnarLocalDateTimeSeriesMaster(compacted);
+      try {
+        for (TimeSeriesDocument<LocalDate> tsDoc : tsList) {
+          assertEquals(tsDoc, master.getTimeSeries(tsDoc.getUniqueId()));
+        }
+      } finally {
+        master.close();
+      }
+    } finally {
+      compacted.delete();
+    }
+  }
+
+  public void deltaRecords() throws Exception {
+    final TimeSeriesDocument<LocalDate> tsDoc = addAndTestTimeSeries().get(0);
+    final MapLocalDateDoubleTimeSeries expected = new MapLocalDateDoubleTimeSeries(tsDoc.getTimeSeries());
+    LocalDate date = tsDoc.getTimeSeries().getLatestTime();
+    final long length = _file.length();
+    for (int i = 0; i < 2 * ColumnarLocalDateTimeSeriesMaster.MAX_DELTAS; i++) {
+      date = date.plusDays(1);
+      final DataPointDocument<LocalDate> dataPoint = new DataPointDocument<LocalDate>();
+      dataPoint.setTimeSeriesId(tsDoc.getUniqueId());
+      dataPoint.setDate(date);
+      dataPoint.setValue((double) i);
+      if ((i % 2) == 0) {
+        _master.addDataPoint(dataPoint);
+      } else {
+        // replaces the point just added
+        dataPoint.setDate(date.minusDays(1));
+        _master.updateDataPoint(dataPoint);
+        date = date.minusDays(1);
+      }
+      expected.putDataPoint(dataPoint.getDate(), dataPoint.getValue());
+      assertEquals(new ArrayLocalDateDoubleTimeSeries(expected), _master.getTimeSeries(tsDoc.getUniqueId()).getTimeSeries());
+    }
+    // only the points were written, apart from the rewrite once the delta records reached the limit
+    assertTrue(_file.length() - length < 2 * ColumnarLocalDateTimeSeriesMaster.MAX_DELTAS * 128 + length);
+    _master.close();
+    _master = new ColumnarLocalDateTimeSeriesMaster(_file);
+    assertEquals(new ArrayLocalDateDoubleTimeSeries(expected), _master.getTimeSeries(tsDoc.getUniqueId()).getTimeSeries());
+  }
+
+}
@@ -7,18 +7,26 @@ package com.opengamma.master.timeseries.impl;
 
 
 import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.Test;
 import org.testng.annotations.BeforeMethod;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
 import javax.time.calendar.LocalDate;
 
 import com.opengamma.id.Identifier;
 import com.opengamma.id.IdentifierBundle;
+import com.opengamma.id.IdentifierBundleWithDates;
 import com.opengamma.id.UniqueIdentifier;
 import com.opengamma.master.timeseries.TimeSeriesDocument;
 import com.opengamma.master.timeseries.TimeSeriesMaster;
@@ -188,6 +196,34 @@ public class MasterHistoricalDataSourceTest {
     }
   }
 
+  @SuppressWarnings("unchecked")
+  public void getHistoricalDataForIdentifierSet() throws Exception {
+    IdentifierBundle missing = IdentifierBundle.of(Identifier.of("A", "C"));
+    Set<IdentifierBundle> identifierSet = new HashSet<IdentifierBundle>();
+    identifierSet.add(IDENTIFIERS);
+    identifierSet.add(missing);
+    
+    TimeSeriesSearchResult<LocalDate> searchResult = new TimeSeriesSearchResult<LocalDate>();
+    TimeSeriesDocument<LocalDate> tsDoc = new TimeSeriesDocument<LocalDate>();
+    tsDoc.setTimeSeries(randomTimeSeries());
+    tsDoc.setUniqueId(UID);
+    tsDoc.setIdentifiers(IdentifierBundleWithDates.of(IDENTIFIERS));
+    searchResult.getDocuments().add(tsDoc);
+    
+    when(_mockMaster.searchTimeSeries(any(TimeSeriesSearchRequest.class))).thenReturn(searchResult);
+    
+    Map<IdentifierBundle, Pair<UniqueIdentifier, LocalDateDoubleTimeSeries>> result = _tsSource.getHistoricalData(
+        identifierSet, BBG_DATA_SOURCE, CMPL_DATA_PROVIDER, CLOSE_DATA_FIELD, null, true, null, false);
+    verify(_mockMaster, times(1)).searchTimeSeries(any(TimeSeriesSearchRequest.class));
+    
+    assertEquals(2, result.size());
+    assertEquals(UID, result.get(IDENTIFIERS).getFirst());
+    assertEquals(tsDoc.getTimeSeries().times(), result.get(IDENTIFIERS).getSecond().times());
+    assertEquals(tsDoc.getTimeSeries().values(), result.get(IDENTIFIERS).getSecond().values());
+    assertNull(result.get(missing).getFirst());
+    assertTrue(result.get(missing).getSecond().isEmpty());
+  }
+
   private LocalDateDoubleTimeSeries randomTimeSeries() {
     MutableLocalDateDoubleTimeSeries dts = new ListLocalDateDoubleTimeSeries();
     LocalDate start = LocalDate.of(2000, 1, 2);
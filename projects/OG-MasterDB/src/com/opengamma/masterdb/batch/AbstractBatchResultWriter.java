@@ -7,12 +7,13 @@ package com.opengamma.masterdb.batch;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.hibernate.SessionFactory;
 import org.hibernate.StatelessSession;
@@ -40,11 +41,26 @@ import com.opengamma.util.tuple.Pair;
  * Writes risk into the OpenGamma batch risk database.
  * <p>
  * For the database structure and tables, see {@code create-db-batch.sql}.
+ * <p>
+ * Rows are inserted through {@link RowBatch} instances, which send them to the database
+ * in JDBC batches of at most {@link #getBatchSize()} rows, so the rows of a large result are
+ * never all held in memory. The caches of database keys and status entries are safe to
+ * use from several writer threads at once.
  */
 public abstract class AbstractBatchResultWriter {
   
   private static final Logger s_logger = LoggerFactory.getLogger(AbstractBatchResultWriter.class);
   
+  /**
+   * The default number of rows inserted in each JDBC batch.
+   */
+  public static final int DEFAULT_BATCH_SIZE = 1000;
+  
+  /**
+   * Cached in place of a status entry to show there is none in the DB.
+   */
+  private static final StatusEntry NO_STATUS_ENTRY = new StatusEntry();
+  
   /**
    * DB configuration
    */
@@ -68,26 +84,25 @@ public abstract class AbstractBatchResultWriter {
   /**
    * -> references rsk_value_name(id)
    */
-  private final Map<String, Integer> _riskValueName2Id = new HashMap<String, Integer>();
+  private final Map<String, Integer> _riskValueName2Id = new ConcurrentHashMap<String, Integer>();
   
   /**
    * -> references rsk_function_unique_id(id)
    */
-  private final Map<String, Integer> _functionUniqueId2Id = new HashMap<String, Integer>();
+  private final Map<String, Integer> _functionUniqueId2Id = new ConcurrentHashMap<String, Integer>();
   
   /**
    * -> references rsk_compute_node(id)
    */
-  private final Map<String, Integer> _computeNodeId2Id = 
-    Collections.synchronizedMap(new HashMap<String, Integer>());
+  private final Map<String, Integer> _computeNodeId2Id = new ConcurrentHashMap<String, Integer>();
   
   /**
    * Key is {@link StatusEntry} {_calculationConfigurationId, _computationTargetId}.
    * 
-   * null value is possible, it means no status entry in DB.
+   * {@link #NO_STATUS_ENTRY} value is possible, it means no status entry in DB.
    */
   private final Map<Pair<Integer, Integer>, StatusEntry> _searchKey2StatusEntry = 
-    Collections.synchronizedMap(new HashMap<Pair<Integer, Integer>, StatusEntry>());
+    new ConcurrentHashMap<Pair<Integer, Integer>, StatusEntry>();
   
   /**
    * We cache compute failures for performance, so that we 
@@ -95,29 +110,34 @@ public abstract class AbstractBatchResultWriter {
    * of a compute failure.
    */
   private final Map<ComputeFailureKey, ComputeFailure> _key2ComputeFailure = 
-    Collections.synchronizedMap(new HashMap<ComputeFailureKey, ComputeFailure>());
+    new ConcurrentHashMap<ComputeFailureKey, ComputeFailure>();
   
   /**
    * Used to write non-Double results into database
    */
   private final ResultConverterCache _resultConverterCache;
   
-  // Variables set in initialize()
+  /**
+   * Number of rows inserted in each JDBC batch
+   */
+  private volatile int _batchSize = DEFAULT_BATCH_SIZE;
   
   /**
-   * We use Hibernate to generate unique IDs
+   * We use Hibernate to generate unique IDs, with a session for each writer thread
    */
-  private SequenceStyleGenerator _idGenerator;
+  private final ThreadLocal<SessionImplementor> _session = new ThreadLocal<SessionImplementor>();
+  
+  // Variables set in initialize()
   
   /**
    * We use Hibernate to generate unique IDs
    */
-  private SessionImplementor _session;
+  private volatile SequenceStyleGenerator _idGenerator;
   
   /**
    * Have DB connections been set up successfully?
    */
-  private boolean _initialized; // = false;
+  private volatile boolean _initialized; // = false;
   
   public AbstractBatchResultWriter(DbSource dbSource,
       RiskRun riskRun,
@@ -159,7 +179,7 @@ public abstract class AbstractBatchResultWriter {
   
   // --------------------------------------------------------------------------
   
-  public void initialize() {
+  public synchronized void initialize() {
     SessionFactoryImplementor implementor = (SessionFactoryImplementor) getSessionFactory();
     IdentifierGenerator idGenerator = implementor.getIdentifierGenerator(RiskValue.class.getName());
     if (idGenerator == null || !(idGenerator instanceof SequenceStyleGenerator)) {
@@ -183,12 +203,18 @@ public abstract class AbstractBatchResultWriter {
   
   // --------------------------------------------------------------------------
   
+  /**
+   * Opens a new session for the calling thread.
+   */
   public void openSession() {
-    _session = (SessionImplementor) getSessionFactory().openStatelessSession();
+    _session.set((SessionImplementor) getSessionFactory().openStatelessSession());
   }
   
+  /**
+   * Uses the current session of the calling thread.
+   */
   public void joinSession() {
-    _session = (SessionImplementor) getSessionFactory().getCurrentSession();
+    _session.set((SessionImplementor) getSessionFactory().getCurrentSession());
   }
   
   /**
@@ -196,10 +222,11 @@ public abstract class AbstractBatchResultWriter {
    * joinSession will leave the session open.
    */
   public void closeSession() {
-    if (_session instanceof StatelessSession) {
-      ((StatelessSession) _session).close();
+    SessionImplementor session = _session.get();
+    if (session instanceof StatelessSession) {
+      ((StatelessSession) session).close();
     }
-    _session = null;
+    _session.remove();
   }
   
   // --------------------------------------------------------------------------
@@ -219,7 +246,7 @@ public abstract class AbstractBatchResultWriter {
   // --------------------------------------------------------------------------
 
   public long generateUniqueId() {
-    Serializable generatedId = _idGenerator.generate(_session, null);
+    Serializable generatedId = _idGenerator.generate(_session.get(), null);
     if (!(generatedId instanceof Long)) {
       throw new IllegalStateException("Got ID of type " + generatedId.getClass());
     }
@@ -358,6 +385,20 @@ public abstract class AbstractBatchResultWriter {
     return _resultConverterCache;
   }
   
+  public int getBatchSize() {
+    return _batchSize;
+  }
+  
+  /**
+   * Sets the number of rows inserted in each JDBC batch.
+   * 
+   * @param batchSize  the batch size, greater than zero
+   */
+  public void setBatchSize(int batchSize) {
+    ArgumentChecker.isTrue(batchSize > 0, "batchSize must be greater than zero");
+    _batchSize = batchSize;
+  }
+  
   //--------------------------------------------------------------------------
   
   public ComputeFailure getComputeFailureFromDb(ComputeFailureKey computeFailureKey) {
@@ -421,13 +462,31 @@ public abstract class AbstractBatchResultWriter {
     
     s_logger.info("Inserting {} {} rows into DB", rows.size(), rowType);
     
-    SqlParameterSource[] batchArgsArray = rows.toArray(new SqlParameterSource[0]);
-
-    int[] counts = getJdbcTemplate().batchUpdate(sql, batchArgsArray);
+    RowBatch batch = createRowBatch(rowType, sql);
+    for (SqlParameterSource row : rows) {
+      batch.add(row);
+    }
+    batch.flush();
 
-    checkCount(rowType, batchArgsArray, counts);
     s_logger.info("Inserted {} {} rows into DB", rows.size(), rowType);
   }
+  
+  public RowBatch createRowBatch(String rowType, String sql) {
+    return new RowBatch(rowType, sql, null);
+  }
+  
+  /**
+   * Creates a batch of rows which reference the rows of another batch.
+   * 
+   * @param rowType  the type of row, for logging
+   * @param sql  the insert SQL
+   * @param referencedBatch  the batch flushed before each flush of this one, not null
+   * @return the batch, not null
+   */
+  public RowBatch createRowBatch(String rowType, String sql, RowBatch referencedBatch) {
+    ArgumentChecker.notNull(referencedBatch, "referencedBatch");
+    return new RowBatch(rowType, sql, referencedBatch);
+  }
 
   private int checkCount(String rowType, SqlParameterSource[] batchArgsArray, int[] counts) {
     int totalCount = 0;
@@ -462,7 +521,7 @@ public abstract class AbstractBatchResultWriter {
       // in getStatus()
       Pair<Integer, Integer> key = Pair.of(calcConfId, computationTargetId);
       StatusEntry statusEntry = _searchKey2StatusEntry.get(key);
-      if (statusEntry != null) {
+      if (statusEntry != null && statusEntry != NO_STATUS_ENTRY) {
         statusEntry.setStatus(status);
         params.addValue("id", statusEntry.getId());        
         params.addValue("status", statusEntry.getStatus().ordinal());
@@ -507,9 +566,9 @@ public abstract class AbstractBatchResultWriter {
     // and if the answer could therefore be found in the cache
     
     Pair<Integer, Integer> key = Pair.of(calcConfId, computationTargetId);
-    if (_searchKey2StatusEntry.containsKey(key)) {
-      StatusEntry existingStatusEntryInDb = _searchKey2StatusEntry.get(key);
-      if (existingStatusEntryInDb != null) {
+    StatusEntry existingStatusEntryInDb = _searchKey2StatusEntry.get(key);
+    if (existingStatusEntryInDb != null) {
+      if (existingStatusEntryInDb != NO_STATUS_ENTRY) {
         // status entry in db.
         return existingStatusEntryInDb.getStatus();
       } else {
@@ -535,7 +594,7 @@ public abstract class AbstractBatchResultWriter {
 
     } catch (IncorrectResultSizeDataAccessException e) {
       // no status entry in the db. 
-      _searchKey2StatusEntry.put(key, null);
+      _searchKey2StatusEntry.put(key, NO_STATUS_ENTRY);
       return StatusEntry.Status.NOT_RUNNING;
     }
   }
@@ -601,4 +660,82 @@ public abstract class AbstractBatchResultWriter {
     }
   }
   
+  // --------------------------------------------------------------------------
+  
+  /**
+   * Rows of one type, inserted in JDBC batches as they are added.
+   * <p>
+   * The array holding the rows of a batch is reused for each batch.
+   * The rows are inserted outside the Hibernate transaction of the current session,
+   * so that transaction is committed before each batch. Otherwise the insert can block on
+   * rows it references which the session has created, such as function unique IDs.
+   * This is bad - loss of transactionality.
+   * <p>
+   * A batch is used by one thread.
+   */
+  public final class RowBatch {
+    
+    private final String _rowType;
+    private final String _sql;
+    private final RowBatch _referencedBatch;
+    private final SqlParameterSource[] _rows;
+    private int _size;
+    private int _rowCount;
+    
+    private RowBatch(String rowType, String sql, RowBatch referencedBatch) {
+      ArgumentChecker.notNull(rowType, "rowType");
+      ArgumentChecker.notNull(sql, "sql");
+      _rowType = rowType;
+      _sql = sql;
+      _referencedBatch = referencedBatch;
+      _rows = new SqlParameterSource[getBatchSize()];
+    }
+    
+    /**
+     * Adds a row, inserting the batch into the database if it is full.
+     * 
+     * @param row  the row, not null
+     */
+    public void add(SqlParameterSource row) {
+      _rows[_size++] = row;
+      _rowCount++;
+      if (_size == _rows.length) {
+        flush();
+      }
+    }
+    
+    /**
+     * Inserts the rows not yet inserted into the database.
+     */
+    public void flush() {
+      if (_size == 0) {
+        return;
+      }
+      if (_referencedBatch != null) {
+        _referencedBatch.flush();
+      }
+      
+      getSessionFactory().getCurrentSession().getTransaction().commit();
+      getSessionFactory().getCurrentSession().beginTransaction();
+      
+      s_logger.debug("Inserting {} {} rows into DB", _size, _rowType);
+      SqlParameterSource[] batchArgsArray = (_size == _rows.length) ? _rows : Arrays.copyOf(_rows, _size);
+      int[] counts = getJdbcTemplate().batchUpdate(_sql, batchArgsArray);
+      checkCount(_rowType, batchArgsArray, counts);
+      
+      Arrays.fill(_rows, 0, _size, null);
+      _size = 0;
+    }
+    
+    /**
+     * Gets the number of rows added, whether inserted yet or not.
+     * 
+     * @return the number of rows
+     */
+    public int getRowCount() {
+      return _rowCount;
+    }
+    
+  }
+  
 }
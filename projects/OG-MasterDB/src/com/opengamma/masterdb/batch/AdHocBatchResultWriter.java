@@ -5,15 +5,12 @@
  */
 package com.opengamma.masterdb.batch;
 
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 
 import com.opengamma.engine.value.ValueSpecification;
 import com.opengamma.engine.view.ViewResultEntry;
@@ -59,7 +56,7 @@ public class AdHocBatchResultWriter extends AbstractBatchResultWriter {
   
   @SuppressWarnings("unchecked")
   public void writeImpl(ViewResultModel resultModel) {
-    List<SqlParameterSource> successes = new ArrayList<SqlParameterSource>();
+    RowBatch successes = createRowBatch("risk", RiskValue.sqlInsertRisk());
     
     int riskRunId = getRiskRunId();
     
@@ -99,17 +96,13 @@ public class AdHocBatchResultWriter extends AbstractBatchResultWriter {
       }
     }
     
-    if (successes.isEmpty()) {
+    if (successes.getRowCount() == 0) {
       s_logger.info("Nothing to write to DB for {}", resultModel);
       return;
     }
     
-    // need to figure out why these 2 lines are needed for the insertRows() code not to block...
-    // this is bad - loss of transactionality...
-    getSessionFactory().getCurrentSession().getTransaction().commit();
-    getSessionFactory().getCurrentSession().beginTransaction();
-    
-    insertRows("risk", RiskValue.sqlInsertRisk(), successes);
+    successes.flush();
+    s_logger.info("Inserted {} risk rows into DB", successes.getRowCount());
   }
 
 }
@@ -6,17 +6,14 @@
 package com.opengamma.masterdb.batch;
 
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 
 import com.opengamma.engine.ComputationTargetSpecification;
 import com.opengamma.engine.depgraph.DependencyGraph;
@@ -55,6 +52,11 @@ import com.opengamma.util.db.DbSource;
  * is still true that results for the <i>same</i> target are not scattered across
  * multiple calls. 
  * <p>
+ * Because the results are partitioned by computation target in this way, 
+ * {@link BatchResultWriter#write(CalculationJobResult, DependencyGraph)} may be
+ * called from several threads at once. Each call writes its rows in batches
+ * as they are worked out, in its own Hibernate session.
+ * <p>
  * {@link DbBatchMaster#createDependencyGraphExecutorFactory(com.opengamma.financial.batch.BatchJobRun)} 
  * shows how to guarantee this in practice by using {@link com.opengamma.engine.view.calc.BatchExecutor}.
  *  
@@ -199,7 +201,7 @@ public class CommandLineBatchResultWriter extends AbstractBatchResultWriter impl
   // --------------------------------------------------------------------------
 
   @Override
-  public synchronized void write(CalculationJobResult result, DependencyGraph depGraph) {
+  public void write(CalculationJobResult result, DependencyGraph depGraph) {
     if (result.getResultItems().isEmpty()) {
       s_logger.info("{}: Nothing to insert into DB", result);
       return;
@@ -287,9 +289,9 @@ public class CommandLineBatchResultWriter extends AbstractBatchResultWriter impl
     
     }
     
-    List<SqlParameterSource> successes = new ArrayList<SqlParameterSource>();
-    List<SqlParameterSource> failures = new ArrayList<SqlParameterSource>();
-    List<SqlParameterSource> failureReasons = new ArrayList<SqlParameterSource>();
+    RowBatch successes = createRowBatch("risk", RiskValue.sqlInsertRisk());
+    RowBatch failures = createRowBatch("risk failure", RiskFailure.sqlInsertRiskFailure());
+    RowBatch failureReasons = createRowBatch("risk failure reason", FailureReason.sqlInsertRiskFailureReason(), failures);
     
     int riskRunId = getRiskRunId();
     int calcConfId = getCalculationConfigurationId(result.getSpecification().getCalcConfigName());
@@ -298,7 +300,8 @@ public class CommandLineBatchResultWriter extends AbstractBatchResultWriter impl
     Date evalInstant = new Date();
     
     // STAGE 3. Based on the results of stage 2, work out 
-    // SQL statements to write risk into rsk_value and rsk_failure (& rsk_failure_reason)
+    // SQL statements to write risk into rsk_value and rsk_failure (& rsk_failure_reason).
+    // The statements are executed in batches as they are added.
     
     for (CalculationJobResultItem item : result.getResultItems()) {
       ResultOutputMode targetOutputMode = _resultModelDefinition.getOutputMode(item.getComputationTargetSpecification().getType());
@@ -404,26 +407,27 @@ public class CommandLineBatchResultWriter extends AbstractBatchResultWriter impl
       }
     }
     
-    // STAGE 4. Actually execute the statements worked out in stage 3.
+    // STAGE 4. Execute the statements left over from stage 3.
     
-    if (successes.isEmpty() 
-        && failures.isEmpty() 
-        && failureReasons.isEmpty() 
+    if (successes.getRowCount() == 0 
+        && failures.getRowCount() == 0 
+        && failureReasons.getRowCount() == 0 
         && successfulTargets.isEmpty() 
         && failedTargets.isEmpty()) {
       s_logger.debug("Nothing to write to DB for {}", result);
       return;
     }
     
-    // need to figure out why these 2 lines are needed for the insertRows() code not to block...
-    // this is bad - loss of transactionality...
+    successes.flush();
+    failures.flush();
+    failureReasons.flush();
+    s_logger.info("Inserted {} risk, {} risk failure and {} risk failure reason rows into DB", 
+        new Object[] {successes.getRowCount(), failures.getRowCount(), failureReasons.getRowCount()});
+    
+    // the status entries are written through JDBC too
     getSessionFactory().getCurrentSession().getTransaction().commit();
     getSessionFactory().getCurrentSession().beginTransaction();
     
-    insertRows("risk", RiskValue.sqlInsertRisk(), successes);
-    insertRows("risk failure", RiskFailure.sqlInsertRiskFailure(), failures);
-    insertRows("risk failure reason", FailureReason.sqlInsertRiskFailureReason(), failureReasons);
-      
     upsertStatusEntries(result.getSpecification(), StatusEntry.Status.SUCCESS, successfulTargets);
     upsertStatusEntries(result.getSpecification(), StatusEntry.Status.FAILURE, failedTargets);
   }
@@ -104,6 +104,10 @@ public class DbBatchMaster implements BatchMaster, AdHocBatchDbManager {
    * The Hibernate template.
    */
   private HibernateTemplate _hibernateTemplate;
+  /**
+   * The number of threads writing the results of a batch.
+   */
+  private int _resultWriterThreads = 1;
 
   //-------------------------------------------------------------------------
   public static synchronized String getDatabaseSchema() {
@@ -146,6 +150,21 @@ public class DbBatchMaster implements BatchMaster, AdHocBatchDbManager {
     _hibernateTemplate.setAllowCreate(false);
   }
 
+  public int getResultWriterThreads() {
+    return _resultWriterThreads;
+  }
+
+  /**
+   * Sets the number of threads writing the results of a batch.
+   * Each thread writes the results for different computation targets, using its own connection.
+   * 
+   * @param resultWriterThreads  the number of threads, greater than zero
+   */
+  public void setResultWriterThreads(int resultWriterThreads) {
+    ArgumentChecker.isTrue(resultWriterThreads > 0, "resultWriterThreads must be greater than zero");
+    _resultWriterThreads = resultWriterThreads;
+  }
+
   //-------------------------------------------------------------------------
   /*package*/OpenGammaVersion getOpenGammaVersion(final BatchJobRun job) {
     OpenGammaVersion version = getHibernateTemplate().execute(new HibernateCallback<OpenGammaVersion>() {
@@ -839,7 +858,8 @@ public class DbBatchMaster implements BatchMaster, AdHocBatchDbManager {
       BatchResultWriterExecutor level2Executor =
         new BatchResultWriterExecutor(
             writer,
-            level3Executor);
+            level3Executor,
+            _resultWriterThreads);
       
       // This executor is needed to guarantee that
       // BatchResultWriterImpl.write() is called once
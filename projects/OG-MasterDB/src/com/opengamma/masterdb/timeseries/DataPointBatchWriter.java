@@ -0,0 +1,264 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.masterdb.timeseries;
+
+import static com.opengamma.masterdb.timeseries.DbTimeSeriesMasterConstants.INSERT_TIME_SERIES;
+import static com.opengamma.masterdb.timeseries.DbTimeSeriesMasterConstants.INSERT_TIME_SERIES_DELTA_I;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.StatementCreatorUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.opengamma.OpenGammaRuntimeException;
+import com.opengamma.util.ArgumentChecker;
+import com.opengamma.util.timeseries.DoubleTimeSeries;
+
+/**
+ * Writes time-series data points to the database in JDBC batches.
+ * <p>
+ * Points are copied into fixed size primitive buffers which are reused for every batch, and each
+ * full buffer is written with one prepared statement batch per table. The named parameters of
+ * the insert SQL are bound by position, so no parameter source is built for each point.
+ * <p>
+ * A batch is written either in the caller's transaction or, if a transaction template is given,
+ * in a transaction of its own which is committed before the next batch is buffered.
+ * This class is not thread-safe.
+ *
+ * @param <T> LocalDate/java.util.Date
+ */
+/* package */final class DataPointBatchWriter<T> {
+
+  /**
+   * The pattern matching a named parameter.
+   */
+  private static final Pattern NAMED_PARAMETER = Pattern.compile(":(\\w+)");
+
+  private static final int TIME_SERIES_ID = 0;
+  private static final int DATE = 1;
+  private static final int VALUE = 2;
+  private static final int TIME_STAMP = 3;
+
+  /**
+   * The master.
+   */
+  private final DbTimeSeriesMaster<T> _master;
+  /**
+   * The JDBC operations.
+   */
+  private final JdbcOperations _jdbcOperations;
+  /**
+   * The template for the transaction of each batch, null to use the caller's transaction.
+   */
+  private final TransactionTemplate _transactionTemplate;
+  /**
+   * The data point insert.
+   */
+  private final Insert _insert;
+  /**
+   * The delta insert, null if maintained by a trigger.
+   */
+  private final Insert _insertDelta;
+  /**
+   * The buffered time-series keys.
+   */
+  private final long[] _keys;
+  /**
+   * The buffered dates, as SQL values.
+   */
+  private final Object[] _dates;
+  /**
+   * The buffered values.
+   */
+  private final double[] _values;
+  /**
+   * The buffered time stamps, one for each call to {@link #add} so that all the points of a time-series
+   * have the same one even if they are written in different batches.
+   */
+  private final Timestamp[] _timeStamps;
+  /**
+   * The number of buffered points.
+   */
+  private int _size;
+  /**
+   * The number of points written.
+   */
+  private volatile long _pointsWritten;
+  /**
+   * The number of batches written.
+   */
+  private volatile long _batchesWritten;
+
+  /**
+   * Creates an instance.
+   *
+   * @param master  the master, not null
+   * @param batchSize  the number of points written in each batch, greater than zero
+   * @param transactionTemplate  the template for the transaction of each batch, null to use the caller's transaction
+   */
+  DataPointBatchWriter(final DbTimeSeriesMaster<T> master, final int batchSize, final TransactionTemplate transactionTemplate) {
+    ArgumentChecker.notNull(master, "master");
+    ArgumentChecker.isTrue(batchSize > 0, "batchSize must be greater than zero");
+    _master = master;
+    _jdbcOperations = master.getJdbcTemplate().getJdbcOperations();
+    _transactionTemplate = transactionTemplate;
+    _insert = new Insert(master.getNamedSQL(INSERT_TIME_SERIES));
+    _insertDelta = master.isTriggerSupported() ? null : new Insert(master.getNamedSQL(INSERT_TIME_SERIES_DELTA_I));
+    _keys = new long[batchSize];
+    _dates = new Object[batchSize];
+    _values = new double[batchSize];
+    _timeStamps = new Timestamp[batchSize];
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the number of points written.
+   *
+   * @return the number of points written
+   */
+  long getPointsWritten() {
+    return _pointsWritten;
+  }
+
+  /**
+   * Gets the number of batches written.
+   *
+   * @return the number of batches written
+   */
+  long getBatchesWritten() {
+    return _batchesWritten;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Adds the points of a time-series, writing a batch each time the buffer fills.
+   *
+   * @param tsKey  the time-series key
+   * @param timeSeries  the points to add, not null
+   */
+  void add(final long tsKey, final DoubleTimeSeries<T> timeSeries) {
+    final Timestamp timeStamp = new Timestamp(System.currentTimeMillis());
+    for (Entry<T, Double> dataPoint : timeSeries) {
+      _keys[_size] = tsKey;
+      _dates[_size] = _master.getSqlDate(dataPoint.getKey());
+      _values[_size] = dataPoint.getValue();
+      _timeStamps[_size] = timeStamp;
+      if (++_size == _keys.length) {
+        flush();
+      }
+    }
+  }
+
+  /**
+   * Writes any buffered points.
+   */
+  void flush() {
+    if (_size == 0) {
+      return;
+    }
+    if (_transactionTemplate != null) {
+      _transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+        @Override
+        protected void doInTransactionWithoutResult(final TransactionStatus status) {
+          write();
+        }
+      });
+    } else {
+      write();
+    }
+    _pointsWritten += _size;
+    _batchesWritten++;
+    _size = 0;
+  }
+
+  private void write() {
+    if (_insertDelta != null) {
+      _jdbcOperations.batchUpdate(_insertDelta.getSql(), _insertDelta);
+    }
+    _jdbcOperations.batchUpdate(_insert.getSql(), _insert);
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * An insert statement bound by position to the buffered points.
+   */
+  private final class Insert implements BatchPreparedStatementSetter {
+    private final String _sql;
+    private final int[] _parameters;
+
+    Insert(final String namedSql) {
+      final List<Integer> parameters = new ArrayList<Integer>();
+      final StringBuffer sql = new StringBuffer();
+      final Matcher matcher = NAMED_PARAMETER.matcher(namedSql);
+      while (matcher.find()) {
+        parameters.add(getParameter(matcher.group(1)));
+        matcher.appendReplacement(sql, "?");
+      }
+      matcher.appendTail(sql);
+      _sql = sql.toString();
+      _parameters = new int[parameters.size()];
+      for (int i = 0; i < _parameters.length; i++) {
+        _parameters[i] = parameters.get(i);
+      }
+    }
+
+    private int getParameter(final String name) {
+      if ("timeSeriesID".equals(name)) {
+        return TIME_SERIES_ID;
+      } else if ("date".equals(name)) {
+        return DATE;
+      } else if ("value".equals(name)) {
+        return VALUE;
+      } else if ("timeStamp".equals(name)) {
+        return TIME_STAMP;
+      }
+      throw new OpenGammaRuntimeException("Unexpected parameter " + name + " in data point insert");
+    }
+
+    String getSql() {
+      return _sql;
+    }
+
+    @Override
+    public int getBatchSize() {
+      return _size;
+    }
+
+    @Override
+    public void setValues(final PreparedStatement ps, final int i) throws SQLException {
+      for (int p = 0; p < _parameters.length; p++) {
+        switch (_parameters[p]) {
+          case TIME_SERIES_ID:
+            ps.setLong(p + 1, _keys[i]);
+            break;
+          case DATE:
+            StatementCreatorUtils.setParameterValue(ps, p + 1, _master.getSqlDateType(), _dates[i]);
+            break;
+          case VALUE:
+            ps.setDouble(p + 1, _values[i]);
+            break;
+          case TIME_STAMP:
+            ps.setTimestamp(p + 1, _timeStamps[i]);
+            break;
+          default:
+            throw new IllegalStateException();
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,348 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.masterdb.timeseries;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.opengamma.OpenGammaRuntimeException;
+import com.opengamma.master.timeseries.TimeSeriesDocument;
+import com.opengamma.util.ArgumentChecker;
+import com.opengamma.util.timeseries.DoubleTimeSeries;
+
+/**
+ * Appends the data points of many time-series to a database time-series master.
+ * <p>
+ * This is intended for large loads, such as the close prices of a whole universe, where
+ * {@link DbTimeSeriesMaster#appendTimeSeries} would write each series in its own transaction.
+ * Documents are read from an iterator as they are needed, so the whole load never has to be held in memory.
+ * The points are written in JDBC batches of {@link #getChunkSize() chunk size} points, each committed
+ * in its own transaction. If a load fails, the chunks already committed remain in the database.
+ * <p>
+ * With more than one writer, the series are partitioned between the writers by time-series key
+ * and each writer has its own connection. The points of a series are always written in order by one writer.
+ * <p>
+ * The progress of a load can be monitored from another thread while it runs.
+ * A loader runs one load at a time.
+ *
+ * @param <T> LocalDate/java.util.Date
+ */
+public class DbTimeSeriesBulkLoader<T> {
+
+  /** Logger. */
+  private static final Logger s_logger = LoggerFactory.getLogger(DbTimeSeriesBulkLoader.class);
+  /**
+   * The default number of points committed in each transaction.
+   */
+  public static final int DEFAULT_CHUNK_SIZE = 10000;
+  /**
+   * The number of series that can be queued for each writer.
+   */
+  private static final int QUEUE_SIZE = 64;
+
+  /**
+   * The master.
+   */
+  private final DbTimeSeriesMaster<T> _master;
+  /**
+   * The template for the transaction of each chunk.
+   */
+  private final TransactionTemplate _transactionTemplate;
+  /**
+   * The number of points committed in each transaction.
+   */
+  private int _chunkSize = DEFAULT_CHUNK_SIZE;
+  /**
+   * The number of writers.
+   */
+  private int _writerCount = 1;
+  /**
+   * The writers of the current or last load.
+   */
+  private volatile List<DataPointBatchWriter<T>> _writers = Collections.emptyList();
+  /**
+   * The number of series read in the current or last load.
+   */
+  private final AtomicLong _seriesRead = new AtomicLong();
+  /**
+   * The start of the current or last load, from {@link System#nanoTime}.
+   */
+  private volatile long _startTime;
+  /**
+   * The end of the last load, from {@link System#nanoTime}, zero while a load runs.
+   */
+  private volatile long _endTime;
+
+  /**
+   * Creates an instance.
+   *
+   * @param master  the master to load into, not null
+   */
+  public DbTimeSeriesBulkLoader(final DbTimeSeriesMaster<T> master) {
+    ArgumentChecker.notNull(master, "master");
+    ArgumentChecker.notNull(master.getDbSource().getTransactionManager(), "transactionManager");
+    _master = master;
+    _transactionTemplate = new TransactionTemplate(master.getDbSource().getTransactionManager());
+    _transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the number of points committed in each transaction.
+   *
+   * @return the chunk size
+   */
+  public int getChunkSize() {
+    return _chunkSize;
+  }
+
+  /**
+   * Sets the number of points committed in each transaction.
+   *
+   * @param chunkSize  the chunk size, greater than zero
+   */
+  public void setChunkSize(final int chunkSize) {
+    ArgumentChecker.isTrue(chunkSize > 0, "chunkSize must be greater than zero");
+    _chunkSize = chunkSize;
+  }
+
+  /**
+   * Gets the number of writers.
+   *
+   * @return the number of writers
+   */
+  public int getWriterCount() {
+    return _writerCount;
+  }
+
+  /**
+   * Sets the number of writers, each using its own connection.
+   *
+   * @param writerCount  the number of writers, greater than zero
+   */
+  public void setWriterCount(final int writerCount) {
+    ArgumentChecker.isTrue(writerCount > 0, "writerCount must be greater than zero");
+    _writerCount = writerCount;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the number of series read in the current or last load.
+   *
+   * @return the number of series
+   */
+  public long getSeriesRead() {
+    return _seriesRead.get();
+  }
+
+  /**
+   * Gets the number of points committed in the current or last load.
+   *
+   * @return the number of points
+   */
+  public long getPointsCommitted() {
+    long points = 0;
+    for (DataPointBatchWriter<T> writer : _writers) {
+      points += writer.getPointsWritten();
+    }
+    return points;
+  }
+
+  /**
+   * Gets the number of chunks committed in the current or last load.
+   *
+   * @return the number of chunks
+   */
+  public long getChunksCommitted() {
+    long chunks = 0;
+    for (DataPointBatchWriter<T> writer : _writers) {
+      chunks += writer.getBatchesWritten();
+    }
+    return chunks;
+  }
+
+  /**
+   * Gets the rate at which points have been committed in the current or last load.
+   *
+   * @return the number of points per second
+   */
+  public double getPointsPerSecond() {
+    final long endTime = _endTime;
+    final long elapsed = ((endTime != 0) ? endTime : System.nanoTime()) - _startTime;
+    return (elapsed > 0) ? getPointsCommitted() * 1e9 / elapsed : 0;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Appends the data points of time-series to existing time-series.
+   * <p>
+   * Each document must have the unique identifier of a time-series in the master
+   * and the points to append to it.
+   *
+   * @param documents  the documents to append, not null
+   * @return the number of points committed
+   */
+  public long append(final Iterable<TimeSeriesDocument<T>> documents) {
+    ArgumentChecker.notNull(documents, "documents");
+    return append(documents.iterator());
+  }
+
+  /**
+   * Appends the data points of time-series to existing time-series.
+   * <p>
+   * Each document must have the unique identifier of a time-series in the master
+   * and the points to append to it.
+   *
+   * @param documents  the documents to append, not null
+   * @return the number of points committed
+   */
+  public long append(final Iterator<TimeSeriesDocument<T>> documents) {
+    ArgumentChecker.notNull(documents, "documents");
+    final List<DataPointBatchWriter<T>> writers = new ArrayList<DataPointBatchWriter<T>>(_writerCount);
+    for (int i = 0; i < _writerCount; i++) {
+      writers.add(new DataPointBatchWriter<T>(_master, _chunkSize, _transactionTemplate));
+    }
+    _seriesRead.set(0);
+    _startTime = System.nanoTime();
+    _endTime = 0;
+    _writers = Collections.unmodifiableList(writers);
+    s_logger.info("Bulk loading time-series with {} writers, {} points per chunk", _writerCount, _chunkSize);
+    try {
+      if (_writerCount == 1) {
+        appendSequentially(documents, writers.get(0));
+      } else {
+        appendInParallel(documents, writers);
+      }
+    } finally {
+      _endTime = System.nanoTime();
+    }
+    final long points = getPointsCommitted();
+    s_logger.info("Bulk loaded {} points for {} time-series in {} chunks at {} points/s",
+        new Object[] {points, getSeriesRead(), getChunksCommitted(), (long) getPointsPerSecond()});
+    return points;
+  }
+
+  private void appendSequentially(final Iterator<TimeSeriesDocument<T>> documents, final DataPointBatchWriter<T> writer) {
+    while (documents.hasNext()) {
+      final TimeSeriesDocument<T> document = documents.next();
+      writer.add(getTimeSeriesKey(document), document.getTimeSeries());
+      _seriesRead.incrementAndGet();
+    }
+    writer.flush();
+  }
+
+  private void appendInParallel(final Iterator<TimeSeriesDocument<T>> documents, final List<DataPointBatchWriter<T>> writers) {
+    final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+    final List<BlockingQueue<Work<T>>> queues = new ArrayList<BlockingQueue<Work<T>>>(writers.size());
+    final ExecutorService executor = Executors.newFixedThreadPool(writers.size());
+    try {
+      for (DataPointBatchWriter<T> writer : writers) {
+        final BlockingQueue<Work<T>> queue = new ArrayBlockingQueue<Work<T>>(QUEUE_SIZE);
+        queues.add(queue);
+        executor.execute(new PartitionWriter<T>(writer, queue, failure));
+      }
+      try {
+        while (documents.hasNext() && (failure.get() == null)) {
+          final TimeSeriesDocument<T> document = documents.next();
+          final long tsKey = getTimeSeriesKey(document);
+          queues.get((int) Math.abs(tsKey % queues.size())).put(new Work<T>(tsKey, document.getTimeSeries()));
+          _seriesRead.incrementAndGet();
+        }
+      } finally {
+        for (BlockingQueue<Work<T>> queue : queues) {
+          queue.put(new Work<T>(0, null));
+        }
+      }
+      executor.shutdown();
+      executor.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new OpenGammaRuntimeException("Interrupted during bulk load after " + getPointsCommitted() + " points", ex);
+    } finally {
+      executor.shutdownNow();
+    }
+    if (failure.get() != null) {
+      throw failure.get();
+    }
+  }
+
+  private long getTimeSeriesKey(final TimeSeriesDocument<T> document) {
+    ArgumentChecker.notNull(document, "document");
+    ArgumentChecker.notNull(document.getTimeSeries(), "document.timeSeries");
+    return _master.validateAndGetTimeSeriesId(document.getUniqueId());
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * The points of a time-series queued for a writer, or the end of the load if the series is null.
+   */
+  private static final class Work<T> {
+    private final long _tsKey;
+    private final DoubleTimeSeries<T> _timeSeries;
+
+    Work(final long tsKey, final DoubleTimeSeries<T> timeSeries) {
+      _tsKey = tsKey;
+      _timeSeries = timeSeries;
+    }
+  }
+
+  /**
+   * Writes the series queued for one partition.
+   * After a failure the queue is still drained, so the reader is never left blocked.
+   */
+  private static final class PartitionWriter<T> implements Runnable {
+    private final DataPointBatchWriter<T> _writer;
+    private final BlockingQueue<Work<T>> _queue;
+    private final AtomicReference<RuntimeException> _failure;
+
+    PartitionWriter(final DataPointBatchWriter<T> writer, final BlockingQueue<Work<T>> queue, final AtomicReference<RuntimeException> failure) {
+      _writer = writer;
+      _queue = queue;
+      _failure = failure;
+    }
+
+    @Override
+    public void run() {
+      try {
+        Work<T> work = _queue.take();
+        while (work._timeSeries != null) {
+          if (_failure.get() == null) {
+            try {
+              _writer.add(work._tsKey, work._timeSeries);
+            } catch (RuntimeException ex) {
+              s_logger.error("Bulk load of time-series " + work._tsKey + " failed", ex);
+              _failure.compareAndSet(null, ex);
+            }
+          }
+          work = _queue.take();
+        }
+        if (_failure.get() == null) {
+          _writer.flush();
+        }
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      } catch (RuntimeException ex) {
+        s_logger.error("Bulk load failed", ex);
+        _failure.compareAndSet(null, ex);
+      }
+    }
+  }
+
+}
@@ -43,6 +43,7 @@ import static com.opengamma.masterdb.timeseries.DbTimeSeriesMasterConstants.LOAD
 import static com.opengamma.masterdb.timeseries.DbTimeSeriesMasterConstants.LOAD_ALL_OBSERVATION_TIMES;
 import static com.opengamma.masterdb.timeseries.DbTimeSeriesMasterConstants.LOAD_ALL_SCHEME;
 import static com.opengamma.masterdb.timeseries.DbTimeSeriesMasterConstants.LOAD_TIME_SERIES_DELTA;
+import static com.opengamma.masterdb.timeseries.DbTimeSeriesMasterConstants.LOAD_TIME_SERIES_BY_KEYS_WITH_DATES;
 import static com.opengamma.masterdb.timeseries.DbTimeSeriesMasterConstants.LOAD_TIME_SERIES_WITH_DATES;
 import static com.opengamma.masterdb.timeseries.DbTimeSeriesMasterConstants.OBSERVATION_TIME_COLUMN;
 import static com.opengamma.masterdb.timeseries.DbTimeSeriesMasterConstants.SELECT_BUNDLE_FROM_IDENTIFIERS;
@@ -62,6 +63,7 @@ import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -167,6 +169,7 @@ public abstract class DbTimeSeriesMaster<T> implements TimeSeriesMaster<T> {
       LOAD_ALL_SCHEME,
       LOAD_TIME_SERIES_DELTA,
       LOAD_TIME_SERIES_WITH_DATES,
+      LOAD_TIME_SERIES_BY_KEYS_WITH_DATES,
       SELECT_DATA_FIELD_ID,
       SELECT_DATA_PROVIDER_ID,
       SELECT_DATA_SOURCE_ID,
@@ -183,6 +186,15 @@ public abstract class DbTimeSeriesMaster<T> implements TimeSeriesMaster<T> {
    * The scheme used for UniqueIdentifier objects.
    */
   public static final String IDENTIFIER_SCHEME_DEFAULT = "Tss";
+  /**
+   * The most time-series keys, identifiers or bundles to match in a single query.
+   * This keeps the IN clauses and OR chains within the limits of all supported databases.
+   */
+  static final int MAX_KEYS_PER_LOAD = 500;
+  /**
+   * The most data points to send to the database in a single batch.
+   */
+  private static final int MAX_POINTS_PER_BATCH = 10000;
 
   /**
    * The identifier scheme to use.
@@ -277,6 +289,16 @@ public abstract class DbTimeSeriesMaster<T> implements TimeSeriesMaster<T> {
     return _isTriggerSupported;
   }
 
+  /**
+   * Gets a named SQL statement, with the table names substituted.
+   * 
+   * @param name  the name of the statement, not null
+   * @return the SQL, not null
+   */
+  /* package */ String getNamedSQL(String name) {
+    return _namedSQLMap.get(name);
+  }
+
   //-------------------------------------------------------------------------
   @Override
   public List<IdentifierBundleWithDates> getAllIdentifiers() {
@@ -314,28 +336,13 @@ public abstract class DbTimeSeriesMaster<T> implements TimeSeriesMaster<T> {
   }
 
   private void insertDataPoints(DoubleTimeSeries<T> sqlDateDoubleTimeSeries, long tsKey) {
-    String insertSQL = _namedSQLMap.get(INSERT_TIME_SERIES);
-    String insertDelta = _namedSQLMap.get(INSERT_TIME_SERIES_DELTA_I);
-    
-    Date now = new Date(System.currentTimeMillis());
-    
-    SqlParameterSource[] batchArgs = new MapSqlParameterSource[sqlDateDoubleTimeSeries.size()];
-    int index = 0;
-    
-    for (Entry<T, Double> dataPoint : sqlDateDoubleTimeSeries) {
-      T date = dataPoint.getKey();
-      Double value = dataPoint.getValue();
-      MapSqlParameterSource parameterSource = new MapSqlParameterSource();
-      parameterSource.addValue("timeSeriesID", tsKey, Types.BIGINT);
-      parameterSource.addValue("date", getSqlDate(date), getSqlDateType());
-      parameterSource.addValue("value", value, Types.DOUBLE);
-      parameterSource.addValue("timeStamp", now, Types.TIMESTAMP);
-      batchArgs[index++] = parameterSource;
-    }
-    if (!isTriggerSupported()) {
-      getJdbcTemplate().batchUpdate(insertDelta, batchArgs);
+    if (sqlDateDoubleTimeSeries.isEmpty()) {
+      return;
     }
-    getJdbcTemplate().batchUpdate(insertSQL, batchArgs);
+    int batchSize = Math.min(sqlDateDoubleTimeSeries.size(), MAX_POINTS_PER_BATCH);
+    DataPointBatchWriter<T> writer = new DataPointBatchWriter<T>(this, batchSize, null);
+    writer.add(tsKey, sqlDateDoubleTimeSeries);
+    writer.flush();
   }
 
   private long createDataProvider(String dataProvider, String description) {
@@ -359,62 +366,75 @@ public abstract class DbTimeSeriesMaster<T> implements TimeSeriesMaster<T> {
   }
 
   private Map<Long, List<IdentifierWithDates>> searchIdentifierBundles(final TimeSeriesSearchRequest<T> request) {
-    String namedSql = _namedSQLMap.get(SELECT_BUNDLE_FROM_IDENTIFIERS);
-    StringBuilder bundleWhereCondition = new StringBuilder(" ");
-    String findIdentifiersSql = null;
-    
-    ArrayList<Object> parametersList = new ArrayList<Object>();
-    Collection<Identifier> requestIdentifiers = request.getIdentifiers();
+    IdentifierBundleHandler rowHandler = new IdentifierBundleHandler();
+    JdbcOperations jdbcOperations = getJdbcTemplate().getJdbcOperations();
+    List<Identifier> requestIdentifiers = new ArrayList<Identifier>();
+    if (request.getIdentifiers() != null) {
+      requestIdentifiers.addAll(request.getIdentifiers());
+    }
     String identifierValue = request.getIdentifierValue();
     Date currentDate = toSqlDate(request.getCurrentDate());
-    if ((requestIdentifiers == null || requestIdentifiers.isEmpty()) && identifierValue == null) {
-      findIdentifiersSql = _namedSQLMap.get(LOAD_ALL_IDENTIFIERS);
+    if (requestIdentifiers.isEmpty() && identifierValue == null) {
+      String findIdentifiersSql = _namedSQLMap.get(LOAD_ALL_IDENTIFIERS);
       findIdentifiersSql = findIdentifiersSql.replace(":LOAD_ALL_IDENTIFIERS_WHERE", "TRUE");
-    } else {
-      int orCounter = 1;
-      if (requestIdentifiers != null) {
-        for (Identifier identifier : requestIdentifiers) {
-          bundleWhereCondition.append("( ");
-          bundleWhereCondition.append("d.name = ? AND dsi.identifier_value = ? ");
-          parametersList.add(identifier.getScheme().getName());
-          parametersList.add(identifier.getValue());
-          
-          if (currentDate != null) {
-            bundleWhereCondition.append("AND (dsi.valid_from <= ?  OR dsi.valid_from IS NULL) " +
-                "AND (dsi.valid_to >= ? OR dsi.valid_to IS NULL)");
-            parametersList.add(currentDate);
-            parametersList.add(currentDate);
-          } 
-          
-          bundleWhereCondition.append(" )");
-          if (orCounter++ != requestIdentifiers.size()) {
-            bundleWhereCondition.append(" OR ");
-          }
-        }
-      }
+      s_logger.debug("searchIdentifierBundles {}", findIdentifiersSql);
+      jdbcOperations.query(findIdentifiersSql, rowHandler);
+      return rowHandler.getResult();
+    }
+    // the identifiers are searched for in chunks to keep the OR chain within the limits of all supported databases
+    int i = 0;
+    do {
+      List<Identifier> chunk = requestIdentifiers.subList(i, Math.min(i + MAX_KEYS_PER_LOAD, requestIdentifiers.size()));
+      searchIdentifierBundles(chunk, (i == 0) ? identifierValue : null, currentDate, rowHandler);
+      i += MAX_KEYS_PER_LOAD;
+    } while (i < requestIdentifiers.size());
+    return rowHandler.getResult();
+  }
+
+  private void searchIdentifierBundles(final List<Identifier> identifiers, final String identifierValue, final Date currentDate, final IdentifierBundleHandler rowHandler) {
+    String namedSql = _namedSQLMap.get(SELECT_BUNDLE_FROM_IDENTIFIERS);
+    StringBuilder bundleWhereCondition = new StringBuilder(" ");
+    ArrayList<Object> parametersList = new ArrayList<Object>();
+    int orCounter = 1;
+    for (Identifier identifier : identifiers) {
+      bundleWhereCondition.append("( ");
+      bundleWhereCondition.append("d.name = ? AND dsi.identifier_value = ? ");
+      parametersList.add(identifier.getScheme().getName());
+      parametersList.add(identifier.getValue());
       
-      if (identifierValue != null) {
-        if (!parametersList.isEmpty()) {
-          bundleWhereCondition.append(" OR ");
-        }
-        bundleWhereCondition.append(getDbSource().getDialect().sqlWildcardQuery("UPPER(dsi.identifier_value) ", "UPPER(?) ", identifierValue));
-        parametersList.add(getDbSource().getDialect().sqlWildcardAdjustValue(identifierValue));
-        if (currentDate != null) {
-          bundleWhereCondition.append("AND (dsi.valid_from <= ?  OR dsi.valid_from IS NULL) AND (dsi.valid_to >= ? OR dsi.valid_to IS NULL) ");
-          parametersList.add(currentDate);
-          parametersList.add(currentDate);
-        }
+      if (currentDate != null) {
+        bundleWhereCondition.append("AND (dsi.valid_from <= ?  OR dsi.valid_from IS NULL) " +
+            "AND (dsi.valid_to >= ? OR dsi.valid_to IS NULL)");
+        parametersList.add(currentDate);
+        parametersList.add(currentDate);
+      } 
+      
+      bundleWhereCondition.append(" )");
+      if (orCounter++ != identifiers.size()) {
+        bundleWhereCondition.append(" OR ");
       }
-      bundleWhereCondition.append(" ");
-      findIdentifiersSql = StringUtils.replace(namedSql, ":BUNDLE_IDENTIFIERS_WHERE", bundleWhereCondition.toString());
     }
     
-    IdentifierBundleHandler rowHandler = new IdentifierBundleHandler();
+    if (identifierValue != null) {
+      if (!parametersList.isEmpty()) {
+        bundleWhereCondition.append(" OR ");
+      }
+      bundleWhereCondition.append(getDbSource().getDialect().sqlWildcardQuery("UPPER(dsi.identifier_value) ", "UPPER(?) ", identifierValue));
+      parametersList.add(getDbSource().getDialect().sqlWildcardAdjustValue(identifierValue));
+      if (currentDate != null) {
+        bundleWhereCondition.append("AND (dsi.valid_from <= ?  OR dsi.valid_from IS NULL) AND (dsi.valid_to >= ? OR dsi.valid_to IS NULL) ");
+        parametersList.add(currentDate);
+        parametersList.add(currentDate);
+      }
+    }
+    bundleWhereCondition.append(" ");
+    String findIdentifiersSql = StringUtils.replace(namedSql, ":BUNDLE_IDENTIFIERS_WHERE", bundleWhereCondition.toString());
+    
     JdbcOperations jdbcOperations = getJdbcTemplate().getJdbcOperations();
     s_logger.debug("searchIdentifierBundles {}", findIdentifiersSql);
     s_logger.debug("parameters {}", parametersList.toArray());
     jdbcOperations.query(findIdentifiersSql, parametersList.toArray(), rowHandler);
-    return rowHandler.getResult();
+    rowHandler.queryComplete();
   }
 
   private long createObservationTime(String observationTime, String description) {
@@ -635,6 +655,68 @@ public abstract class DbTimeSeriesMaster<T> implements TimeSeriesMaster<T> {
     return getTimeSeries(dates, values);
   }
 
+  /**
+   * Loads the data points of several time-series with one query per batch of keys.
+   * <p>
+   * Rows are streamed ordered by key and date, so each series is built as its rows arrive.
+   * 
+   * @param timeSeriesKeys  the time-series keys, not null
+   * @param start  the start date, inclusive, null for the earliest
+   * @param end  the end date, inclusive, null for the latest
+   * @return the time-series by key, including empty ones for keys with no data points, not null
+   */
+  private Map<Long, DoubleTimeSeries<T>> loadTimeSeries(Collection<Long> timeSeriesKeys, T start, T end) {
+    final Map<Long, List<T>> datesByKey = new HashMap<Long, List<T>>();
+    final Map<Long, List<Double>> valuesByKey = new HashMap<Long, List<Double>>();
+    for (Long timeSeriesKey : timeSeriesKeys) {
+      datesByKey.put(timeSeriesKey, new ArrayList<T>());
+      valuesByKey.put(timeSeriesKey, new ArrayList<Double>());
+    }
+    String sql = _namedSQLMap.get(LOAD_TIME_SERIES_BY_KEYS_WITH_DATES);
+    MapSqlParameterSource parameters = new MapSqlParameterSource();
+    
+    if (start != null) {
+      sql += " AND ts_date >= :startDate";
+      parameters.addValue("startDate", getSqlDate(start), getSqlDateType());
+    }
+    
+    if (end != null) {
+      sql += " AND ts_date <= :endDate";
+      parameters.addValue("endDate", getSqlDate(end), getSqlDateType());
+    }
+    
+    sql += " ORDER BY meta_data_id, ts_date";
+    
+    final List<Long> keys = new ArrayList<Long>(datesByKey.keySet());
+    NamedParameterJdbcOperations parameterJdbcOperations = getJdbcTemplate().getNamedParameterJdbcOperations();
+    for (int i = 0; i < keys.size(); i += MAX_KEYS_PER_LOAD) {
+      parameters.addValue("timeSeriesKeys", keys.subList(i, Math.min(i + MAX_KEYS_PER_LOAD, keys.size())));
+      parameterJdbcOperations.query(sql, parameters, new RowCallbackHandler() {
+        private long _timeSeriesKey = INVALID_KEY;
+        private List<T> _dates;
+        private List<Double> _values;
+        
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+          long timeSeriesKey = rs.getLong("meta_data_id");
+          if (timeSeriesKey != _timeSeriesKey) {
+            _timeSeriesKey = timeSeriesKey;
+            _dates = datesByKey.get(timeSeriesKey);
+            _values = valuesByKey.get(timeSeriesKey);
+          }
+          _dates.add(getDate(rs, "ts_date"));
+          _values.add(rs.getDouble("value"));
+        }
+      });
+    }
+    
+    Map<Long, DoubleTimeSeries<T>> result = new HashMap<Long, DoubleTimeSeries<T>>();
+    for (Long timeSeriesKey : keys) {
+      result.put(timeSeriesKey, getTimeSeries(datesByKey.get(timeSeriesKey), valuesByKey.get(timeSeriesKey)));
+    }
+    return result;
+  }
+
   private void updateDataPoint(T date, Double value, long tsID) {
     String selectSQL = _namedSQLMap.get(FIND_DATA_POINT_BY_DATE_AND_ID);
     
@@ -943,7 +1025,7 @@ public abstract class DbTimeSeriesMaster<T> implements TimeSeriesMaster<T> {
     return ObjectsPair.of(tsId, date);
   }
 
-  private Long validateAndGetTimeSeriesId(UniqueIdentifier uniqueId) {
+  /* package */ Long validateAndGetTimeSeriesId(UniqueIdentifier uniqueId) {
     ArgumentChecker.notNull(uniqueId, "TimeSeries UID");
     ArgumentChecker.isTrue(uniqueId.getScheme().equals(_identifierScheme), "UID not TSS");
     ArgumentChecker.isTrue(uniqueId.getValue() != null, "Uid value cannot be null");
@@ -1112,15 +1194,34 @@ public abstract class DbTimeSeriesMaster<T> implements TimeSeriesMaster<T> {
     TimeSeriesMetaDataRowMapper<T> rowMapper = new TimeSeriesMetaDataRowMapper<T>(this);
     rowMapper.setLoadDates(request.isLoadDates());
     
-    String countSql = createTotalCountSql(metaDataSql);
-    int count = getJdbcTemplate().queryForInt(countSql, parameters);
-    String sqlApplyPaging = getDbSource().getDialect().sqlApplyPaging(metaDataSql, StringUtils.EMPTY, request.getPagingRequest());
-    
-    List<MetaData<T>> tsMetaDataList = getJdbcTemplate().query(sqlApplyPaging, rowMapper, parameters);
+    int count;
+    List<MetaData<T>> tsMetaDataList;
+    if (hasIdentifier(request) && bundleMap.size() > MAX_KEYS_PER_LOAD) {
+      // the IN clause is limited to MAX_KEYS_PER_LOAD bundles per query, so the chunks are merged and paged here
+      List<Long> bundleIds = new ArrayList<Long>(bundleMap.keySet());
+      List<MetaData<T>> allMetaData = new ArrayList<MetaData<T>>();
+      for (int i = 0; i < bundleIds.size(); i += MAX_KEYS_PER_LOAD) {
+        parameters.addValue("BUNDLEIDS", bundleIds.subList(i, Math.min(i + MAX_KEYS_PER_LOAD, bundleIds.size())));
+        allMetaData.addAll(getJdbcTemplate().query(metaDataSql, rowMapper, parameters));
+      }
+      Collections.sort(allMetaData, new Comparator<MetaData<T>>() {
+        @Override
+        public int compare(MetaData<T> metaData1, MetaData<T> metaData2) {
+          return metaData1.getTimeSeriesId().compareTo(metaData2.getTimeSeriesId());
+        }
+      });
+      count = allMetaData.size();
+      tsMetaDataList = request.getPagingRequest().select(allMetaData);
+    } else {
+      String countSql = createTotalCountSql(metaDataSql);
+      count = getJdbcTemplate().queryForInt(countSql, parameters);
+      String sqlApplyPaging = getDbSource().getDialect().sqlApplyPaging(metaDataSql, StringUtils.EMPTY, request.getPagingRequest());
+      tsMetaDataList = getJdbcTemplate().query(sqlApplyPaging, rowMapper, parameters);
+    }
+    Map<Long, TimeSeriesDocument<T>> documentsByKey = new HashMap<Long, TimeSeriesDocument<T>>();
     for (MetaData<T> tsMetaData : tsMetaDataList) {
       TimeSeriesDocument<T> document = new TimeSeriesDocument<T>();
       Long bundleId = tsMetaData.getIdentifierBundleId();
-      long timeSeriesKey = tsMetaData.getTimeSeriesId();
       document.setDataField(tsMetaData.getDataField());
       document.setDataProvider(tsMetaData.getDataProvider());
       document.setDataSource(tsMetaData.getDataSource());
@@ -1134,12 +1235,15 @@ public abstract class DbTimeSeriesMaster<T> implements TimeSeriesMaster<T> {
         document.setEarliest(tsMetaData.getEarliestDate());
         document.setLatest(tsMetaData.getLatestDate());
       }
-      if (request.isLoadTimeSeries()) {
-        DoubleTimeSeries<T> loadTimeSeries = loadTimeSeries(timeSeriesKey, request.getStart(), request.getEnd());
-        document.setTimeSeries(loadTimeSeries);
-      }
+      documentsByKey.put(tsMetaData.getTimeSeriesId(), document);
       result.getDocuments().add(document);
     }
+    if (request.isLoadTimeSeries()) {
+      Map<Long, DoubleTimeSeries<T>> timeSeriesByKey = loadTimeSeries(documentsByKey.keySet(), request.getStart(), request.getEnd());
+      for (Map.Entry<Long, TimeSeriesDocument<T>> entry : documentsByKey.entrySet()) {
+        entry.getValue().setTimeSeries(timeSeriesByKey.get(entry.getKey()));
+      }
+    }
     result.setPaging(Paging.of(request.getPagingRequest(), count));
     return result;
   }
@@ -1529,10 +1633,17 @@ public abstract class DbTimeSeriesMaster<T> implements TimeSeriesMaster<T> {
   private static class IdentifierBundleHandler implements RowCallbackHandler {
     
     private Map<Long, List<IdentifierWithDates>> _identifierBundleMap = new HashMap<Long, List<IdentifierWithDates>>();
+    /**
+     * The bundles loaded by earlier queries, which a later query may match again.
+     */
+    private Set<Long> _completeBundles = new HashSet<Long>();
     
     @Override
     public void processRow(ResultSet rs) throws SQLException {
       long bundleId = rs.getLong(BUNDLE_ID_COLUMN);
+      if (_completeBundles.contains(bundleId)) {
+        return;
+      }
       List<IdentifierWithDates> identifiers = _identifierBundleMap.get(bundleId);
       if (identifiers == null) {
         identifiers = new ArrayList<IdentifierWithDates>();
@@ -1546,6 +1657,10 @@ public abstract class DbTimeSeriesMaster<T> implements TimeSeriesMaster<T> {
       identifiers.add(IdentifierWithDates.of(identifier, validFrom, validTo));
     }
     
+    public void queryComplete() {
+      _completeBundles.addAll(_identifierBundleMap.keySet());
+    }
+    
     public Map<Long, List<IdentifierWithDates>> getResult() {
       return _identifierBundleMap;
     }
@@ -141,6 +141,10 @@ public final class DbTimeSeriesMasterConstants {
    * key name  for loadTimeSeriesWithDates SQL
    */
   public static final String LOAD_TIME_SERIES_WITH_DATES = "loadTimeSeriesWithDates";
+  /**
+   * key name  for loadTimeSeriesByKeysWithDates SQL
+   */
+  public static final String LOAD_TIME_SERIES_BY_KEYS_WITH_DATES = "loadTimeSeriesByKeysWithDates";
   /**
    * key name  for selectDataFieldID SQL
    */
@@ -526,6 +526,38 @@ public class CommandLineBatchResultWriterTest extends HibernateTest {
     assertEquals(0, resultWriter.getNumRiskComputeFailureRows());
   }
   
+  @Test
+  public void nonScalarFunctionWasSuccessfulInSeveralBatches() {
+    CalculationJobResultItem item = new CalculationJobResultItem(_calcJob.getJobItems().get(0));
+    
+    ComputedValue outputWithANonDoubleValue = new ComputedValue(
+        _mockFunction.getResultSpec(), 
+        new DoubleMatrix1D(new double[] { 4.0, 5.0, 6.0 }));
+    putValue(outputWithANonDoubleValue);
+    
+    CalculationJobResult result = new CalculationJobResult(
+        _calcJob.getSpecification(),
+        200,
+        Collections.singletonList(item),
+        "localhost");
+    
+    CommandLineBatchResultWriter resultWriter = getSuccessResultWriter();
+    resultWriter.setBatchSize(2);
+    resultWriter.write(result, null);
+    
+    assertEquals(3, resultWriter.getNumRiskRows());
+    
+    RiskValue value = resultWriter.getValue(
+        CalculationNodeUtils.CALC_CONF_NAME, 
+        _mockFunction.getResultSpec().getValueName() + "[2]", 
+        _mockFunction.getTarget().toSpecification());
+    assertEquals(6.0, value.getValue(), 0.0000001);
+    
+    assertEquals(0, resultWriter.getNumRiskFailureRows());
+    assertEquals(0, resultWriter.getNumRiskFailureReasonRows());
+    assertEquals(0, resultWriter.getNumRiskComputeFailureRows());
+  }
+  
   @Test
   public void functionWasSuccessfulButProducesUnsupportedOutputType() {
     CalculationJobResultItem item = new CalculationJobResultItem(_calcJob.getJobItems().get(0));
@@ -698,6 +730,47 @@ public class CommandLineBatchResultWriterTest extends HibernateTest {
   
   
   
+  @Test
+  public void failedResultsOnSameTargetInSeveralBatches() {
+    RuntimeException exception = new RuntimeException("function execution failed");
+    
+    CalculationJobResultItem failedItem1 = new CalculationJobResultItem(
+        new CalculationJobItem("function1", 
+            new EmptyFunctionParameters(),
+            _mockFunction.getTarget().toSpecification(),
+            Collections.<ValueSpecification>emptySet(),
+            Collections.singleton(new ValueRequirement("OUTPUT1", _mockFunction.getTarget().toSpecification()))),
+            exception);
+    
+    CalculationJobResultItem failedItem2 = new CalculationJobResultItem(
+        new CalculationJobItem("function1", 
+            new EmptyFunctionParameters(),
+            _mockFunction.getTarget().toSpecification(),
+            Collections.<ValueSpecification>emptySet(),
+            Collections.singleton(new ValueRequirement("OUTPUT2", _mockFunction.getTarget().toSpecification()))),
+            exception);
+    
+    ArrayList<CalculationJobResultItem> items = new ArrayList<CalculationJobResultItem>();
+    items.add(failedItem1);
+    items.add(failedItem2);
+    
+    CalculationJobResult result = new CalculationJobResult(
+        _calcJob.getSpecification(),
+        200,
+        items,
+        "localhost");
+    
+    CommandLineBatchResultWriter resultWriter = getSuccessResultWriter();
+    resultWriter.setBatchSize(1);
+    resultWriter.write(result, null);
+    
+    // each failure reason batch must follow the failure it references
+    assertEquals(0, resultWriter.getNumRiskRows());
+    assertEquals(2, resultWriter.getNumRiskFailureRows());
+    assertEquals(2, resultWriter.getNumRiskFailureReasonRows());
+    assertEquals(1, resultWriter.getNumRiskComputeFailureRows());
+  }
+  
   // --------------------------------------------------------------------------
   
   
@@ -55,6 +55,7 @@ import com.opengamma.master.timeseries.TimeSeriesSearchHistoricResult;
 import com.opengamma.master.timeseries.TimeSeriesSearchRequest;
 import com.opengamma.master.timeseries.TimeSeriesSearchResult;
 import com.opengamma.master.timeseries.impl.RandomTimeSeriesGenerator;
+import com.opengamma.util.db.PagingRequest;
 import com.opengamma.util.test.DBTest;
 import com.opengamma.util.time.DateUtil;
 import com.opengamma.util.timeseries.DoubleTimeSeries;
@@ -745,6 +746,39 @@ public abstract class TimeSeriesMasterTest<T> extends DBTest {
     
   }
   
+  @Test
+  public void bulkAppendTimeSeries() throws Exception {
+    List<TimeSeriesDocument<T>> tsList = addAndTestTimeSeries();
+    List<TimeSeriesDocument<T>> appendList = new ArrayList<TimeSeriesDocument<T>>();
+    Map<UniqueIdentifier, DoubleTimeSeries<T>> expected = new HashMap<UniqueIdentifier, DoubleTimeSeries<T>>();
+    long expectedPoints = 0;
+    for (TimeSeriesDocument<T> tsDoc : tsList) {
+      DoubleTimeSeries<T> timeSeries = tsDoc.getTimeSeries();
+      LocalDate start = convert(timeSeries.getLatestTime()).plusDays(1);
+      DoubleTimeSeries<T> appendedTS = makeRandomTimeSeries(start, 7);
+      TimeSeriesDocument<T> appendDoc = new TimeSeriesDocument<T>();
+      appendDoc.setUniqueId(tsDoc.getUniqueId());
+      appendDoc.setTimeSeries(appendedTS);
+      appendList.add(appendDoc);
+      expected.put(tsDoc.getUniqueId(), timeSeries.noIntersectionOperation(appendedTS));
+      expectedPoints += appendedTS.size();
+    }
+
+    DbTimeSeriesBulkLoader<T> loader = new DbTimeSeriesBulkLoader<T>((DbTimeSeriesMaster<T>) _tsMaster);
+    loader.setChunkSize(5);
+    loader.setWriterCount(2);
+    assertEquals(expectedPoints, loader.append(appendList));
+    assertEquals(tsList.size(), loader.getSeriesRead());
+    assertEquals(expectedPoints, loader.getPointsCommitted());
+    assertTrue(loader.getChunksCommitted() >= expectedPoints / 5);
+
+    for (Entry<UniqueIdentifier, DoubleTimeSeries<T>> entry : expected.entrySet()) {
+      TimeSeriesDocument<T> latestDoc = _tsMaster.getTimeSeries(entry.getKey());
+      assertNotNull(latestDoc);
+      assertEquals(entry.getValue(), latestDoc.getTimeSeries());
+    }
+  }
+
   @Test
   public void searchNotAvailableTimeSeries() throws Exception {
     addAndTestTimeSeries();
@@ -754,6 +788,35 @@ public abstract class TimeSeriesMasterTest<T> extends DBTest {
     assertNotNull(searchResult.getDocuments());
     assertTrue(searchResult.getDocuments().isEmpty());
   }
+
+  @Test
+  public void searchManyIdentifierBundles() throws Exception {
+    int bundleCount = DbTimeSeriesMaster.MAX_KEYS_PER_LOAD + 10;
+    Map<UniqueIdentifier, TimeSeriesDocument<T>> expected = new HashMap<UniqueIdentifier, TimeSeriesDocument<T>>();
+    TimeSeriesSearchRequest<T> request = new TimeSeriesSearchRequest<T>();
+    for (int i = 0; i < bundleCount; i++) {
+      IdentifierBundle identifiers = IdentifierBundle.of(SecurityUtils.bloombergTickerSecurityId("ticker" + i), SecurityUtils.bloombergBuidSecurityId("buid" + i));
+      TimeSeriesDocument<T> tsDocument = createTimeSeries(CLOSE_DATA_FIELD, CMPL_DATA_PROVIDER, BBG_DATA_SOURCE, IdentifierBundleWithDates.of(identifiers), makeRandomTimeSeries(DEFAULT_START, 7));
+      tsDocument.setTimeSeries(null);
+      expected.put(tsDocument.getUniqueId(), tsDocument);
+      // both identifiers are searched for, so each bundle is matched by more than one chunk of identifiers
+      request.getIdentifiers().addAll(identifiers.getIdentifiers());
+    }
+    request.setDataField(CLOSE_DATA_FIELD);
+    request.setLoadTimeSeries(false);
+
+    TimeSeriesSearchResult<T> searchResult = _tsMaster.searchTimeSeries(request);
+    assertEquals(bundleCount, searchResult.getPaging().getTotalItems());
+    assertEquals(bundleCount, searchResult.getDocuments().size());
+    for (TimeSeriesDocument<T> document : searchResult.getDocuments()) {
+      assertEquals(expected.get(document.getUniqueId()), document);
+    }
+
+    request.setPagingRequest(PagingRequest.of(2, DbTimeSeriesMaster.MAX_KEYS_PER_LOAD));
+    searchResult = _tsMaster.searchTimeSeries(request);
+    assertEquals(bundleCount, searchResult.getPaging().getTotalItems());
+    assertEquals(10, searchResult.getDocuments().size());
+  }
   
   @Test
   public void searchMetaData() throws Exception {
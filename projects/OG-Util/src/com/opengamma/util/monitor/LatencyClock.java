@@ -0,0 +1,53 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.util.monitor;
+
+/**
+ * A clock for timestamping events whose latency is traced across processes.
+ * <p>
+ * {@link System#nanoTime()} cannot be compared between processes and
+ * {@link System#currentTimeMillis()} is too coarse for sub-millisecond latencies, so this
+ * clock anchors the former to the latter once when the class is loaded. Timestamps from the
+ * same process are as precise as {@code nanoTime}; timestamps from different machines are
+ * only as comparable as their system clocks are synchronized.
+ */
+public final class LatencyClock {
+
+  /**
+   * The epoch time, in nanoseconds, at which {@code nanoTime} was {@link #NANO_TIME_ORIGIN}.
+   */
+  private static final long EPOCH_NANOS_ORIGIN = System.currentTimeMillis() * 1000000L;
+  /**
+   * The {@code nanoTime} at {@link #EPOCH_NANOS_ORIGIN}.
+   */
+  private static final long NANO_TIME_ORIGIN = System.nanoTime();
+
+  /**
+   * Restricted constructor.
+   */
+  private LatencyClock() {
+  }
+
+  /**
+   * Gets the current time.
+   *
+   * @return the time in nanoseconds since the epoch, never zero
+   */
+  public static long currentTimeNanos() {
+    return EPOCH_NANOS_ORIGIN + (System.nanoTime() - NANO_TIME_ORIGIN);
+  }
+
+  /**
+   * Gets the time elapsed since a timestamp.
+   *
+   * @param timestamp  the timestamp, as returned by {@link #currentTimeNanos()}
+   * @return the elapsed time in nanoseconds, negative if the timestamp came from a clock ahead of this one
+   */
+  public static long nanosSince(long timestamp) {
+    return currentTimeNanos() - timestamp;
+  }
+
+}
@@ -0,0 +1,200 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.util.monitor;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies, in nanoseconds, from which percentiles can be read.
+ * <p>
+ * Latencies are counted in buckets whose width grows with the latency, so that every
+ * recorded value is known to within about 3% at any magnitude without storing the values.
+ * Each power of two is split into {@code 32} buckets, in the manner of an HDR histogram,
+ * so the histogram has a fixed size of under 2000 counters.
+ * <p>
+ * The implementation is thread-safe. Recording does not lock, so it may be called on
+ * latency-critical paths; the statistics read while values are being recorded may
+ * not include the most recent values.
+ */
+public class LatencyHistogram {
+
+  /**
+   * The number of bits of precision kept for each value.
+   */
+  private static final int SUB_BUCKET_BITS = 5;
+  /**
+   * The number of buckets each power of two is split into.
+   */
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  /**
+   * The number of buckets needed to count any positive long.
+   */
+  private static final int BUCKETS = (64 - SUB_BUCKET_BITS) << SUB_BUCKET_BITS;
+
+  /**
+   * The counts of each bucket.
+   */
+  private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+  /**
+   * The total of the values recorded.
+   */
+  private final AtomicLong _total = new AtomicLong();
+  /**
+   * The largest value recorded.
+   */
+  private final AtomicLong _max = new AtomicLong();
+
+  /**
+   * Creates an empty histogram.
+   */
+  public LatencyHistogram() {
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Records a latency.
+   * <p>
+   * Negative latencies, which can arise from comparing the clocks of different machines,
+   * are recorded as zero.
+   *
+   * @param nanos  the latency in nanoseconds
+   */
+  public void record(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+    _counts.incrementAndGet(getBucket(nanos));
+    _total.addAndGet(nanos);
+    long max = _max.get();
+    while (nanos > max) {
+      if (_max.compareAndSet(max, nanos)) {
+        break;
+      }
+      max = _max.get();
+    }
+  }
+
+  /**
+   * Records the time elapsed since an instant.
+   *
+   * @param startNanos  the instant, as returned by {@link System#nanoTime()}
+   */
+  public void recordSince(long startNanos) {
+    record(System.nanoTime() - startNanos);
+  }
+
+  /**
+   * Discards all the latencies recorded so far.
+   */
+  public void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      _counts.set(i, 0);
+    }
+    _total.set(0);
+    _max.set(0);
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the number of latencies recorded.
+   *
+   * @return the number of latencies
+   */
+  public long getCount() {
+    long count = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      count += _counts.get(i);
+    }
+    return count;
+  }
+
+  /**
+   * Gets the mean latency.
+   *
+   * @return the mean in nanoseconds, zero if none have been recorded
+   */
+  public long getMean() {
+    long count = getCount();
+    return count == 0 ? 0 : _total.get() / count;
+  }
+
+  /**
+   * Gets the largest latency recorded.
+   *
+   * @return the largest latency in nanoseconds, zero if none have been recorded
+   */
+  public long getMax() {
+    return _max.get();
+  }
+
+  /**
+   * Gets the latency which a percentage of the recorded latencies do not exceed.
+   *
+   * @param percentile  the percentage, from 0 to 100
+   * @return the latency in nanoseconds, to within the precision of the histogram, zero if none have been recorded
+   */
+  public long getValueAtPercentile(double percentile) {
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("Percentile must be between 0 and 100");
+    }
+    long[] counts = new long[BUCKETS];
+    long count = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = _counts.get(i);
+      count += counts[i];
+    }
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+    long cumulative = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      cumulative += counts[i];
+      if (cumulative >= rank) {
+        return Math.min(getHighestValue(i), getMax());
+      }
+    }
+    return getMax();
+  }
+
+  //-------------------------------------------------------------------------
+  private static int getBucket(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int shift = exponent - SUB_BUCKET_BITS;
+    return ((shift + 1) << SUB_BUCKET_BITS) + (int) (value >>> shift) - SUB_BUCKETS;
+  }
+
+  private static long getHighestValue(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = (bucket >> SUB_BUCKET_BITS) - 1;
+    long subBucket = SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1));
+    return ((subBucket + 1) << shift) - 1;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Returns a summary of the latencies in microseconds.
+   *
+   * @return the summary, not null
+   */
+  @Override
+  public String toString() {
+    return "count=" + getCount() + ", mean=" + micros(getMean()) + "us, 50%=" + micros(getValueAtPercentile(50))
+        + "us, 90%=" + micros(getValueAtPercentile(90)) + "us, 99%=" + micros(getValueAtPercentile(99))
+        + "us, 99.9%=" + micros(getValueAtPercentile(99.9)) + "us, max=" + micros(getMax()) + "us";
+  }
+
+  private static long micros(long nanos) {
+    return nanos / 1000;
+  }
+
+}
@@ -0,0 +1,455 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.util.timeseries.fast;
+
+import static com.opengamma.util.timeseries.DoubleTimeSeriesOperators.ADD_OPERATOR;
+import static com.opengamma.util.timeseries.DoubleTimeSeriesOperators.DIVIDE_OPERATOR;
+import static com.opengamma.util.timeseries.DoubleTimeSeriesOperators.MULTIPLY_OPERATOR;
+import static com.opengamma.util.timeseries.DoubleTimeSeriesOperators.NEGATE_OPERATOR;
+import static com.opengamma.util.timeseries.DoubleTimeSeriesOperators.SUBTRACT_OPERATOR;
+
+import java.util.Arrays;
+
+import com.opengamma.util.timeseries.DoubleTimeSeriesOperators.BinaryOperator;
+import com.opengamma.util.timeseries.DoubleTimeSeriesOperators.UnaryOperator;
+
+/**
+ * Kernels for operating on the primitive time and value arrays of fast time series.
+ * <p>
+ * The kernels separate joining the times of two series from combining their values. The join
+ * lines up the values to combine in arrays, then the values are combined in a single loop. For the
+ * arithmetic operators that loop is written out for the operator, rather than calling the operator
+ * for each value, so the compiler can unroll and vectorize it. When the two series have the same
+ * times, as series sampled on the same calendar usually do, there is nothing to join.
+ * <p>
+ * The time arrays must be in ascending order. Input arrays are never modified unless they are also
+ * passed as a result array.
+ */
+public final class DoubleTimeSeriesKernels {
+
+  /**
+   * Restricted constructor.
+   */
+  private DoubleTimeSeriesKernels() {
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Combines values pairwise, {@code result[i] = operator(a[i], b[i])}.
+   *
+   * @param operator the operator to apply, not null
+   * @param a the first operands, not null
+   * @param b the second operands, not null
+   * @param result the array to hold the results, not null, may be {@code a} or {@code b}
+   * @param length the number of values to combine
+   */
+  public static void apply(final BinaryOperator operator, final double[] a, final double[] b, final double[] result, final int length) {
+    if (operator == ADD_OPERATOR) {
+      for (int i = 0; i < length; i++) {
+        result[i] = a[i] + b[i];
+      }
+    } else if (operator == SUBTRACT_OPERATOR) {
+      for (int i = 0; i < length; i++) {
+        result[i] = a[i] - b[i];
+      }
+    } else if (operator == MULTIPLY_OPERATOR) {
+      for (int i = 0; i < length; i++) {
+        result[i] = a[i] * b[i];
+      }
+    } else if (operator == DIVIDE_OPERATOR) {
+      for (int i = 0; i < length; i++) {
+        result[i] = a[i] / b[i];
+      }
+    } else {
+      for (int i = 0; i < length; i++) {
+        result[i] = operator.operate(a[i], b[i]);
+      }
+    }
+  }
+
+  /**
+   * Combines values with a constant, {@code result[i] = operator(a[i], b)}.
+   *
+   * @param operator the operator to apply, not null
+   * @param a the first operands, not null
+   * @param b the second operand
+   * @param result the array to hold the results, not null, may be {@code a}
+   * @param length the number of values to combine
+   */
+  public static void apply(final BinaryOperator operator, final double[] a, final double b, final double[] result, final int length) {
+    if (operator == ADD_OPERATOR) {
+      for (int i = 0; i < length; i++) {
+        result[i] = a[i] + b;
+      }
+    } else if (operator == SUBTRACT_OPERATOR) {
+      for (int i = 0; i < length; i++) {
+        result[i] = a[i] - b;
+      }
+    } else if (operator == MULTIPLY_OPERATOR) {
+      for (int i = 0; i < length; i++) {
+        result[i] = a[i] * b;
+      }
+    } else if (operator == DIVIDE_OPERATOR) {
+      for (int i = 0; i < length; i++) {
+        result[i] = a[i] / b;
+      }
+    } else {
+      for (int i = 0; i < length; i++) {
+        result[i] = operator.operate(a[i], b);
+      }
+    }
+  }
+
+  /**
+   * Applies an operator to each value, {@code result[i] = operator(a[i])}.
+   *
+   * @param operator the operator to apply, not null
+   * @param a the operands, not null
+   * @param result the array to hold the results, not null, may be {@code a}
+   * @param length the number of values
+   */
+  public static void apply(final UnaryOperator operator, final double[] a, final double[] result, final int length) {
+    if (operator == NEGATE_OPERATOR) {
+      for (int i = 0; i < length; i++) {
+        result[i] = -a[i];
+      }
+    } else {
+      for (int i = 0; i < length; i++) {
+        result[i] = operator.operate(a[i]);
+      }
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Combines the values of two series at the times they have in common.
+   *
+   * @param aTimes the times of the first series, not null
+   * @param aValues the values of the first series, not null
+   * @param aLength the number of points in the first series
+   * @param bTimes the times of the second series, not null
+   * @param bValues the values of the second series, not null
+   * @param bLength the number of points in the second series
+   * @param operator the operator to combine values with, not null
+   * @param resultTimes the array to hold the common times, at least the length of the shorter series, not null, may be {@code aTimes}
+   * @param resultValues the array to hold the combined values, at least the length of the shorter series, not null, may be {@code aValues}
+   * @return the number of points in the result
+   */
+  public static int intersect(final int[] aTimes, final double[] aValues, final int aLength, final int[] bTimes, final double[] bValues, final int bLength,
+      final BinaryOperator operator, final int[] resultTimes, final double[] resultValues) {
+    if (sameTimes(aTimes, aLength, bTimes, bLength)) {
+      System.arraycopy(aTimes, 0, resultTimes, 0, aLength);
+      apply(operator, aValues, bValues, resultValues, aLength);
+      return aLength;
+    }
+    final double[] bAligned = new double[Math.min(aLength, bLength)];
+    int a = 0;
+    int b = 0;
+    int count = 0;
+    while (a < aLength && b < bLength) {
+      final int aTime = aTimes[a];
+      final int bTime = bTimes[b];
+      if (aTime == bTime) {
+        resultTimes[count] = aTime;
+        resultValues[count] = aValues[a++];
+        bAligned[count++] = bValues[b++];
+      } else if (aTime < bTime) {
+        a++;
+      } else {
+        b++;
+      }
+    }
+    apply(operator, resultValues, bAligned, resultValues, count);
+    return count;
+  }
+
+  /**
+   * Combines the values of two series at the times they have in common.
+   *
+   * @param aTimes the times of the first series, not null
+   * @param aValues the values of the first series, not null
+   * @param aLength the number of points in the first series
+   * @param bTimes the times of the second series, not null
+   * @param bValues the values of the second series, not null
+   * @param bLength the number of points in the second series
+   * @param operator the operator to combine values with, not null
+   * @param resultTimes the array to hold the common times, at least the length of the shorter series, not null, may be {@code aTimes}
+   * @param resultValues the array to hold the combined values, at least the length of the shorter series, not null, may be {@code aValues}
+   * @return the number of points in the result
+   */
+  public static int intersect(final long[] aTimes, final double[] aValues, final int aLength, final long[] bTimes, final double[] bValues, final int bLength,
+      final BinaryOperator operator, final long[] resultTimes, final double[] resultValues) {
+    if (sameTimes(aTimes, aLength, bTimes, bLength)) {
+      System.arraycopy(aTimes, 0, resultTimes, 0, aLength);
+      apply(operator, aValues, bValues, resultValues, aLength);
+      return aLength;
+    }
+    final double[] bAligned = new double[Math.min(aLength, bLength)];
+    int a = 0;
+    int b = 0;
+    int count = 0;
+    while (a < aLength && b < bLength) {
+      final long aTime = aTimes[a];
+      final long bTime = bTimes[b];
+      if (aTime == bTime) {
+        resultTimes[count] = aTime;
+        resultValues[count] = aValues[a++];
+        bAligned[count++] = bValues[b++];
+      } else if (aTime < bTime) {
+        a++;
+      } else {
+        b++;
+      }
+    }
+    apply(operator, resultValues, bAligned, resultValues, count);
+    return count;
+  }
+
+  /**
+   * Combines the values of two series at the times they have in common, keeping the values of
+   * either series at the times the other doesn't have.
+   *
+   * @param aTimes the times of the first series, not null
+   * @param aValues the values of the first series, not null
+   * @param aLength the number of points in the first series
+   * @param bTimes the times of the second series, not null
+   * @param bValues the values of the second series, not null
+   * @param bLength the number of points in the second series
+   * @param operator the operator to combine values with, not null
+   * @param resultTimes the array to hold the times, at least the length of both series together, not null
+   * @param resultValues the array to hold the values, at least the length of both series together, not null
+   * @return the number of points in the result
+   */
+  public static int union(final int[] aTimes, final double[] aValues, final int aLength, final int[] bTimes, final double[] bValues, final int bLength,
+      final BinaryOperator operator, final int[] resultTimes, final double[] resultValues) {
+    if (sameTimes(aTimes, aLength, bTimes, bLength)) {
+      System.arraycopy(aTimes, 0, resultTimes, 0, aLength);
+      apply(operator, aValues, bValues, resultValues, aLength);
+      return aLength;
+    }
+    final int maxCommon = Math.min(aLength, bLength);
+    final int[] commonIndex = new int[maxCommon];
+    final double[] aAligned = new double[maxCommon];
+    final double[] bAligned = new double[maxCommon];
+    int a = 0;
+    int b = 0;
+    int count = 0;
+    int common = 0;
+    while (a < aLength && b < bLength) {
+      final int aTime = aTimes[a];
+      final int bTime = bTimes[b];
+      if (aTime == bTime) {
+        commonIndex[common] = count;
+        aAligned[common] = aValues[a++];
+        bAligned[common++] = bValues[b++];
+        resultTimes[count++] = aTime;
+      } else if (aTime < bTime) {
+        resultTimes[count] = aTime;
+        resultValues[count++] = aValues[a++];
+      } else {
+        resultTimes[count] = bTime;
+        resultValues[count++] = bValues[b++];
+      }
+    }
+    if (a < aLength) {
+      System.arraycopy(aTimes, a, resultTimes, count, aLength - a);
+      System.arraycopy(aValues, a, resultValues, count, aLength - a);
+      count += aLength - a;
+    } else if (b < bLength) {
+      System.arraycopy(bTimes, b, resultTimes, count, bLength - b);
+      System.arraycopy(bValues, b, resultValues, count, bLength - b);
+      count += bLength - b;
+    }
+    apply(operator, aAligned, bAligned, aAligned, common);
+    for (int i = 0; i < common; i++) {
+      resultValues[commonIndex[i]] = aAligned[i];
+    }
+    return count;
+  }
+
+  /**
+   * Combines the values of two series at the times they have in common, keeping the values of
+   * either series at the times the other doesn't have.
+   *
+   * @param aTimes the times of the first series, not null
+   * @param aValues the values of the first series, not null
+   * @param aLength the number of points in the first series
+   * @param bTimes the times of the second series, not null
+   * @param bValues the values of the second series, not null
+   * @param bLength the number of points in the second series
+   * @param operator the operator to combine values with, not null
+   * @param resultTimes the array to hold the times, at least the length of both series together, not null
+   * @param resultValues the array to hold the values, at least the length of both series together, not null
+   * @return the number of points in the result
+   */
+  public static int union(final long[] aTimes, final double[] aValues, final int aLength, final long[] bTimes, final double[] bValues, final int bLength,
+      final BinaryOperator operator, final long[] resultTimes, final double[] resultValues) {
+    if (sameTimes(aTimes, aLength, bTimes, bLength)) {
+      System.arraycopy(aTimes, 0, resultTimes, 0, aLength);
+      apply(operator, aValues, bValues, resultValues, aLength);
+      return aLength;
+    }
+    final int maxCommon = Math.min(aLength, bLength);
+    final int[] commonIndex = new int[maxCommon];
+    final double[] aAligned = new double[maxCommon];
+    final double[] bAligned = new double[maxCommon];
+    int a = 0;
+    int b = 0;
+    int count = 0;
+    int common = 0;
+    while (a < aLength && b < bLength) {
+      final long aTime = aTimes[a];
+      final long bTime = bTimes[b];
+      if (aTime == bTime) {
+        commonIndex[common] = count;
+        aAligned[common] = aValues[a++];
+        bAligned[common++] = bValues[b++];
+        resultTimes[count++] = aTime;
+      } else if (aTime < bTime) {
+        resultTimes[count] = aTime;
+        resultValues[count++] = aValues[a++];
+      } else {
+        resultTimes[count] = bTime;
+        resultValues[count++] = bValues[b++];
+      }
+    }
+    if (a < aLength) {
+      System.arraycopy(aTimes, a, resultTimes, count, aLength - a);
+      System.arraycopy(aValues, a, resultValues, count, aLength - a);
+      count += aLength - a;
+    } else if (b < bLength) {
+      System.arraycopy(bTimes, b, resultTimes, count, bLength - b);
+      System.arraycopy(bValues, b, resultValues, count, bLength - b);
+      count += bLength - b;
+    }
+    apply(operator, aAligned, bAligned, aAligned, common);
+    for (int i = 0; i < common; i++) {
+      resultValues[commonIndex[i]] = aAligned[i];
+    }
+    return count;
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Converts times between encodings.
+   *
+   * @param times the times to convert, not null
+   * @param from the encoding of the times, not null
+   * @param to the encoding to convert to, not null
+   * @return the converted times, the original array if the encodings are the same, not null
+   */
+  public static int[] convertToInt(final int[] times, final DateTimeNumericEncoding from, final DateTimeNumericEncoding to) {
+    if (from == to) {
+      return times;
+    }
+    final int[] result = new int[times.length];
+    for (int i = 0; i < times.length; i++) {
+      result[i] = from.convertToInt(times[i], to);
+    }
+    return result;
+  }
+
+  /**
+   * Converts times between encodings.
+   *
+   * @param times the times to convert, not null
+   * @param from the encoding of the times, not null
+   * @param to the encoding to convert to, not null
+   * @return the converted times, the original array if the encodings are the same, not null
+   */
+  public static long[] convertToLong(final long[] times, final DateTimeNumericEncoding from, final DateTimeNumericEncoding to) {
+    if (from == to) {
+      return times;
+    }
+    final long[] result = new long[times.length];
+    for (int i = 0; i < times.length; i++) {
+      result[i] = from.convertToLong(times[i], to);
+    }
+    return result;
+  }
+
+  /**
+   * Converts times between encodings.
+   *
+   * @param times the times to convert, not null
+   * @param from the encoding of the times, not null
+   * @param to the encoding to convert to, not null
+   * @return the converted times, not null
+   */
+  public static int[] convertToInt(final long[] times, final DateTimeNumericEncoding from, final DateTimeNumericEncoding to) {
+    final int[] result = new int[times.length];
+    if (from == to) {
+      for (int i = 0; i < times.length; i++) {
+        result[i] = (int) times[i];
+      }
+    } else {
+      for (int i = 0; i < times.length; i++) {
+        result[i] = from.convertToInt(times[i], to);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Converts times between encodings.
+   *
+   * @param times the times to convert, not null
+   * @param from the encoding of the times, not null
+   * @param to the encoding to convert to, not null
+   * @return the converted times, not null
+   */
+  public static long[] convertToLong(final int[] times, final DateTimeNumericEncoding from, final DateTimeNumericEncoding to) {
+    final long[] result = new long[times.length];
+    if (from == to) {
+      for (int i = 0; i < times.length; i++) {
+        result[i] = times[i];
+      }
+    } else {
+      for (int i = 0; i < times.length; i++) {
+        result[i] = from.convertToLong(times[i], to);
+      }
+    }
+    return result;
+  }
+
+  //-------------------------------------------------------------------------
+  private static boolean sameTimes(final int[] aTimes, final int aLength, final int[] bTimes, final int bLength) {
+    if (aLength != bLength) {
+      return false;
+    }
+    if (aTimes == bTimes) {
+      return true;
+    }
+    if ((aTimes.length == aLength) && (bTimes.length == bLength)) {
+      return Arrays.equals(aTimes, bTimes);
+    }
+    for (int i = 0; i < aLength; i++) {
+      if (aTimes[i] != bTimes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean sameTimes(final long[] aTimes, final int aLength, final long[] bTimes, final int bLength) {
+    if (aLength != bLength) {
+      return false;
+    }
+    if (aTimes == bTimes) {
+      return true;
+    }
+    if ((aTimes.length == aLength) && (bTimes.length == bLength)) {
+      return Arrays.equals(aTimes, bTimes);
+    }
+    for (int i = 0; i < aLength; i++) {
+      if (aTimes[i] != bTimes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+}
@@ -5,6 +5,7 @@
  */
 package com.opengamma.util.timeseries.fast.integer;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -20,6 +21,7 @@ import com.opengamma.util.timeseries.DoubleTimeSeriesOperators.UnaryOperator;
 import com.opengamma.util.timeseries.fast.AbstractFastTimeSeries;
 import com.opengamma.util.timeseries.fast.DateTimeNumericEncoding;
 import com.opengamma.util.timeseries.fast.DateTimeResolution;
+import com.opengamma.util.timeseries.fast.DoubleTimeSeriesKernels;
 import com.opengamma.util.timeseries.fast.FastTimeSeries;
 import com.opengamma.util.timeseries.fast.longint.FastArrayLongDoubleTimeSeries;
 import com.opengamma.util.timeseries.fast.longint.FastListLongDoubleTimeSeries;
@@ -143,24 +145,89 @@ public abstract class AbstractFastIntDoubleTimeSeries extends AbstractFastTimeSe
     return newInstanceFast(ArrayUtils.toPrimitive(times), ArrayUtils.toPrimitive(values));
   }
 
-  public FastIntDoubleTimeSeries operate(final UnaryOperator operator) {
-    final int[] aTimes = timesArrayFast();
-    final double[] aValues = valuesArrayFast();
-    final double[] results = new double[aValues.length]; // could modify in place, but will probably switch to in-place view of backing array.
-    for (int i = 0; i < aValues.length; i++) {
-      results[i] = operator.operate(aValues[i]);
+  /**
+   * Gets the times of this series for an operation that only reads them.
+   * <p>
+   * The default implementation returns a copy. Series that never modify their times may return the
+   * underlying array.
+   *
+   * @return the times, not to be modified, not null
+   */
+  protected int[] timesArrayShared() {
+    return timesArrayFast();
+  }
+
+  /**
+   * Gets the values of this series for an operation that only reads them.
+   * <p>
+   * The default implementation returns a copy. Series that never modify their values may return the
+   * underlying array.
+   *
+   * @return the values, not to be modified, not null
+   */
+  protected double[] valuesArrayShared() {
+    return valuesArrayFast();
+  }
+
+  /**
+   * Creates a series of the same type as this one from arrays that are not used after the call.
+   * <p>
+   * The default implementation calls {@link #newInstanceFast}. Series backed by arrays may adopt the
+   * arrays rather than copying them.
+   *
+   * @param times the times, not null
+   * @param values the values, not null
+   * @return the series, not null
+   */
+  protected FastIntDoubleTimeSeries newInstanceFastShared(final int[] times, final double[] values) {
+    return newInstanceFast(times, values);
+  }
+
+  /**
+   * Gets the times of a series for an operation that only reads them.
+   *
+   * @param series the series, not null
+   * @return the times, not to be modified, not null
+   */
+  static int[] timesArrayShared(final FastIntDoubleTimeSeries series) {
+    if (series instanceof AbstractFastIntDoubleTimeSeries) {
+      return ((AbstractFastIntDoubleTimeSeries) series).timesArrayShared();
+    }
+    return series.timesArrayFast();
+  }
+
+  /**
+   * Gets the values of a series for an operation that only reads them.
+   *
+   * @param series the series, not null
+   * @return the values, not to be modified, not null
+   */
+  static double[] valuesArrayShared(final FastIntDoubleTimeSeries series) {
+    if (series instanceof AbstractFastIntDoubleTimeSeries) {
+      return ((AbstractFastIntDoubleTimeSeries) series).valuesArrayShared();
     }
-    return newInstanceFast(aTimes, results);
+    return series.valuesArrayFast();
   }
 
-  public FastIntDoubleTimeSeries operate(final double other, final BinaryOperator operator) {
-    final int[] aTimes = timesArrayFast();
-    final double[] aValues = valuesArrayFast();
-    final double[] results = new double[aValues.length]; // could modify in place, but will probably switch to in-place view of backing array.
-    for (int i = 0; i < aValues.length; i++) {
-      results[i] = operator.operate(aValues[i], other);
+  private FastIntDoubleTimeSeries newInstanceFastShared(final int[] times, final double[] values, final int count) {
+    if (count < times.length) {
+      return newInstanceFastShared(Arrays.copyOf(times, count), Arrays.copyOf(values, count));
     }
-    return newInstanceFast(aTimes, results);
+    return newInstanceFastShared(times, values);
+  }
+
+  public FastIntDoubleTimeSeries operate(final UnaryOperator operator) {
+    final double[] aValues = valuesArrayShared();
+    final double[] results = new double[aValues.length];
+    DoubleTimeSeriesKernels.apply(operator, aValues, results, aValues.length);
+    return newInstanceFastShared(timesArrayShared(), results);
+  }
+
+  public FastIntDoubleTimeSeries operate(final double other, final BinaryOperator operator) {
+    final double[] aValues = valuesArrayShared();
+    final double[] results = new double[aValues.length];
+    DoubleTimeSeriesKernels.apply(operator, aValues, other, results, aValues.length);
+    return newInstanceFastShared(timesArrayShared(), results);
   }
 
   public FastIntDoubleTimeSeries operate(final FastBackedDoubleTimeSeries<?> other, final BinaryOperator operator) {
@@ -173,82 +240,36 @@ public abstract class AbstractFastIntDoubleTimeSeries extends AbstractFastTimeSe
   }
 
   public FastIntDoubleTimeSeries operate(final FastLongDoubleTimeSeries other, final BinaryOperator operator) {
-    final int[] aTimes = timesArrayFast();
-    final double[] aValues = valuesArrayFast();
-    int aCount = 0;
-    final long[] bTimesLong = other.timesArrayFast();
-    final int[] bTimes = new int[bTimesLong.length];
-    if (getEncoding() != other.getEncoding()) { // convert to a's format -- NOTE: if we switch to using an underlying array rather than a copy, we can't modify it in-place like we're doing here.
-      DateTimeNumericEncoding aEncoding = getEncoding();
-      DateTimeNumericEncoding bEncoding = other.getEncoding();
-      for (int i = 0; i < bTimes.length; i++) {
-        bTimes[i] = bEncoding.convertToInt(bTimesLong[i], aEncoding);
-      }
-    } else {
-      for (int i = 0; i < bTimes.length; i++) {
-        bTimes[i] = (int) bTimesLong[i];
-      }
-    }
-    final double[] bValues = other.valuesArrayFast();
-    int bCount = 0;
-    final int[] resTimes = new int[aTimes.length + bTimes.length];
-    final double[] resValues = new double[resTimes.length];
-    int resCount = 0;
-    while (aCount < aTimes.length && bCount < bTimes.length) {
-      if (aTimes[aCount] == bTimes[bCount]) {
-        resTimes[resCount] = aTimes[aCount];
-        resValues[resCount] = operator.operate(aValues[aCount], bValues[bCount]);
-        resCount++;
-        aCount++;
-        bCount++;
-      } else if (aTimes[aCount] < bTimes[bCount]) {
-        aCount++;
-      } else { // if (aTimes[aCount] > bTimes[bCount]) {
-        bCount++;
-      }
-    }
-    int[] trimmedTimes = new int[resCount];
-    double[] trimmedValues = new double[resCount];
-    System.arraycopy(resTimes, 0, trimmedTimes, 0, resCount);
-    System.arraycopy(resValues, 0, trimmedValues, 0, resCount);
-    return newInstanceFast(trimmedTimes, trimmedValues);
+    final int[] bTimes = DoubleTimeSeriesKernels.convertToInt(other.timesArrayFast(), other.getEncoding(), getEncoding());
+    return intersect(bTimes, other.valuesArrayFast(), operator);
   }
 
   public FastIntDoubleTimeSeries operate(final FastIntDoubleTimeSeries other, final BinaryOperator operator) {
-    final int[] aTimes = timesArrayFast();
-    final double[] aValues = valuesArrayFast();
-    int aCount = 0;
-    final int[] bTimes = other.timesArrayFast();
-    if (getEncoding() != other.getEncoding()) { // convert to a's format -- NOTE: if we switch to using an underlying array rather than a copy, we can't modify it in-place like we're doing here.
-      DateTimeNumericEncoding aEncoding = getEncoding();
-      DateTimeNumericEncoding bEncoding = other.getEncoding();
-      for (int i = 0; i < bTimes.length; i++) {
-        bTimes[i] = bEncoding.convertToInt(bTimes[i], aEncoding);
-      }
-    }
-    final double[] bValues = other.valuesArrayFast();
-    int bCount = 0;
-    final int[] resTimes = new int[aTimes.length + bTimes.length];
-    final double[] resValues = new double[resTimes.length];
-    int resCount = 0;
-    while (aCount < aTimes.length && bCount < bTimes.length) {
-      if (aTimes[aCount] == bTimes[bCount]) {
-        resTimes[resCount] = aTimes[aCount];
-        resValues[resCount] = operator.operate(aValues[aCount], bValues[bCount]);
-        resCount++;
-        aCount++;
-        bCount++;
-      } else if (aTimes[aCount] < bTimes[bCount]) {
-        aCount++;
-      } else { // if (aTimes[aCount] > bTimes[bCount]) {
-        bCount++;
-      }
-    }
-    int[] trimmedTimes = new int[resCount];
-    double[] trimmedValues = new double[resCount];
-    System.arraycopy(resTimes, 0, trimmedTimes, 0, resCount);
-    System.arraycopy(resValues, 0, trimmedValues, 0, resCount);
-    return newInstanceFast(trimmedTimes, trimmedValues);
+    final int[] bTimes = DoubleTimeSeriesKernels.convertToInt(timesArrayShared(other), other.getEncoding(), getEncoding());
+    return intersect(bTimes, valuesArrayShared(other), operator);
+  }
+
+  public FastIntDoubleTimeSeries operate(final FastIntDoubleTimeSeries other, final BinaryOperator operator, final double scalar,
+      final BinaryOperator scalarOperator) {
+    final int[] aTimes = timesArrayShared();
+    final int[] bTimes = DoubleTimeSeriesKernels.convertToInt(timesArrayShared(other), other.getEncoding(), getEncoding());
+    final int length = Math.min(aTimes.length, bTimes.length);
+    final int[] resTimes = new int[length];
+    final double[] resValues = new double[length];
+    final int count = DoubleTimeSeriesKernels.intersect(aTimes, valuesArrayShared(), aTimes.length, bTimes, valuesArrayShared(other), bTimes.length,
+        operator, resTimes, resValues);
+    DoubleTimeSeriesKernels.apply(scalarOperator, resValues, scalar, resValues, count);
+    return newInstanceFastShared(resTimes, resValues, count);
+  }
+
+  private FastIntDoubleTimeSeries intersect(final int[] bTimes, final double[] bValues, final BinaryOperator operator) {
+    final int[] aTimes = timesArrayShared();
+    final int length = Math.min(aTimes.length, bTimes.length);
+    final int[] resTimes = new int[length];
+    final double[] resValues = new double[length];
+    final int count = DoubleTimeSeriesKernels.intersect(aTimes, valuesArrayShared(), aTimes.length, bTimes, bValues, bTimes.length, operator,
+        resTimes, resValues);
+    return newInstanceFastShared(resTimes, resValues, count);
   }
 
   public FastIntDoubleTimeSeries unionOperate(final FastBackedDoubleTimeSeries<?> other, final BinaryOperator operator) {
@@ -261,118 +282,22 @@ public abstract class AbstractFastIntDoubleTimeSeries extends AbstractFastTimeSe
   }
 
   public FastIntDoubleTimeSeries unionOperate(final FastIntDoubleTimeSeries other, final BinaryOperator operator) {
-    final int[] aTimes = timesArrayFast();
-    final double[] aValues = valuesArrayFast();
-    int aCount = 0;
-    final int[] bTimes = other.timesArrayFast();
-    if (getEncoding() != other.getEncoding()) { // convert to a's format -- NOTE: if we switch to using an underlying array rather than a copy, we can't modify it in-place like we're doing here.
-      DateTimeNumericEncoding aEncoding = getEncoding();
-      DateTimeNumericEncoding bEncoding = other.getEncoding();
-      for (int i = 0; i < bTimes.length; i++) {
-        bTimes[i] = bEncoding.convertToInt(bTimes[i], aEncoding);
-      }
-    }
-    final double[] bValues = other.valuesArrayFast();
-    int bCount = 0;
-    final int[] resTimes = new int[aTimes.length + bTimes.length];
-    final double[] resValues = new double[resTimes.length];
-    int resCount = 0;
-    while (aCount < aTimes.length || bCount < bTimes.length) {
-      if (aCount >= aTimes.length) {
-        int bRemaining = bTimes.length - bCount;
-        System.arraycopy(bTimes, bCount, resTimes, resCount, bRemaining);
-        System.arraycopy(bValues, bCount, resValues, resCount, bRemaining);
-        resCount += bRemaining;
-        break;
-      } else if (bCount >= bTimes.length) {
-        int aRemaining = aTimes.length - aCount;
-        System.arraycopy(aTimes, aCount, resTimes, resCount, aRemaining);
-        System.arraycopy(aValues, aCount, resValues, resCount, aRemaining);
-        resCount += aRemaining;
-        break;
-      } else if (aTimes[aCount] == bTimes[bCount]) {
-        resTimes[resCount] = aTimes[aCount];
-        resValues[resCount] = operator.operate(aValues[aCount], bValues[bCount]);
-        resCount++;
-        aCount++;
-        bCount++;
-      } else if (aTimes[aCount] < bTimes[bCount]) {
-        resTimes[resCount] = aTimes[aCount];
-        resValues[resCount] = aValues[aCount];
-        resCount++;
-        aCount++;
-      } else { // if (aTimes[aCount] > bTimes[bCount]) {
-        resTimes[resCount] = bTimes[bCount];
-        resValues[resCount] = bValues[bCount];
-        resCount++;
-        bCount++;
-      }
-    }
-    int[] trimmedTimes = new int[resCount];
-    double[] trimmedValues = new double[resCount];
-    System.arraycopy(resTimes, 0, trimmedTimes, 0, resCount);
-    System.arraycopy(resValues, 0, trimmedValues, 0, resCount);
-    return newInstanceFast(trimmedTimes, trimmedValues);
+    final int[] bTimes = DoubleTimeSeriesKernels.convertToInt(timesArrayShared(other), other.getEncoding(), getEncoding());
+    return union(bTimes, valuesArrayShared(other), operator);
   }
 
   public FastIntDoubleTimeSeries unionOperate(final FastLongDoubleTimeSeries other, final BinaryOperator operator) {
-    final int[] aTimes = timesArrayFast();
-    final double[] aValues = valuesArrayFast();
-    int aCount = 0;
-    final long[] bTimesLong = other.timesArrayFast();
-    final int[] bTimes = new int[bTimesLong.length];
-    if (getEncoding() != other.getEncoding()) { // convert to a's format -- NOTE: if we switch to using an underlying array rather than a copy, we can't modify it in-place like we're doing here.
-      DateTimeNumericEncoding aEncoding = getEncoding();
-      DateTimeNumericEncoding bEncoding = other.getEncoding();
-      for (int i = 0; i < bTimes.length; i++) {
-        bTimes[i] = bEncoding.convertToInt(bTimesLong[i], aEncoding);
-      }
-    } else {
-      for (int i = 0; i < bTimes.length; i++) {
-        bTimes[i] = (int) bTimesLong[i];
-      }
-    }
-    final double[] bValues = other.valuesArrayFast();
-    int bCount = 0;
+    final int[] bTimes = DoubleTimeSeriesKernels.convertToInt(other.timesArrayFast(), other.getEncoding(), getEncoding());
+    return union(bTimes, other.valuesArrayFast(), operator);
+  }
+
+  private FastIntDoubleTimeSeries union(final int[] bTimes, final double[] bValues, final BinaryOperator operator) {
+    final int[] aTimes = timesArrayShared();
     final int[] resTimes = new int[aTimes.length + bTimes.length];
     final double[] resValues = new double[resTimes.length];
-    int resCount = 0;
-    while (aCount < aTimes.length || bCount < bTimes.length) {
-      if (aCount >= aTimes.length) {
-        int bRemaining = bTimes.length - bCount;
-        System.arraycopy(bTimes, bCount, resTimes, resCount, bRemaining);
-        System.arraycopy(bValues, bCount, resValues, resCount, bRemaining);
-        resCount += bRemaining;
-        break;
-      } else if (bCount >= bTimes.length) {
-        int aRemaining = aTimes.length - aCount;
-        System.arraycopy(aTimes, aCount, resTimes, resCount, aRemaining);
-        System.arraycopy(aValues, aCount, resValues, resCount, aRemaining);
-        resCount += aRemaining;
-        break;
-      } else if (aTimes[aCount] == bTimes[bCount]) {
-        resTimes[resCount] = aTimes[aCount];
-        resValues[resCount] = operator.operate(aValues[aCount], bValues[bCount]);
-        resCount++;
-        aCount++;
-        bCount++;
-      } else if (aTimes[aCount] < bTimes[bCount]) {
-        resTimes[resCount] = aTimes[aCount];
-        resValues[resCount] = aValues[aCount];
-        resCount++;
-        aCount++;
-      } else { // if (aTimes[aCount] > bTimes[bCount]) {
-        resTimes[resCount] = bTimes[bCount];
-        resValues[resCount] = bValues[bCount];
-        resCount++;
-        bCount++;
-      }
-    }
-    int[] trimmedTimes = new int[resCount];
-    double[] trimmedValues = new double[resCount];
-    System.arraycopy(resTimes, 0, trimmedTimes, 0, resCount);
-    System.arraycopy(resValues, 0, trimmedValues, 0, resCount);
-    return newInstanceFast(trimmedTimes, trimmedValues);
+    final int count = DoubleTimeSeriesKernels.union(aTimes, valuesArrayShared(), aTimes.length, bTimes, bValues, bTimes.length, operator,
+        resTimes, resValues);
+    return newInstanceFastShared(resTimes, resValues, count);
   }
 
   public FastIntDoubleTimeSeries lag(final int days) {
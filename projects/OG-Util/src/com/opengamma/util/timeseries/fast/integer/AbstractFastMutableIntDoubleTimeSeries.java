@@ -5,6 +5,8 @@
  */
 package com.opengamma.util.timeseries.fast.integer;
 
+import com.opengamma.util.timeseries.DoubleTimeSeriesOperators.BinaryOperator;
+import com.opengamma.util.timeseries.DoubleTimeSeriesOperators.UnaryOperator;
 import com.opengamma.util.timeseries.fast.DateTimeNumericEncoding;
 
 /**
@@ -26,4 +28,29 @@ public abstract class AbstractFastMutableIntDoubleTimeSeries extends AbstractFas
     primitiveRemoveDataPoint(time);
   }
 
+  public void operateInPlace(final UnaryOperator operator) {
+    replaceDataPoints(operate(operator));
+  }
+
+  public void operateInPlace(final double other, final BinaryOperator operator) {
+    replaceDataPoints(operate(other, operator));
+  }
+
+  public void operateInPlace(final FastIntDoubleTimeSeries other, final BinaryOperator operator) {
+    replaceDataPoints(operate(other, operator));
+  }
+
+  public void unionOperateInPlace(final FastIntDoubleTimeSeries other, final BinaryOperator operator) {
+    replaceDataPoints(unionOperate(other, operator));
+  }
+
+  private void replaceDataPoints(final FastIntDoubleTimeSeries result) {
+    final int[] times = result.timesArrayFast();
+    final double[] values = result.valuesArrayFast();
+    clear();
+    for (int i = 0; i < times.length; i++) {
+      primitivePutDataPoint(times[i], values[i]);
+    }
+  }
+
 }
@@ -55,6 +55,16 @@ public class FastArrayIntDoubleTimeSeries extends AbstractFastIntDoubleTimeSerie
     init(times, values);
   }
 
+  /**
+   * Creates a series that adopts the arrays rather than copying them.
+   * The times must already be ordered and the arrays must not be used by the caller afterwards.
+   */
+  FastArrayIntDoubleTimeSeries(final int[] times, final double[] values, final DateTimeNumericEncoding encoding) {
+    super(encoding);
+    _times = times;
+    _values = values;
+  }
+
   private void init(final int[] times, final double[] values) {
     if (times.length != values.length) {
       throw new IllegalArgumentException("Arrays are of different sizes: " + times.length + ", " + values.length);
@@ -358,6 +368,21 @@ public class FastArrayIntDoubleTimeSeries extends AbstractFastIntDoubleTimeSerie
     return _times.clone();
   }
 
+  @Override
+  protected int[] timesArrayShared() {
+    return _times;
+  }
+
+  @Override
+  protected double[] valuesArrayShared() {
+    return _values;
+  }
+
+  @Override
+  protected FastIntDoubleTimeSeries newInstanceFastShared(final int[] times, final double[] values) {
+    return new FastArrayIntDoubleTimeSeries(times, values, getEncoding());
+  }
+
   @Override
   public int getTimeFast(final int index) {
     return _times[index];
@@ -67,6 +67,14 @@ public interface FastIntDoubleTimeSeries extends FastTimeSeries<Integer> {
   public abstract FastIntDoubleTimeSeries operate(final double other, final BinaryOperator operator);
   
   public abstract FastIntDoubleTimeSeries operate(final UnaryOperator operator);
+
+  /**
+   * Combines the values at the times this series has in common with another, then combines each
+   * result with a constant, {@code scalarOperator(operator(a, b), scalar)}, without creating an
+   * intermediate series.
+   */
+  public abstract FastIntDoubleTimeSeries operate(final FastIntDoubleTimeSeries other, final BinaryOperator operator, final double scalar,
+      final BinaryOperator scalarOperator);
   
   public abstract FastIntDoubleTimeSeries unionOperate(final FastLongDoubleTimeSeries other, final BinaryOperator operator);
   
@@ -26,7 +26,10 @@ import com.opengamma.OpenGammaRuntimeException;
 import com.opengamma.util.timeseries.AbstractFastBackedDoubleTimeSeries;
 import com.opengamma.util.timeseries.DoubleTimeSeries;
 import com.opengamma.util.timeseries.FastBackedDoubleTimeSeries;
+import com.opengamma.util.timeseries.DoubleTimeSeriesOperators.BinaryOperator;
+import com.opengamma.util.timeseries.DoubleTimeSeriesOperators.UnaryOperator;
 import com.opengamma.util.timeseries.fast.DateTimeNumericEncoding;
+import com.opengamma.util.timeseries.fast.DoubleTimeSeriesKernels;
 import com.opengamma.util.timeseries.fast.longint.FastLongDoubleTimeSeries;
 import com.opengamma.util.tuple.IntDoublePair;
 
@@ -289,6 +292,42 @@ public class FastListIntDoubleTimeSeries extends AbstractFastMutableIntDoubleTim
     _values.clear();
   }
 
+  @Override
+  public void operateInPlace(final UnaryOperator operator) {
+    final double[] values = _values.elements();
+    DoubleTimeSeriesKernels.apply(operator, values, values, _values.size());
+  }
+
+  @Override
+  public void operateInPlace(final double other, final BinaryOperator operator) {
+    final double[] values = _values.elements();
+    DoubleTimeSeriesKernels.apply(operator, values, other, values, _values.size());
+  }
+
+  @Override
+  public void operateInPlace(final FastIntDoubleTimeSeries other, final BinaryOperator operator) {
+    final int[] times = _times.elements();
+    final double[] values = _values.elements();
+    final int[] otherTimes = DoubleTimeSeriesKernels.convertToInt(timesArrayShared(other), other.getEncoding(), getEncoding());
+    final int count = DoubleTimeSeriesKernels.intersect(times, values, _times.size(), otherTimes, valuesArrayShared(other), otherTimes.length, operator,
+        times, values);
+    _times.size(count);
+    _values.size(count);
+  }
+
+  @Override
+  public void unionOperateInPlace(final FastIntDoubleTimeSeries other, final BinaryOperator operator) {
+    final int[] otherTimes = DoubleTimeSeriesKernels.convertToInt(timesArrayShared(other), other.getEncoding(), getEncoding());
+    final int[] resTimes = new int[_times.size() + otherTimes.length];
+    final double[] resValues = new double[resTimes.length];
+    final int count = DoubleTimeSeriesKernels.union(_times.elements(), _values.elements(), _times.size(), otherTimes, valuesArrayShared(other),
+        otherTimes.length, operator, resTimes, resValues);
+    _times.clear();
+    _times.addElements(0, resTimes, 0, count);
+    _values.clear();
+    _values.addElements(0, resValues, 0, count);
+  }
+
   @Override
   public void primitivePutDataPoint(final int time, final double value) {
     final int index = Arrays.binarySearch(_times.elements(), time);
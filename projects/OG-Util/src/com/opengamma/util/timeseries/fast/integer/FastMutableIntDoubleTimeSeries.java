@@ -5,10 +5,35 @@
  */
 package com.opengamma.util.timeseries.fast.integer;
 
+import com.opengamma.util.timeseries.DoubleTimeSeriesOperators.BinaryOperator;
+import com.opengamma.util.timeseries.DoubleTimeSeriesOperators.UnaryOperator;
+
 public interface FastMutableIntDoubleTimeSeries extends FastIntDoubleTimeSeries {
   public void primitivePutDataPoint(int time, double value);
 
   public void primitiveRemoveDataPoint(int time);
 
   public void clear();
+
+  /**
+   * Replaces each value with the result of an operator, as {@link #operate(UnaryOperator)} but modifying this series.
+   */
+  public void operateInPlace(final UnaryOperator operator);
+
+  /**
+   * Combines each value with a constant, as {@link #operate(double, BinaryOperator)} but modifying this series.
+   */
+  public void operateInPlace(final double other, final BinaryOperator operator);
+
+  /**
+   * Combines the values at the times this series has in common with another, removing the times it doesn't,
+   * as {@link #operate(FastIntDoubleTimeSeries, BinaryOperator)} but modifying this series.
+   */
+  public void operateInPlace(final FastIntDoubleTimeSeries other, final BinaryOperator operator);
+
+  /**
+   * Combines the values at the times this series has in common with another, adding the times it doesn't,
+   * as {@link #unionOperate(FastIntDoubleTimeSeries, BinaryOperator)} but modifying this series.
+   */
+  public void unionOperateInPlace(final FastIntDoubleTimeSeries other, final BinaryOperator operator);
 }
@@ -0,0 +1,335 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.util.timeseries.fast.integer;
+
+import java.nio.ByteBuffer;
+
+import com.opengamma.util.ArgumentChecker;
+import com.opengamma.util.timeseries.fast.DateTimeNumericEncoding;
+
+/**
+ * Encodes a fast int-double time series as a compressed block of columns.
+ * <p>
+ * The block starts with a fixed header holding the number of points, the earliest and latest times
+ * and the length of the times column, so these can be read without decoding the block. The times
+ * column holds the difference from each time to the previous one as a variable length integer,
+ * which is one byte per point for a daily series. The values column holds each value XORed with
+ * the previous one, storing only the bits that differ. An unchanged value takes one bit, and a
+ * value close to the previous one does not repeat the sign, exponent and leading mantissa bits.
+ * <p>
+ * Blocks are decoded directly into the arrays of a {@link FastArrayIntDoubleTimeSeries} with no
+ * intermediate objects, and a range of times can be decoded without decoding the points after it.
+ */
+public final class IntDoubleTimeSeriesBlockCodec {
+
+  /**
+   * The length of the block header in bytes.
+   */
+  public static final int HEADER_LENGTH = 16;
+
+  private static final int COUNT_OFFSET = 0;
+  private static final int EARLIEST_OFFSET = 4;
+  private static final int LATEST_OFFSET = 8;
+  private static final int TIMES_LENGTH_OFFSET = 12;
+
+  /**
+   * Restricted constructor.
+   */
+  private IntDoubleTimeSeriesBlockCodec() {
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the most bytes a series can take once encoded.
+   *
+   * @param count  the number of points in the series
+   * @return the maximum encoded length in bytes
+   */
+  public static int maxEncodedLength(final int count) {
+    // times take at most 5 bytes, values at most 77 bits, plus a partly filled byte
+    return HEADER_LENGTH + count * 5 + (count * 77 + 7) / 8 + 1;
+  }
+
+  /**
+   * Encodes a series into a buffer at its current position, advancing the position past the block.
+   *
+   * @param series  the series to encode, not null
+   * @param buffer  the buffer to write to, with at least {@link #maxEncodedLength} bytes remaining, not null
+   */
+  public static void encode(final FastIntDoubleTimeSeries series, final ByteBuffer buffer) {
+    ArgumentChecker.notNull(series, "series");
+    ArgumentChecker.notNull(buffer, "buffer");
+    final int[] times = AbstractFastIntDoubleTimeSeries.timesArrayShared(series);
+    final double[] values = AbstractFastIntDoubleTimeSeries.valuesArrayShared(series);
+    final int start = buffer.position();
+    final int count = times.length;
+    buffer.putInt(start + COUNT_OFFSET, count);
+    buffer.putInt(start + EARLIEST_OFFSET, (count > 0) ? times[0] : 0);
+    buffer.putInt(start + LATEST_OFFSET, (count > 0) ? times[count - 1] : 0);
+    buffer.position(start + HEADER_LENGTH);
+    for (int i = 1; i < count; i++) {
+      long delta = (long) times[i] - times[i - 1];
+      while ((delta & ~0x7FL) != 0) {
+        buffer.put((byte) ((delta & 0x7F) | 0x80));
+        delta >>>= 7;
+      }
+      buffer.put((byte) delta);
+    }
+    buffer.putInt(start + TIMES_LENGTH_OFFSET, buffer.position() - start - HEADER_LENGTH);
+    if (count > 0) {
+      final BitWriter writer = new BitWriter(buffer);
+      long previous = Double.doubleToRawLongBits(values[0]);
+      writer.write(previous, 64);
+      int previousLeading = -1;
+      int previousTrailing = 0;
+      for (int i = 1; i < count; i++) {
+        final long value = Double.doubleToRawLongBits(values[i]);
+        final long xor = value ^ previous;
+        if (xor == 0) {
+          writer.write(0, 1);
+        } else {
+          final int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+          final int trailing = Long.numberOfTrailingZeros(xor);
+          if ((previousLeading >= 0) && (leading >= previousLeading) && (trailing >= previousTrailing)) {
+            writer.write(2, 2);
+            writer.write(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+          } else {
+            final int significant = 64 - leading - trailing;
+            writer.write(3, 2);
+            writer.write(leading, 5);
+            writer.write(significant - 1, 6);
+            writer.write(xor >>> trailing, significant);
+            previousLeading = leading;
+            previousTrailing = trailing;
+          }
+        }
+        previous = value;
+      }
+      writer.flush();
+    }
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Gets the number of points in the block at the buffer's position.
+   *
+   * @param block  the buffer positioned at the block, not null
+   * @return the number of points
+   */
+  public static int getCount(final ByteBuffer block) {
+    return block.getInt(block.position() + COUNT_OFFSET);
+  }
+
+  /**
+   * Gets the earliest time in the block at the buffer's position.
+   *
+   * @param block  the buffer positioned at the block, not null
+   * @return the earliest time, undefined if the block is empty
+   */
+  public static int getEarliestTime(final ByteBuffer block) {
+    return block.getInt(block.position() + EARLIEST_OFFSET);
+  }
+
+  /**
+   * Gets the latest time in the block at the buffer's position.
+   *
+   * @param block  the buffer positioned at the block, not null
+   * @return the latest time, undefined if the block is empty
+   */
+  public static int getLatestTime(final ByteBuffer block) {
+    return block.getInt(block.position() + LATEST_OFFSET);
+  }
+
+  /**
+   * Decodes the block at the buffer's position.
+   * The buffer's position is not changed.
+   *
+   * @param block  the buffer positioned at the block, not null
+   * @param encoding  the encoding of the times, not null
+   * @return the series, not null
+   */
+  public static FastIntDoubleTimeSeries decode(final ByteBuffer block, final DateTimeNumericEncoding encoding) {
+    return decode(block, encoding, Integer.MIN_VALUE, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Decodes the points of the block at the buffer's position between two times, inclusive.
+   * The buffer's position is not changed.
+   *
+   * @param block  the buffer positioned at the block, not null
+   * @param encoding  the encoding of the times, not null
+   * @param startTime  the earliest time to decode
+   * @param endTime  the latest time to decode
+   * @return the series, not null
+   */
+  public static FastIntDoubleTimeSeries decode(final ByteBuffer block, final DateTimeNumericEncoding encoding, final int startTime, final int endTime) {
+    ArgumentChecker.notNull(block, "block");
+    ArgumentChecker.notNull(encoding, "encoding");
+    final int start = block.position();
+    final int count = getCount(block);
+    if ((count == 0) || (startTime > endTime) || (getEarliestTime(block) > endTime) || (getLatestTime(block) < startTime)) {
+      return new FastArrayIntDoubleTimeSeries(encoding);
+    }
+    final int timesStart = start + HEADER_LENGTH;
+    final int valuesStart = timesStart + block.getInt(start + TIMES_LENGTH_OFFSET);
+    // find the range, then decode it into exactly sized arrays
+    int first;
+    int last;
+    if ((getEarliestTime(block) >= startTime) && (getLatestTime(block) <= endTime)) {
+      first = 0;
+      last = count - 1;
+    } else {
+      first = -1;
+      last = -1;
+      int position = timesStart;
+      int time = getEarliestTime(block);
+      for (int i = 0; i < count; i++) {
+        if (i > 0) {
+          long delta = 0;
+          int shift = 0;
+          byte b;
+          do {
+            b = block.get(position++);
+            delta |= (long) (b & 0x7F) << shift;
+            shift += 7;
+          } while (b < 0);
+          time += delta;
+        }
+        if (time > endTime) {
+          break;
+        }
+        if ((first < 0) && (time >= startTime)) {
+          first = i;
+        }
+        last = i;
+      }
+      if (first < 0) {
+        return new FastArrayIntDoubleTimeSeries(encoding);
+      }
+    }
+    final int length = last - first + 1;
+    final int[] times = new int[length];
+    int position = timesStart;
+    int time = getEarliestTime(block);
+    for (int i = 0; i <= last; i++) {
+      if (i > 0) {
+        long delta = 0;
+        int shift = 0;
+        byte b;
+        do {
+          b = block.get(position++);
+          delta |= (long) (b & 0x7F) << shift;
+          shift += 7;
+        } while (b < 0);
+        time += delta;
+      }
+      if (i >= first) {
+        times[i - first] = time;
+      }
+    }
+    final double[] values = new double[length];
+    final ByteBuffer valuesBuffer = block.duplicate();
+    valuesBuffer.position(valuesStart);
+    final BitReader reader = new BitReader(valuesBuffer);
+    long value = reader.read(64);
+    if (first == 0) {
+      values[0] = Double.longBitsToDouble(value);
+    }
+    int leading = 0;
+    int trailing = 0;
+    for (int i = 1; i <= last; i++) {
+      if (reader.read(1) != 0) {
+        if (reader.read(1) != 0) {
+          leading = (int) reader.read(5);
+          trailing = 64 - leading - ((int) reader.read(6) + 1);
+        }
+        value ^= reader.read(64 - leading - trailing) << trailing;
+      }
+      if (i >= first) {
+        values[i - first] = Double.longBitsToDouble(value);
+      }
+    }
+    return new FastArrayIntDoubleTimeSeries(times, values, encoding);
+  }
+
+  //-------------------------------------------------------------------------
+  /**
+   * Writes bits, most significant first, to a buffer.
+   */
+  private static final class BitWriter {
+
+    private final ByteBuffer _buffer;
+    private long _pending;
+    private int _pendingBits;
+
+    private BitWriter(final ByteBuffer buffer) {
+      _buffer = buffer;
+    }
+
+    private void write(final long value, final int bits) {
+      if (bits > 32) {
+        write32(value >>> 32, bits - 32);
+        write32(value, 32);
+      } else {
+        write32(value, bits);
+      }
+    }
+
+    private void write32(final long value, final int bits) {
+      _pending = (_pending << bits) | (value & ((1L << bits) - 1));
+      _pendingBits += bits;
+      while (_pendingBits >= 8) {
+        _pendingBits -= 8;
+        _buffer.put((byte) (_pending >>> _pendingBits));
+      }
+      _pending &= (1L << _pendingBits) - 1;
+    }
+
+    private void flush() {
+      if (_pendingBits > 0) {
+        _buffer.put((byte) (_pending << (8 - _pendingBits)));
+        _pending = 0;
+        _pendingBits = 0;
+      }
+    }
+
+  }
+
+  /**
+   * Reads bits, most significant first, from a buffer.
+   */
+  private static final class BitReader {
+
+    private final ByteBuffer _buffer;
+    private long _available;
+    private int _availableBits;
+
+    private BitReader(final ByteBuffer buffer) {
+      _buffer = buffer;
+    }
+
+    private long read(final int bits) {
+      if (bits > 32) {
+        final long high = read32(bits - 32);
+        return (high << 32) | read32(32);
+      }
+      return read32(bits);
+    }
+
+    private long read32(final int bits) {
+      while (_availableBits < bits) {
+        _available = (_available << 8) | (_buffer.get() & 0xFF);
+        _availableBits += 8;
+      }
+      _availableBits -= bits;
+      final long result = (_available >>> _availableBits) & ((1L << bits) - 1);
+      _available &= (1L << _availableBits) - 1;
+      return result;
+    }
+
+  }
+
+}
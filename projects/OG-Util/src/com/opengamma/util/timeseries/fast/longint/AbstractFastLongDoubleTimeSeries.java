@@ -5,6 +5,7 @@
  */
 package com.opengamma.util.timeseries.fast.longint;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -19,6 +20,7 @@ import com.opengamma.util.timeseries.DoubleTimeSeriesOperators.UnaryOperator;
 import com.opengamma.util.timeseries.fast.AbstractFastTimeSeries;
 import com.opengamma.util.timeseries.fast.DateTimeNumericEncoding;
 import com.opengamma.util.timeseries.fast.DateTimeResolution;
+import com.opengamma.util.timeseries.fast.DoubleTimeSeriesKernels;
 import com.opengamma.util.timeseries.fast.FastTimeSeries;
 import com.opengamma.util.timeseries.fast.integer.FastArrayIntDoubleTimeSeries;
 import com.opengamma.util.timeseries.fast.integer.FastIntDoubleTimeSeries;
@@ -134,238 +136,161 @@ public abstract class AbstractFastLongDoubleTimeSeries extends AbstractFastTimeS
     return (TimeSeries<Long, Double>) newInstanceFast(ArrayUtils.toPrimitive(times), ArrayUtils.toPrimitive(values));
   }
   
-  public FastLongDoubleTimeSeries operate(final UnaryOperator operator) {
-    final long[] aTimes = timesArrayFast();
-    final double[] aValues = valuesArrayFast();
-    final double[] results = new double[aValues.length]; // could modify in place, but will probably switch to in-place view of backing array.
-    for (int i = 0; i < aValues.length; i++) {
-      results[i] = operator.operate(aValues[i]);
+  /**
+   * Gets the times of this series for an operation that only reads them.
+   * <p>
+   * The default implementation returns a copy. Series that never modify their times may return the
+   * underlying array.
+   *
+   * @return the times, not to be modified, not null
+   */
+  protected long[] timesArrayShared() {
+    return timesArrayFast();
+  }
+
+  /**
+   * Gets the values of this series for an operation that only reads them.
+   * <p>
+   * The default implementation returns a copy. Series that never modify their values may return the
+   * underlying array.
+   *
+   * @return the values, not to be modified, not null
+   */
+  protected double[] valuesArrayShared() {
+    return valuesArrayFast();
+  }
+
+  /**
+   * Creates a series of the same type as this one from arrays that are not used after the call.
+   * <p>
+   * The default implementation calls {@link #newInstanceFast}. Series backed by arrays may adopt the
+   * arrays rather than copying them.
+   *
+   * @param times the times, not null
+   * @param values the values, not null
+   * @return the series, not null
+   */
+  protected FastLongDoubleTimeSeries newInstanceFastShared(final long[] times, final double[] values) {
+    return newInstanceFast(times, values);
+  }
+
+  /**
+   * Gets the times of a series for an operation that only reads them.
+   *
+   * @param series the series, not null
+   * @return the times, not to be modified, not null
+   */
+  static long[] timesArrayShared(final FastLongDoubleTimeSeries series) {
+    if (series instanceof AbstractFastLongDoubleTimeSeries) {
+      return ((AbstractFastLongDoubleTimeSeries) series).timesArrayShared();
     }
-    return newInstanceFast(aTimes, results);
-  }  
-  
-  public FastLongDoubleTimeSeries operate(final double other, final BinaryOperator operator) {
-    final long[] aTimes = timesArrayFast();
-    final double[] aValues = valuesArrayFast();
-    final double[] results = new double[aValues.length]; // could modify in place, but will probably switch to in-place view of backing array.
-    for (int i = 0; i < aValues.length; i++) {
-      results[i] = operator.operate(aValues[i], other);
+    return series.timesArrayFast();
+  }
+
+  /**
+   * Gets the values of a series for an operation that only reads them.
+   *
+   * @param series the series, not null
+   * @return the values, not to be modified, not null
+   */
+  static double[] valuesArrayShared(final FastLongDoubleTimeSeries series) {
+    if (series instanceof AbstractFastLongDoubleTimeSeries) {
+      return ((AbstractFastLongDoubleTimeSeries) series).valuesArrayShared();
     }
-    return newInstanceFast(aTimes, results);
+    return series.valuesArrayFast();
   }
-  
+
+  private FastLongDoubleTimeSeries newInstanceFastShared(final long[] times, final double[] values, final int count) {
+    if (count < times.length) {
+      return newInstanceFastShared(Arrays.copyOf(times, count), Arrays.copyOf(values, count));
+    }
+    return newInstanceFastShared(times, values);
+  }
+
+  public FastLongDoubleTimeSeries operate(final UnaryOperator operator) {
+    final double[] aValues = valuesArrayShared();
+    final double[] results = new double[aValues.length];
+    DoubleTimeSeriesKernels.apply(operator, aValues, results, aValues.length);
+    return newInstanceFastShared(timesArrayShared(), results);
+  }
+
+  public FastLongDoubleTimeSeries operate(final double other, final BinaryOperator operator) {
+    final double[] aValues = valuesArrayShared();
+    final double[] results = new double[aValues.length];
+    DoubleTimeSeriesKernels.apply(operator, aValues, other, results, aValues.length);
+    return newInstanceFastShared(timesArrayShared(), results);
+  }
+
   public FastLongDoubleTimeSeries operate(final FastBackedDoubleTimeSeries<?> other, final BinaryOperator operator) {
     FastTimeSeries<?> fastSeries = other.getFastSeries();
-    if (fastSeries instanceof FastIntDoubleTimeSeries) {
-      return operate((FastIntDoubleTimeSeries) fastSeries, operator);
-    } else { // if (fastSeries instanceof FastLongDoubleTimeSeries
+    if (fastSeries instanceof FastLongDoubleTimeSeries) {
       return operate((FastLongDoubleTimeSeries) fastSeries, operator);
+    } else { // if (fastSeries instanceof FastIntDoubleTimeSeries
+      return operate((FastIntDoubleTimeSeries) fastSeries, operator);
     }
   }
-  
-  public FastLongDoubleTimeSeries operate(final FastLongDoubleTimeSeries other, final BinaryOperator operator) { 
-    final long[] aTimes = timesArrayFast();
-    final double[] aValues = valuesArrayFast();
-    int aCount = 0;
-    final long[] bTimes = other.timesArrayFast();
-    if (getEncoding() != other.getEncoding()) { // convert to a's format -- NOTE: if we switch to using an underlying array rather than a copy, we can't modify it in-place like we're doing here.
-      DateTimeNumericEncoding aEncoding = getEncoding();
-      DateTimeNumericEncoding bEncoding = other.getEncoding();
-      for (int i = 0; i < bTimes.length; i++) {
-        bTimes[i] = bEncoding.convertToLong(bTimes[i], aEncoding);
-      }
-    }
-    final double[] bValues = other.valuesArrayFast();
-    int bCount = 0;
-    final long[] resTimes = new long[aTimes.length + bTimes.length];
-    final double[] resValues = new double[resTimes.length];
-    int resCount = 0;
-    while (aCount < aTimes.length && bCount < bTimes.length) {
-      if (aTimes[aCount] == bTimes[bCount]) {
-        resTimes[resCount] = aTimes[aCount];
-        resValues[resCount] = operator.operate(aValues[aCount], bValues[bCount]);
-        resCount++;
-        aCount++;
-        bCount++;
-      } else if (aTimes[aCount] < bTimes[bCount]) {
-        aCount++;
-      } else { // if (aTimes[aCount] > bTimes[bCount]) {
-        bCount++;
-      }
-    }
-    long[] trimmedTimes = new long[resCount];
-    double[] trimmedValues = new double[resCount];
-    System.arraycopy(resTimes, 0, trimmedTimes, 0, resCount);
-    System.arraycopy(resValues, 0, trimmedValues, 0, resCount);
-    return newInstanceFast(trimmedTimes, trimmedValues);
+
+  public FastLongDoubleTimeSeries operate(final FastIntDoubleTimeSeries other, final BinaryOperator operator) {
+    final long[] bTimes = DoubleTimeSeriesKernels.convertToLong(other.timesArrayFast(), other.getEncoding(), getEncoding());
+    return intersect(bTimes, other.valuesArrayFast(), operator);
   }
-  
-  public FastLongDoubleTimeSeries operate(final FastIntDoubleTimeSeries other, final BinaryOperator operator) { 
-    final long[] aTimes = timesArrayFast();
-    final double[] aValues = valuesArrayFast();
-    int aCount = 0;
-    final int[] bTimesInt = other.timesArrayFast();
-    final long[] bTimes = new long[bTimesInt.length];
-    if (getEncoding() != other.getEncoding()) { // convert to a's format -- NOTE: if we switch to using an underlying array rather than a copy, we can't modify it in-place like we're doing here.
-      DateTimeNumericEncoding aEncoding = getEncoding();
-      DateTimeNumericEncoding bEncoding = other.getEncoding();
-      for (int i = 0; i < bTimesInt.length; i++) {
-        bTimes[i] = bEncoding.convertToLong(bTimesInt[i], aEncoding);
-      }
-    } else {
-      for (int i = 0; i < bTimesInt.length; i++) {
-        bTimes[i] = bTimesInt[i];
-      }      
-    }
-    final double[] bValues = other.valuesArrayFast();
-    int bCount = 0;
-    final long[] resTimes = new long[aTimes.length + bTimes.length];
-    final double[] resValues = new double[resTimes.length];
-    int resCount = 0;
-    while (aCount < aTimes.length && bCount < bTimes.length) {
-      if (aTimes[aCount] == bTimes[bCount]) {
-        resTimes[resCount] = aTimes[aCount];
-        resValues[resCount] = operator.operate(aValues[aCount], bValues[bCount]);
-        resCount++;
-        aCount++;
-        bCount++;
-      } else if (aTimes[aCount] < bTimes[bCount]) {
-        aCount++;
-      } else { // if (aTimes[aCount] > bTimes[bCount]) {
-        bCount++;
-      }
-    }
-    long[] trimmedTimes = new long[resCount];
-    double[] trimmedValues = new double[resCount];
-    System.arraycopy(resTimes, 0, trimmedTimes, 0, resCount);
-    System.arraycopy(resValues, 0, trimmedValues, 0, resCount);
-    return newInstanceFast(trimmedTimes, trimmedValues);
+
+  public FastLongDoubleTimeSeries operate(final FastLongDoubleTimeSeries other, final BinaryOperator operator) {
+    final long[] bTimes = DoubleTimeSeriesKernels.convertToLong(timesArrayShared(other), other.getEncoding(), getEncoding());
+    return intersect(bTimes, valuesArrayShared(other), operator);
   }
-  
+
+  public FastLongDoubleTimeSeries operate(final FastLongDoubleTimeSeries other, final BinaryOperator operator, final double scalar,
+      final BinaryOperator scalarOperator) {
+    final long[] aTimes = timesArrayShared();
+    final long[] bTimes = DoubleTimeSeriesKernels.convertToLong(timesArrayShared(other), other.getEncoding(), getEncoding());
+    final int length = Math.min(aTimes.length, bTimes.length);
+    final long[] resTimes = new long[length];
+    final double[] resValues = new double[length];
+    final int count = DoubleTimeSeriesKernels.intersect(aTimes, valuesArrayShared(), aTimes.length, bTimes, valuesArrayShared(other), bTimes.length,
+        operator, resTimes, resValues);
+    DoubleTimeSeriesKernels.apply(scalarOperator, resValues, scalar, resValues, count);
+    return newInstanceFastShared(resTimes, resValues, count);
+  }
+
+  private FastLongDoubleTimeSeries intersect(final long[] bTimes, final double[] bValues, final BinaryOperator operator) {
+    final long[] aTimes = timesArrayShared();
+    final int length = Math.min(aTimes.length, bTimes.length);
+    final long[] resTimes = new long[length];
+    final double[] resValues = new double[length];
+    final int count = DoubleTimeSeriesKernels.intersect(aTimes, valuesArrayShared(), aTimes.length, bTimes, bValues, bTimes.length, operator,
+        resTimes, resValues);
+    return newInstanceFastShared(resTimes, resValues, count);
+  }
+
   public FastLongDoubleTimeSeries unionOperate(final FastBackedDoubleTimeSeries<?> other, final BinaryOperator operator) {
     FastTimeSeries<?> fastSeries = other.getFastSeries();
-    if (fastSeries instanceof FastIntDoubleTimeSeries) {
-      return unionOperate((FastIntDoubleTimeSeries) fastSeries, operator);
-    } else { // if (fastSeries instanceof FastLongDoubleTimeSeries
+    if (fastSeries instanceof FastLongDoubleTimeSeries) {
       return unionOperate((FastLongDoubleTimeSeries) fastSeries, operator);
+    } else { // if (fastSeries instanceof FastIntDoubleTimeSeries
+      return unionOperate((FastIntDoubleTimeSeries) fastSeries, operator);
     }
   }
-  
-  public FastLongDoubleTimeSeries unionOperate(final FastIntDoubleTimeSeries other, final BinaryOperator operator) { 
-    final long[] aTimes = timesArrayFast();
-    final double[] aValues = valuesArrayFast();
-    int aCount = 0;
-    final int[] bTimesInt = other.timesArrayFast();
-    final long[] bTimes = new long[bTimesInt.length];
-    if (getEncoding() != other.getEncoding()) { // convert to a's format -- NOTE: if we switch to using an underlying array rather than a copy, we can't modify it in-place like we're doing here.
-      DateTimeNumericEncoding aEncoding = getEncoding();
-      DateTimeNumericEncoding bEncoding = other.getEncoding();
-      for (int i = 0; i < bTimes.length; i++) {
-        bTimes[i] = bEncoding.convertToLong(bTimesInt[i], aEncoding);
-      }
-    } else {
-      for (int i = 0; i < bTimes.length; i++) {
-        bTimes[i] = bTimesInt[i];
-      }
-    }
-    final double[] bValues = other.valuesArrayFast();
-    int bCount = 0;
-    final long[] resTimes = new long[aTimes.length + bTimes.length];
-    final double[] resValues = new double[resTimes.length];
-    int resCount = 0;
-    while (aCount < aTimes.length || bCount < bTimes.length) {
-      if (aCount >= aTimes.length) {
-        int bRemaining = bTimes.length - bCount;
-        System.arraycopy(bTimes, bCount, resTimes, resCount, bRemaining);
-        System.arraycopy(bValues, bCount, resValues, resCount, bRemaining);
-        resCount += bRemaining;
-        break;
-      } else if (bCount >= bTimes.length) {
-        int aRemaining = aTimes.length - aCount;
-        System.arraycopy(aTimes, aCount, resTimes, resCount, aRemaining);
-        System.arraycopy(aValues, aCount, resValues, resCount, aRemaining);
-        resCount += aRemaining;
-        break;
-      } else if (aTimes[aCount] == bTimes[bCount]) {
-        resTimes[resCount] = aTimes[aCount];
-        resValues[resCount] = operator.operate(aValues[aCount], bValues[bCount]);
-        resCount++;
-        aCount++;
-        bCount++;
-      } else if (aTimes[aCount] < bTimes[bCount]) {
-        resTimes[resCount] = aTimes[aCount];
-        resValues[resCount] = aValues[aCount];
-        resCount++;
-        aCount++;
-      } else { // if (aTimes[aCount] > bTimes[bCount]) {
-        resTimes[resCount] = bTimes[bCount];
-        resValues[resCount] = bValues[bCount];
-        resCount++;
-        bCount++;
-      }
-    }
-    long[] trimmedTimes = new long[resCount];
-    double[] trimmedValues = new double[resCount];
-    System.arraycopy(resTimes, 0, trimmedTimes, 0, resCount);
-    System.arraycopy(resValues, 0, trimmedValues, 0, resCount);
-    return newInstanceFast(trimmedTimes, trimmedValues);
-  }  
-  
-  public FastLongDoubleTimeSeries unionOperate(final FastLongDoubleTimeSeries other, final BinaryOperator operator) { 
-    final long[] aTimes = timesArrayFast();
-    final double[] aValues = valuesArrayFast();
-    int aCount = 0;
-    final long[] bTimes = other.timesArrayFast();
-    if (getEncoding() != other.getEncoding()) { // convert to a's format -- NOTE: if we switch to using an underlying array rather than a copy, we can't modify it in-place like we're doing here.
-      DateTimeNumericEncoding aEncoding = getEncoding();
-      DateTimeNumericEncoding bEncoding = other.getEncoding();
-      for (int i = 0; i < bTimes.length; i++) {
-        bTimes[i] = bEncoding.convertToLong(bTimes[i], aEncoding);
-      }
-    }
-    final double[] bValues = other.valuesArrayFast();
-    int bCount = 0;
+
+  public FastLongDoubleTimeSeries unionOperate(final FastLongDoubleTimeSeries other, final BinaryOperator operator) {
+    final long[] bTimes = DoubleTimeSeriesKernels.convertToLong(timesArrayShared(other), other.getEncoding(), getEncoding());
+    return union(bTimes, valuesArrayShared(other), operator);
+  }
+
+  public FastLongDoubleTimeSeries unionOperate(final FastIntDoubleTimeSeries other, final BinaryOperator operator) {
+    final long[] bTimes = DoubleTimeSeriesKernels.convertToLong(other.timesArrayFast(), other.getEncoding(), getEncoding());
+    return union(bTimes, other.valuesArrayFast(), operator);
+  }
+
+  private FastLongDoubleTimeSeries union(final long[] bTimes, final double[] bValues, final BinaryOperator operator) {
+    final long[] aTimes = timesArrayShared();
     final long[] resTimes = new long[aTimes.length + bTimes.length];
     final double[] resValues = new double[resTimes.length];
-    int resCount = 0;
-    while (aCount < aTimes.length || bCount < bTimes.length) {
-      if (aCount >= aTimes.length) {
-        int bRemaining = bTimes.length - bCount;
-        System.arraycopy(bTimes, bCount, resTimes, resCount, bRemaining);
-        System.arraycopy(bValues, bCount, resValues, resCount, bRemaining);
-        resCount += bRemaining;
-        break;
-      } else if (bCount >= bTimes.length) {
-        int aRemaining = aTimes.length - aCount;
-        System.arraycopy(aTimes, aCount, resTimes, resCount, aRemaining);
-        System.arraycopy(aValues, aCount, resValues, resCount, aRemaining);
-        resCount += aRemaining;
-        break;
-      } else if (aTimes[aCount] == bTimes[bCount]) {
-        resTimes[resCount] = aTimes[aCount];
-        resValues[resCount] = operator.operate(aValues[aCount], bValues[bCount]);
-        resCount++;
-        aCount++;
-        bCount++;
-      } else if (aTimes[aCount] < bTimes[bCount]) {
-        resTimes[resCount] = aTimes[aCount];
-        resValues[resCount] = aValues[aCount];
-        resCount++;
-        aCount++;
-      } else { // if (aTimes[aCount] > bTimes[bCount]) {
-        resTimes[resCount] = bTimes[bCount];
-        resValues[resCount] = bValues[bCount];
-        resCount++;
-        bCount++;
-      }
-    }
-    long[] trimmedTimes = new long[resCount];
-    double[] trimmedValues = new double[resCount];
-    System.arraycopy(resTimes, 0, trimmedTimes, 0, resCount);
-    System.arraycopy(resValues, 0, trimmedValues, 0, resCount);
-    return newInstanceFast(trimmedTimes, trimmedValues);
-  }  
-  
+    final int count = DoubleTimeSeriesKernels.union(aTimes, valuesArrayShared(), aTimes.length, bTimes, bValues, bTimes.length, operator,
+        resTimes, resValues);
+    return newInstanceFastShared(resTimes, resValues, count);
+  }
+
   public FastLongDoubleTimeSeries lag(final int days) {
     long[] times = timesArrayFast();
     double[] values = valuesArrayFast();
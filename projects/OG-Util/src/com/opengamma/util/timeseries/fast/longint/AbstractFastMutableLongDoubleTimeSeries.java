@@ -5,6 +5,8 @@
  */
 package com.opengamma.util.timeseries.fast.longint;
 
+import com.opengamma.util.timeseries.DoubleTimeSeriesOperators.BinaryOperator;
+import com.opengamma.util.timeseries.DoubleTimeSeriesOperators.UnaryOperator;
 import com.opengamma.util.timeseries.fast.DateTimeNumericEncoding;
 
 
@@ -27,4 +29,29 @@ public abstract class AbstractFastMutableLongDoubleTimeSeries extends AbstractFa
     primitiveRemoveDataPoint(time);
   }
 
+  public void operateInPlace(final UnaryOperator operator) {
+    replaceDataPoints(operate(operator));
+  }
+
+  public void operateInPlace(final double other, final BinaryOperator operator) {
+    replaceDataPoints(operate(other, operator));
+  }
+
+  public void operateInPlace(final FastLongDoubleTimeSeries other, final BinaryOperator operator) {
+    replaceDataPoints(operate(other, operator));
+  }
+
+  public void unionOperateInPlace(final FastLongDoubleTimeSeries other, final BinaryOperator operator) {
+    replaceDataPoints(unionOperate(other, operator));
+  }
+
+  private void replaceDataPoints(final FastLongDoubleTimeSeries result) {
+    final long[] times = result.timesArrayFast();
+    final double[] values = result.valuesArrayFast();
+    clear();
+    for (int i = 0; i < times.length; i++) {
+      primitivePutDataPoint(times[i], values[i]);
+    }
+  }
+
 }
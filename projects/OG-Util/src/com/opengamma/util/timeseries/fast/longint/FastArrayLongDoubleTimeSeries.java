@@ -55,6 +55,16 @@ public class FastArrayLongDoubleTimeSeries extends AbstractFastLongDoubleTimeSer
     init(times, values);
   }
 
+  /**
+   * Creates a series that adopts the arrays rather than copying them.
+   * The times must already be ordered and the arrays must not be used by the caller afterwards.
+   */
+  private FastArrayLongDoubleTimeSeries(final long[] times, final double[] values, final DateTimeNumericEncoding encoding) {
+    super(encoding);
+    _times = times;
+    _values = values;
+  }
+
   private void init(final long[] times, final double[] values) {
     if (times.length != values.length) {
       throw new IllegalArgumentException("Arrays are of different sizes: " + times.length + ", " + values.length);
@@ -364,6 +374,21 @@ public class FastArrayLongDoubleTimeSeries extends AbstractFastLongDoubleTimeSer
     return _times.clone();
   }
 
+  @Override
+  protected long[] timesArrayShared() {
+    return _times;
+  }
+
+  @Override
+  protected double[] valuesArrayShared() {
+    return _values;
+  }
+
+  @Override
+  protected FastLongDoubleTimeSeries newInstanceFastShared(final long[] times, final double[] values) {
+    return new FastArrayLongDoubleTimeSeries(times, values, getEncoding());
+  }
+
   @Override
   public long getTimeFast(final int index) {
     return _times[index];
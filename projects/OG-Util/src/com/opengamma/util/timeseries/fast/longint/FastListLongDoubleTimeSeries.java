@@ -28,7 +28,10 @@ import com.opengamma.OpenGammaRuntimeException;
 import com.opengamma.util.timeseries.AbstractFastBackedDoubleTimeSeries;
 import com.opengamma.util.timeseries.DoubleTimeSeries;
 import com.opengamma.util.timeseries.FastBackedDoubleTimeSeries;
+import com.opengamma.util.timeseries.DoubleTimeSeriesOperators.BinaryOperator;
+import com.opengamma.util.timeseries.DoubleTimeSeriesOperators.UnaryOperator;
 import com.opengamma.util.timeseries.fast.DateTimeNumericEncoding;
+import com.opengamma.util.timeseries.fast.DoubleTimeSeriesKernels;
 import com.opengamma.util.timeseries.fast.integer.FastIntDoubleTimeSeries;
 import com.opengamma.util.tuple.LongDoublePair;
 
@@ -302,6 +305,42 @@ public class FastListLongDoubleTimeSeries extends AbstractFastMutableLongDoubleT
     _values.clear();
   }
 
+  @Override
+  public void operateInPlace(final UnaryOperator operator) {
+    final double[] values = _values.elements();
+    DoubleTimeSeriesKernels.apply(operator, values, values, _values.size());
+  }
+
+  @Override
+  public void operateInPlace(final double other, final BinaryOperator operator) {
+    final double[] values = _values.elements();
+    DoubleTimeSeriesKernels.apply(operator, values, other, values, _values.size());
+  }
+
+  @Override
+  public void operateInPlace(final FastLongDoubleTimeSeries other, final BinaryOperator operator) {
+    final long[] times = _times.elements();
+    final double[] values = _values.elements();
+    final long[] otherTimes = DoubleTimeSeriesKernels.convertToLong(timesArrayShared(other), other.getEncoding(), getEncoding());
+    final int count = DoubleTimeSeriesKernels.intersect(times, values, _times.size(), otherTimes, valuesArrayShared(other), otherTimes.length, operator,
+        times, values);
+    _times.size(count);
+    _values.size(count);
+  }
+
+  @Override
+  public void unionOperateInPlace(final FastLongDoubleTimeSeries other, final BinaryOperator operator) {
+    final long[] otherTimes = DoubleTimeSeriesKernels.convertToLong(timesArrayShared(other), other.getEncoding(), getEncoding());
+    final long[] resTimes = new long[_times.size() + otherTimes.length];
+    final double[] resValues = new double[resTimes.length];
+    final int count = DoubleTimeSeriesKernels.union(_times.elements(), _values.elements(), _times.size(), otherTimes, valuesArrayShared(other),
+        otherTimes.length, operator, resTimes, resValues);
+    _times.clear();
+    _times.addElements(0, resTimes, 0, count);
+    _values.clear();
+    _values.addElements(0, resValues, 0, count);
+  }
+
   @Override
   public void primitivePutDataPoint(final long time, final double value) {
     final int index = Arrays.binarySearch(_times.elements(), time);
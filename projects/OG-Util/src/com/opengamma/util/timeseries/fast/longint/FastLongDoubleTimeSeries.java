@@ -73,6 +73,14 @@ public interface FastLongDoubleTimeSeries extends FastTimeSeries<Long>, Iterable
   public abstract FastLongDoubleTimeSeries unionOperate(final FastIntDoubleTimeSeries other, final BinaryOperator operator);
   
   public abstract FastLongDoubleTimeSeries operate(final UnaryOperator operator);
+
+  /**
+   * Combines the values at the times this series has in common with another, then combines each
+   * result with a constant, {@code scalarOperator(operator(a, b), scalar)}, without creating an
+   * intermediate series.
+   */
+  public abstract FastLongDoubleTimeSeries operate(final FastLongDoubleTimeSeries other, final BinaryOperator operator, final double scalar,
+      final BinaryOperator scalarOperator);
   
   public abstract FastLongDoubleTimeSeries lag(final int days);
 }
@@ -5,10 +5,35 @@
  */
 package com.opengamma.util.timeseries.fast.longint;
 
+import com.opengamma.util.timeseries.DoubleTimeSeriesOperators.BinaryOperator;
+import com.opengamma.util.timeseries.DoubleTimeSeriesOperators.UnaryOperator;
+
 public interface FastMutableLongDoubleTimeSeries extends FastLongDoubleTimeSeries {
   public void primitivePutDataPoint(long time, double value);
 
   public void primitiveRemoveDataPoint(long time);
 
   public void clear();
+
+  /**
+   * Replaces each value with the result of an operator, as {@link #operate(UnaryOperator)} but modifying this series.
+   */
+  public void operateInPlace(final UnaryOperator operator);
+
+  /**
+   * Combines each value with a constant, as {@link #operate(double, BinaryOperator)} but modifying this series.
+   */
+  public void operateInPlace(final double other, final BinaryOperator operator);
+
+  /**
+   * Combines the values at the times this series has in common with another, removing the times it doesn't,
+   * as {@link #operate(FastLongDoubleTimeSeries, BinaryOperator)} but modifying this series.
+   */
+  public void operateInPlace(final FastLongDoubleTimeSeries other, final BinaryOperator operator);
+
+  /**
+   * Combines the values at the times this series has in common with another, adding the times it doesn't,
+   * as {@link #unionOperate(FastLongDoubleTimeSeries, BinaryOperator)} but modifying this series.
+   */
+  public void unionOperateInPlace(final FastLongDoubleTimeSeries other, final BinaryOperator operator);
 }
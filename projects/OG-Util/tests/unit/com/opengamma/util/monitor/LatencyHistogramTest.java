@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.util.monitor;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import org.testng.annotations.Test;
+
+/**
+ * Test LatencyHistogram.
+ */
+@Test
+public class LatencyHistogramTest {
+
+  public void empty() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getMean());
+    assertEquals(0, histogram.getMax());
+    assertEquals(0, histogram.getValueAtPercentile(99));
+  }
+
+  public void smallValuesExact() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 10; i++) {
+      histogram.record(i);
+    }
+    assertEquals(10, histogram.getCount());
+    assertEquals(5, histogram.getMean());
+    assertEquals(5, histogram.getValueAtPercentile(50));
+    assertEquals(9, histogram.getValueAtPercentile(90));
+    assertEquals(10, histogram.getValueAtPercentile(100));
+    assertEquals(1, histogram.getValueAtPercentile(0));
+  }
+
+  public void percentilesWithinPrecision() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long i = 1; i <= 100000; i++) {
+      histogram.record(i * 1000);
+    }
+    assertEquals(100000, histogram.getCount());
+    assertEquals(100000000, histogram.getMax());
+    assertWithin(50000000, histogram.getValueAtPercentile(50));
+    assertWithin(99000000, histogram.getValueAtPercentile(99));
+    assertWithin(99900000, histogram.getValueAtPercentile(99.9));
+    assertEquals(100000000, histogram.getValueAtPercentile(100));
+  }
+
+  public void largeValues() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(Long.MAX_VALUE);
+    assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(50));
+  }
+
+  public void negativeRecordedAsZero() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(-5);
+    assertEquals(1, histogram.getCount());
+    assertEquals(0, histogram.getValueAtPercentile(100));
+  }
+
+  public void reset() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(1000);
+    histogram.reset();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getMax());
+  }
+
+  private static void assertWithin(long expected, long actual) {
+    assertTrue(actual + " not within 3% of " + expected, actual >= expected && actual <= expected * 1.03);
+  }
+
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.util.timeseries.fast;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import com.opengamma.util.timeseries.DoubleTimeSeriesOperators;
+import com.opengamma.util.timeseries.DoubleTimeSeriesOperators.BinaryOperator;
+import com.opengamma.util.timeseries.fast.integer.FastArrayIntDoubleTimeSeries;
+import com.opengamma.util.timeseries.fast.integer.FastIntDoubleTimeSeries;
+import com.opengamma.util.timeseries.fast.integer.FastListIntDoubleTimeSeries;
+import com.opengamma.util.timeseries.fast.integer.FastMutableIntDoubleTimeSeries;
+
+/**
+ * Measures operations on ten years of daily points.
+ * <p>
+ * Each operation is timed with an operator the kernels have a loop for and with an equivalent
+ * operator they call per value, on series with the same times and on series sampled on different
+ * calendars. The spread calculation {@code (a - b) * k} is timed as two operations, as one fused
+ * operation and as operations in place on a mutable series.
+ */
+@Test(enabled = false)
+public class DoubleTimeSeriesKernelsPerformanceTest {
+
+  private static final Logger s_logger = LoggerFactory.getLogger(DoubleTimeSeriesKernelsPerformanceTest.class);
+
+  private static final int POINTS = 3650;
+  private static final int WARMUP = 20000;
+  private static final int ITERATIONS = 100000;
+
+  private static final BinaryOperator GENERIC_SUBTRACT_OPERATOR = new BinaryOperator() {
+    @Override
+    public double operate(final double a, final double b) {
+      return a - b;
+    }
+  };
+
+  private double _sink;
+
+  public void sameTimes() {
+    final FastIntDoubleTimeSeries a = series(1, 0);
+    final FastIntDoubleTimeSeries b = series(1, 1);
+    measure("same times, specialised", a, b, DoubleTimeSeriesOperators.SUBTRACT_OPERATOR);
+    measure("same times, generic", a, b, GENERIC_SUBTRACT_OPERATOR);
+  }
+
+  public void differentTimes() {
+    final FastIntDoubleTimeSeries a = series(1, 0);
+    final FastIntDoubleTimeSeries b = series(2, 1);
+    measure("different times, specialised", a, b, DoubleTimeSeriesOperators.SUBTRACT_OPERATOR);
+    measure("different times, generic", a, b, GENERIC_SUBTRACT_OPERATOR);
+  }
+
+  public void spread() {
+    final FastIntDoubleTimeSeries a = series(1, 0);
+    final FastIntDoubleTimeSeries b = series(1, 1);
+    for (int i = 0; i < WARMUP; i++) {
+      chained(a, b);
+      fused(a, b);
+      inPlace(a, b);
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      chained(a, b);
+    }
+    report("spread, chained", start);
+    start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      fused(a, b);
+    }
+    report("spread, fused", start);
+    start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      inPlace(a, b);
+    }
+    report("spread, in place", start);
+  }
+
+  private void chained(final FastIntDoubleTimeSeries a, final FastIntDoubleTimeSeries b) {
+    _sink += a.operate(b, DoubleTimeSeriesOperators.SUBTRACT_OPERATOR).operate(0.5, DoubleTimeSeriesOperators.MULTIPLY_OPERATOR).getLatestValueFast();
+  }
+
+  private void fused(final FastIntDoubleTimeSeries a, final FastIntDoubleTimeSeries b) {
+    _sink += a.operate(b, DoubleTimeSeriesOperators.SUBTRACT_OPERATOR, 0.5, DoubleTimeSeriesOperators.MULTIPLY_OPERATOR).getLatestValueFast();
+  }
+
+  private void inPlace(final FastIntDoubleTimeSeries a, final FastIntDoubleTimeSeries b) {
+    final FastMutableIntDoubleTimeSeries result = new FastListIntDoubleTimeSeries(a);
+    result.operateInPlace(b, DoubleTimeSeriesOperators.SUBTRACT_OPERATOR);
+    result.operateInPlace(0.5, DoubleTimeSeriesOperators.MULTIPLY_OPERATOR);
+    _sink += result.getLatestValueFast();
+  }
+
+  private void measure(final String name, final FastIntDoubleTimeSeries a, final FastIntDoubleTimeSeries b, final BinaryOperator operator) {
+    for (int i = 0; i < WARMUP; i++) {
+      _sink += a.operate(b, operator).getLatestValueFast();
+    }
+    final long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      _sink += a.operate(b, operator).getLatestValueFast();
+    }
+    report(name, start);
+  }
+
+  private void report(final String name, final long start) {
+    s_logger.info("{}: {}ns per operation", name, (System.nanoTime() - start) / ITERATIONS);
+  }
+
+  private static FastIntDoubleTimeSeries series(final int step, final double offset) {
+    final int[] times = new int[POINTS / step];
+    final double[] values = new double[times.length];
+    for (int i = 0; i < times.length; i++) {
+      times[i] = i * step;
+      values[i] = offset + Math.sin(i);
+    }
+    return new FastArrayIntDoubleTimeSeries(DateTimeNumericEncoding.DATE_EPOCH_DAYS, times, values);
+  }
+
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.util.timeseries.fast;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.Arrays;
+
+import org.testng.annotations.Test;
+
+import com.opengamma.util.timeseries.DoubleTimeSeriesOperators;
+import com.opengamma.util.timeseries.DoubleTimeSeriesOperators.BinaryOperator;
+import com.opengamma.util.timeseries.fast.integer.FastArrayIntDoubleTimeSeries;
+import com.opengamma.util.timeseries.fast.integer.FastIntDoubleTimeSeries;
+import com.opengamma.util.timeseries.fast.integer.FastListIntDoubleTimeSeries;
+import com.opengamma.util.timeseries.fast.integer.FastMapIntDoubleTimeSeries;
+import com.opengamma.util.timeseries.fast.integer.FastMutableIntDoubleTimeSeries;
+import com.opengamma.util.timeseries.fast.longint.FastArrayLongDoubleTimeSeries;
+import com.opengamma.util.timeseries.fast.longint.FastLongDoubleTimeSeries;
+
+/**
+ * Test DoubleTimeSeriesKernels and the fast series operations using it.
+ */
+@Test
+public class DoubleTimeSeriesKernelsTest {
+
+  private static final DateTimeNumericEncoding ENCODING = DateTimeNumericEncoding.DATE_EPOCH_DAYS;
+  private static final int[] TIMES_A = {1, 2, 3, 5, 8};
+  private static final double[] VALUES_A = {1, 2, 3, 5, 8};
+  private static final int[] TIMES_B = {2, 3, 4, 8, 9};
+  private static final double[] VALUES_B = {10, 20, 30, 40, 50};
+
+  /** An operator the kernels have no specialised loop for. */
+  private static final BinaryOperator MAX_OPERATOR = new BinaryOperator() {
+    @Override
+    public double operate(final double a, final double b) {
+      return Math.max(a, b);
+    }
+  };
+
+  public void intersect() {
+    final int[] times = new int[5];
+    final double[] values = new double[5];
+    final int count = DoubleTimeSeriesKernels.intersect(TIMES_A, VALUES_A, 5, TIMES_B, VALUES_B, 5, DoubleTimeSeriesOperators.MULTIPLY_OPERATOR, times, values);
+    assertEquals(3, count);
+    assertTrue(Arrays.equals(new int[] {2, 3, 8}, Arrays.copyOf(times, count)));
+    assertTrue(Arrays.equals(new double[] {20, 60, 320}, Arrays.copyOf(values, count)));
+  }
+
+  public void intersectInPlace() {
+    final int[] times = TIMES_A.clone();
+    final double[] values = VALUES_A.clone();
+    final int count = DoubleTimeSeriesKernels.intersect(times, values, 5, TIMES_B, VALUES_B, 5, MAX_OPERATOR, times, values);
+    assertEquals(3, count);
+    assertTrue(Arrays.equals(new int[] {2, 3, 8}, Arrays.copyOf(times, count)));
+    assertTrue(Arrays.equals(new double[] {10, 20, 40}, Arrays.copyOf(values, count)));
+  }
+
+  public void union() {
+    final int[] times = new int[10];
+    final double[] values = new double[10];
+    final int count = DoubleTimeSeriesKernels.union(TIMES_A, VALUES_A, 5, TIMES_B, VALUES_B, 5, DoubleTimeSeriesOperators.ADD_OPERATOR, times, values);
+    assertEquals(7, count);
+    assertTrue(Arrays.equals(new int[] {1, 2, 3, 4, 5, 8, 9}, Arrays.copyOf(times, count)));
+    assertTrue(Arrays.equals(new double[] {1, 12, 23, 30, 5, 48, 50}, Arrays.copyOf(values, count)));
+  }
+
+  public void sameTimes() {
+    final long[] times = new long[5];
+    final double[] values = new double[5];
+    final long[] aTimes = {1, 2, 3, 5, 8};
+    final int count = DoubleTimeSeriesKernels.union(aTimes, VALUES_A, 5, aTimes.clone(), VALUES_B, 5, DoubleTimeSeriesOperators.SUBTRACT_OPERATOR, times, values);
+    assertEquals(5, count);
+    assertTrue(Arrays.equals(aTimes, times));
+    assertTrue(Arrays.equals(new double[] {-9, -18, -27, -35, -42}, values));
+  }
+
+  public void operateMatchesKernels() {
+    final FastIntDoubleTimeSeries a = new FastArrayIntDoubleTimeSeries(ENCODING, TIMES_A, VALUES_A);
+    final FastIntDoubleTimeSeries b = new FastListIntDoubleTimeSeries(ENCODING, TIMES_B, VALUES_B);
+    assertEquals(new FastArrayIntDoubleTimeSeries(ENCODING, new int[] {2, 3, 8}, new double[] {10, 20, 40}), a.operate(b, MAX_OPERATOR));
+    assertEquals(new FastArrayIntDoubleTimeSeries(ENCODING, new int[] {1, 2, 3, 4, 5, 8, 9}, new double[] {1, 12, 23, 30, 5, 48, 50}),
+        a.unionOperate(b, DoubleTimeSeriesOperators.ADD_OPERATOR));
+    assertEquals(new FastArrayIntDoubleTimeSeries(ENCODING, TIMES_A, new double[] {-1, -2, -3, -5, -8}), a.operate(DoubleTimeSeriesOperators.NEGATE_OPERATOR));
+    final FastLongDoubleTimeSeries c = new FastArrayLongDoubleTimeSeries(ENCODING, new long[] {2, 3, 4, 8, 9}, VALUES_B);
+    assertEquals(new FastArrayIntDoubleTimeSeries(ENCODING, new int[] {2, 3, 8}, new double[] {20, 60, 320}), a.operate(c, DoubleTimeSeriesOperators.MULTIPLY_OPERATOR));
+  }
+
+  public void operateDoesNotModifyOperands() {
+    final FastIntDoubleTimeSeries a = new FastArrayIntDoubleTimeSeries(ENCODING, TIMES_A, VALUES_A);
+    a.operate(a, DoubleTimeSeriesOperators.ADD_OPERATOR);
+    a.operate(2, DoubleTimeSeriesOperators.MULTIPLY_OPERATOR);
+    assertEquals(new FastArrayIntDoubleTimeSeries(ENCODING, TIMES_A, VALUES_A), a);
+  }
+
+  public void fusedOperate() {
+    final FastIntDoubleTimeSeries a = new FastArrayIntDoubleTimeSeries(ENCODING, TIMES_A, VALUES_A);
+    final FastIntDoubleTimeSeries b = new FastArrayIntDoubleTimeSeries(ENCODING, TIMES_B, VALUES_B);
+    final FastIntDoubleTimeSeries expected = a.operate(b, DoubleTimeSeriesOperators.SUBTRACT_OPERATOR).operate(0.5, DoubleTimeSeriesOperators.MULTIPLY_OPERATOR);
+    assertEquals(expected, a.operate(b, DoubleTimeSeriesOperators.SUBTRACT_OPERATOR, 0.5, DoubleTimeSeriesOperators.MULTIPLY_OPERATOR));
+  }
+
+  public void operateInPlace() {
+    final FastIntDoubleTimeSeries b = new FastArrayIntDoubleTimeSeries(ENCODING, TIMES_B, VALUES_B);
+    for (FastMutableIntDoubleTimeSeries a : new FastMutableIntDoubleTimeSeries[] {
+        new FastListIntDoubleTimeSeries(ENCODING, TIMES_A, VALUES_A), new FastMapIntDoubleTimeSeries(ENCODING, TIMES_A, VALUES_A)}) {
+      a.operateInPlace(2, DoubleTimeSeriesOperators.MULTIPLY_OPERATOR);
+      a.operateInPlace(b, DoubleTimeSeriesOperators.ADD_OPERATOR);
+      assertEquals(new FastArrayIntDoubleTimeSeries(ENCODING, new int[] {2, 3, 8}, new double[] {14, 26, 56}), a);
+      a.unionOperateInPlace(b, DoubleTimeSeriesOperators.SUBTRACT_OPERATOR);
+      assertEquals(new FastArrayIntDoubleTimeSeries(ENCODING, new int[] {2, 3, 4, 8, 9}, new double[] {4, 6, 30, 16, 50}), a);
+    }
+  }
+
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2009 - present by OpenGamma Inc. and the OpenGamma group of companies
+ *
+ * Please see distribution for license.
+ */
+package com.opengamma.util.timeseries.fast.integer;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import com.opengamma.util.timeseries.fast.DateTimeNumericEncoding;
+
+/**
+ * Test IntDoubleTimeSeriesBlockCodec.
+ */
+@Test
+public class IntDoubleTimeSeriesBlockCodecTest {
+
+  private static final DateTimeNumericEncoding ENCODING = DateTimeNumericEncoding.DATE_EPOCH_DAYS;
+  private static final int[] TIMES = {14000, 14001, 14002, 14005, 14006, 14400, 14401};
+  private static final double[] VALUES = {1.25, 1.25, 1.26, -3.5, Double.NaN, 0, 1e300};
+
+  private static ByteBuffer encode(final FastIntDoubleTimeSeries series) {
+    final ByteBuffer buffer = ByteBuffer.allocate(IntDoubleTimeSeriesBlockCodec.maxEncodedLength(series.size()));
+    IntDoubleTimeSeriesBlockCodec.encode(series, buffer);
+    buffer.flip();
+    return buffer;
+  }
+
+  public void header() {
+    final ByteBuffer block = encode(new FastArrayIntDoubleTimeSeries(ENCODING, TIMES, VALUES));
+    assertEquals(TIMES.length, IntDoubleTimeSeriesBlockCodec.getCount(block));
+    assertEquals(TIMES[0], IntDoubleTimeSeriesBlockCodec.getEarliestTime(block));
+    assertEquals(TIMES[TIMES.length - 1], IntDoubleTimeSeriesBlockCodec.getLatestTime(block));
+  }
+
+  public void roundTrip() {
+    final FastIntDoubleTimeSeries series = new FastArrayIntDoubleTimeSeries(ENCODING, TIMES, VALUES);
+    final FastIntDoubleTimeSeries decoded = IntDoubleTimeSeriesBlockCodec.decode(encode(series), ENCODING);
+    assertEquals(series, decoded);
+    assertEquals(ENCODING, decoded.getEncoding());
+  }
+
+  public void roundTripEmpty() {
+    final FastIntDoubleTimeSeries series = new FastArrayIntDoubleTimeSeries(ENCODING);
+    final ByteBuffer block = encode(series);
+    assertEquals(0, IntDoubleTimeSeriesBlockCodec.getCount(block));
+    assertTrue(IntDoubleTimeSeriesBlockCodec.decode(block, ENCODING).isEmpty());
+  }
+
+  public void roundTripRandom() {
+    final Random random = new Random(1);
+    final int[] times = new int[1000];
+    final double[] values = new double[1000];
+    int time = -500;
+    double value = 100;
+    for (int i = 0; i < times.length; i++) {
+      time += 1 + random.nextInt(i % 100 == 0 ? 100000 : 4);
+      value = (i % 10 == 0) ? random.nextDouble() : Math.round((value + random.nextGaussian()) * 100) / 100d;
+      times[i] = time;
+      values[i] = value;
+    }
+    final FastIntDoubleTimeSeries series = new FastArrayIntDoubleTimeSeries(ENCODING, times, values);
+    assertEquals(series, IntDoubleTimeSeriesBlockCodec.decode(encode(series), ENCODING));
+  }
+
+  public void decodeRange() {
+    final ByteBuffer block = encode(new FastArrayIntDoubleTimeSeries(ENCODING, TIMES, VALUES));
+    final FastIntDoubleTimeSeries range = IntDoubleTimeSeriesBlockCodec.decode(block, ENCODING, 14002, 14006);
+    assertTrue(Arrays.equals(Arrays.copyOfRange(TIMES, 2, 5), range.timesArrayFast()));
+    assertTrue(Arrays.equals(Arrays.copyOfRange(VALUES, 2, 5), range.valuesArrayFast()));
+    assertEquals(0, block.position());
+  }
+
+  public void decodeRangeBetweenTimes() {
+    final ByteBuffer block = encode(new FastArrayIntDoubleTimeSeries(ENCODING, TIMES, VALUES));
+    final FastIntDoubleTimeSeries range = IntDoubleTimeSeriesBlockCodec.decode(block, ENCODING, 14003, 14399);
+    assertTrue(Arrays.equals(new int[] {14005, 14006}, range.timesArrayFast()));
+    assertTrue(IntDoubleTimeSeriesBlockCodec.decode(block, ENCODING, 14007, 14399).isEmpty());
+    assertTrue(IntDoubleTimeSeriesBlockCodec.decode(block, ENCODING, 15000, 16000).isEmpty());
+  }
+
+  public void decodeAtOffset() {
+    final FastIntDoubleTimeSeries series = new FastArrayIntDoubleTimeSeries(ENCODING, TIMES, VALUES);
+    final ByteBuffer buffer = ByteBuffer.allocate(10 + IntDoubleTimeSeriesBlockCodec.maxEncodedLength(series.size()));
+    buffer.position(10);
+    IntDoubleTimeSeriesBlockCodec.encode(series, buffer);
+    buffer.position(10);
+    assertEquals(series, IntDoubleTimeSeriesBlockCodec.decode(buffer, ENCODING));
+  }
+
+}